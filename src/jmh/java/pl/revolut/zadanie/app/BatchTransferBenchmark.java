@@ -0,0 +1,94 @@
+package pl.revolut.zadanie.app;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import pl.revolut.zadanie.Main;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the per-transfer throughput of the single transfer endpoint with the batch endpoint, both over HTTP.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class BatchTransferBenchmark {
+    private static final int TRANSFERS = 1_000;
+    private static final String BASE_URL = "http://localhost:8080/accounts";
+
+    private App app;
+    private HttpClient httpClient;
+    private HttpRequest singleTransfer;
+    private HttpRequest perItemBatch;
+    private HttpRequest allOrNothingBatch;
+
+    @Setup
+    public void setUp() throws IOException, InterruptedException {
+        app = Main.manualDependencyInjectionApp();
+        app.start();
+        httpClient = HttpClient.newHttpClient();
+        send(post(BASE_URL, "{\"iban\":\"A\",\"balance\":\"1000000000\"}"));
+        send(post(BASE_URL, "{\"iban\":\"B\",\"balance\":\"1000000000\"}"));
+        singleTransfer = HttpRequest.newBuilder(URI.create(BASE_URL + "/transfer/1/from/A/to/B")).GET().build();
+        var ndjson = new StringBuilder();
+        for (int i = 0; i < TRANSFERS; i++) {
+            ndjson.append(i % 2 == 0 ? "{\"from\":\"A\",\"to\":\"B\",\"amount\":1}\n" : "{\"from\":\"B\",\"to\":\"A\",\"amount\":1}\n");
+        }
+        perItemBatch = post(BASE_URL + "/transfers?mode=per-item", ndjson.toString());
+        allOrNothingBatch = post(BASE_URL + "/transfers?mode=all-or-nothing", ndjson.toString());
+    }
+
+    @TearDown
+    public void tearDown() {
+        app.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TRANSFERS)
+    public void singleCalls() throws IOException, InterruptedException {
+        for (int i = 0; i < TRANSFERS; i++) {
+            send(singleTransfer);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TRANSFERS)
+    public String perItemBatch() throws IOException, InterruptedException {
+        return send(perItemBatch);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TRANSFERS)
+    public String allOrNothingBatch() throws IOException, InterruptedException {
+        return send(allOrNothingBatch);
+    }
+
+    private String send(HttpRequest request) throws IOException, InterruptedException {
+        return httpClient.send(request, BodyHandlers.ofString()).body();
+    }
+
+    private static HttpRequest post(String url, String body) {
+        return HttpRequest.newBuilder(URI.create(url))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+}
@@ -0,0 +1,76 @@
+package pl.revolut.zadanie.app.admission;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time admission control adds to a request, with limits high enough for every request to be admitted, and the cost of
+ * a rejection, e.g. {@code ./gradlew jmh -Pinclude=AdmissionControlBenchmark -Pthreads=1,8}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AdmissionControlBenchmark {
+    private static final int ACCOUNTS = 1024;
+    private static final int CLIENTS = 64;
+    private String[] transferPaths;
+    private String[] clients;
+    private ConcurrencyLimiter concurrency;
+    private AdmissionControl admitting;
+    private AdmissionControl rejecting;
+
+    @Setup
+    public void setUp() {
+        transferPaths = new String[ACCOUNTS];
+        for (int i = 0; i < ACCOUNTS; i++) {
+            transferPaths[i] = String.format("/accounts/transfer/10/from/PL%026d/to/PL%026d", i, (i + 1) % ACCOUNTS);
+        }
+        clients = new String[CLIENTS];
+        for (int i = 0; i < CLIENTS; i++) {
+            clients[i] = "10.0.0." + i;
+        }
+        concurrency = new ConcurrencyLimiter(1 << 20, 1 << 20);
+        admitting = new AdmissionControl(new RateLimiter(1e9, 1 << 20, 1 << 16), new RateLimiter(1e9, 1 << 20, 1 << 16), concurrency);
+        rejecting = new AdmissionControl(new RateLimiter(1e-3, 1, 1 << 16), null, null);
+        for (String client : clients) {
+            rejecting.admit("GET", transferPaths[0], client);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+        SplittableRandom random;
+
+        @Setup
+        public void setUp(ThreadParams threadParams) {
+            random = new SplittableRandom(42L + threadParams.getThreadIndex());
+        }
+    }
+
+    @Benchmark
+    public int admitted(Client client) {
+        int outcome = admitting.admit("GET", transferPaths[client.random.nextInt(ACCOUNTS)], clients[client.random.nextInt(CLIENTS)]);
+        concurrency.release(1_000);
+        return outcome;
+    }
+
+    @Benchmark
+    public int rejected(Client client) {
+        return rejecting.admit("GET", transferPaths[client.random.nextInt(ACCOUNTS)], clients[client.random.nextInt(CLIENTS)]);
+    }
+}
@@ -0,0 +1,92 @@
+package pl.revolut.zadanie.app.aggregates;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+import pl.revolut.zadanie.app.dto.AccountDto;
+import pl.revolut.zadanie.app.model.Account;
+import pl.revolut.zadanie.app.model.BalanceEngine;
+
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+
+/**
+ * Transfers updating {@link AccountAggregates} against transfers without them, to see what keeping the aggregates up
+ * to date costs the transfer path, and the time the queries take while the accounts change, e.g.
+ * {@code ./gradlew jmh -Pinclude=AccountAggregatesBenchmark -Pthreads=1,8}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccountAggregatesBenchmark {
+    private static final LongConsumer NO_VALIDATION = newBalance -> {
+    };
+
+    @Param({"1024", "100000"})
+    public int accountCount;
+
+    @Param({"false", "true"})
+    public boolean aggregated;
+
+    private AccountAggregates aggregates;
+    private Account[] accounts;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        var engine = BalanceEngine.forName("striped");
+        aggregates = new AccountAggregates();
+        accounts = new Account[accountCount];
+        var random = new SplittableRandom(7);
+        for (int i = 0; i < accountCount; i++) {
+            long balance = random.nextLong(1_000_000_000L);
+            accounts[i] = aggregated ? new Account(balance, "IBAN" + i, engine, aggregates) : new Account(balance, "IBAN" + i, engine);
+            aggregates.onCreated(accounts[i], balance);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Payer {
+        SplittableRandom random;
+
+        @Setup
+        public void setUp(ThreadParams threadParams) {
+            random = new SplittableRandom(42L + threadParams.getThreadIndex());
+        }
+    }
+
+    /**
+     * Amounts large enough to move balances between the ranks and now and then between the buckets.
+     */
+    @Benchmark
+    public void transfer(Payer payer) {
+        var from = accounts[payer.random.nextInt(accountCount)];
+        var to = accounts[payer.random.nextInt(accountCount)];
+        from.transferTo(to, payer.random.nextInt(1_000_000), NO_VALIDATION);
+    }
+
+    @Benchmark
+    public Map<String, Long> totals() {
+        return aggregates.totals();
+    }
+
+    @Benchmark
+    public List<AccountDto> largest() {
+        return aggregates.largest(10);
+    }
+}
@@ -0,0 +1,109 @@
+package pl.revolut.zadanie.app.binary;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+import pl.revolut.zadanie.Main;
+import pl.revolut.zadanie.app.App;
+import pl.revolut.zadanie.bench.AccessPattern;
+import pl.revolut.zadanie.bench.AccessPattern.KeyGenerator;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load generator comparing the JSON API with the binary protocol, every benchmark thread acting as a client with its
+ * own connection. Run with -Pthreads to see how both scale with the number of clients.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ProtocolBenchmark {
+    private static final int ACCOUNTS = 1024;
+    private static final int BINARY_PORT = 9090;
+    private static final String BASE_URL = "http://localhost:8080/accounts";
+
+    private App app;
+    private String[] ibans;
+
+    @Setup
+    public void setUp() throws IOException, InterruptedException {
+        System.setProperty("app.binaryPort", String.valueOf(BINARY_PORT));
+        app = Main.manualDependencyInjectionApp();
+        app.start();
+        var httpClient = HttpClient.newHttpClient();
+        ibans = new String[ACCOUNTS];
+        for (int i = 0; i < ACCOUNTS; i++) {
+            ibans[i] = "IBAN" + i;
+            httpClient.send(HttpRequest.newBuilder(URI.create(BASE_URL))
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"iban\":\"" + ibans[i] + "\",\"balance\":\"1000000000\"}"))
+                    .build(), BodyHandlers.discarding());
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        app.close();
+        System.clearProperty("app.binaryPort");
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+        HttpClient httpClient;
+        BinaryClient binaryClient;
+        KeyGenerator generator;
+
+        @Setup
+        public void setUp(ThreadParams threadParams) throws IOException {
+            httpClient = HttpClient.newHttpClient();
+            binaryClient = new BinaryClient("localhost", BINARY_PORT);
+            generator = AccessPattern.UNIFORM.generator(ACCOUNTS, 42L + threadParams.getThreadIndex());
+        }
+
+        @TearDown
+        public void tearDown() throws IOException {
+            binaryClient.close();
+        }
+    }
+
+    @Benchmark
+    public String jsonTransfer(Client client) throws IOException, InterruptedException {
+        int from = client.generator.next();
+        int to = client.generator.nextOtherThan(from);
+        var request = HttpRequest.newBuilder(URI.create(BASE_URL + "/transfer/1/from/" + ibans[from] + "/to/" + ibans[to])).GET().build();
+        return client.httpClient.send(request, BodyHandlers.ofString()).body();
+    }
+
+    @Benchmark
+    public byte binaryTransfer(Client client) throws IOException {
+        int from = client.generator.next();
+        return client.binaryClient.transfer(ibans[from], ibans[client.generator.nextOtherThan(from)], 1);
+    }
+
+    @Benchmark
+    public String jsonBalance(Client client) throws IOException, InterruptedException {
+        var request = HttpRequest.newBuilder(URI.create(BASE_URL + "/" + ibans[client.generator.next()])).GET().build();
+        return client.httpClient.send(request, BodyHandlers.ofString()).body();
+    }
+
+    @Benchmark
+    public long binaryBalance(Client client) throws IOException {
+        return client.binaryClient.balance(ibans[client.generator.next()]);
+    }
+}
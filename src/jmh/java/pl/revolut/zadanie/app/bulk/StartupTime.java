@@ -0,0 +1,101 @@
+package pl.revolut.zadanie.app.bulk;
+
+import pl.revolut.zadanie.Main;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time from creating the app to serving the last account of a file imported at startup, for a csv and a
+ * binary file of the given number of accounts, next to the time of parsing the file alone. The app is created with the
+ * {@code app.*} system properties, so e.g. the store and the balance engine can be chosen.
+ * <p>
+ * Run with ./gradlew startupTime -Paccounts=10000000, with a heap large enough for the accounts.
+ */
+public class StartupTime {
+    private static final String IBAN_FORMAT = "PL%026d";
+    private static final int IBAN_BYTES = 28;
+
+    public static void main(String[] args) throws Exception {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        var directory = Files.createTempDirectory("startup");
+        var files = new Path[]{directory.resolve("accounts.csv"), directory.resolve("accounts.bin")};
+        try {
+            writeCsv(files[0], accounts);
+            writeBinary(files[1], accounts);
+            System.out.printf("%-8s %10s %10s %10s%n", "format", "MB", "parse ms", "ready ms");
+            for (Path file : files) {
+                var format = AccountFileFormat.forFile(file);
+                long parseStarted = System.nanoTime();
+                int parsed = AccountFile.read(file, format).count();
+                long parseMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - parseStarted);
+                if (parsed != accounts) {
+                    throw new IllegalStateException(String.format("Parsed %d accounts instead of %d", parsed, accounts));
+                }
+                System.gc();
+                System.out.printf("%-8s %10d %10d %10d%n", format.toString().toLowerCase(), Files.size(file) >> 20, parseMillis,
+                        readyMillis(file, String.format(IBAN_FORMAT, accounts - 1)));
+                System.gc();
+            }
+        } finally {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+            Files.delete(directory);
+        }
+    }
+
+    private static long readyMillis(Path file, String lastIban) throws IOException, InterruptedException {
+        var settings = new Properties();
+        settings.putAll(System.getProperties());
+        settings.setProperty("app.import.file", file.toString());
+        var port = Integer.parseInt(settings.getProperty("app.port", "8080"));
+        var client = HttpClient.newHttpClient();
+        var request = HttpRequest.newBuilder(URI.create(String.format("http://localhost:%d/accounts/%s", port, lastIban))).build();
+        long started = System.nanoTime();
+        try (var app = Main.manualDependencyInjectionApp(settings)) {
+            app.start();
+            var response = client.send(request, HttpResponse.BodyHandlers.discarding());
+            long ready = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+            if (response.statusCode() != 200) {
+                throw new IllegalStateException(String.format("Expected account %s served, got %d", lastIban, response.statusCode()));
+            }
+            return ready;
+        }
+    }
+
+    private static void writeCsv(Path file, int accounts) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.US_ASCII)) {
+            out.write("iban,balance\n");
+            for (int i = 0; i < accounts; i++) {
+                out.write(String.format(IBAN_FORMAT, i));
+                out.write(',');
+                out.write(Long.toString(1_000L + i));
+                out.write('\n');
+            }
+        }
+    }
+
+    private static void writeBinary(Path file, int accounts) throws IOException {
+        try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+            out.writeInt(AccountFile.MAGIC);
+            out.writeInt(Short.BYTES + IBAN_BYTES + Long.BYTES);
+            for (int i = 0; i < accounts; i++) {
+                out.writeShort(IBAN_BYTES);
+                out.write(String.format(IBAN_FORMAT, i).getBytes(StandardCharsets.US_ASCII));
+                out.writeLong(1_000L + i);
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package pl.revolut.zadanie.app.cluster;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+import pl.revolut.zadanie.Main;
+import pl.revolut.zadanie.app.App;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Load test of a cluster of nodes started in this JVM, with clients sending every transfer to the node owning its
+ * source account and a share of the transfers going to an account of another node. The nodes share the CPUs of the
+ * machine, so adding nodes raises the throughput as long as a single node leaves some of them idle, run it with enough
+ * threads to load every node, e.g. {@code ./gradlew jmh -Pinclude=ClusterBenchmark -Pthreads=32}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ClusterBenchmark {
+    private static final int FIRST_PORT = 8101;
+    private static final int ACCOUNTS = 1024;
+
+    @Param({"1", "2", "4"})
+    public int nodes;
+
+    @Param({"0", "10"})
+    public int crossPartitionPercent;
+
+    private final List<App> apps = new ArrayList<>();
+    private Path intentDirectory;
+    private List<String> urls;
+    private String[][] accountsOf;
+
+    @Setup
+    public void setUp() throws IOException, InterruptedException {
+        intentDirectory = Files.createTempDirectory("cluster-benchmark");
+        urls = new ArrayList<>();
+        for (int node = 0; node < nodes; node++) {
+            urls.add("http://localhost:" + (FIRST_PORT + node));
+        }
+        for (int node = 0; node < nodes; node++) {
+            var settings = new Properties();
+            settings.setProperty("app.port", String.valueOf(FIRST_PORT + node));
+            settings.setProperty("app.balanceEngine", "striped");
+            settings.setProperty("app.cluster.nodes", String.join(",", urls));
+            settings.setProperty("app.cluster.intentDirectory", intentDirectory.resolve(String.valueOf(node)).toString());
+            var app = Main.manualDependencyInjectionApp(settings);
+            app.start();
+            apps.add(app);
+        }
+        var ring = new ConsistentHashRing(urls, 128);
+        var owned = new ArrayList<List<String>>();
+        urls.forEach(url -> owned.add(new ArrayList<>()));
+        var httpClient = HttpClient.newHttpClient();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            var iban = String.format("PL%026d", i);
+            var owner = ring.ownerOf(iban);
+            owned.get(urls.indexOf(owner)).add(iban);
+            httpClient.send(HttpRequest.newBuilder(URI.create(owner + "/accounts"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"iban\":\"" + iban + "\",\"balance\":\"1000000000000\"}"))
+                    .build(), BodyHandlers.discarding());
+        }
+        accountsOf = owned.stream().map(ibans -> ibans.toArray(new String[0])).toArray(String[][]::new);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        apps.forEach(App::close);
+        apps.clear();
+        try (Stream<Path> files = Files.walk(intentDirectory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+        HttpClient httpClient;
+        SplittableRandom random;
+
+        @Setup
+        public void setUp(ThreadParams threadParams) {
+            httpClient = HttpClient.newHttpClient();
+            random = new SplittableRandom(42L + threadParams.getThreadIndex());
+        }
+    }
+
+    @Benchmark
+    public int transfer(Client client) throws IOException, InterruptedException {
+        var random = client.random;
+        int node = random.nextInt(nodes);
+        var from = pick(accountsOf[node], random);
+        int targetNode = nodes > 1 && random.nextInt(100) < crossPartitionPercent ? (node + 1 + random.nextInt(nodes - 1)) % nodes : node;
+        var to = pick(accountsOf[targetNode], random);
+        var request = HttpRequest.newBuilder(URI.create(urls.get(node) + "/accounts/transfer/1/from/" + from + "/to/" + to)).GET().build();
+        return client.httpClient.send(request, BodyHandlers.discarding()).statusCode();
+    }
+
+    private static String pick(String[] ibans, SplittableRandom random) {
+        return ibans[random.nextInt(ibans.length)];
+    }
+}
@@ -0,0 +1,126 @@
+package pl.revolut.zadanie.app.events;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+import pl.revolut.zadanie.app.model.Account;
+import pl.revolut.zadanie.app.model.BalanceEngine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+/**
+ * Transfers published to a {@link ChangeLog} followed by none or hundreds of subscriber threads, against transfers
+ * without a change log, to see what the fan-out costs the transfer path. After every iteration it prints how many
+ * changes the subscribers read on average and how many of them fell behind and lost changes, e.g.
+ * {@code ./gradlew jmh -Pinclude=ChangeLogBenchmark -Pthreads=4}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChangeLogBenchmark {
+    private static final int ACCOUNTS = 1024;
+    private static final LongConsumer NO_VALIDATION = newBalance -> {
+    };
+
+    /**
+     * -1 for transfers without a change log.
+     */
+    @Param({"-1", "0", "100", "500"})
+    public int subscribers;
+
+    private ChangeLog changeLog;
+    private Account[] accounts;
+    private final List<Thread> threads = new ArrayList<>();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong lost = new AtomicLong();
+    private volatile boolean running;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        var engine = BalanceEngine.forName("striped");
+        changeLog = subscribers < 0 ? null : new ChangeLog(1 << 16);
+        accounts = new Account[ACCOUNTS];
+        for (int i = 0; i < ACCOUNTS; i++) {
+            accounts[i] = changeLog == null ? new Account(Long.MAX_VALUE / 4, "IBAN" + i, engine)
+                    : new Account(Long.MAX_VALUE / 4, "IBAN" + i, engine, changeLog);
+        }
+        running = true;
+        delivered.set(0);
+        lost.set(0);
+        for (int i = 0; i < subscribers; i++) {
+            var subscription = changeLog.subscribe(changeLog.nextSequence());
+            var thread = new Thread(() -> follow(subscription), "subscriber-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws InterruptedException {
+        running = false;
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        threads.clear();
+        if (changeLog != null) {
+            changeLog.close();
+        }
+        if (subscribers > 0) {
+            System.out.printf("%n%d changes published, %d read per subscriber, %d subscribers lost changes%n",
+                    changeLog.nextSequence(), delivered.get() / subscribers, lost.get());
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Payer {
+        SplittableRandom random;
+
+        @Setup
+        public void setUp(ThreadParams threadParams) {
+            random = new SplittableRandom(42L + threadParams.getThreadIndex());
+        }
+    }
+
+    @Benchmark
+    public void transfer(Payer payer) {
+        var from = accounts[payer.random.nextInt(ACCOUNTS)];
+        var to = accounts[payer.random.nextInt(ACCOUNTS)];
+        from.transferTo(to, 1, NO_VALIDATION);
+    }
+
+    private void follow(ChangeSubscription subscription) {
+        var event = new ChangeEvent();
+        long read = 0;
+        while (running) {
+            if (subscription.poll(event)) {
+                read++;
+            } else if (subscription.isLost()) {
+                lost.incrementAndGet();
+                subscription = changeLog.subscribe(changeLog.nextSequence());
+            } else {
+                subscription.await(TimeUnit.MILLISECONDS.toNanos(10));
+            }
+        }
+        delivered.addAndGet(read);
+    }
+}
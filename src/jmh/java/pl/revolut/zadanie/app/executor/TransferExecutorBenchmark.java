@@ -0,0 +1,89 @@
+package pl.revolut.zadanie.app.executor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+import pl.revolut.zadanie.app.model.Account;
+import pl.revolut.zadanie.app.model.BalanceEngine;
+import pl.revolut.zadanie.app.model.DebitCheck;
+import pl.revolut.zadanie.bench.AccessPattern;
+import pl.revolut.zadanie.bench.AccessPattern.KeyGenerator;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency distribution of a transfer, from submission until its future completes, under hot account skew.
+ * Run with several thread counts to see how both executors scale with cores. Only the direct executor transfers
+ * without allocating, the sharded one allocates a command and a future for every transfer, 116 B/op with
+ * {@code -Pprof=gc} for the striped engine on JDK 17.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransferExecutorBenchmark {
+    private static final long INITIAL_BALANCE = Long.MAX_VALUE / 4;
+    private static final DebitCheck NO_CHECK = DebitCheck.of(newBalance -> {
+    });
+
+    @Param({"1024"})
+    public int accounts;
+
+    @Param({"ZIPFIAN", "UNIFORM"})
+    public AccessPattern pattern;
+
+    @Param({"direct", "sharded"})
+    public String executor;
+
+    @Param({"stm", "striped"})
+    public String engine;
+
+    private Account[] book;
+    private TransferExecutor transferExecutor;
+
+    @Setup
+    public void setUp() {
+        var balanceEngine = BalanceEngine.forName(engine);
+        book = new Account[accounts];
+        for (int i = 0; i < accounts; i++) {
+            book[i] = new Account(INITIAL_BALANCE, "IBAN" + i, balanceEngine);
+        }
+        transferExecutor = "sharded".equals(executor)
+                ? new ShardedTransferExecutor(Runtime.getRuntime().availableProcessors(), 4096)
+                : new DirectTransferExecutor();
+    }
+
+    @TearDown
+    public void tearDown() {
+        transferExecutor.close();
+    }
+
+    @State(Scope.Thread)
+    public static class Keys {
+        KeyGenerator generator;
+
+        @Setup
+        public void setUp(TransferExecutorBenchmark benchmark, ThreadParams threadParams) {
+            generator = benchmark.pattern.generator(benchmark.accounts, 42L + threadParams.getThreadIndex());
+        }
+    }
+
+    @Benchmark
+    public Void transfer(Keys keys) {
+        int from = keys.generator.next();
+        int to = keys.generator.nextOtherThan(from);
+        return transferExecutor.transfer(book[from], book[to], 1, NO_CHECK).join();
+    }
+}
@@ -0,0 +1,133 @@
+package pl.revolut.zadanie.app.fx;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+import pl.revolut.zadanie.app.AccountController;
+import pl.revolut.zadanie.app.cluster.Partitions;
+import pl.revolut.zadanie.app.dto.AccountDto;
+import pl.revolut.zadanie.app.dto.FxRateDto;
+import pl.revolut.zadanie.app.executor.DirectTransferExecutor;
+import pl.revolut.zadanie.app.idempotency.IdempotencyCache;
+import pl.revolut.zadanie.app.model.AccountListener;
+import pl.revolut.zadanie.app.model.BalanceEngine;
+import pl.revolut.zadanie.app.model.DebitCheck;
+import pl.revolut.zadanie.app.store.AccountStore;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Transfers between accounts of the same currency against transfers converted between currencies, through the account
+ * controller so the rate lookup is measured together with everything else a transfer does, optionally while another
+ * thread keeps replacing the rates, e.g. {@code ./gradlew jmh -Pinclude=CrossCurrencyTransferBenchmark -Pthreads=1,8}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CrossCurrencyTransferBenchmark {
+    private static final int ACCOUNTS = 1024;
+
+    /**
+     * Microseconds between replacements of the rates, 0 to never replace them.
+     */
+    @Param({"0", "100"})
+    public int replaceIntervalMicros;
+
+    private FxRateTable fxRates;
+    private AccountController controller;
+    private String[] euroAccounts;
+    private String[] zlotyAccounts;
+    private Thread replacer;
+    private volatile boolean running;
+
+    @Setup
+    public void setUp() {
+        fxRates = new FxRateTable(rates(new BigDecimal("4.2917")), null);
+        controller = new AccountController(AccountStore.forName("map", 2 * ACCOUNTS), BalanceEngine.forName("striped"),
+                new DirectTransferExecutor(), AccountListener.NONE, DebitCheck.of(newBalance -> {
+        }), new IdempotencyCache<>(16, 1, TimeUnit.MINUTES, AccountController::isReplayable),
+                new IdempotencyCache<>(16, 1, TimeUnit.MINUTES, AccountController::isReplayable), Partitions.SINGLE_NODE, fxRates);
+        euroAccounts = new String[ACCOUNTS];
+        zlotyAccounts = new String[ACCOUNTS];
+        for (int i = 0; i < ACCOUNTS; i++) {
+            euroAccounts[i] = "EUR" + i;
+            zlotyAccounts[i] = "PLN" + i;
+            controller.create(new AccountDto(euroAccounts[i], Long.MAX_VALUE / 4, "EUR"));
+            controller.create(new AccountDto(zlotyAccounts[i], Long.MAX_VALUE / 4, "PLN"));
+        }
+        running = true;
+        if (replaceIntervalMicros > 0) {
+            replacer = new Thread(this::replaceRates, "rates-replacer");
+            replacer.setDaemon(true);
+            replacer.start();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        running = false;
+        if (replacer != null) {
+            replacer.join();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Payer {
+        SplittableRandom random;
+
+        @Setup
+        public void setUp(ThreadParams threadParams) {
+            random = new SplittableRandom(42L + threadParams.getThreadIndex());
+        }
+    }
+
+    @Benchmark
+    public CompletableFuture<Void> sameCurrency(Payer payer) {
+        return controller.transferFoundsBetweenAccountsAsync(euroAccounts[payer.random.nextInt(ACCOUNTS)],
+                euroAccounts[payer.random.nextInt(ACCOUNTS)], 1 + payer.random.nextInt(1_000));
+    }
+
+    @Benchmark
+    public CompletableFuture<Void> crossCurrency(Payer payer) {
+        return controller.transferFoundsBetweenAccountsAsync(euroAccounts[payer.random.nextInt(ACCOUNTS)],
+                zlotyAccounts[payer.random.nextInt(ACCOUNTS)], 1 + payer.random.nextInt(1_000));
+    }
+
+    @Benchmark
+    public long convert(Payer payer) {
+        return fxRates.current().convert("EUR", "PLN", 1 + payer.random.nextInt(1_000));
+    }
+
+    private void replaceRates() {
+        var random = new SplittableRandom(7);
+        while (running) {
+            fxRates.replace(rates(BigDecimal.valueOf(40_000 + random.nextInt(5_000), 4)));
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(replaceIntervalMicros));
+        }
+    }
+
+    private static FxRates rates(BigDecimal euroInZlotys) {
+        return FxRates.of(List.of(
+                new FxRateDto("EUR", "PLN", euroInZlotys),
+                new FxRateDto("PLN", "EUR", BigDecimal.ONE.divide(euroInZlotys, FxRates.DECIMALS, RoundingMode.DOWN))));
+    }
+}
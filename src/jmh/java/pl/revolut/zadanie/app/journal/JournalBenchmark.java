@@ -0,0 +1,119 @@
+package pl.revolut.zadanie.app.journal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+import pl.revolut.zadanie.app.executor.ShardedTransferExecutor;
+import pl.revolut.zadanie.app.executor.TransferCompletion;
+import pl.revolut.zadanie.app.model.Account;
+import pl.revolut.zadanie.app.model.AccountListener;
+import pl.revolut.zadanie.app.model.BalanceEngine;
+import pl.revolut.zadanie.app.model.DebitCheck;
+import pl.revolut.zadanie.bench.AccessPattern;
+import pl.revolut.zadanie.bench.AccessPattern.KeyGenerator;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Transfer throughput with the journal off, forced to disk every interval and forced after every batch, applied by the
+ * calling threads and by the shards of a {@link ShardedTransferExecutor}, which hand their transfers over to the
+ * journal to complete instead of waiting for the force. Run with several thread counts to see concurrent transfers
+ * share a force.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JournalBenchmark {
+    private static final long INITIAL_BALANCE = Long.MAX_VALUE / 4;
+    private static final LongConsumer NO_VALIDATION = newBalance -> {
+    };
+    private static final DebitCheck NO_CHECK = DebitCheck.of(NO_VALIDATION);
+
+    @Param({"1024"})
+    public int accounts;
+
+    @Param({"off", "interval", "batch"})
+    public String journal;
+
+    @Param({"stm", "striped"})
+    public String engine;
+
+    private Account[] book;
+    private Journal openJournal;
+    private ShardedTransferExecutor shards;
+    private Path directory;
+
+    @Setup
+    public void setUp() throws IOException {
+        var balanceEngine = BalanceEngine.forName(engine);
+        AccountListener listener = AccountListener.NONE;
+        if (!"off".equals(journal)) {
+            directory = Files.createTempDirectory("journal-benchmark");
+            openJournal = Journal.open(directory, Durability.fromName(journal), 10);
+            listener = openJournal;
+        }
+        book = new Account[accounts];
+        for (int i = 0; i < accounts; i++) {
+            book[i] = new Account(INITIAL_BALANCE, "IBAN" + i, balanceEngine, listener);
+        }
+        shards = new ShardedTransferExecutor(Runtime.getRuntime().availableProcessors(), 4096,
+                openJournal == null ? TransferCompletion.IMMEDIATE : openJournal);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        shards.close();
+        if (openJournal != null) {
+            openJournal.close();
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Keys {
+        KeyGenerator generator;
+
+        @Setup
+        public void setUp(JournalBenchmark benchmark, ThreadParams threadParams) {
+            generator = AccessPattern.UNIFORM.generator(benchmark.accounts, 42L + threadParams.getThreadIndex());
+        }
+    }
+
+    @Benchmark
+    public void transferTo(Keys keys) {
+        int from = keys.generator.next();
+        int to = keys.generator.nextOtherThan(from);
+        book[from].transferTo(book[to], 1, NO_VALIDATION);
+    }
+
+    @Benchmark
+    public Void shardedTransfer(Keys keys) {
+        int from = keys.generator.next();
+        int to = keys.generator.nextOtherThan(from);
+        return shards.transfer(book[from], book[to], 1, NO_CHECK).join();
+    }
+}
@@ -0,0 +1,111 @@
+package pl.revolut.zadanie.app.ledger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+import pl.revolut.zadanie.app.dto.LedgerEntryDto;
+import pl.revolut.zadanie.bench.AccessPattern;
+import pl.revolut.zadanie.bench.AccessPattern.KeyGenerator;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Latency of history queries against a memory mapped ledger of up to 100M transfers between 1M accounts, a thousand
+ * transfers per millisecond. Source accounts are picked with a zipfian skew, so the hottest accounts have millions of
+ * entries and a time range query has to find its start through the checkpoints.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LedgerBenchmark {
+    private static final int ACCOUNTS = 1_000_000;
+    private static final int TRANSFERS_PER_MILLISECOND = 1_000;
+    private static final int PAGE_SIZE = 100;
+
+    @Param({"1000000", "100000000"})
+    public long entries;
+
+    @Param({"UNIFORM", "ZIPFIAN"})
+    public AccessPattern pattern;
+
+    private LedgerLog log;
+    private Path directory;
+    private String[] ibans;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("ledger-benchmark");
+        log = LedgerLog.mapped(directory);
+        ibans = new String[ACCOUNTS];
+        for (int i = 0; i < ACCOUNTS; i++) {
+            ibans[i] = String.format("PL%026d", i);
+        }
+        var sources = AccessPattern.ZIPFIAN.generator(ACCOUNTS, 7);
+        var targets = new SplittableRandom(11);
+        for (long i = 0; i < entries; i++) {
+            log.append(ibans[sources.next()], ibans[targets.nextInt(ACCOUNTS)], 1 + i % 1_000, i / TRANSFERS_PER_MILLISECOND);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        log = null;
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Queries {
+        KeyGenerator accounts;
+        SplittableRandom random;
+
+        @Setup
+        public void setUp(LedgerBenchmark benchmark, ThreadParams threadParams) {
+            accounts = benchmark.pattern.generator(ACCOUNTS, 42L + threadParams.getThreadIndex());
+            random = new SplittableRandom(42L + threadParams.getThreadIndex());
+        }
+    }
+
+    /**
+     * The newest page of an account, i.e. the first page of a statement.
+     */
+    @Benchmark
+    public List<LedgerEntryDto> newestPage(Queries queries) {
+        return log.history(ibans[queries.accounts.next()], 0, Long.MAX_VALUE, Long.MAX_VALUE, PAGE_SIZE);
+    }
+
+    /**
+     * A page of a random tenth of the log, e.g. a monthly statement of a year long history.
+     */
+    @Benchmark
+    public List<LedgerEntryDto> timeRangePage(Queries queries) {
+        long duration = entries / TRANSFERS_PER_MILLISECOND;
+        long window = Math.max(1, duration / 10);
+        long from = queries.random.nextLong(Math.max(1, duration - window));
+        return log.history(ibans[queries.accounts.next()], from, from + window, Long.MAX_VALUE, PAGE_SIZE);
+    }
+}
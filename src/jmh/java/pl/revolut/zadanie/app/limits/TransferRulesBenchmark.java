@@ -0,0 +1,103 @@
+package pl.revolut.zadanie.app.limits;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+import pl.revolut.zadanie.app.model.Account;
+import pl.revolut.zadanie.app.model.AccountListener;
+import pl.revolut.zadanie.app.model.BalanceEngine;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+
+/**
+ * Cost the transfer rules add to a transfer between random accounts out of a million, all of them debited before the
+ * measurement so every one holds its counters: the plain balance validator, the same check as the only rule of a chain,
+ * and the chain with the cap and the hourly and daily limits, set high enough to never reject. The setup prints the
+ * heap taken by the counters per account, e.g. {@code ./gradlew jmh -Pinclude=TransferRulesBenchmark -Pthreads=1,8}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransferRulesBenchmark {
+    private static final int ACCOUNTS = 1 << 20;
+    private static final long LIMIT = Long.MAX_VALUE / 4;
+
+    @Param({"validator", "chain", "limits"})
+    public String rules;
+
+    @Param({"striped", "stm"})
+    public String balanceEngine;
+
+    private Account[] accounts;
+    private LongConsumer newBalanceValidator;
+
+    @Setup
+    public void setUp() {
+        TransferRule sufficientFunds = (account, amount, newBalance, nowNanos) -> {
+            if (newBalance < 0) {
+                throw new IllegalStateException("Not enough founds");
+            }
+        };
+        switch (rules) {
+            case "validator":
+                newBalanceValidator = newBalance -> sufficientFunds.check(null, 0, newBalance, 0);
+                break;
+            case "chain":
+                newBalanceValidator = new TransferRules(List.of(sufficientFunds));
+                break;
+            default:
+                newBalanceValidator = new TransferRules(List.of(sufficientFunds, new MaxTransferRule(LIMIT), new VelocityLimits(List.of(
+                        new VelocityLimits.Window("hourly", LIMIT, 1, TimeUnit.HOURS, 6),
+                        new VelocityLimits.Window("daily", LIMIT, 1, TimeUnit.DAYS, 24)))));
+        }
+        var engine = BalanceEngine.forName(balanceEngine);
+        accounts = new Account[ACCOUNTS];
+        for (int i = 0; i < ACCOUNTS; i++) {
+            accounts[i] = new Account(Long.MAX_VALUE / 4, "PL" + i, engine, AccountListener.NONE);
+        }
+        long usedBefore = usedHeap();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            accounts[i].transferTo(accounts[(i + 1) % ACCOUNTS], 1, newBalanceValidator);
+        }
+        System.out.printf("%n%s rules take %d bytes of heap per account%n", rules, (usedHeap() - usedBefore) / ACCOUNTS);
+    }
+
+    @State(Scope.Thread)
+    public static class Payer {
+        SplittableRandom random;
+
+        @Setup
+        public void setUp(ThreadParams threadParams) {
+            random = new SplittableRandom(42L + threadParams.getThreadIndex());
+        }
+    }
+
+    @Benchmark
+    public void transfer(Payer payer) {
+        accounts[payer.random.nextInt(ACCOUNTS)].transferTo(accounts[payer.random.nextInt(ACCOUNTS)], 1 + payer.random.nextInt(1_000),
+                newBalanceValidator);
+    }
+
+    private static long usedHeap() {
+        var runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
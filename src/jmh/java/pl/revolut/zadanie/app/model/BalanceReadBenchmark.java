@@ -0,0 +1,111 @@
+package pl.revolut.zadanie.app.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+import pl.revolut.zadanie.bench.AccessPattern;
+import pl.revolut.zadanie.bench.AccessPattern.KeyGenerator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+
+/**
+ * Reads of single balances and consistent reads of pages of balances while a writer keeps transferring between the
+ * same accounts, three readers per writer. stm-transactional reads every balance in its own STM transaction, as all
+ * reads did before they started bypassing transactions.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BalanceReadBenchmark {
+    private static final long INITIAL_BALANCE = Long.MAX_VALUE / 4;
+    private static final int SNAPSHOT_SIZE = 16;
+    private static final LongConsumer NO_VALIDATION = newBalance -> {
+    };
+
+    @Param({"1024"})
+    public int accounts;
+
+    @Param({"UNIFORM", "ZIPFIAN"})
+    public AccessPattern pattern;
+
+    @Param({"stm-transactional", "stm", "striped"})
+    public String engine;
+
+    private BalanceEngine balanceEngine;
+    private Account[] book;
+
+    @Setup
+    public void setUp() {
+        balanceEngine = "stm-transactional".equals(engine) ? new StmBalanceEngine(true, HotAccounts.DISABLED) : BalanceEngine.forName(engine);
+        book = new Account[accounts];
+        for (int i = 0; i < accounts; i++) {
+            book[i] = new Account(INITIAL_BALANCE, "IBAN" + i, balanceEngine);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Keys {
+        KeyGenerator generator;
+        List<Account> page;
+
+        @Setup
+        public void setUp(BalanceReadBenchmark benchmark, ThreadParams threadParams) {
+            generator = benchmark.pattern.generator(benchmark.accounts, 42L + threadParams.getThreadIndex());
+            page = new ArrayList<>(SNAPSHOT_SIZE);
+            for (int i = 0; i < SNAPSHOT_SIZE; i++) {
+                page.add(benchmark.book[generator.next()]);
+            }
+        }
+    }
+
+    @Benchmark
+    @Group("singleReads")
+    @GroupThreads(3)
+    public long getBalance(Keys keys) {
+        return book[keys.generator.next()].getBalance();
+    }
+
+    @Benchmark
+    @Group("singleReads")
+    @GroupThreads(1)
+    public void transferWhileReading(Keys keys) {
+        transfer(keys);
+    }
+
+    @Benchmark
+    @Group("snapshotReads")
+    @GroupThreads(3)
+    public long[] balancesOf(Keys keys) {
+        return balanceEngine.balancesOf(keys.page);
+    }
+
+    @Benchmark
+    @Group("snapshotReads")
+    @GroupThreads(1)
+    public void transferWhileSnapshotting(Keys keys) {
+        transfer(keys);
+    }
+
+    private void transfer(Keys keys) {
+        int from = keys.generator.next();
+        int to = keys.generator.nextOtherThan(from);
+        book[from].transferTo(book[to], 1, NO_VALIDATION);
+    }
+}
@@ -0,0 +1,72 @@
+package pl.revolut.zadanie.app.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+
+/**
+ * Credits to a single merchant account from many customer accounts, with the merchant kept in a single balance or
+ * split into sub-balances, see {@link HotAccounts}. Run it for several thread counts to see the credit throughput
+ * scale with the cores once the merchant is split, e.g.
+ * {@code ./gradlew jmh -Pinclude=HotAccountBenchmark -Pthreads=1,2,4,8}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HotAccountBenchmark {
+    private static final long INITIAL_BALANCE = Long.MAX_VALUE / 4;
+    private static final int CUSTOMERS = 1024;
+    private static final LongConsumer NO_VALIDATION = newBalance -> {
+    };
+
+    @Param({"stm", "striped"})
+    public String engine;
+
+    @Param({"0", "16"})
+    public int subBalances;
+
+    private Account merchant;
+    private Account[] customers;
+
+    @Setup
+    public void setUp() {
+        var balanceEngine = BalanceEngine.forName(engine, new HotAccounts(subBalances, List.of("MERCHANT"), 0));
+        merchant = new Account(0, "MERCHANT", balanceEngine);
+        customers = new Account[CUSTOMERS];
+        for (int i = 0; i < CUSTOMERS; i++) {
+            customers[i] = new Account(INITIAL_BALANCE, "IBAN" + i, balanceEngine);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Payer {
+        SplittableRandom random;
+
+        @Setup
+        public void setUp(ThreadParams threadParams) {
+            random = new SplittableRandom(42L + threadParams.getThreadIndex());
+        }
+    }
+
+    @Benchmark
+    public void credit(Payer payer) {
+        customers[payer.random.nextInt(CUSTOMERS)].transferTo(merchant, 1, NO_VALIDATION);
+    }
+}
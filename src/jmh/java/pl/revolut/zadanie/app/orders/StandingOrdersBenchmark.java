@@ -0,0 +1,102 @@
+package pl.revolut.zadanie.app.orders;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Scheduling and cancelling an order, and firing due orders, while a given number of orders is pending over the next
+ * 30 days. The setup prints the heap taken per pending order. Transfers complete at once, so firing measures the
+ * scheduler alone, e.g. {@code ./gradlew jmh -Pinclude=StandingOrdersBenchmark -Pthreads=1}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StandingOrdersBenchmark {
+    private static final int ACCOUNTS = 1024;
+    private static final int DUE_PER_TICK = 1_000;
+    private static final long TICK_MILLIS = 100;
+    private static final CompletableFuture<Void> COMMITTED = CompletableFuture.completedFuture(null);
+
+    @Param({"100000", "1000000"})
+    public int pendingOrders;
+
+    private final AtomicLong clock = new AtomicLong(TimeUnit.DAYS.toMillis(20_000));
+    private StandingOrders orders;
+    private String[] ibans;
+
+    @Setup
+    public void setUp() {
+        orders = new StandingOrders((from, to, amount) -> COMMITTED, TICK_MILLIS, Integer.MAX_VALUE, 1, DUE_PER_TICK, Runnable::run,
+                clock::get, false);
+        ibans = new String[ACCOUNTS];
+        for (int i = 0; i < ACCOUNTS; i++) {
+            ibans[i] = String.format("PL%026d", i);
+        }
+        var random = new SplittableRandom(42);
+        long usedBefore = usedHeap();
+        for (int i = 0; i < pendingOrders; i++) {
+            orders.create(ibans[random.nextInt(ACCOUNTS)], ibans[random.nextInt(ACCOUNTS)], 1 + random.nextInt(1_000),
+                    clock.get() + TimeUnit.DAYS.toMillis(1) + random.nextLong(TimeUnit.DAYS.toMillis(29)), TimeUnit.DAYS.toMillis(30));
+        }
+        System.out.printf("%n%d pending orders take %d bytes of heap each%n", pendingOrders, (usedHeap() - usedBefore) / pendingOrders);
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+        SplittableRandom random;
+
+        @Setup
+        public void setUp(ThreadParams threadParams) {
+            random = new SplittableRandom(42L + threadParams.getThreadIndex());
+        }
+    }
+
+    @Benchmark
+    public boolean scheduleAndCancel(Client client) {
+        var order = orders.create(ibans[client.random.nextInt(ACCOUNTS)], ibans[client.random.nextInt(ACCOUNTS)], 10,
+                clock.get() + client.random.nextLong(TimeUnit.DAYS.toMillis(30)), 0);
+        return orders.cancel(order.id());
+    }
+
+    /**
+     * Schedules orders due with the next tick and fires them, per order.
+     */
+    @Benchmark
+    @OperationsPerInvocation(DUE_PER_TICK)
+    public long fire(Client client) {
+        long dueAt = clock.get() + TICK_MILLIS;
+        for (int i = 0; i < DUE_PER_TICK; i++) {
+            orders.create(ibans[client.random.nextInt(ACCOUNTS)], ibans[client.random.nextInt(ACCOUNTS)], 10, dueAt, 0);
+        }
+        clock.set(dueAt);
+        orders.tick();
+        return orders.executed();
+    }
+
+    private static long usedHeap() {
+        var runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,125 @@
+package pl.revolut.zadanie.app.replication;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+import pl.revolut.zadanie.app.events.ChangeLog;
+import pl.revolut.zadanie.app.model.Account;
+import pl.revolut.zadanie.app.model.AccountListener;
+import pl.revolut.zadanie.app.model.StripedLockBalanceEngine;
+import pl.revolut.zadanie.app.store.AccountInMemoryStore;
+import pl.revolut.zadanie.app.store.AccountStore;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+
+/**
+ * Transfers between random accounts of the primary, published to the change log either way, with or without a replica
+ * following them over a localhost connection, and balance reads competing with a transferring thread, served by the
+ * replica when there is one, else by the primary itself. The teardown prints how far the replica got behind, e.g.
+ * {@code ./gradlew jmh -Pinclude=ReplicationBenchmark -Pthreads=1,8}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReplicationBenchmark {
+    private static final int ACCOUNTS = 1 << 17;
+    private static final LongConsumer NO_VALIDATION = newBalance -> {
+    };
+
+    @Param({"false", "true"})
+    public boolean replicated;
+
+    private ChangeLog changeLog;
+    private ReplicationServer server;
+    private ReplicaClient replica;
+    private Account[] accounts;
+    private String[] ibans;
+    private AccountStore readStore;
+
+    @Setup
+    public void setUp() throws InterruptedException {
+        changeLog = new ChangeLog(65536);
+        var primaryStore = new AccountInMemoryStore(ACCOUNTS);
+        AccountListener listener = changeLog;
+        if (replicated) {
+            server = new ReplicationServer(changeLog, 0);
+            listener = AccountListener.compose(changeLog, server);
+        }
+        var engine = new StripedLockBalanceEngine(64);
+        accounts = new Account[ACCOUNTS];
+        ibans = new String[ACCOUNTS];
+        for (int i = 0; i < ACCOUNTS; i++) {
+            ibans[i] = "PL" + i;
+            accounts[i] = new Account(Long.MAX_VALUE / 4, ibans[i], engine, listener);
+            primaryStore.put(ibans[i], accounts[i]);
+        }
+        readStore = primaryStore;
+        if (replicated) {
+            server.start(primaryStore::values);
+            readStore = new AccountInMemoryStore(ACCOUNTS);
+            replica = new ReplicaClient("localhost", server.port(), readStore, new StripedLockBalanceEngine(64), AccountListener.NONE);
+            replica.start();
+            while (replica.snapshots() == 0) {
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (replica != null) {
+            System.out.printf("%nReplica %d changes behind, lag %d ms, %d snapshots%n",
+                    changeLog.nextSequence() - 1 - replica.appliedSequence(), replica.lagMillis(), replica.snapshots());
+            replica.close();
+            server.close();
+        }
+        changeLog.close();
+    }
+
+    @State(Scope.Thread)
+    public static class Payer {
+        SplittableRandom random;
+
+        @Setup
+        public void setUp(ThreadParams threadParams) {
+            random = new SplittableRandom(42L + threadParams.getThreadIndex());
+        }
+    }
+
+    @Benchmark
+    public void transfer(Payer payer) {
+        accounts[payer.random.nextInt(ACCOUNTS)].transferTo(accounts[payer.random.nextInt(ACCOUNTS)], 1 + payer.random.nextInt(1_000),
+                NO_VALIDATION);
+    }
+
+    @Benchmark
+    @Group("readWhileTransferring")
+    @GroupThreads(1)
+    public void writer(Payer payer) {
+        transfer(payer);
+    }
+
+    @Benchmark
+    @Group("readWhileTransferring")
+    @GroupThreads(3)
+    public long reader(Payer payer) {
+        return readStore.find(ibans[payer.random.nextInt(ACCOUNTS)]).getBalance();
+    }
+}
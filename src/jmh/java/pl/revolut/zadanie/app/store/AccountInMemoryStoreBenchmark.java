@@ -0,0 +1,99 @@
+package pl.revolut.zadanie.app.store;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+import pl.revolut.zadanie.app.model.Account;
+import pl.revolut.zadanie.bench.AccessPattern;
+import pl.revolut.zadanie.bench.AccessPattern.KeyGenerator;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccountInMemoryStoreBenchmark {
+    @Param({"1024", "131072"})
+    public int accounts;
+
+    @Param({"UNIFORM", "ZIPFIAN", "SINGLE"})
+    public AccessPattern pattern;
+
+    @Param({"map", "packed"})
+    public String storeName;
+
+    private AccountStore store;
+    private String[] ibans;
+
+    @Setup
+    public void setUp() {
+        store = AccountStore.forName(storeName, accounts);
+        ibans = new String[accounts];
+        for (int i = 0; i < accounts; i++) {
+            ibans[i] = String.format("PL%026d", i);
+            store.put(ibans[i], new Account(1_000, ibans[i]));
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Keys {
+        KeyGenerator generator;
+
+        @Setup
+        public void setUp(AccountInMemoryStoreBenchmark benchmark, ThreadParams threadParams) {
+            generator = benchmark.pattern.generator(benchmark.accounts, 42L + threadParams.getThreadIndex());
+        }
+    }
+
+    /**
+     * Copies the iban like a decoded path parameter would be, so hashing is not served from the cached String hash.
+     */
+    @Benchmark
+    public Optional<Account> get(Keys keys) {
+        return store.get(new String(ibans[keys.generator.next()]));
+    }
+
+    @Benchmark
+    public Account find(Keys keys) {
+        return store.find(new String(ibans[keys.generator.next()]));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public Set<Account> getAll() {
+        return store.getAll();
+    }
+
+    /**
+     * Walks the live view the way the streaming GET /accounts does, without copying the accounts.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public long values() {
+        long total = 0;
+        for (Account account : store.values()) {
+            total += account.getBalance();
+        }
+        return total;
+    }
+
+    @Benchmark
+    public List<Account> page(Keys keys) {
+        return store.page(ibans[keys.generator.next()], 100);
+    }
+}
@@ -0,0 +1,62 @@
+package pl.revolut.zadanie.app.store;
+
+import pl.revolut.zadanie.app.model.Account;
+import pl.revolut.zadanie.app.model.BalanceEngine;
+
+/**
+ * Measures the heap retained per account by every store and balance engine, as the difference of the used heap after
+ * full collections before and after filling a store. The accounts alone, without any store, are measured too, so the
+ * overhead of the index can be told apart from the one of the accounts.
+ * <p>
+ * Run with ./gradlew storeFootprint -Paccounts=1000000, ideally with a heap large enough to avoid measuring under
+ * memory pressure.
+ */
+public class AccountStoreFootprint {
+    private static final String[] STORES = {"none", "map", "packed"};
+    private static final String[] ENGINES = {"stm", "striped"};
+    private static volatile Object retained;
+
+    public static void main(String[] args) {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        System.out.printf("%-8s %-8s %14s%n", "store", "engine", "bytes/account");
+        for (String engine : ENGINES) {
+            for (String store : STORES) {
+                System.out.printf("%-8s %-8s %14.1f%n", store, engine, bytesPerAccount(store, engine, accounts));
+            }
+        }
+    }
+
+    private static double bytesPerAccount(String storeName, String engineName, int accounts) {
+        var ibans = new String[accounts];
+        for (int i = 0; i < accounts; i++) {
+            ibans[i] = String.format("PL%026d", i);
+        }
+        long before = usedHeap();
+        var engine = BalanceEngine.forName(engineName);
+        if (storeName.equals("none")) {
+            var all = new Account[accounts];
+            for (int i = 0; i < accounts; i++) {
+                all[i] = new Account(1_000, new String(ibans[i]), engine);
+            }
+            retained = all;
+        } else {
+            var store = AccountStore.forName(storeName, 128);
+            for (int i = 0; i < accounts; i++) {
+                var iban = new String(ibans[i]);
+                store.put(iban, new Account(1_000, iban, engine));
+            }
+            retained = store;
+        }
+        long after = usedHeap();
+        retained = null;
+        return (double) (after - before) / accounts;
+    }
+
+    private static long usedHeap() {
+        var runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
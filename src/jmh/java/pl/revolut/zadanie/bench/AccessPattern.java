@@ -0,0 +1,91 @@
+package pl.revolut.zadanie.bench;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntSupplier;
+
+/**
+ * Contention shapes used by the benchmarks to pick which accounts are touched.
+ */
+public enum AccessPattern {
+    /**
+     * Every account is equally likely.
+     */
+    UNIFORM {
+        @Override
+        public KeyGenerator generator(int keys, long seed) {
+            var random = new SplittableRandom(seed);
+            return new KeyGenerator(keys, random, () -> random.nextInt(keys));
+        }
+    },
+    /**
+     * A few hot accounts receive most of the traffic, skew of 0.99 as in YCSB.
+     */
+    ZIPFIAN {
+        @Override
+        public KeyGenerator generator(int keys, long seed) {
+            var random = new SplittableRandom(seed);
+            var cdf = ZIPFIAN_CDFS.computeIfAbsent(keys, AccessPattern::zipfianCdf);
+            return new KeyGenerator(keys, random, () -> {
+                int index = Arrays.binarySearch(cdf, random.nextDouble());
+                return index >= 0 ? index : Math.min(-index - 1, keys - 1);
+            });
+        }
+    },
+    /**
+     * Every thread hits the very same account.
+     */
+    SINGLE {
+        @Override
+        public KeyGenerator generator(int keys, long seed) {
+            return new KeyGenerator(keys, new SplittableRandom(seed), () -> 0);
+        }
+    };
+
+    private static final double ZIPFIAN_SKEW = 0.99;
+    private static final Map<Integer, double[]> ZIPFIAN_CDFS = new ConcurrentHashMap<>();
+
+    public abstract KeyGenerator generator(int keys, long seed);
+
+    private static double[] zipfianCdf(int keys) {
+        var cdf = new double[keys];
+        double sum = 0;
+        for (int i = 0; i < keys; i++) {
+            sum += 1 / Math.pow(i + 1, ZIPFIAN_SKEW);
+            cdf[i] = sum;
+        }
+        for (int i = 0; i < keys; i++) {
+            cdf[i] /= sum;
+        }
+        return cdf;
+    }
+
+    public static class KeyGenerator {
+        private final int keys;
+        private final SplittableRandom random;
+        private final IntSupplier next;
+
+        private KeyGenerator(int keys, SplittableRandom random, IntSupplier next) {
+            this.keys = keys;
+            this.random = random;
+            this.next = next;
+        }
+
+        public int next() {
+            return next.getAsInt();
+        }
+
+        /**
+         * Picks a key different from the given one, so a transfer never goes from an account to itself.
+         */
+        public int nextOtherThan(int key) {
+            int other = next();
+            if (other == key) {
+                other = (key + 1 + random.nextInt(keys - 1)) % keys;
+            }
+            return other;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package pl.revolut.zadanie.bench;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * Runs the selected benchmarks once per thread count and writes a JSON result file for each run.
+ * <p>
+ * Arguments: benchmark regex, comma separated thread counts, results directory, optional comma separated profilers.
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException {
+        var include = args.length > 0 ? args[0] : ".*";
+        var threadCounts = args.length > 1 && !args[1].trim().isEmpty() ? parseThreadCounts(args[1]) : defaultThreadCounts();
+        var resultsDirectory = new File(args.length > 2 ? args[2] : "build/reports/jmh");
+        var profilers = args.length > 3 && !args[3].trim().isEmpty() ? args[3].split(",") : new String[0];
+        resultsDirectory.mkdirs();
+        for (int threads : threadCounts) {
+            var options = new OptionsBuilder()
+                    .include(include)
+                    .threads(threads)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(new File(resultsDirectory, String.format("results-%dt.json", threads)).getPath());
+            for (String profiler : profilers) {
+                options.addProfiler(profiler);
+            }
+            new Runner(options.build()).run();
+        }
+    }
+
+    private static int[] parseThreadCounts(String threadCounts) {
+        return Arrays.stream(threadCounts.split(","))
+                .map(String::trim)
+                .mapToInt(Integer::parseInt)
+                .toArray();
+    }
+
+    private static int[] defaultThreadCounts() {
+        var cores = Runtime.getRuntime().availableProcessors();
+        return cores > 4 ? new int[]{1, 2, 4, cores} : new int[]{1, 2, 4};
+    }
+}
@@ -0,0 +1,101 @@
+package pl.revolut.zadanie.load;
+
+import pl.revolut.zadanie.app.metrics.LatencyHistogram;
+
+import java.io.PrintStream;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies and outcomes of the requests of a load test, per operation.
+ * <p>
+ * The latency of a request runs from the moment it was scheduled to be sent, not from the moment it was sent, so a
+ * server falling behind its arrival rate shows up as the queueing delay the clients would see instead of silently
+ * slowing the load down (coordinated omission). The service time, from sending to the response, is kept next to it.
+ */
+final class LoadReport {
+    private final Map<Operation, Results> results = new EnumMap<>(Operation.class);
+    private final AtomicReference<LatencyHistogram> interval = new AtomicReference<>(new LatencyHistogram());
+
+    LoadReport() {
+        for (Operation operation : Operation.values()) {
+            results.put(operation, new Results());
+        }
+    }
+
+    /**
+     * @param status HTTP status of the response, 0 if no response came back
+     */
+    void record(Operation operation, long scheduledNanos, long sentNanos, long receivedNanos, int status) {
+        var result = results.get(operation);
+        result.latency.record(receivedNanos - scheduledNanos);
+        result.serviceTime.record(receivedNanos - sentNanos);
+        interval.get().record(receivedNanos - scheduledNanos);
+        if (status == 0) {
+            result.failed.increment();
+        } else if (status < 400) {
+            result.succeeded.increment();
+        } else if (status < 500) {
+            result.rejected.increment();
+        } else {
+            result.failed.increment();
+        }
+    }
+
+    /**
+     * @return latencies since the previous call
+     */
+    LatencyHistogram.Snapshot nextInterval() {
+        return interval.getAndSet(new LatencyHistogram()).snapshot();
+    }
+
+    /**
+     * @return highest 99th percentile latency of any operation, in nanoseconds
+     */
+    long worstP99Nanos() {
+        long worst = 0;
+        for (Results result : results.values()) {
+            worst = Math.max(worst, result.latency.snapshot().percentileNanos(99));
+        }
+        return worst;
+    }
+
+    /**
+     * @return requests which got no response or a server error
+     */
+    long failures() {
+        return results.values().stream().mapToLong(result -> result.failed.sum()).sum();
+    }
+
+    void print(PrintStream out, long durationNanos) {
+        out.printf("%-9s %10s %10s %10s %8s %12s %10s %10s %10s %10s %14s%n", "operation", "ok", "4xx", "failed",
+                "ops/s", "p50 ms", "p99 ms", "p999 ms", "max ms", "mean ms", "service p99 ms");
+        for (Map.Entry<Operation, Results> entry : results.entrySet()) {
+            var result = entry.getValue();
+            var latency = result.latency.snapshot();
+            if (latency.count() == 0) {
+                continue;
+            }
+            out.printf("%-9s %10d %10d %10d %8.0f %12.3f %10.3f %10.3f %10.3f %10.3f %14.3f%n", entry.getKey(),
+                    result.succeeded.sum(), result.rejected.sum(), result.failed.sum(),
+                    latency.count() / (durationNanos / (double) TimeUnit.SECONDS.toNanos(1)),
+                    millis(latency.percentileNanos(50)), millis(latency.percentileNanos(99)), millis(latency.percentileNanos(99.9)),
+                    millis(latency.maxNanos()), millis(latency.meanNanos()), millis(result.serviceTime.snapshot().percentileNanos(99)));
+        }
+    }
+
+    static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private static final class Results {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LatencyHistogram serviceTime = new LatencyHistogram();
+        private final LongAdder succeeded = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+    }
+}
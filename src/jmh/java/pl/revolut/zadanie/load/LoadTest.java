@@ -0,0 +1,270 @@
+package pl.revolut.zadanie.load;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import pl.revolut.zadanie.Main;
+import pl.revolut.zadanie.app.App;
+import pl.revolut.zadanie.app.metrics.LatencyHistogram;
+import pl.revolut.zadanie.bench.AccessPattern;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open model load test of the JSON API over HTTP. Requests are sent at the configured arrival rate whether or not
+ * the previous ones have been answered, as independent clients would, and their latency is measured from the moment
+ * they were due, see {@link LoadReport}. Once the run is over the sum of all balances is checked against the sum
+ * before the run plus the balances of the accounts created during it.
+ * <p>
+ * Arguments are {@code name=value} pairs, run with e.g.
+ * {@code ./gradlew loadTest -Prate=5000 -Pduration=60 -Paccounts=100000 -Ppattern=ZIPFIAN -Pmix=create=5,get=30,getAll=1,transfer=64}:
+ * <ul>
+ * <li>url - of a running server, by default an app is started in this JVM with the {@code app.*} system properties</li>
+ * <li>rate - requests per second (1000)</li>
+ * <li>arrivals - poisson (default) or constant gaps between requests</li>
+ * <li>duration, warmup - seconds of the measured run (60) and of the unmeasured run before it (10)</li>
+ * <li>accounts, pattern - accounts created before the run (10000) and the {@link AccessPattern} picking them (UNIFORM)</li>
+ * <li>mix - weights of the operations (create=5,get=30,getAll=1,transfer=64)</li>
+ * <li>maxInFlight - requests waiting for a response at once (10000), further requests are sent late</li>
+ * <li>reportInterval - seconds between progress lines (10)</li>
+ * <li>maxP99Millis - fails the run if the 99th percentile latency of any operation is higher, off by default</li>
+ * </ul>
+ * Exits with 1 if money was created or lost, a request failed with a server error or no response, or the latency
+ * budget was exceeded.
+ */
+public class LoadTest {
+    private static final long INITIAL_BALANCE = 1_000_000_000L;
+    private static final int MAX_TRANSFER = 100;
+    private static final int PAGE_SIZE = 100;
+    private static final int SETUP_IN_FLIGHT = 256;
+    private static final long SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private final String url;
+    private final double rate;
+    private final boolean poisson;
+    private final long durationNanos;
+    private final long warmupNanos;
+    private final int accounts;
+    private final AccessPattern pattern;
+    private final Operation.Mix mix;
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+    private final long reportIntervalSeconds;
+    private final long maxP99Nanos;
+    private final HttpClient httpClient;
+    private final String runId = Long.toString(System.currentTimeMillis(), Character.MAX_RADIX);
+    private final AtomicLong createdAccounts = new AtomicLong();
+    private final LongAdder createdBalance = new LongAdder();
+    private String[] ibans;
+
+    private LoadTest(Map<String, String> arguments, String url) {
+        this.url = url;
+        rate = Double.parseDouble(arguments.getOrDefault("rate", "1000"));
+        poisson = !"constant".equals(arguments.getOrDefault("arrivals", "poisson"));
+        durationNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(arguments.getOrDefault("duration", "60")));
+        warmupNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(arguments.getOrDefault("warmup", "10")));
+        accounts = Integer.parseInt(arguments.getOrDefault("accounts", "10000"));
+        pattern = AccessPattern.valueOf(arguments.getOrDefault("pattern", "UNIFORM"));
+        mix = Operation.Mix.parse(arguments.getOrDefault("mix", "create=5,get=30,getAll=1,transfer=64"));
+        maxInFlight = Integer.parseInt(arguments.getOrDefault("maxInFlight", "10000"));
+        inFlight = new Semaphore(maxInFlight);
+        reportIntervalSeconds = Long.parseLong(arguments.getOrDefault("reportInterval", "10"));
+        maxP99Nanos = (long) (Double.parseDouble(arguments.getOrDefault("maxP99Millis", "0")) * 1e6);
+        httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(Executors.newCachedThreadPool(runnable -> {
+                    var thread = new Thread(runnable, "load-test-client");
+                    thread.setDaemon(true);
+                    return thread;
+                }))
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        var arguments = new HashMap<String, String>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator > 0 && separator < arg.length() - 1) {
+                arguments.put(arg.substring(0, separator), arg.substring(separator + 1));
+            }
+        }
+        App app = null;
+        var url = arguments.get("url");
+        if (url == null) {
+            app = Main.manualDependencyInjectionApp();
+            app.start();
+            url = "http://localhost:" + Integer.getInteger("app.port", 8080);
+        }
+        boolean passed;
+        try {
+            passed = new LoadTest(arguments, url).run();
+        } finally {
+            if (app != null) {
+                app.close();
+            }
+        }
+        System.exit(passed ? 0 : 1);
+    }
+
+    private boolean run() throws IOException, InterruptedException {
+        System.out.printf("Creating %d accounts at %s%n", accounts, url);
+        createAccounts();
+        long totalBefore = totalBalance();
+        System.out.printf("Running %.0f requests/s for %ds after a %ds warmup%n", rate,
+                TimeUnit.NANOSECONDS.toSeconds(durationNanos), TimeUnit.NANOSECONDS.toSeconds(warmupNanos));
+        var warmup = new LoadReport();
+        drive(warmup, warmupNanos);
+        var report = new LoadReport();
+        drive(report, durationNanos);
+        inFlight.acquire(maxInFlight);
+        inFlight.release(maxInFlight);
+
+        report.print(System.out, durationNanos);
+        long expected = totalBefore + createdBalance.sum();
+        long totalAfter = totalBalance();
+        boolean conserved = totalAfter == expected;
+        System.out.printf("Money %s: %d before, %d created, %d after%n", conserved ? "conserved" : "NOT conserved",
+                totalBefore, createdBalance.sum(), totalAfter);
+        long failures = report.failures() + warmup.failures();
+        if (failures > 0) {
+            System.out.printf("%d requests failed with a server error or got no response%n", failures);
+        }
+        boolean withinBudget = maxP99Nanos <= 0 || report.worstP99Nanos() <= maxP99Nanos;
+        if (!withinBudget) {
+            System.out.printf("p99 latency of %.3f ms above the budget of %.3f ms%n",
+                    LoadReport.millis(report.worstP99Nanos()), LoadReport.millis(maxP99Nanos));
+        }
+        return conserved && failures == 0 && withinBudget;
+    }
+
+    /**
+     * Sends requests at their scheduled times from this thread, responses are recorded by the client threads.
+     */
+    private void drive(LoadReport report, long durationNanos) throws InterruptedException {
+        var random = new SplittableRandom(42);
+        var keys = pattern.generator(accounts, 7);
+        long start = System.nanoTime();
+        long end = start + durationNanos;
+        long nextReport = start + TimeUnit.SECONDS.toNanos(reportIntervalSeconds);
+        long lastReport = start;
+        long scheduled = start;
+        while (true) {
+            scheduled += poisson
+                    ? (long) (-Math.log(1 - random.nextDouble()) / rate * 1e9)
+                    : (long) (1e9 / rate);
+            if (scheduled >= end) {
+                break;
+            }
+            awaitNanoTime(scheduled);
+            long now = System.nanoTime();
+            if (now >= nextReport) {
+                printInterval(report.nextInterval(), now - start, now - lastReport);
+                lastReport = now;
+                nextReport += TimeUnit.SECONDS.toNanos(reportIntervalSeconds);
+            }
+            inFlight.acquire();
+            var operation = mix.next(random);
+            long scheduledNanos = scheduled;
+            long balance = 1 + random.nextInt(1_000);
+            var request = request(operation, keys, random, balance);
+            long sentNanos = System.nanoTime();
+            httpClient.sendAsync(request, BodyHandlers.discarding()).whenComplete((response, error) -> {
+                int status = error == null ? response.statusCode() : 0;
+                report.record(operation, scheduledNanos, sentNanos, System.nanoTime(), status);
+                if (operation == Operation.CREATE && status > 0 && status < 300) {
+                    createdBalance.add(balance);
+                }
+                inFlight.release();
+            });
+        }
+        awaitNanoTime(end);
+    }
+
+    private HttpRequest request(Operation operation, AccessPattern.KeyGenerator keys, SplittableRandom random, long balance) {
+        switch (operation) {
+            case CREATE:
+                var iban = "LOAD-" + runId + "-" + createdAccounts.incrementAndGet();
+                return HttpRequest.newBuilder(URI.create(url + "/accounts"))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString("{\"iban\":\"" + iban + "\",\"balance\":\"" + balance + "\"}"))
+                        .build();
+            case GET:
+                return get("/accounts/" + ibans[keys.next()]);
+            case GET_ALL:
+                return get("/accounts?limit=" + PAGE_SIZE + "&after=" + ibans[keys.next()]);
+            case TRANSFER:
+                int from = keys.next();
+                int to = keys.nextOtherThan(from);
+                return get("/accounts/transfer/" + (1 + random.nextInt(MAX_TRANSFER)) + "/from/" + ibans[from] + "/to/" + ibans[to]);
+            default:
+                throw new IllegalStateException("Unsupported operation " + operation);
+        }
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(URI.create(url + path)).GET().build();
+    }
+
+    private void createAccounts() throws InterruptedException {
+        ibans = new String[accounts];
+        var setup = new Semaphore(SETUP_IN_FLIGHT);
+        for (int i = 0; i < accounts; i++) {
+            ibans[i] = String.format("LOAD%024d", i);
+            setup.acquire();
+            var request = HttpRequest.newBuilder(URI.create(url + "/accounts"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"iban\":\"" + ibans[i] + "\",\"balance\":\"" + INITIAL_BALANCE + "\"}"))
+                    .build();
+            httpClient.sendAsync(request, BodyHandlers.discarding()).whenComplete((response, error) -> setup.release());
+        }
+        setup.acquire(SETUP_IN_FLIGHT);
+    }
+
+    /**
+     * Streams every account, accounts of earlier runs against the same server included.
+     */
+    private long totalBalance() throws IOException, InterruptedException {
+        var response = httpClient.send(get("/accounts?format=ndjson"), HttpResponse.BodyHandlers.ofLines());
+        return response.body()
+                .filter(line -> !line.isBlank())
+                .mapToLong(line -> {
+                    try {
+                        return JSON.readTree(line).get("balance").asLong();
+                    } catch (IOException e) {
+                        throw new IllegalStateException("Could not parse account " + line, e);
+                    }
+                })
+                .sum();
+    }
+
+    private static void printInterval(LatencyHistogram.Snapshot interval, long elapsedNanos, long intervalNanos) {
+        System.out.printf("%6ds %10.0f ops/s  p50 %8.3f ms  p99 %8.3f ms  p999 %8.3f ms  max %8.3f ms%n",
+                TimeUnit.NANOSECONDS.toSeconds(elapsedNanos), interval.count() / (intervalNanos / 1e9),
+                LoadReport.millis(interval.percentileNanos(50)), LoadReport.millis(interval.percentileNanos(99)),
+                LoadReport.millis(interval.percentileNanos(99.9)), LoadReport.millis(interval.maxNanos()));
+    }
+
+    private static void awaitNanoTime(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            if (remaining > SPIN_NANOS) {
+                LockSupport.parkNanos(remaining - SPIN_NANOS);
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+    }
+}
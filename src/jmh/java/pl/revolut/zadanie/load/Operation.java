@@ -0,0 +1,73 @@
+package pl.revolut.zadanie.load;
+
+import java.util.SplittableRandom;
+
+/**
+ * Requests the load test sends, picked at random with the weights of a mix like
+ * {@code create=5,get=30,getAll=1,transfer=64}.
+ */
+enum Operation {
+    CREATE("create"),
+    GET("get"),
+    GET_ALL("getAll"),
+    TRANSFER("transfer");
+
+    private final String name;
+
+    Operation(String name) {
+        this.name = name;
+    }
+
+    static Operation fromName(String name) {
+        for (Operation operation : values()) {
+            if (operation.name.equals(name)) {
+                return operation;
+            }
+        }
+        throw new IllegalArgumentException(String.format("Unknown operation %s, expected one of create, get, getAll, transfer", name));
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    static final class Mix {
+        private final Operation[] operations;
+        private final int[] cumulativeWeights;
+
+        private Mix(Operation[] operations, int[] cumulativeWeights) {
+            this.operations = operations;
+            this.cumulativeWeights = cumulativeWeights;
+        }
+
+        static Mix parse(String mix) {
+            var entries = mix.split(",");
+            var operations = new Operation[entries.length];
+            var cumulativeWeights = new int[entries.length];
+            int total = 0;
+            for (int i = 0; i < entries.length; i++) {
+                var entry = entries[i].trim().split("=");
+                if (entry.length != 2) {
+                    throw new IllegalArgumentException(String.format("Could not parse %s, expected operation=weight", entries[i]));
+                }
+                operations[i] = fromName(entry[0].trim());
+                total += Integer.parseInt(entry[1].trim());
+                cumulativeWeights[i] = total;
+            }
+            if (total <= 0) {
+                throw new IllegalArgumentException("The weights of the mix have to add up to more than 0");
+            }
+            return new Mix(operations, cumulativeWeights);
+        }
+
+        Operation next(SplittableRandom random) {
+            int pick = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+            int i = 0;
+            while (pick >= cumulativeWeights[i]) {
+                i++;
+            }
+            return operations[i];
+        }
+    }
+}
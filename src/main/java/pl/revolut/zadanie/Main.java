@@ -1,14 +1,78 @@
 package pl.revolut.zadanie;
 
-import io.javalin.BadRequestResponse;
 import pl.revolut.zadanie.app.AccountController;
-import pl.revolut.zadanie.app.store.AccountInMemoryStore;
+import pl.revolut.zadanie.app.AggregatesController;
+import pl.revolut.zadanie.app.BackPressure;
+import pl.revolut.zadanie.app.BulkController;
+import pl.revolut.zadanie.app.ChangeStreamController;
+import pl.revolut.zadanie.app.ClusterController;
+import pl.revolut.zadanie.app.FxController;
+import pl.revolut.zadanie.app.InsufficientFundsResponse;
+import pl.revolut.zadanie.app.LedgerController;
+import pl.revolut.zadanie.app.MetricsController;
+import pl.revolut.zadanie.app.PooledRequestExecutor;
+import pl.revolut.zadanie.app.ReplicationController;
+import pl.revolut.zadanie.app.RequestExecutor;
+import pl.revolut.zadanie.app.StandingOrderController;
+import pl.revolut.zadanie.app.SynchronousRequestExecutor;
+import pl.revolut.zadanie.app.admission.AdmissionControl;
+import pl.revolut.zadanie.app.admission.ConcurrencyLimiter;
+import pl.revolut.zadanie.app.admission.RateLimiter;
+import pl.revolut.zadanie.app.aggregates.AccountAggregates;
+import pl.revolut.zadanie.app.binary.BinaryServer;
+import pl.revolut.zadanie.app.bulk.AccountFile;
+import pl.revolut.zadanie.app.bulk.AccountFileFormat;
+import pl.revolut.zadanie.app.bulk.AccountImporter;
+import pl.revolut.zadanie.app.bulk.ParsedAccounts;
+import pl.revolut.zadanie.app.cluster.Cluster;
+import pl.revolut.zadanie.app.cluster.Partitions;
+import pl.revolut.zadanie.app.dto.TransferResultDto;
+import pl.revolut.zadanie.app.events.ChangeLog;
+import pl.revolut.zadanie.app.executor.DirectTransferExecutor;
+import pl.revolut.zadanie.app.executor.ShardedTransferExecutor;
+import pl.revolut.zadanie.app.executor.TransferCompletion;
+import pl.revolut.zadanie.app.executor.TransferExecutor;
+import pl.revolut.zadanie.app.fx.FxRateTable;
+import pl.revolut.zadanie.app.idempotency.IdempotencyCache;
+import pl.revolut.zadanie.app.journal.Durability;
+import pl.revolut.zadanie.app.journal.Journal;
+import pl.revolut.zadanie.app.ledger.Ledger;
+import pl.revolut.zadanie.app.limits.MaxTransferRule;
+import pl.revolut.zadanie.app.limits.TransferRule;
+import pl.revolut.zadanie.app.limits.TransferRules;
+import pl.revolut.zadanie.app.limits.VelocityLimits;
+import pl.revolut.zadanie.app.metrics.Metrics;
+import pl.revolut.zadanie.app.model.Account;
+import pl.revolut.zadanie.app.model.AccountListener;
+import pl.revolut.zadanie.app.model.BalanceEngine;
+import pl.revolut.zadanie.app.model.DebitCheck;
+import pl.revolut.zadanie.app.model.HotAccounts;
+import pl.revolut.zadanie.app.orders.StandingOrders;
+import pl.revolut.zadanie.app.replication.ReplicaClient;
+import pl.revolut.zadanie.app.replication.ReplicationServer;
+import pl.revolut.zadanie.app.store.AccountStore;
 import pl.revolut.zadanie.app.App;
 import pl.revolut.zadanie.app.Container;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.function.LongConsumer;
+import java.util.function.Supplier;
 
 public class Main {
+    private static final Logger LOG = LoggerFactory.getLogger(Main.class);
 
     public static void main(String[] args) {
         var app = manualDependencyInjectionApp();
@@ -16,17 +80,326 @@ public class Main {
     }
 
     public static App manualDependencyInjectionApp() {
-        var serverPort = 8080;
-        var storeInitialCapacity = 128;
+        return manualDependencyInjectionApp(System.getProperties());
+    }
+
+    /**
+     * @param settings the {@code app.*} settings, several apps can be started in one JVM with different settings, e.g.
+     *                 the nodes of a cluster
+     */
+    public static App manualDependencyInjectionApp(Properties settings) {
+        var serverPort = intSetting(settings, "app.port", 8080);
+        var importedAccounts = importedAccounts(settings);
+        var storeInitialCapacity = Math.max(128, importedAccounts == null ? 0 : importedAccounts.count());
+        var hotAccountIbans = settings.getProperty("app.hotAccounts.ibans", "").trim();
+        var hotAccounts = new HotAccounts(intSetting(settings, "app.hotAccounts.subBalances", 0),
+                hotAccountIbans.isEmpty() ? List.of() : List.of(hotAccountIbans.split("\\s*,\\s*")),
+                intSetting(settings, "app.hotAccounts.contentionsPerSecond", 1000));
+        var balanceEngine = BalanceEngine.forName(settings.getProperty("app.balanceEngine", "stm"), hotAccounts);
+        var journalDirectory = settings.getProperty("app.journal.directory");
+        var metrics = new Metrics();
+        Supplier<InsufficientFundsResponse> insufficientFunds = () -> {
+            metrics.recordInsufficientFunds();
+            return new InsufficientFundsResponse();
+        };
+        var velocityLimits = velocityLimits(settings);
+        var transferRules = new ArrayList<TransferRule>();
+        var maxTransfer = longSetting(settings, "app.limits.maxTransfer", 0);
+        if (maxTransfer > 0) {
+            transferRules.add(new MaxTransferRule(maxTransfer));
+        }
+        if (velocityLimits != null) {
+            transferRules.add(velocityLimits);
+        }
         LongConsumer newBalanceValidator = newBalance -> {
-            if (newBalance < 0) {
-                throw new BadRequestResponse("Not enough founds to transfer from the source account");
-            }
         };
-        var container = new Container();
-        var accountStore = new AccountInMemoryStore(storeInitialCapacity);
-        var accountController = new AccountController(accountStore, newBalanceValidator);
-        return new App(container, accountController, serverPort);
+        if (!transferRules.isEmpty()) {
+            newBalanceValidator = new TransferRules(transferRules);
+        }
+        var debitCheck = new DebitCheck(newBalance -> newBalance >= 0, insufficientFunds, newBalanceValidator);
+        var requestExecutor = requestExecutor(settings, settings.getProperty("app.requestMode", "sync"));
+        var resources = new ArrayList<AutoCloseable>();
+        var admissionControl = admissionControl(settings);
+        var container = new Container(metrics, admissionControl);
+        var ledger = ledger(settings, settings.getProperty("app.ledger", "off"));
+        if (ledger != null) {
+            resources.add(ledger);
+        }
+        var changeLogCapacity = intSetting(settings, "app.events.capacity", 0);
+        var changeLog = changeLogCapacity == 0 ? null : new ChangeLog(changeLogCapacity);
+        if (changeLog != null) {
+            resources.add(changeLog);
+        }
+        var replicationPort = settings.getProperty("app.replication.port");
+        var replicationServer = replicationPort == null ? null
+                : new ReplicationServer(requireChangeLog(changeLog), Integer.parseInt(replicationPort),
+                longSetting(settings, "app.replication.snapshotIntervalMs", 1000));
+        var aggregates = Boolean.parseBoolean(settings.getProperty("app.aggregates", "false")) ? new AccountAggregates() : null;
+        var listeners = new ArrayList<AccountListener>();
+        if (ledger != null) {
+            listeners.add(ledger);
+        }
+        if (changeLog != null) {
+            listeners.add(changeLog);
+        }
+        if (aggregates != null) {
+            listeners.add(aggregates);
+        }
+        if (velocityLimits != null) {
+            listeners.add(velocityLimits);
+        }
+        if (replicationServer != null) {
+            listeners.add(replicationServer);
+        }
+        AccountListener accountListener = AccountListener.compose(listeners.toArray(new AccountListener[0]));
+        var storeName = settings.getProperty("app.store", "map");
+        AccountStore accountStore;
+        var transferCompletion = TransferCompletion.IMMEDIATE;
+        if (journalDirectory != null) {
+            var journal = Journal.open(Paths.get(journalDirectory),
+                    Durability.fromName(settings.getProperty("app.journal.durability", "batch")),
+                    longSetting(settings, "app.journal.fsyncIntervalMs", 10));
+            var journaledListener = AccountListener.compose(journal, accountListener);
+            accountStore = AccountStore.forName(storeName, Math.max(storeInitialCapacity, journal.recovered().size()));
+            journal.recovered().forEach((iban, balance) -> {
+                var account = new Account(balance, iban, journal.recoveredCurrency(iban), balanceEngine, journaledListener);
+                accountStore.put(iban, account);
+                if (aggregates != null) {
+                    aggregates.track(account);
+                }
+            });
+            journal.scheduleSnapshots(accountStore::values, longSetting(settings, "app.journal.snapshotIntervalSeconds", 300));
+            accountListener = journaledListener;
+            transferCompletion = journal;
+            resources.add(journal);
+        } else {
+            accountStore = AccountStore.forName(storeName, storeInitialCapacity);
+        }
+        var clusterNodes = settings.getProperty("app.cluster.nodes");
+        Cluster cluster = null;
+        if (clusterNodes != null) {
+            cluster = Cluster.open(settings.getProperty("app.cluster.self", "http://localhost:" + serverPort),
+                    List.of(clusterNodes.trim().split("\\s*,\\s*")), intSetting(settings, "app.cluster.virtualNodes", 128), accountStore,
+                    Paths.get(settings.getProperty("app.cluster.intentDirectory", "intents-" + serverPort)),
+                    intSetting(settings, "app.cluster.timeoutMs", 5000), longSetting(settings, "app.cluster.redeliveryIntervalMs", 1000));
+            resources.add(cluster);
+        }
+        Partitions partitions = cluster == null ? Partitions.SINGLE_NODE : cluster;
+        var importer = new AccountImporter(accountStore, balanceEngine, accountListener, iban -> partitions.remoteOwnerOf(iban) == null);
+        var primary = settings.getProperty("app.replication.primary");
+        if (importedAccounts != null && accountStore.values().isEmpty() && primary == null) {
+            LOG.info("Imported accounts {}", importer.importAccounts(importedAccounts));
+        }
+        if (replicationServer != null) {
+            replicationServer.start(accountStore::values);
+            resources.add(replicationServer);
+        }
+        ReplicaClient replicaClient = null;
+        if (primary != null) {
+            var hostAndPort = primary.trim().split(":");
+            replicaClient = new ReplicaClient(hostAndPort[0], Integer.parseInt(hostAndPort[1]), accountStore, balanceEngine, accountListener);
+            replicaClient.start();
+            resources.add(replicaClient);
+        }
+        var transferExecutor = transferExecutor(settings, settings.getProperty("app.transferMode", "direct"), transferCompletion);
+        // closed before the journal, so the credits it still has in flight are applied while they can be journaled
+        resources.add(transferExecutor);
+        resources.add(requestExecutor);
+        var idempotencyTtlSeconds = longSetting(settings, "app.idempotency.ttlSeconds", 3600);
+        var transferReplays = new IdempotencyCache<Void>(intSetting(settings, "app.idempotency.capacity", 65536),
+                idempotencyTtlSeconds, TimeUnit.SECONDS, AccountController::isReplayable);
+        var batchReplays = new IdempotencyCache<List<TransferResultDto>>(intSetting(settings, "app.idempotency.batchCapacity", 1024),
+                idempotencyTtlSeconds, TimeUnit.SECONDS, AccountController::isReplayable);
+        var fxRates = fxRates(settings);
+        var accountController = new AccountController(accountStore, balanceEngine, transferExecutor, accountListener, debitCheck,
+                transferReplays, batchReplays, partitions, fxRates);
+        var replicationController = replicationServer == null && replicaClient == null ? null
+                : new ReplicationController(replicationServer, replicaClient);
+        var binaryPort = settings.getProperty("app.binaryPort");
+        if (binaryPort != null) {
+            var binaryServer = new BinaryServer(accountController, replicationController, metrics, Integer.parseInt(binaryPort),
+                    intSetting(settings, "app.binaryWorkers", Runtime.getRuntime().availableProcessors()));
+            binaryServer.start();
+            resources.add(binaryServer);
+        }
+        var metricsController = new MetricsController(metrics, balanceEngine.transferCounters(), requestExecutor, transferReplays, batchReplays,
+                admissionControl);
+        var ledgerController = ledger == null ? null : new LedgerController(ledger);
+        var clusterController = cluster == null ? null : new ClusterController(cluster);
+        var bulkController = new BulkController(accountStore, importer, Paths.get(settings.getProperty("app.bulk.directory", "bulk")));
+        var changeStreamController = changeLog == null ? null
+                : new ChangeStreamController(changeLog, intSetting(settings, "app.events.maxStreams", 64));
+        var aggregatesController = aggregates == null ? null : new AggregatesController(aggregates);
+        StandingOrderController standingOrderController = null;
+        if (Boolean.parseBoolean(settings.getProperty("app.orders", "false"))) {
+            var standingOrders = new StandingOrders(writable(accountController::transferFoundsBetweenAccountsAsync, replicationController),
+                    longSetting(settings, "app.orders.tickMillis", 100), intSetting(settings, "app.orders.perSecond", 1000),
+                    intSetting(settings, "app.orders.parallelism", 4), intSetting(settings, "app.orders.batchSize", 64));
+            resources.add(standingOrders);
+            standingOrderController = new StandingOrderController(standingOrders);
+        }
+        return new App(container, accountController, metricsController, ledgerController, clusterController, bulkController,
+                changeStreamController, aggregatesController, new FxController(fxRates), standingOrderController, replicationController,
+                requestExecutor, serverPort, resources.toArray(new AutoCloseable[0]));
+    }
+
+    /**
+     * Refuses the transfers of due orders while this node is a replica, the primary transfers them.
+     */
+    private static StandingOrders.OrderTransfer writable(StandingOrders.OrderTransfer transfer, ReplicationController replicationController) {
+        return replicationController == null ? transfer : (from, to, amount) -> {
+            replicationController.requireWritable();
+            return transfer.transfer(from, to, amount);
+        };
+    }
+
+    /**
+     * @return rates read from the file, if one has been given, else no rates until they are replaced
+     */
+    private static FxRateTable fxRates(Properties settings) {
+        var ratesFile = settings.getProperty("app.fx.file");
+        if (ratesFile == null) {
+            return new FxRateTable();
+        }
+        try {
+            return FxRateTable.read(Paths.get(ratesFile));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read exchange rates from " + ratesFile, e);
+        }
+    }
+
+    /**
+     * @return accounts to import at startup, if the store is still empty then, null if no file has been given
+     */
+    private static ParsedAccounts importedAccounts(Properties settings) {
+        var importFile = settings.getProperty("app.import.file");
+        if (importFile == null) {
+            return null;
+        }
+        var file = Paths.get(importFile);
+        var format = settings.getProperty("app.import.format");
+        try {
+            return AccountFile.read(file, format == null ? AccountFileFormat.forFile(file) : AccountFileFormat.fromName(format));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read accounts to import from " + importFile, e);
+        }
+    }
+
+    private static ChangeLog requireChangeLog(ChangeLog changeLog) {
+        if (changeLog == null) {
+            throw new IllegalArgumentException("Replication streams the change log, set app.events.capacity above 0 to keep one");
+        }
+        return changeLog;
+    }
+
+    private static int intSetting(Properties settings, String name, int defaultValue) {
+        var value = settings.getProperty(name);
+        return value == null ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    private static long longSetting(Properties settings, String name, long defaultValue) {
+        var value = settings.getProperty(name);
+        return value == null ? defaultValue : Long.parseLong(value.trim());
+    }
+
+    /**
+     * @return null if neither the hourly nor the daily limit is set
+     */
+    private static VelocityLimits velocityLimits(Properties settings) {
+        var windows = new ArrayList<VelocityLimits.Window>();
+        var hourly = longSetting(settings, "app.limits.hourly", 0);
+        if (hourly > 0) {
+            windows.add(new VelocityLimits.Window("hourly", hourly, 1, TimeUnit.HOURS, intSetting(settings, "app.limits.hourlyBuckets", 6)));
+        }
+        var daily = longSetting(settings, "app.limits.daily", 0);
+        if (daily > 0) {
+            windows.add(new VelocityLimits.Window("daily", daily, 1, TimeUnit.DAYS, intSetting(settings, "app.limits.dailyBuckets", 24)));
+        }
+        return windows.isEmpty() ? null : new VelocityLimits(windows);
+    }
+
+    private static RequestExecutor requestExecutor(Properties settings, String requestMode) {
+        switch (requestMode) {
+            case "sync":
+                return new SynchronousRequestExecutor();
+            case "async":
+                var threads = intSetting(settings, "app.requestThreads", 2 * Runtime.getRuntime().availableProcessors());
+                var requestQueueCapacity = intSetting(settings, "app.requestQueueCapacity", 1024);
+                var backPressure = BackPressure.fromName(settings.getProperty("app.backPressure", "reject"));
+                return new PooledRequestExecutor(threads, requestQueueCapacity, backPressure);
+            default:
+                throw new IllegalArgumentException(String.format("Unknown request mode %s, expected one of sync, async", requestMode));
+        }
+    }
+
+    /**
+     * @return null if no limit is set
+     */
+    private static AdmissionControl admissionControl(Properties settings) {
+        var slots = intSetting(settings, "app.admission.slots", 65536);
+        var clientRate = intSetting(settings, "app.admission.clientRate", 0);
+        var accountRate = intSetting(settings, "app.admission.accountRate", 0);
+        var maxConcurrency = intSetting(settings, "app.admission.maxConcurrency", 0);
+        if (clientRate == 0 && accountRate == 0 && maxConcurrency == 0) {
+            return null;
+        }
+        return new AdmissionControl(
+                clientRate == 0 ? null : new RateLimiter(clientRate, intSetting(settings, "app.admission.clientBurst", clientRate), slots),
+                accountRate == 0 ? null : new RateLimiter(accountRate, intSetting(settings, "app.admission.accountBurst", accountRate), slots),
+                maxConcurrency == 0 ? null : new ConcurrencyLimiter(
+                        intSetting(settings, "app.admission.initialConcurrency", Math.min(maxConcurrency, 64)), maxConcurrency),
+                peerAddresses(settings));
+    }
+
+    /**
+     * @return addresses of the hosts of the cluster nodes, empty outside of a cluster
+     */
+    private static Set<String> peerAddresses(Properties settings) {
+        var clusterNodes = settings.getProperty("app.cluster.nodes");
+        if (clusterNodes == null) {
+            return Set.of();
+        }
+        var addresses = new HashSet<String>();
+        for (String node : clusterNodes.trim().split("\\s*,\\s*")) {
+            var host = URI.create(node).getHost();
+            try {
+                for (InetAddress address : InetAddress.getAllByName(host)) {
+                    addresses.add(address.getHostAddress());
+                }
+            } catch (UnknownHostException e) {
+                throw new IllegalArgumentException(String.format("Unknown host %s of the cluster node %s", host, node), e);
+            }
+        }
+        return addresses;
+    }
+
+    /**
+     * @return null if no history is kept, it grows with every transfer for as long as the application runs
+     */
+    private static Ledger ledger(Properties settings, String ledgerMode) {
+        switch (ledgerMode) {
+            case "off":
+                return null;
+            case "memory":
+                return Ledger.offHeap();
+            case "mapped":
+                return Ledger.mapped(Paths.get(settings.getProperty("app.ledger.directory", "ledger")));
+            default:
+                throw new IllegalArgumentException(String.format("Unknown ledger mode %s, expected one of off, memory, mapped", ledgerMode));
+        }
+    }
+
+    private static TransferExecutor transferExecutor(Properties settings, String transferMode, TransferCompletion transferCompletion) {
+        switch (transferMode) {
+            case "direct":
+                return new DirectTransferExecutor();
+            case "sharded":
+                var shards = intSetting(settings, "app.shards", Runtime.getRuntime().availableProcessors());
+                var shardQueueCapacity = intSetting(settings, "app.shardQueueCapacity", 4096);
+                return new ShardedTransferExecutor(shards, shardQueueCapacity, transferCompletion);
+            default:
+                throw new IllegalArgumentException(String.format("Unknown transfer mode %s, expected one of direct, sharded", transferMode));
+        }
     }
 
 }
@@ -1,58 +1,213 @@
 package pl.revolut.zadanie.app;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import io.javalin.BadRequestResponse;
 import io.javalin.Context;
+import io.javalin.HttpResponseException;
 import io.javalin.NotFoundResponse;
 import io.javalin.apibuilder.CrudHandler;
+import pl.revolut.zadanie.app.cluster.Partitions;
 import pl.revolut.zadanie.app.dto.AccountDto;
+import pl.revolut.zadanie.app.dto.TransferDto;
+import pl.revolut.zadanie.app.dto.TransferResultDto;
+import pl.revolut.zadanie.app.dto.TransferResultDto.TransferStatus;
+import pl.revolut.zadanie.app.executor.TransferExecutor;
+import pl.revolut.zadanie.app.fx.FxRateTable;
+import pl.revolut.zadanie.app.fx.FxRates;
+import pl.revolut.zadanie.app.fx.MissingRateException;
+import pl.revolut.zadanie.app.idempotency.IdempotencyCache;
+import pl.revolut.zadanie.app.idempotency.IdempotencyCacheFullException;
+import pl.revolut.zadanie.app.idempotency.IdempotencyKeyReusedException;
 import pl.revolut.zadanie.app.model.Account;
-import pl.revolut.zadanie.app.store.AccountInMemoryStore;
+import pl.revolut.zadanie.app.model.AccountListener;
+import pl.revolut.zadanie.app.model.BalanceEngine;
+import pl.revolut.zadanie.app.model.DebitCheck;
+import pl.revolut.zadanie.app.model.Transfer;
+import pl.revolut.zadanie.app.model.TransferBatchException;
+import pl.revolut.zadanie.app.store.AccountStore;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
-import java.util.Set;
-import java.util.function.LongConsumer;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
 
 public class AccountController implements CrudHandler {
-    private final AccountInMemoryStore store;
-    private final LongConsumer newBalanceValidator;
+    private static final ObjectReader TRANSFERS_READER = new ObjectMapper().readerFor(TransferDto.class);
+    private static final int BATCH_IN_FLIGHT_TRANSFERS = 256;
+    private static final int MAX_PAGE_SIZE = 10_000;
+    private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 255;
+    private static final int MAX_REPLAYED_BATCH_SIZE = 1_000;
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final int UNPROCESSABLE_ENTITY = 422;
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    private final AccountStore store;
+    private final BalanceEngine balanceEngine;
+    private final TransferExecutor transferExecutor;
+    private final AccountListener accountListener;
+    private final DebitCheck debitCheck;
+    private final IdempotencyCache<Void> transferReplays;
+    private final IdempotencyCache<List<TransferResultDto>> batchReplays;
+    private final Partitions partitions;
+    private final FxRateTable fxRates;
 
-    public AccountController(AccountInMemoryStore store, LongConsumer newBalanceValidator) {
+    public AccountController(AccountStore store, BalanceEngine balanceEngine, TransferExecutor transferExecutor,
+                             AccountListener accountListener, DebitCheck debitCheck,
+                             IdempotencyCache<Void> transferReplays, IdempotencyCache<List<TransferResultDto>> batchReplays) {
+        this(store, balanceEngine, transferExecutor, accountListener, debitCheck, transferReplays, batchReplays, Partitions.SINGLE_NODE);
+    }
+
+    /**
+     * @param partitions owners of the accounts this node does not own, transfers touching them are forwarded to or
+     *                   completed by their owners
+     */
+    public AccountController(AccountStore store, BalanceEngine balanceEngine, TransferExecutor transferExecutor,
+                             AccountListener accountListener, DebitCheck debitCheck,
+                             IdempotencyCache<Void> transferReplays, IdempotencyCache<List<TransferResultDto>> batchReplays,
+                             Partitions partitions) {
+        this(store, balanceEngine, transferExecutor, accountListener, debitCheck, transferReplays, batchReplays, partitions,
+                new FxRateTable());
+    }
+
+    /**
+     * @param fxRates rates converting the amounts of transfers between accounts of different currencies
+     */
+    public AccountController(AccountStore store, BalanceEngine balanceEngine, TransferExecutor transferExecutor,
+                             AccountListener accountListener, DebitCheck debitCheck,
+                             IdempotencyCache<Void> transferReplays, IdempotencyCache<List<TransferResultDto>> batchReplays,
+                             Partitions partitions, FxRateTable fxRates) {
         this.store = store;
-        this.newBalanceValidator = newBalanceValidator;
+        this.balanceEngine = balanceEngine;
+        this.transferExecutor = transferExecutor;
+        this.accountListener = accountListener;
+        this.debitCheck = debitCheck;
+        this.transferReplays = transferReplays;
+        this.batchReplays = batchReplays;
+        this.partitions = partitions;
+        this.fxRates = fxRates;
+    }
+
+    /**
+     * Outcomes worth replaying to a client retrying with the same idempotency key, i.e. the ones the retry would most
+     * likely end with too. Overload and server errors are not replayed so the retry runs again.
+     */
+    public static boolean isReplayable(Throwable failure) {
+        if (!(failure instanceof HttpResponseException)) {
+            return false;
+        }
+        var status = ((HttpResponseException) failure).getStatus();
+        return status < 500 && status != TOO_MANY_REQUESTS;
     }
 
     @Override
     public void create(Context context) {
-        var accountDto = context.bodyAsClass(AccountDto.class);
+        create(context.bodyAsClass(AccountDto.class));
+    }
+
+    public void create(AccountDto accountDto) {
         var iban = accountDto.iban();
-        if (!store.contains(iban)) {
-            Account account = new Account(accountDto.balance(), iban);
-            store.put(accountDto.iban(), account);
-        } else {
+        var currency = accountDto.currency() == null ? Account.DEFAULT_CURRENCY : currencyCode(accountDto.currency());
+        boolean created;
+        accountListener.beforeChange();
+        try {
+            created = store.putIfAbsent(iban, () -> {
+                Account account = new Account(accountDto.balance(), iban, currency, balanceEngine, accountListener);
+                accountListener.onCreated(account, accountDto.balance());
+                return account;
+            });
+        } finally {
+            accountListener.afterChange();
+        }
+        if (!created) {
             throw new BadRequestResponse(String.format("Account with iban %s already exists", iban));
         }
     }
 
     @Override
     public void delete(Context context, String iban) {
-        store.remove(iban);
+        accountListener.beforeChange();
+        try {
+            var removed = store.remove(iban);
+            if (removed != null) {
+                accountListener.onDeleted(removed);
+            }
+        } finally {
+            accountListener.afterChange();
+        }
     }
 
+    /**
+     * Streams all accounts, or a page of them ordered by iban when a limit is given. The next page starts after the iban
+     * from the {@value NEXT_CURSOR_HEADER} header, which is missing on the last page. A page can be read consistently,
+     * i.e. with all its balances taken at the same point in time.
+     */
     @Override
     public void getAll(Context context) {
-        Set<AccountDto> accounts = store.getAll()
-                .stream()
-                .map(account -> new AccountDto(account.getIban(), account.getBalance()))
-                .collect(Collectors.toSet());
-        context.json(accounts);
+        var ndjson = "ndjson".equals(context.queryParam("format")) || AccountsJsonWriter.NDJSON.equals(context.header("Accept"));
+        var consistent = Boolean.parseBoolean(context.queryParam("consistent"));
+        var limit = context.queryParam("limit");
+        if (limit == null) {
+            if (consistent) {
+                throw new BadRequestResponse("Consistent reads require a limit");
+            }
+            writeAccounts(context, ndjson, store.values(), null);
+            return;
+        }
+        var pageSize = parseLimit(limit);
+        var page = store.page(context.queryParam("after"), pageSize);
+        if (page.size() == pageSize) {
+            context.header(NEXT_CURSOR_HEADER, page.get(page.size() - 1).getIban());
+        }
+        writeAccounts(context, ndjson, page, consistent ? balanceEngine.balancesOf(page) : null);
+    }
+
+    private static int parseLimit(String limit) {
+        try {
+            var pageSize = Integer.parseInt(limit);
+            if (pageSize > 0 && pageSize <= MAX_PAGE_SIZE) {
+                return pageSize;
+            }
+        } catch (NumberFormatException ignored) {
+        }
+        throw new BadRequestResponse(String.format("Limit must be between 1 and %d", MAX_PAGE_SIZE));
+    }
+
+    private static void writeAccounts(Context context, boolean ndjson, Collection<Account> accounts, long[] balances) {
+        context.contentType(ndjson ? AccountsJsonWriter.NDJSON : "application/json");
+        try (var writer = new AccountsJsonWriter(context.res.getOutputStream(), ndjson)) {
+            int i = 0;
+            for (Account account : accounts) {
+                writer.write(account.getIban(), balances == null ? account.getBalance() : balances[i++], account.getCurrency());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     @Override
     public void getOne(Context context, String iban) {
-        var account = store.get(iban);
-        if (account.isPresent()) {
-            context.json(new AccountDto(iban, account.get().getBalance()));
+        var account = find(iban);
+        context.json(new AccountDto(iban, account.getBalance(), account.getCurrency()));
+    }
+
+    public long balanceOf(String iban) {
+        return find(iban).getBalance();
+    }
+
+    private Account find(String iban) {
+        var account = store.find(iban);
+        if (account != null) {
+            return account;
         } else {
             throw new NotFoundResponse(String.format("Could not find an account with iban %s", iban));
         }
@@ -63,6 +218,9 @@ public class AccountController implements CrudHandler {
         var accountDto = context.bodyAsClass(AccountDto.class);
         Optional<Account> account = store.get(iban);
         if (account.isPresent()) {
+            if (accountDto.currency() != null && !accountDto.currency().equals(account.get().getCurrency())) {
+                throw new BadRequestResponse(String.format("Currency of the account %s can't be changed", iban));
+            }
             account.get().setBalance(accountDto.balance());
         } else {
             throw new NotFoundResponse(String.format("Could not find an account with iban %s", iban));
@@ -70,16 +228,256 @@ public class AccountController implements CrudHandler {
     }
 
     public void transferFoundsBetweenAccounts(String ibanFrom, String ibanTo, long amount) {
+        await(transferFoundsBetweenAccountsAsync(ibanFrom, ibanTo, amount));
+    }
+
+    /**
+     * Applies the transfer once per idempotency key, a retry with the same key completes with the outcome of the first
+     * attempt without touching the accounts.
+     *
+     * @param idempotencyKey null if the client did not send one
+     */
+    public CompletableFuture<Void> transferFoundsBetweenAccountsAsync(String idempotencyKey, String ibanFrom, String ibanTo, long amount) {
+        if (idempotencyKey == null) {
+            return transferFoundsBetweenAccountsAsync(ibanFrom, ibanTo, amount);
+        }
+        return replayed(transferReplays, idempotencyKey, List.of(ibanFrom, ibanTo, amount),
+                () -> transferFoundsBetweenAccountsAsync(ibanFrom, ibanTo, amount));
+    }
+
+    /**
+     * Completes once the transfer has been applied by the {@link TransferExecutor}. A transfer from an account of
+     * another node is forwarded to that node, a transfer to an account of another node is completed by
+     * {@link Partitions#transferOut}.
+     */
+    public CompletableFuture<Void> transferFoundsBetweenAccountsAsync(String ibanFrom, String ibanTo, long amount) {
         if (amount < 0) {
             throw new BadRequestResponse("Cant transfer negative founds between accounts");
         }
-        var accountFrom = store.get(ibanFrom);
-        var accountTo = store.get(ibanTo);
-        if (accountFrom.isPresent() && accountTo.isPresent()) {
-            accountFrom.get().transferTo(accountTo.get(), amount, newBalanceValidator);
+        var ownerFrom = partitions.remoteOwnerOf(ibanFrom);
+        if (ownerFrom != null) {
+            return partitions.forwardTransfer(ownerFrom, ibanFrom, ibanTo, amount);
+        }
+        var accountFrom = store.find(ibanFrom);
+        var ownerTo = partitions.remoteOwnerOf(ibanTo);
+        if (accountFrom != null && ownerTo != null) {
+            requireDefaultCurrency(accountFrom);
+            return partitions.transferOut(accountFrom, ownerTo, ibanTo, amount, debitCheck.asValidator());
+        }
+        var accountTo = store.find(ibanTo);
+        if (accountFrom != null && accountTo != null) {
+            if (accountFrom.getCurrency() == accountTo.getCurrency()) {
+                return transferExecutor.transfer(accountFrom, accountTo, amount, debitCheck);
+            }
+            return transferExecutor.transfer(accountFrom, accountTo, amount, converted(fxRates.current(), accountFrom, accountTo, amount),
+                    debitCheck);
         } else {
             throw new NotFoundResponse("At least one account with the given iban does not exist ");
         }
     }
 
+    /**
+     * Accepts either a JSON array of transfers or a NDJSON stream (one transfer per line). A batch sent again with the
+     * same {@value IDEMPOTENCY_KEY_HEADER} header is answered with the results of the first one. Such a batch can have
+     * at most {@value MAX_REPLAYED_BATCH_SIZE} transfers, so the cached results of every batch take a bounded footprint.
+     */
+    public void transferFoundsInBatch(Context context) {
+        var mode = TransferBatchMode.fromParam(context.queryParam("mode", "per-item"));
+        var body = context.bodyAsBytes();
+        var idempotencyKey = context.header(IDEMPOTENCY_KEY_HEADER);
+        var transfers = readTransfers(body);
+        if (idempotencyKey != null && transfers.size() > MAX_REPLAYED_BATCH_SIZE) {
+            throw new BadRequestResponse(String.format("A batch sent with an idempotency key can have at most %d transfers",
+                    MAX_REPLAYED_BATCH_SIZE));
+        }
+        var results = idempotencyKey == null
+                ? transferFoundsInBatch(transfers, mode)
+                : await(replayed(batchReplays, idempotencyKey, mode + ":" + digest(body),
+                () -> CompletableFuture.completedFuture(transferFoundsInBatch(transfers, mode))));
+        if (mode == TransferBatchMode.ALL_OR_NOTHING && results.stream().anyMatch(it -> it.status() != TransferStatus.COMMITTED)) {
+            context.status(400);
+        }
+        context.json(results);
+    }
+
+    public List<TransferResultDto> transferFoundsInBatch(List<TransferDto> transfers, TransferBatchMode mode) {
+        switch (mode) {
+            case ALL_OR_NOTHING:
+                return transferAllOrNothing(transfers);
+            case PER_ITEM:
+                return transferPerItem(transfers);
+            default:
+                throw new IllegalStateException("Unsupported batch mode " + mode);
+        }
+    }
+
+    private List<TransferResultDto> transferPerItem(List<TransferDto> transfers) {
+        var pending = new ArrayList<CompletableFuture<Void>>(transfers.size());
+        for (int i = 0; i < transfers.size(); i++) {
+            if (i >= BATCH_IN_FLIGHT_TRANSFERS) {
+                pending.get(i - BATCH_IN_FLIGHT_TRANSFERS).exceptionally(e -> null).join();
+            }
+            var transfer = transfers.get(i);
+            try {
+                pending.add(transferFoundsBetweenAccountsAsync(transfer.from(), transfer.to(), transfer.amount()));
+            } catch (HttpResponseException e) {
+                pending.add(CompletableFuture.failedFuture(e));
+            }
+        }
+        var results = new ArrayList<TransferResultDto>(transfers.size());
+        for (int i = 0; i < transfers.size(); i++) {
+            var transfer = transfers.get(i);
+            try {
+                await(pending.get(i));
+                results.add(TransferResultDto.of(transfer, TransferStatus.COMMITTED, null));
+            } catch (HttpResponseException e) {
+                results.add(failed(transfer, e));
+            } catch (RejectedExecutionException e) {
+                results.add(TransferResultDto.of(transfer, TransferStatus.REJECTED, e.getMessage()));
+            }
+        }
+        return results;
+    }
+
+    private List<TransferResultDto> transferAllOrNothing(List<TransferDto> transfers) {
+        var resolved = new ArrayList<Transfer>(transfers.size());
+        var rates = fxRates.current();
+        for (int i = 0; i < transfers.size(); i++) {
+            try {
+                resolved.add(resolve(transfers.get(i), rates));
+            } catch (HttpResponseException e) {
+                return rolledBack(transfers, i, e);
+            }
+        }
+        accountListener.beforeChange();
+        try {
+            balanceEngine.transferAll(resolved, debitCheck.asValidator());
+            for (Transfer transfer : resolved) {
+                if (transfer.from().getCurrency() == transfer.to().getCurrency()) {
+                    accountListener.onTransferred(transfer.from(), transfer.to(), transfer.amount());
+                } else {
+                    accountListener.onExchanged(transfer.from(), transfer.to(), transfer.amount(), transfer.credited());
+                }
+            }
+        } catch (TransferBatchException e) {
+            if (e.getCause() instanceof HttpResponseException) {
+                return rolledBack(transfers, e.index(), (HttpResponseException) e.getCause());
+            }
+            throw e.getCause();
+        } finally {
+            accountListener.afterChange();
+        }
+        var results = new ArrayList<TransferResultDto>(transfers.size());
+        for (TransferDto transfer : transfers) {
+            results.add(TransferResultDto.of(transfer, TransferStatus.COMMITTED, null));
+        }
+        return results;
+    }
+
+    private Transfer resolve(TransferDto transfer, FxRates rates) {
+        if (transfer.amount() < 0) {
+            throw new BadRequestResponse("Cant transfer negative founds between accounts");
+        }
+        if (partitions.remoteOwnerOf(transfer.from()) != null || partitions.remoteOwnerOf(transfer.to()) != null) {
+            throw new BadRequestResponse("All-or-nothing batches can only transfer between accounts of the node they are sent to");
+        }
+        var accountFrom = store.find(transfer.from());
+        var accountTo = store.find(transfer.to());
+        if (accountFrom != null && accountTo != null) {
+            return new Transfer(accountFrom, accountTo, transfer.amount(), converted(rates, accountFrom, accountTo, transfer.amount()));
+        }
+        throw new NotFoundResponse("At least one account with the given iban does not exist ");
+    }
+
+    /**
+     * Converts the amount when the transfer is accepted, so it is credited at the rate current then even if the rates
+     * are replaced before it runs. All the transfers of an all-or-nothing batch are converted with the same rates.
+     */
+    private static long converted(FxRates rates, Account from, Account to, long amount) {
+        try {
+            return rates.convert(from.getCurrency(), to.getCurrency(), amount);
+        } catch (MissingRateException | ArithmeticException e) {
+            throw new BadRequestResponse(e.getMessage());
+        }
+    }
+
+    /**
+     * Credits sent to other nodes are not converted, so only accounts of the default currency, the only one the other
+     * nodes accept credits to, can send them.
+     */
+    private static void requireDefaultCurrency(Account account) {
+        if (!account.getCurrency().equals(Account.DEFAULT_CURRENCY)) {
+            throw new BadRequestResponse(String.format("Transfers between nodes are only supported between accounts in %s", Account.DEFAULT_CURRENCY));
+        }
+    }
+
+    private static String currencyCode(String currency) {
+        try {
+            return FxRates.currencyCode(currency);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestResponse(e.getMessage());
+        }
+    }
+
+    private List<TransferResultDto> rolledBack(List<TransferDto> transfers, int failedIndex, HttpResponseException cause) {
+        var results = new ArrayList<TransferResultDto>(transfers.size());
+        for (int i = 0; i < transfers.size(); i++) {
+            if (i == failedIndex) {
+                results.add(failed(transfers.get(i), cause));
+            } else {
+                results.add(TransferResultDto.of(transfers.get(i), TransferStatus.ROLLED_BACK, "Batch rolled back"));
+            }
+        }
+        return results;
+    }
+
+    private TransferResultDto failed(TransferDto transfer, HttpResponseException cause) {
+        var status = cause instanceof NotFoundResponse ? TransferStatus.NOT_FOUND : TransferStatus.REJECTED;
+        return TransferResultDto.of(transfer, status, cause.getMessage());
+    }
+
+    private static <V> CompletableFuture<V> replayed(IdempotencyCache<V> replays, String idempotencyKey, Object request,
+                                                     Supplier<CompletableFuture<V>> operation) {
+        if (idempotencyKey.isEmpty() || idempotencyKey.length() > MAX_IDEMPOTENCY_KEY_LENGTH) {
+            throw new BadRequestResponse(String.format("Idempotency key must have between 1 and %d characters", MAX_IDEMPOTENCY_KEY_LENGTH));
+        }
+        try {
+            return replays.execute(idempotencyKey, request, operation);
+        } catch (IdempotencyKeyReusedException e) {
+            throw new HttpResponseException(UNPROCESSABLE_ENTITY, e.getMessage());
+        } catch (IdempotencyCacheFullException e) {
+            throw new HttpResponseException(TOO_MANY_REQUESTS, e.getMessage());
+        }
+    }
+
+    /**
+     * @return SHA-256 digest of the body, identifying it as well as the body itself without keeping it
+     */
+    private static String digest(byte[] body) {
+        try {
+            return Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(body));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Every Java platform supports SHA-256", e);
+        }
+    }
+
+    private static <V> V await(CompletableFuture<V> result) {
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private List<TransferDto> readTransfers(byte[] body) {
+        try (var iterator = TRANSFERS_READER.<TransferDto>readValues(body)) {
+            return iterator.readAll();
+        } catch (IOException | RuntimeException e) {
+            throw new BadRequestResponse("Could not parse transfers: " + e.getMessage());
+        }
+    }
+
 }
@@ -0,0 +1,49 @@
+package pl.revolut.zadanie.app;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes accounts one by one straight to the response, as a json array or as newline delimited json, so memory use
+ * does not depend on the number of accounts.
+ */
+final class AccountsJsonWriter implements Closeable {
+    static final String NDJSON = "application/x-ndjson";
+    private static final JsonFactory JSON = new JsonFactory();
+    private final JsonGenerator generator;
+    private final boolean ndjson;
+
+    AccountsJsonWriter(OutputStream out, boolean ndjson) throws IOException {
+        this.generator = JSON.createGenerator(out, JsonEncoding.UTF8);
+        this.ndjson = ndjson;
+        if (ndjson) {
+            generator.setRootValueSeparator(null);
+        } else {
+            generator.writeStartArray();
+        }
+    }
+
+    void write(String iban, long balance, String currency) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("balance", balance);
+        generator.writeStringField("iban", iban);
+        generator.writeStringField("currency", currency);
+        generator.writeEndObject();
+        if (ndjson) {
+            generator.writeRaw('\n');
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!ndjson) {
+            generator.writeEndArray();
+        }
+        generator.close();
+    }
+}
@@ -0,0 +1,41 @@
+package pl.revolut.zadanie.app;
+
+import io.javalin.BadRequestResponse;
+import io.javalin.Context;
+import pl.revolut.zadanie.app.aggregates.AccountAggregates;
+import pl.revolut.zadanie.app.dto.MoneySupplyDto;
+
+public class AggregatesController {
+    private static final int DEFAULT_LIMIT = 10;
+    private static final int MAX_LIMIT = 1_000;
+    private final AccountAggregates aggregates;
+
+    public AggregatesController(AccountAggregates aggregates) {
+        this.aggregates = aggregates;
+    }
+
+    public void getTotal(Context context) {
+        context.json(new MoneySupplyDto(aggregates.totals(), aggregates.accounts()));
+    }
+
+    /**
+     * Accounts with the largest balances, largest first, as many as the limit query parameter asks for.
+     */
+    public void getLargest(Context context) {
+        var limit = context.queryParam("limit");
+        int largest;
+        try {
+            largest = limit == null ? DEFAULT_LIMIT : Integer.parseInt(limit);
+        } catch (NumberFormatException e) {
+            largest = 0;
+        }
+        if (largest <= 0 || largest > MAX_LIMIT) {
+            throw new BadRequestResponse(String.format("Limit must be between 1 and %d", MAX_LIMIT));
+        }
+        context.json(aggregates.largest(largest));
+    }
+
+    public void getHistogram(Context context) {
+        context.json(aggregates.histogram());
+    }
+}
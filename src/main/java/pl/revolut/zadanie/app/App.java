@@ -1,26 +1,132 @@
 package pl.revolut.zadanie.app;
 
+import io.javalin.apibuilder.CrudHandler;
+
+import static io.javalin.apibuilder.ApiBuilder.before;
 import static io.javalin.apibuilder.ApiBuilder.crud;
+import static io.javalin.apibuilder.ApiBuilder.delete;
 import static io.javalin.apibuilder.ApiBuilder.get;
+import static io.javalin.apibuilder.ApiBuilder.post;
+import static io.javalin.apibuilder.ApiBuilder.put;
 
 
 public class App implements AutoCloseable {
     private final Container container;
     private final AccountController accountController;
+    private final MetricsController metricsController;
+    private final LedgerController ledgerController;
+    private final ClusterController clusterController;
+    private final BulkController bulkController;
+    private final ChangeStreamController changeStreamController;
+    private final AggregatesController aggregatesController;
+    private final FxController fxController;
+    private final StandingOrderController standingOrderController;
+    private final ReplicationController replicationController;
+    private final RequestExecutor requestExecutor;
+    private final AutoCloseable[] resources;
     private int serverPort;
 
-    public App(Container container, AccountController accountController, int serverPort) {
+    /**
+     * @param resources closed in reverse order once the container has been stopped
+     */
+    public App(Container container, AccountController accountController, MetricsController metricsController,
+               LedgerController ledgerController, RequestExecutor requestExecutor, int serverPort, AutoCloseable... resources) {
+        this(container, accountController, metricsController, ledgerController, null, requestExecutor, serverPort, resources);
+    }
+
+    /**
+     * @param clusterController null if this node owns every account
+     * @param resources         closed in reverse order once the container has been stopped
+     */
+    public App(Container container, AccountController accountController, MetricsController metricsController,
+               LedgerController ledgerController, ClusterController clusterController, RequestExecutor requestExecutor,
+               int serverPort, AutoCloseable... resources) {
+        this(container, accountController, metricsController, ledgerController, clusterController, null, null, null, null, null, null,
+                requestExecutor, serverPort, resources);
+    }
+
+    /**
+     * @param ledgerController       null to keep no history
+     * @param clusterController null if this node owns every account
+     * @param bulkController         null to serve no bulk imports and exports
+     * @param changeStreamController null to stream no changes
+     * @param aggregatesController   null to serve no aggregates
+     * @param fxController           null to serve no exchange rates
+     * @param standingOrderController null to schedule no orders
+     * @param replicationController  null if this node neither is nor has a replica
+     * @param resources              closed in reverse order once the container has been stopped
+     */
+    public App(Container container, AccountController accountController, MetricsController metricsController,
+               LedgerController ledgerController, ClusterController clusterController, BulkController bulkController,
+               ChangeStreamController changeStreamController, AggregatesController aggregatesController, FxController fxController,
+               StandingOrderController standingOrderController, ReplicationController replicationController, RequestExecutor requestExecutor,
+               int serverPort, AutoCloseable... resources) {
         this.container = container;
         this.accountController = accountController;
+        this.metricsController = metricsController;
+        this.ledgerController = ledgerController;
+        this.clusterController = clusterController;
+        this.bulkController = bulkController;
+        this.changeStreamController = changeStreamController;
+        this.aggregatesController = aggregatesController;
+        this.fxController = fxController;
+        this.standingOrderController = standingOrderController;
+        this.replicationController = replicationController;
+        this.requestExecutor = requestExecutor;
         this.serverPort = serverPort;
+        this.resources = resources;
     }
 
     public void start() {
+        CrudHandler accounts = clusterController == null ? accountController : clusterController.partitioned(accountController);
         container.configureRouting(
                 () -> {
-                    crud("accounts/:iban", accountController);
-                    get("accounts/transfer/:amount/from/:ibanfrom/to/:ibanto",
-                            ctx -> accountController.transferFoundsBetweenAccounts(ctx.pathParam("ibanfrom"), ctx.pathParam("ibanto"), Long.valueOf(ctx.pathParam("amount"))));
+                    crud("accounts/:iban", requestExecutor.offload(accounts));
+                    get("accounts/transfer/:amount/from/:ibanfrom/to/:ibanto", ctx -> {
+                        var ibanFrom = ctx.pathParam("ibanfrom");
+                        var ibanTo = ctx.pathParam("ibanto");
+                        var amount = Long.parseLong(ctx.pathParam("amount"));
+                        var idempotencyKey = ctx.header(AccountController.IDEMPOTENCY_KEY_HEADER);
+                        AsyncResponses.respond(ctx, requestExecutor.submit(() -> accountController.transferFoundsBetweenAccountsAsync(idempotencyKey, ibanFrom, ibanTo, amount)));
+                    });
+                    if (ledgerController != null) {
+                        get("accounts/:iban/history", clusterController == null ? ledgerController::getHistory
+                                : clusterController.partitioned("iban", ledgerController::getHistory));
+                    }
+                    post("accounts/transfers", ctx -> AsyncResponses.offload(ctx, requestExecutor, accountController::transferFoundsInBatch));
+                    get("metrics", metricsController::getAll);
+                    get("metrics/requests", metricsController::getRequests);
+                    if (clusterController != null) {
+                        post("cluster/credits", ctx -> AsyncResponses.offload(ctx, requestExecutor, clusterController::receiveCredit));
+                    }
+                    if (bulkController != null) {
+                        post("admin/accounts/import", ctx -> AsyncResponses.offload(ctx, requestExecutor, bulkController::importAccounts));
+                        get("admin/accounts/export", bulkController::exportAccounts);
+                    }
+                    if (changeStreamController != null) {
+                        get("events", changeStreamController::stream);
+                    }
+                    if (aggregatesController != null) {
+                        get("aggregates/total", aggregatesController::getTotal);
+                        get("aggregates/largest", aggregatesController::getLargest);
+                        get("aggregates/histogram", aggregatesController::getHistogram);
+                    }
+                    if (fxController != null) {
+                        get("admin/fx/rates", fxController::getRates);
+                        put("admin/fx/rates", fxController::replaceRates);
+                        post("admin/fx/rates/reload", fxController::reloadRates);
+                    }
+                    if (standingOrderController != null) {
+                        post("orders", standingOrderController::create);
+                        get("orders", standingOrderController::getAll);
+                        get("orders/:id", standingOrderController::getOne);
+                        delete("orders/:id", standingOrderController::delete);
+                    }
+                    if (replicationController != null) {
+                        before(replicationController::guard);
+                        get("replication", replicationController::getStatus);
+                        post("admin/replication/promote", replicationController::promote);
+                    }
                 });
         container.start(serverPort);
     }
@@ -28,5 +134,12 @@ public class App implements AutoCloseable {
     @Override
     public void close() {
         container.close();
+        for (int i = resources.length - 1; i >= 0; i--) {
+            try {
+                resources[i].close();
+            } catch (Exception e) {
+                throw new IllegalStateException("Could not close " + resources[i], e);
+            }
+        }
     }
 }
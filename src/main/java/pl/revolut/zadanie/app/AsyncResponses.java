@@ -0,0 +1,57 @@
+package pl.revolut.zadanie.app;
+
+import io.javalin.Context;
+import io.javalin.Handler;
+import io.javalin.HttpResponseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Completes the HTTP response once the given future completes, without holding a Jetty thread in the meantime.
+ * Failures are mapped the same way Javalin maps exceptions thrown by synchronous handlers.
+ */
+final class AsyncResponses {
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncResponses.class);
+    private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+
+    private AsyncResponses() {
+    }
+
+    static void respond(Context context, CompletableFuture<?> result) {
+        if (result.isDone() && !result.isCompletedExceptionally()) {
+            return;
+        }
+        context.result(result.handle((ignored, error) -> error == null ? Objects.requireNonNullElse(context.resultString(), "") : failure(context, error)));
+    }
+
+    /**
+     * Runs the handler through the executor and responds once it is done. The handler must not respond asynchronously
+     * itself, whatever it sets on the context synchronously is kept.
+     */
+    static void offload(Context context, RequestExecutor requestExecutor, Handler handler) {
+        respond(context, requestExecutor.submit(() -> {
+            handler.handle(context);
+            return DONE;
+        }));
+    }
+
+    private static String failure(Context context, Throwable error) {
+        var cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof HttpResponseException) {
+            context.status(((HttpResponseException) cause).getStatus());
+            return cause.getMessage();
+        }
+        if (cause instanceof RejectedExecutionException) {
+            context.status(503);
+            return cause.getMessage();
+        }
+        LOG.error("Asynchronous request {} {} failed", context.method(), context.path(), cause);
+        context.status(500);
+        return "Internal server error";
+    }
+}
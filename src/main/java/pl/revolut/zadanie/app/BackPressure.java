@@ -0,0 +1,24 @@
+package pl.revolut.zadanie.app;
+
+/**
+ * What happens to a request arriving when the queue of the {@link PooledRequestExecutor} is full.
+ */
+public enum BackPressure {
+    /**
+     * Answer 429 straight away.
+     */
+    REJECT,
+    /**
+     * Hold the Jetty thread until there is room in the queue.
+     */
+    QUEUE;
+
+    public static BackPressure fromName(String name) {
+        for (BackPressure backPressure : values()) {
+            if (backPressure.name().equalsIgnoreCase(name)) {
+                return backPressure;
+            }
+        }
+        throw new IllegalArgumentException(String.format("Unknown back pressure %s, expected one of reject, queue", name));
+    }
+}
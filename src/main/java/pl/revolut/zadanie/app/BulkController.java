@@ -0,0 +1,75 @@
+package pl.revolut.zadanie.app;
+
+import io.javalin.BadRequestResponse;
+import io.javalin.Context;
+import io.javalin.NotFoundResponse;
+import pl.revolut.zadanie.app.bulk.AccountFile;
+import pl.revolut.zadanie.app.bulk.AccountFileFormat;
+import pl.revolut.zadanie.app.bulk.AccountImporter;
+import pl.revolut.zadanie.app.store.AccountStore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+public class BulkController {
+    private final AccountStore store;
+    private final AccountImporter importer;
+    private final Path directory;
+
+    /**
+     * @param directory the only directory files are imported from
+     */
+    public BulkController(AccountStore store, AccountImporter importer, Path directory) {
+        this.store = store;
+        this.importer = importer;
+        this.directory = directory.toAbsolutePath().normalize();
+    }
+
+    /**
+     * Imports the accounts from the file given by the {@code file} query parameter, relative to the import directory,
+     * in the format given by the {@code format} query parameter or else by the extension of the file. Accounts which
+     * already exist are left as they are.
+     */
+    public void importAccounts(Context context) {
+        var name = context.queryParam("file");
+        if (name == null || name.isEmpty()) {
+            throw new BadRequestResponse("Query parameter file is required");
+        }
+        var file = directory.resolve(name).normalize();
+        if (!file.startsWith(directory)) {
+            throw new BadRequestResponse(String.format("File %s is outside of the import directory", name));
+        }
+        var format = context.queryParam("format") == null ? AccountFileFormat.forFile(file) : format(context);
+        try {
+            context.json(importer.importAccounts(AccountFile.read(file, format)));
+        } catch (NoSuchFileException e) {
+            throw new NotFoundResponse(String.format("File %s not found", name));
+        } catch (IOException e) {
+            throw new BadRequestResponse(String.format("Could not import %s: %s", name, e.getMessage()));
+        }
+    }
+
+    /**
+     * Streams all accounts in the format given by the {@code format} query parameter, csv by default. The balances are
+     * read one by one, so they are not taken at a single point in time if transfers run meanwhile.
+     */
+    public void exportAccounts(Context context) {
+        var format = context.queryParam("format") == null ? AccountFileFormat.CSV : format(context);
+        context.contentType(format.contentType());
+        try {
+            AccountFile.write(context.res.getOutputStream(), format, store.values());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static AccountFileFormat format(Context context) {
+        try {
+            return AccountFileFormat.fromName(context.queryParam("format"));
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestResponse(e.getMessage());
+        }
+    }
+}
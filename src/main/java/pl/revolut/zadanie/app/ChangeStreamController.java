@@ -0,0 +1,131 @@
+package pl.revolut.zadanie.app;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import io.javalin.BadRequestResponse;
+import io.javalin.Context;
+import io.javalin.HttpResponseException;
+import pl.revolut.zadanie.app.events.ChangeEvent;
+import pl.revolut.zadanie.app.events.ChangeLog;
+import pl.revolut.zadanie.app.events.ChangeSubscription;
+
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams the committed changes of accounts as Server-Sent Events, one per change, identified by its sequence. Every
+ * stream holds a server thread while it is open, so the number of concurrent streams is capped.
+ */
+public class ChangeStreamController {
+    private static final String EVENT_STREAM = "text/event-stream";
+    private static final int GONE = 410;
+    private static final int SERVICE_UNAVAILABLE = 503;
+    private static final int MAX_EVENTS_PER_FLUSH = 1024;
+    private static final long KEEP_ALIVE_NANOS = TimeUnit.SECONDS.toNanos(15);
+    private static final JsonFactory JSON = new JsonFactory();
+    private final ChangeLog changeLog;
+    private final Semaphore streams;
+
+    public ChangeStreamController(ChangeLog changeLog, int maxStreams) {
+        this.changeLog = changeLog;
+        this.streams = new Semaphore(maxStreams);
+    }
+
+    /**
+     * Streams the changes published from now on, or resumes after the sequence from the {@code after} query parameter
+     * or the {@code Last-Event-ID} header, which gets 410 if the changes since are no longer kept. A subscriber falling
+     * too far behind gets a {@code lost} event carrying the sequence it has reached, and the stream ends, the subscriber
+     * has to read all accounts again before subscribing from the sequence of the next published change.
+     */
+    public void stream(Context context) {
+        var after = context.queryParam("after");
+        var subscription = subscribe(after != null ? after : context.header("Last-Event-ID"));
+        if (!streams.tryAcquire()) {
+            throw new HttpResponseException(SERVICE_UNAVAILABLE, "Too many change streams, try again later");
+        }
+        try {
+            context.contentType(EVENT_STREAM);
+            context.header("Cache-Control", "no-cache");
+            context.status(200);
+            try (var generator = JSON.createGenerator(context.res.getOutputStream(), JsonEncoding.UTF8)) {
+                generator.setRootValueSeparator(null);
+                writeStream(generator, subscription);
+            }
+        } catch (IOException e) {
+            // the subscriber has gone away
+        } finally {
+            streams.release();
+        }
+    }
+
+    private ChangeSubscription subscribe(String after) {
+        if (after == null) {
+            return changeLog.subscribe(changeLog.nextSequence());
+        }
+        long from;
+        try {
+            from = Long.parseLong(after) + 1;
+        } catch (NumberFormatException e) {
+            throw new BadRequestResponse("Last event id must be a number");
+        }
+        if (from > changeLog.nextSequence()) {
+            throw new BadRequestResponse(String.format("Change %d has not been published yet", from - 1));
+        }
+        try {
+            return changeLog.subscribe(from);
+        } catch (IllegalArgumentException e) {
+            throw new HttpResponseException(GONE, e.getMessage());
+        }
+    }
+
+    private void writeStream(JsonGenerator generator, ChangeSubscription subscription) throws IOException {
+        var event = new ChangeEvent();
+        generator.writeRaw(":\n\n");
+        generator.flush();
+        while (changeLog.isRunning() && !Thread.currentThread().isInterrupted()) {
+            int written = 0;
+            while (written < MAX_EVENTS_PER_FLUSH && subscription.poll(event)) {
+                write(generator, event);
+                written++;
+            }
+            if (subscription.isLost()) {
+                generator.writeRaw("event: lost\ndata: ");
+                generator.writeStartObject();
+                generator.writeNumberField("next", subscription.nextSequence());
+                generator.writeEndObject();
+                generator.writeRaw("\n\n");
+                generator.flush();
+                return;
+            }
+            if (written > 0) {
+                generator.flush();
+            } else if (!subscription.await(KEEP_ALIVE_NANOS)) {
+                generator.writeRaw(":\n\n");
+                generator.flush();
+            }
+        }
+    }
+
+    private static void write(JsonGenerator generator, ChangeEvent event) throws IOException {
+        generator.writeRaw("id: ");
+        generator.writeRaw(Long.toString(event.sequence()));
+        generator.writeRaw("\nevent: ");
+        generator.writeRaw(event.type().eventName());
+        generator.writeRaw("\ndata: ");
+        generator.writeStartObject();
+        generator.writeNumberField("sequence", event.sequence());
+        generator.writeStringField("iban", event.iban());
+        if (event.counterpart() != null) {
+            generator.writeStringField("to", event.counterpart());
+        }
+        if (event.currency() != null) {
+            generator.writeStringField("currency", event.currency());
+        }
+        generator.writeNumberField("amount", event.amount());
+        generator.writeNumberField("timestamp", event.timestamp());
+        generator.writeEndObject();
+        generator.writeRaw("\n\n");
+    }
+}
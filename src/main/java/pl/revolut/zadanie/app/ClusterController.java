@@ -0,0 +1,44 @@
+package pl.revolut.zadanie.app;
+
+import io.javalin.Context;
+import io.javalin.Handler;
+import io.javalin.apibuilder.CrudHandler;
+import pl.revolut.zadanie.app.cluster.Cluster;
+import pl.revolut.zadanie.app.dto.CreditDto;
+
+public class ClusterController {
+    private final Cluster cluster;
+
+    public ClusterController(Cluster cluster) {
+        this.cluster = cluster;
+    }
+
+    /**
+     * Account requests are handled by the node owning the account, the others forward them to it.
+     */
+    CrudHandler partitioned(AccountController accountController) {
+        return new PartitionedCrudHandler(accountController, cluster);
+    }
+
+    /**
+     * Requests about the account from the path parameter are handled by the node owning it, the others forward them
+     * to it along with the {@value AccountController#NEXT_CURSOR_HEADER} header of the response.
+     */
+    Handler partitioned(String ibanParam, Handler handler) {
+        return context -> {
+            var owner = cluster.remoteOwnerOf(context.pathParam(ibanParam));
+            if (owner == null) {
+                handler.handle(context);
+            } else {
+                cluster.forward(context, owner, null, AccountController.NEXT_CURSOR_HEADER);
+            }
+        };
+    }
+
+    /**
+     * Credit of a transfer started by another node, see {@link Cluster#receiveCredit(CreditDto)}.
+     */
+    public void receiveCredit(Context context) {
+        cluster.receiveCredit(context.bodyAsClass(CreditDto.class));
+    }
+}
@@ -4,12 +4,25 @@ import io.javalin.Javalin;
 import io.javalin.apibuilder.EndpointGroup;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import pl.revolut.zadanie.app.admission.AdmissionControl;
+import pl.revolut.zadanie.app.metrics.Metrics;
 
 public class Container implements AutoCloseable {
     private static final Logger LOG = LoggerFactory.getLogger(Container.class);
+    private final Metrics metrics;
+    private final AdmissionControl admissionControl;
     private final Javalin javelin;
 
-    public Container() {
+    public Container(Metrics metrics) {
+        this(metrics, null);
+    }
+
+    /**
+     * @param admissionControl null to admit every request
+     */
+    public Container(Metrics metrics, AdmissionControl admissionControl) {
+        this.metrics = metrics;
+        this.admissionControl = admissionControl;
         javelin = createContainer();
     }
 
@@ -22,9 +35,19 @@ public class Container implements AutoCloseable {
     }
 
     private Javalin createContainer() {
-        return Javalin.create()
+        var javalin = Javalin.create()
                 .enableCorsForAllOrigins()
-                .requestLogger((ctx, timeMs) -> LOG.trace(" {} {} {} {} {} ms", ctx.method(), ctx.path(), ctx.body(), ctx.headerMap(), timeMs));
+                .requestLogger((ctx, timeMs) -> {
+                    long nanos = (long) (timeMs * 1_000_000);
+                    if (admissionControl != null) {
+                        admissionControl.onCompleted(ctx, nanos);
+                    }
+                    metrics.recordRequest(ctx.method(), ctx.matchedPath(), ctx.status(), nanos);
+                    if (LOG.isTraceEnabled()) {
+                        LOG.trace(" {} {} {} {} {} ms", ctx.method(), ctx.path(), ctx.body(), ctx.headerMap(), timeMs);
+                    }
+                });
+        return admissionControl == null ? javalin : javalin.before(admissionControl::admit);
     }
 
     @Override
@@ -0,0 +1,47 @@
+package pl.revolut.zadanie.app;
+
+import io.javalin.BadRequestResponse;
+import io.javalin.Context;
+import pl.revolut.zadanie.app.dto.FxRateDto;
+import pl.revolut.zadanie.app.fx.FxRateTable;
+import pl.revolut.zadanie.app.fx.FxRates;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+public class FxController {
+    private final FxRateTable table;
+
+    public FxController(FxRateTable table) {
+        this.table = table;
+    }
+
+    public void getRates(Context context) {
+        context.json(table.current().rates());
+    }
+
+    /**
+     * Replaces all the rates with the ones in the body, transfers see either the old or the new rates, never a mix.
+     */
+    public void replaceRates(Context context) {
+        var rates = context.bodyAsClass(FxRateDto[].class);
+        if (rates == null || Arrays.asList(rates).contains(null)) {
+            throw new BadRequestResponse("Expected an array of rates");
+        }
+        try {
+            table.replace(FxRates.of(List.of(rates)));
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestResponse(e.getMessage());
+        }
+        context.json(table.current().rates());
+    }
+
+    public void reloadRates(Context context) {
+        try {
+            context.json(table.reload().rates());
+        } catch (IllegalStateException | IOException e) {
+            throw new BadRequestResponse(String.format("Could not reload the rates: %s", e.getMessage()));
+        }
+    }
+}
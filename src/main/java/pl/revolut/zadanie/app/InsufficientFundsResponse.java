@@ -0,0 +1,20 @@
+package pl.revolut.zadanie.app;
+
+import io.javalin.HttpResponseException;
+
+/**
+ * 400 for a transfer from an account without enough money. A rejection the clients cause all the time and which says
+ * all there is to know in its message, so it has no stack trace and is cheap to make for every rejection.
+ */
+public final class InsufficientFundsResponse extends HttpResponseException {
+    private static final int BAD_REQUEST = 400;
+
+    public InsufficientFundsResponse() {
+        super(BAD_REQUEST, "Not enough founds to transfer from the source account");
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
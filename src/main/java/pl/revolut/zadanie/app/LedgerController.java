@@ -0,0 +1,45 @@
+package pl.revolut.zadanie.app;
+
+import io.javalin.BadRequestResponse;
+import io.javalin.Context;
+import pl.revolut.zadanie.app.ledger.Ledger;
+
+public class LedgerController {
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1_000;
+    private final Ledger ledger;
+
+    public LedgerController(Ledger ledger) {
+        this.ledger = ledger;
+    }
+
+    /**
+     * Transfers of the account, newest first, optionally between the from (inclusive) and to (exclusive) epoch
+     * milliseconds. The next page starts before the transaction id from the {@value AccountController#NEXT_CURSOR_HEADER}
+     * header, which is missing on the last page. History is kept for accounts that have been deleted since.
+     */
+    public void getHistory(Context context) {
+        var limit = parseLong(context, "limit", DEFAULT_PAGE_SIZE);
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            throw new BadRequestResponse(String.format("Limit must be between 1 and %d", MAX_PAGE_SIZE));
+        }
+        var page = ledger.history(context.pathParam("iban"), parseLong(context, "from", 0), parseLong(context, "to", Long.MAX_VALUE),
+                parseLong(context, "before", Long.MAX_VALUE), (int) limit);
+        if (page.size() == limit) {
+            context.header(AccountController.NEXT_CURSOR_HEADER, String.valueOf(page.get(page.size() - 1).txId()));
+        }
+        context.json(page);
+    }
+
+    private static long parseLong(Context context, String name, long defaultValue) {
+        var value = context.queryParam(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new BadRequestResponse(String.format("Query parameter %s must be a number", name));
+        }
+    }
+}
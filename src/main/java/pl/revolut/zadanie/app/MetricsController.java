@@ -0,0 +1,78 @@
+package pl.revolut.zadanie.app;
+
+import io.javalin.Context;
+import pl.revolut.zadanie.app.admission.AdmissionControl;
+import pl.revolut.zadanie.app.dto.IdempotencyMetricsDto;
+import pl.revolut.zadanie.app.dto.MetricsDto;
+import pl.revolut.zadanie.app.dto.RequestMetricsDto;
+import pl.revolut.zadanie.app.dto.RouteMetricsDto;
+import pl.revolut.zadanie.app.dto.TransferMetricsDto;
+import pl.revolut.zadanie.app.idempotency.IdempotencyCache;
+import pl.revolut.zadanie.app.metrics.Metrics;
+import pl.revolut.zadanie.app.metrics.RouteMetrics;
+import pl.revolut.zadanie.app.model.TransferCounters;
+
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+
+public class MetricsController {
+    private final Metrics metrics;
+    private final TransferCounters transferCounters;
+    private final RequestExecutor requestExecutor;
+    private final IdempotencyCache<?> transferReplays;
+    private final IdempotencyCache<?> batchReplays;
+    private final AdmissionControl admissionControl;
+
+    public MetricsController(Metrics metrics, TransferCounters transferCounters, RequestExecutor requestExecutor,
+                             IdempotencyCache<?> transferReplays, IdempotencyCache<?> batchReplays) {
+        this(metrics, transferCounters, requestExecutor, transferReplays, batchReplays, null);
+    }
+
+    /**
+     * @param admissionControl null if admission control is off
+     */
+    public MetricsController(Metrics metrics, TransferCounters transferCounters, RequestExecutor requestExecutor,
+                             IdempotencyCache<?> transferReplays, IdempotencyCache<?> batchReplays, AdmissionControl admissionControl) {
+        this.metrics = metrics;
+        this.transferCounters = transferCounters;
+        this.requestExecutor = requestExecutor;
+        this.transferReplays = transferReplays;
+        this.batchReplays = batchReplays;
+        this.admissionControl = admissionControl;
+    }
+
+    public void getAll(Context context) {
+        var routes = new LinkedHashMap<String, RouteMetricsDto>();
+        metrics.routes().forEach((route, routeMetrics) -> routes.put(route, toDto(routeMetrics)));
+        var transfers = new TransferMetricsDto(transferCounters.attempts(), transferCounters.commits(), transferCounters.aborts(),
+                transferCounters.retries(), transferCounters.contentions(), transferCounters.splitAccounts(), metrics.insufficientFunds());
+        var idempotency = new LinkedHashMap<String, IdempotencyMetricsDto>();
+        idempotency.put("transfers", toDto(transferReplays));
+        idempotency.put("batches", toDto(batchReplays));
+        context.json(new MetricsDto(metrics.uptimeSeconds(), routes, transfers, requestMetrics(), idempotency,
+                admissionControl == null ? null : admissionControl.metrics()));
+    }
+
+    public void getRequests(Context context) {
+        context.json(requestMetrics());
+    }
+
+    private RequestMetricsDto requestMetrics() {
+        return new RequestMetricsDto(requestExecutor.queueDepth(), requestExecutor.rejectedCount());
+    }
+
+    private static RouteMetricsDto toDto(RouteMetrics routeMetrics) {
+        var latency = routeMetrics.latency().snapshot();
+        return new RouteMetricsDto(latency.count(), routeMetrics.clientErrors(), routeMetrics.notFound(), routeMetrics.serverErrors(),
+                micros(latency.meanNanos()), micros(latency.percentileNanos(50)), micros(latency.percentileNanos(90)),
+                micros(latency.percentileNanos(99)), micros(latency.percentileNanos(99.9)), micros(latency.maxNanos()));
+    }
+
+    private static IdempotencyMetricsDto toDto(IdempotencyCache<?> replays) {
+        return new IdempotencyMetricsDto(replays.capacity(), replays.hits(), replays.misses(), replays.evictions(), replays.expirations());
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
@@ -0,0 +1,42 @@
+package pl.revolut.zadanie.app;
+
+import io.javalin.Context;
+import io.javalin.apibuilder.CrudHandler;
+
+/**
+ * Runs account mutations through a {@link RequestExecutor}, reads stay on the Jetty thread.
+ */
+final class OffloadedCrudHandler implements CrudHandler {
+    private final RequestExecutor requestExecutor;
+    private final CrudHandler delegate;
+
+    OffloadedCrudHandler(RequestExecutor requestExecutor, CrudHandler delegate) {
+        this.requestExecutor = requestExecutor;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void create(Context context) {
+        AsyncResponses.offload(context, requestExecutor, delegate::create);
+    }
+
+    @Override
+    public void delete(Context context, String resourceId) {
+        AsyncResponses.offload(context, requestExecutor, ctx -> delegate.delete(ctx, resourceId));
+    }
+
+    @Override
+    public void getAll(Context context) {
+        delegate.getAll(context);
+    }
+
+    @Override
+    public void getOne(Context context, String resourceId) {
+        delegate.getOne(context, resourceId);
+    }
+
+    @Override
+    public void update(Context context, String resourceId) {
+        AsyncResponses.offload(context, requestExecutor, ctx -> delegate.update(ctx, resourceId));
+    }
+}
@@ -0,0 +1,78 @@
+package pl.revolut.zadanie.app;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.javalin.BadRequestResponse;
+import io.javalin.Context;
+import io.javalin.apibuilder.CrudHandler;
+import pl.revolut.zadanie.app.cluster.Cluster;
+import pl.revolut.zadanie.app.dto.AccountDto;
+
+import java.io.IOException;
+
+/**
+ * Forwards requests about accounts owned by another node of the cluster to that node. Listing accounts lists the
+ * accounts of this node only.
+ */
+final class PartitionedCrudHandler implements CrudHandler {
+    private static final ObjectReader ACCOUNT_READER = new ObjectMapper().readerFor(AccountDto.class);
+    private final AccountController accountController;
+    private final Cluster cluster;
+
+    PartitionedCrudHandler(AccountController accountController, Cluster cluster) {
+        this.accountController = accountController;
+        this.cluster = cluster;
+    }
+
+    @Override
+    public void create(Context context) {
+        var body = context.bodyAsBytes();
+        AccountDto accountDto;
+        try {
+            accountDto = ACCOUNT_READER.readValue(body);
+        } catch (IOException e) {
+            throw new BadRequestResponse("Could not parse the account: " + e.getMessage());
+        }
+        var owner = cluster.remoteOwnerOf(accountDto.iban());
+        if (owner == null) {
+            accountController.create(accountDto);
+        } else {
+            cluster.forward(context, owner, body);
+        }
+    }
+
+    @Override
+    public void delete(Context context, String iban) {
+        var owner = cluster.remoteOwnerOf(iban);
+        if (owner == null) {
+            accountController.delete(context, iban);
+        } else {
+            cluster.forward(context, owner, null);
+        }
+    }
+
+    @Override
+    public void getAll(Context context) {
+        accountController.getAll(context);
+    }
+
+    @Override
+    public void getOne(Context context, String iban) {
+        var owner = cluster.remoteOwnerOf(iban);
+        if (owner == null) {
+            accountController.getOne(context, iban);
+        } else {
+            cluster.forward(context, owner, null);
+        }
+    }
+
+    @Override
+    public void update(Context context, String iban) {
+        var owner = cluster.remoteOwnerOf(iban);
+        if (owner == null) {
+            accountController.update(context, iban);
+        } else {
+            cluster.forward(context, owner, context.bodyAsBytes());
+        }
+    }
+}
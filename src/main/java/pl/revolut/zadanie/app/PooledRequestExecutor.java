@@ -0,0 +1,95 @@
+package pl.revolut.zadanie.app;
+
+import io.javalin.HttpResponseException;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hands requests over to a bounded pool of worker threads, so a Jetty thread is not held while a transfer retries.
+ * Once the bounded queue is full requests are rejected with 429 or wait for room, see {@link BackPressure}.
+ */
+public class PooledRequestExecutor implements RequestExecutor {
+    private static final int TOO_MANY_REQUESTS = 429;
+    private final ThreadPoolExecutor pool;
+    private final LongAdder rejected = new LongAdder();
+
+    public PooledRequestExecutor(int threads, int queueCapacity, BackPressure backPressure) {
+        var threadNumber = new AtomicInteger();
+        pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    var thread = new Thread(runnable, "request-worker-" + threadNumber.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                backPressure == BackPressure.QUEUE ? waitForRoom() : new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @Override
+    public <T> CompletableFuture<T> submit(Callable<CompletableFuture<T>> request) {
+        var result = new CompletableFuture<T>();
+        try {
+            pool.execute(() -> {
+                try {
+                    request.call().whenComplete((value, error) -> {
+                        if (error == null) {
+                            result.complete(value);
+                        } else {
+                            result.completeExceptionally(error);
+                        }
+                    });
+                } catch (Exception e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            result.completeExceptionally(pool.isShutdown() ? e : new HttpResponseException(TOO_MANY_REQUESTS, "Too many requests, try again later"));
+        }
+        return result;
+    }
+
+    @Override
+    public int queueDepth() {
+        return pool.getQueue().size();
+    }
+
+    @Override
+    public long rejectedCount() {
+        return rejected.sum();
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+        try {
+            if (!pool.awaitTermination(10, TimeUnit.SECONDS)) {
+                pool.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static RejectedExecutionHandler waitForRoom() {
+        return (runnable, executor) -> {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("Request executor has been closed");
+            }
+            try {
+                executor.getQueue().put(runnable);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted while waiting for room in the request queue", e);
+            }
+        };
+    }
+}
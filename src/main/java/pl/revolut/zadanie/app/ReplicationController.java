@@ -0,0 +1,87 @@
+package pl.revolut.zadanie.app;
+
+import io.javalin.BadRequestResponse;
+import io.javalin.Context;
+import io.javalin.HttpResponseException;
+import pl.revolut.zadanie.app.dto.ReplicationStatusDto;
+import pl.revolut.zadanie.app.replication.ReplicaClient;
+import pl.revolut.zadanie.app.replication.ReplicationServer;
+
+public class ReplicationController {
+    public static final String LAG_HEADER = "X-Replication-Lag-Ms";
+    private static final int SERVICE_UNAVAILABLE = 503;
+    private static final String PROMOTE_PATH = "/admin/replication/promote";
+    private final ReplicationServer server;
+    private final ReplicaClient replica;
+
+    /**
+     * @param server  null if no replica can follow this node
+     * @param replica null if this node is a primary
+     */
+    public ReplicationController(ReplicationServer server, ReplicaClient replica) {
+        this.server = server;
+        this.replica = replica;
+    }
+
+    /**
+     * Until promoted, a replica serves reads only, each with the {@value #LAG_HEADER} header telling how stale it may
+     * be, and rejects every other request but the promotion, so no change is made behind the back of the primary.
+     */
+    public void guard(Context context) {
+        if (replica == null || replica.isPromoted()) {
+            return;
+        }
+        if (isWrite(context) && !PROMOTE_PATH.equals(context.path())) {
+            requireWritable();
+        }
+        context.header(LAG_HEADER, String.valueOf(replica.lagMillis()));
+    }
+
+    /**
+     * Guards changes coming other ways than the JSON API, e.g. the binary protocol or scheduled orders.
+     *
+     * @throws HttpResponseException with 503 if this node is a replica not promoted yet
+     */
+    public void requireWritable() {
+        var replica = this.replica;
+        if (replica != null && !replica.isPromoted()) {
+            throw new HttpResponseException(SERVICE_UNAVAILABLE,
+                    String.format("Read-only replica of %s, send changes to the primary", replica.primary()));
+        }
+    }
+
+    public void getStatus(Context context) {
+        context.json(status());
+    }
+
+    /**
+     * Makes the replica stop following the primary and take changes itself, once the primary is down.
+     */
+    public void promote(Context context) {
+        if (replica == null) {
+            throw new BadRequestResponse("This node is not a replica");
+        }
+        if (!replica.isPromoted()) {
+            replica.promote();
+        }
+        context.json(status());
+    }
+
+    private ReplicationStatusDto status() {
+        int replicas = server == null ? 0 : server.replicas();
+        if (replica == null || replica.isPromoted()) {
+            return new ReplicationStatusDto("primary", null, false, -1, -1, replicas);
+        }
+        return new ReplicationStatusDto("replica", replica.primary(), replica.isConnected(), replica.appliedSequence(),
+                replica.lagMillis(), replicas);
+    }
+
+    /**
+     * Transfers are made by a GET request too.
+     */
+    private static boolean isWrite(Context context) {
+        var method = context.method();
+        return !("GET".equals(method) || "HEAD".equals(method) || "OPTIONS".equals(method))
+                || context.path().startsWith("/accounts/transfer/");
+    }
+}
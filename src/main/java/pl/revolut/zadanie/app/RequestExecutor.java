@@ -0,0 +1,35 @@
+package pl.revolut.zadanie.app;
+
+import io.javalin.apibuilder.CrudHandler;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Decides on which thread transfers and account mutations are handled.
+ */
+public interface RequestExecutor extends AutoCloseable {
+
+    /**
+     * @return completes with the result of the future returned by the request, or exceptionally if the request throws
+     */
+    <T> CompletableFuture<T> submit(Callable<CompletableFuture<T>> request);
+
+    /**
+     * @return handler running create, update and delete through this executor
+     */
+    default CrudHandler offload(CrudHandler handler) {
+        return new OffloadedCrudHandler(this, handler);
+    }
+
+    default int queueDepth() {
+        return 0;
+    }
+
+    default long rejectedCount() {
+        return 0;
+    }
+
+    @Override
+    void close();
+}
@@ -0,0 +1,77 @@
+package pl.revolut.zadanie.app;
+
+import io.javalin.BadRequestResponse;
+import io.javalin.Context;
+import io.javalin.NotFoundResponse;
+import pl.revolut.zadanie.app.dto.StandingOrderDto;
+import pl.revolut.zadanie.app.orders.StandingOrders;
+
+import java.util.concurrent.TimeUnit;
+
+public class StandingOrderController {
+    private static final int DEFAULT_LIMIT = 100;
+    private static final int MAX_LIMIT = 1_000;
+    private final StandingOrders orders;
+
+    public StandingOrderController(StandingOrders orders) {
+        this.orders = orders;
+    }
+
+    /**
+     * Schedules the order in the body and responds with it, together with its id.
+     */
+    public void create(Context context) {
+        var order = context.bodyAsClass(StandingOrderDto.class);
+        if (order == null) {
+            throw new BadRequestResponse("Expected an order");
+        }
+        try {
+            context.json(orders.create(order.from(), order.to(), order.amount(), order.executeAt(),
+                    TimeUnit.SECONDS.toMillis(order.intervalSeconds())));
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestResponse(e.getMessage());
+        }
+    }
+
+    /**
+     * Orders by id, optionally only those from the account given by the from query parameter, a page of as many as the
+     * limit query parameter asks for starting after the id given by the after query parameter.
+     */
+    public void getAll(Context context) {
+        int limit = (int) longParam(context.queryParam("limit"), DEFAULT_LIMIT);
+        if (limit <= 0 || limit > MAX_LIMIT) {
+            throw new BadRequestResponse(String.format("Limit must be between 1 and %d", MAX_LIMIT));
+        }
+        context.json(orders.list(context.queryParam("from"), longParam(context.queryParam("after"), 0), limit));
+    }
+
+    public void getOne(Context context) {
+        var order = orders.get(id(context));
+        if (order == null) {
+            throw new NotFoundResponse(String.format("Could not find an order with id %s", context.pathParam("id")));
+        }
+        context.json(order);
+    }
+
+    public void delete(Context context) {
+        if (!orders.cancel(id(context))) {
+            throw new NotFoundResponse(String.format("Could not find an order with id %s", context.pathParam("id")));
+        }
+        context.status(204);
+    }
+
+    private static long id(Context context) {
+        return longParam(context.pathParam("id"), 0);
+    }
+
+    private static long longParam(String value, long defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new BadRequestResponse(String.format("Expected a number instead of %s", value));
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package pl.revolut.zadanie.app;
+
+import io.javalin.apibuilder.CrudHandler;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Handles every request on the Jetty thread it arrived on.
+ */
+public class SynchronousRequestExecutor implements RequestExecutor {
+
+    @Override
+    public <T> CompletableFuture<T> submit(Callable<CompletableFuture<T>> request) {
+        try {
+            return request.call();
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @Override
+    public CrudHandler offload(CrudHandler handler) {
+        return handler;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,30 @@
+package pl.revolut.zadanie.app;
+
+import io.javalin.BadRequestResponse;
+
+/**
+ * How a batch of transfers is committed.
+ * <ul>
+ * <li>{@link #ALL_OR_NOTHING} - every transfer runs inside a single STM transaction, one failure rolls back the whole batch</li>
+ * <li>{@link #PER_ITEM} - every transfer is committed on its own, failures are reported per item</li>
+ * </ul>
+ */
+public enum TransferBatchMode {
+    ALL_OR_NOTHING("all-or-nothing"),
+    PER_ITEM("per-item");
+
+    private final String param;
+
+    TransferBatchMode(String param) {
+        this.param = param;
+    }
+
+    public static TransferBatchMode fromParam(String param) {
+        for (TransferBatchMode mode : values()) {
+            if (mode.param.equalsIgnoreCase(param)) {
+                return mode;
+            }
+        }
+        throw new BadRequestResponse(String.format("Unknown batch mode %s, expected one of all-or-nothing, per-item", param));
+    }
+}
@@ -0,0 +1,160 @@
+package pl.revolut.zadanie.app.admission;
+
+import io.javalin.Context;
+import io.javalin.HttpResponseException;
+import pl.revolut.zadanie.app.dto.AdmissionMetricsDto;
+
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Rejects requests with 429 before they reach a controller, looking only at the method, the path and the client, never
+ * at the body: when the token bucket of the client is empty, when the bucket of the account changed by the request is
+ * empty, or when the adaptive limit of requests in flight has been reached. Any of the limits can be left out.
+ * <p>
+ * The client is identified by its address. A request forwarded by another node of a cluster carries the address of the
+ * client which sent it to that node in the {@value CLIENT_HEADER} header, which is trusted only from the addresses of
+ * the nodes, so it is limited as a request of that client rather than of the forwarding node. The account is the one
+ * updated or deleted, or the source of a transfer, accounts of batches and of account creations are not known without
+ * parsing the body. Metrics, change streams and the traffic between the nodes of a cluster, told apart by the address
+ * it comes from, are never limited.
+ */
+public final class AdmissionControl {
+    public static final String CLIENT_HEADER = "X-Client-Id";
+    static final int ADMITTED = 0;
+    static final int CLIENT_LIMITED = 1;
+    static final int ACCOUNT_LIMITED = 2;
+    static final int CONCURRENCY_LIMITED = 3;
+    static final int NOT_LIMITED = 4;
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final String ACQUIRED = AdmissionControl.class.getName() + ".acquired";
+    private static final String ACCOUNTS = "/accounts/";
+    private static final String TRANSFER = "transfer/";
+    private static final String FROM = "/from/";
+    private static final String[] UNLIMITED = {"/metrics", "/events"};
+    private static final String CLUSTER = "/cluster/";
+    private final RateLimiter clients;
+    private final RateLimiter accounts;
+    private final ConcurrencyLimiter concurrency;
+    private final Set<String> peers;
+    private final LongAdder clientLimited = new LongAdder();
+    private final LongAdder accountLimited = new LongAdder();
+    private final LongAdder concurrencyLimited = new LongAdder();
+
+    /**
+     * @param clients     null to not limit clients
+     * @param accounts    null to not limit accounts
+     * @param concurrency null to not limit requests in flight
+     */
+    public AdmissionControl(RateLimiter clients, RateLimiter accounts, ConcurrencyLimiter concurrency) {
+        this(clients, accounts, concurrency, Set.of());
+    }
+
+    /**
+     * @param peers addresses of the nodes of a cluster, as the requests they send are seen from
+     */
+    public AdmissionControl(RateLimiter clients, RateLimiter accounts, ConcurrencyLimiter concurrency, Set<String> peers) {
+        this.clients = clients;
+        this.accounts = accounts;
+        this.concurrency = concurrency;
+        this.peers = Set.copyOf(peers);
+    }
+
+    /**
+     * Before handler rejecting the requests which are not admitted.
+     */
+    public void admit(Context context) {
+        var address = context.ip();
+        var peer = peers.contains(address);
+        var forwardedFor = peer ? context.header(CLIENT_HEADER) : null;
+        switch (admit(context.method(), context.path(), forwardedFor != null ? forwardedFor : address, peer)) {
+            case ADMITTED:
+                context.attribute(ACQUIRED, Boolean.TRUE);
+                return;
+            case CLIENT_LIMITED:
+                throw tooManyRequests(context, "Too many requests from the client, try again later");
+            case ACCOUNT_LIMITED:
+                throw tooManyRequests(context, "Too many requests for the account, try again later");
+            case CONCURRENCY_LIMITED:
+                throw tooManyRequests(context, "Too many requests in flight, try again later");
+            default:
+        }
+    }
+
+    /**
+     * To be called for every completed request, admitted or not.
+     */
+    public void onCompleted(Context context, long latencyNanos) {
+        if (concurrency != null && context.attribute(ACQUIRED) != null) {
+            concurrency.release(latencyNanos);
+        }
+    }
+
+    /**
+     * @return {@link #ADMITTED} if a slot of the concurrency limiter has been acquired and has to be released,
+     * {@link #NOT_LIMITED} if the request is admitted without one, otherwise the reason of the rejection
+     */
+    int admit(String method, String path, String client) {
+        return admit(method, path, client, false);
+    }
+
+    /**
+     * @param peer true if the request has been sent by a node of the cluster
+     */
+    int admit(String method, String path, String client, boolean peer) {
+        for (String unlimited : UNLIMITED) {
+            if (path.startsWith(unlimited)) {
+                return NOT_LIMITED;
+            }
+        }
+        if (peer && path.startsWith(CLUSTER)) {
+            return NOT_LIMITED;
+        }
+        if (clients != null && !clients.tryAcquire(client)) {
+            clientLimited.increment();
+            return CLIENT_LIMITED;
+        }
+        if (accounts != null && !admitAccount(method, path)) {
+            accountLimited.increment();
+            return ACCOUNT_LIMITED;
+        }
+        if (concurrency == null) {
+            return NOT_LIMITED;
+        }
+        if (!concurrency.tryAcquire()) {
+            concurrencyLimited.increment();
+            return CONCURRENCY_LIMITED;
+        }
+        return ADMITTED;
+    }
+
+    private boolean admitAccount(String method, String path) {
+        if (!path.startsWith(ACCOUNTS)) {
+            return true;
+        }
+        int start = ACCOUNTS.length();
+        if (path.startsWith(TRANSFER, start)) {
+            int from = path.indexOf(FROM, start);
+            if (from < 0) {
+                return true;
+            }
+            start = from + FROM.length();
+            int end = path.indexOf('/', start);
+            return accounts.tryAcquire(RateLimiter.hash(path, start, end < 0 ? path.length() : end));
+        }
+        if (method.equals("GET") || method.equals("POST") || path.indexOf('/', start) >= 0) {
+            return true;
+        }
+        return accounts.tryAcquire(RateLimiter.hash(path, start, path.length()));
+    }
+
+    public AdmissionMetricsDto metrics() {
+        return new AdmissionMetricsDto(concurrency == null ? 0 : concurrency.limit(), concurrency == null ? 0 : concurrency.inFlight(),
+                clientLimited.sum(), accountLimited.sum(), concurrencyLimited.sum());
+    }
+
+    private static HttpResponseException tooManyRequests(Context context, String message) {
+        context.header("Retry-After", "1");
+        return new HttpResponseException(TOO_MANY_REQUESTS, message);
+    }
+}
@@ -0,0 +1,121 @@
+package pl.revolut.zadanie.app.admission;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Limits the requests in flight to a limit adapted to the observed latency, in the style of the gradient limiters: once
+ * a window of samples has been collected, the limit is multiplied by the ratio of the long term average latency to the
+ * latency of the window, between 0.5 and 1, and grown by its square root. While latency stays flat the limit grows,
+ * once requests start to queue and latency rises above the long term average the limit shrinks, so requests are rejected
+ * before they pile up in queues and conflicting transactions.
+ * <p>
+ * Acquiring and releasing touch an atomic counter and a few adders, the limit is recomputed by a single thread at a
+ * time at the end of a window.
+ */
+public final class ConcurrencyLimiter {
+    private static final long WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final int MIN_WINDOW_SAMPLES = 20;
+    private static final double SMOOTHING = 0.2;
+    private static final double LONG_TERM_WEIGHT = 0.05;
+    private final int minLimit;
+    private final int maxLimit;
+    private final LongSupplier nanoClock;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder windowLatencyNanos = new LongAdder();
+    private final LongAdder windowSamples = new LongAdder();
+    private final AtomicBoolean updating = new AtomicBoolean();
+    private volatile long windowStart;
+    private volatile int limit;
+    private double estimatedLimit;
+    private double longTermLatencyNanos;
+
+    /**
+     * @param initialLimit limit until enough latency has been observed
+     * @param maxLimit     limit never exceeded however flat latency stays
+     */
+    public ConcurrencyLimiter(int initialLimit, int maxLimit) {
+        this(initialLimit, maxLimit, System::nanoTime);
+    }
+
+    ConcurrencyLimiter(int initialLimit, int maxLimit, LongSupplier nanoClock) {
+        if (initialLimit < 1 || maxLimit < initialLimit) {
+            throw new IllegalArgumentException("Initial limit has to be positive and at most the max limit");
+        }
+        this.minLimit = Math.min(initialLimit, 4);
+        this.maxLimit = maxLimit;
+        this.nanoClock = nanoClock;
+        this.limit = initialLimit;
+        this.estimatedLimit = initialLimit;
+        this.windowStart = nanoClock.getAsLong();
+    }
+
+    /**
+     * @return false if the limit has been reached, otherwise the caller has to {@link #release(long)}
+     */
+    public boolean tryAcquire() {
+        int current = inFlight.get();
+        while (current < limit) {
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+            current = inFlight.get();
+        }
+        return false;
+    }
+
+    /**
+     * @param latencyNanos time the request took since it has been acquired
+     */
+    public void release(long latencyNanos) {
+        int inFlightBefore = inFlight.getAndDecrement();
+        windowLatencyNanos.add(latencyNanos);
+        windowSamples.increment();
+        long now = nanoClock.getAsLong();
+        if (now - windowStart >= WINDOW_NANOS && windowSamples.sum() >= MIN_WINDOW_SAMPLES && updating.compareAndSet(false, true)) {
+            try {
+                update(now, inFlightBefore);
+            } finally {
+                updating.set(false);
+            }
+        }
+    }
+
+    private void update(long now, int inFlightBefore) {
+        long samples = windowSamples.sumThenReset();
+        long latencySum = windowLatencyNanos.sumThenReset();
+        windowStart = now;
+        if (samples == 0) {
+            return;
+        }
+        double latency = Math.max(1, (double) latencySum / samples);
+        if (longTermLatencyNanos == 0) {
+            longTermLatencyNanos = latency;
+        } else {
+            longTermLatencyNanos = longTermLatencyNanos * (1 - LONG_TERM_WEIGHT) + latency * LONG_TERM_WEIGHT;
+            if (longTermLatencyNanos > 2 * latency) {
+                // latency dropped for good, e.g. after a burst of load, forget the slow past faster
+                longTermLatencyNanos *= 0.9;
+            }
+        }
+        if (inFlightBefore < estimatedLimit / 2) {
+            // the limit has not been reached, so latency tells nothing about whether it could be higher
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1, longTermLatencyNanos / latency));
+        double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, estimatedLimit * (1 - SMOOTHING) + newLimit * SMOOTHING));
+        limit = (int) estimatedLimit;
+    }
+
+    public int limit() {
+        return limit;
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+}
@@ -0,0 +1,84 @@
+package pl.revolut.zadanie.app.admission;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Token buckets of any number of keys held in a fixed number of slots, a single long each, so the memory used does not
+ * grow with the number of clients or accounts. Keys are hashed into the slots, keys sharing a slot share its bucket,
+ * which with enough slots only rarely limits a key earlier than it should be.
+ * <p>
+ * A slot keeps the theoretical arrival time of the next request as in the generic cell rate algorithm, which behaves
+ * as a token bucket refilled continuously, and is updated with a single compare and set.
+ */
+public final class RateLimiter {
+    private final AtomicLongArray slots;
+    private final int mask;
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    private final LongSupplier nanoClock;
+    private final long origin;
+
+    /**
+     * @param permitsPerSecond rate the bucket of a key is refilled at
+     * @param burst            permits a key may take at once after being idle, the capacity of its bucket
+     * @param slots            number of slots, a power of two
+     */
+    public RateLimiter(double permitsPerSecond, int burst, int slots) {
+        this(permitsPerSecond, burst, slots, System::nanoTime);
+    }
+
+    RateLimiter(double permitsPerSecond, int burst, int slots, LongSupplier nanoClock) {
+        if (permitsPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("Rate has to be positive and burst at least 1");
+        }
+        if (Integer.bitCount(slots) != 1) {
+            throw new IllegalArgumentException("Slots have to be a power of two");
+        }
+        this.slots = new AtomicLongArray(slots);
+        this.mask = slots - 1;
+        this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+        this.toleranceNanos = intervalNanos * (burst - 1);
+        this.nanoClock = nanoClock;
+        // keeps the times positive, 0 marks a slot no key has taken a permit from yet
+        this.origin = nanoClock.getAsLong() - toleranceNanos - 1;
+    }
+
+    /**
+     * @return false if the bucket of the key is empty
+     */
+    public boolean tryAcquire(String key) {
+        return tryAcquire(key.hashCode());
+    }
+
+    /**
+     * @param hash hash code of the key, e.g. {@link #hash(String, int, int)}
+     * @return false if the bucket of the key is empty
+     */
+    public boolean tryAcquire(int hash) {
+        int index = (hash ^ (hash >>> 16)) & mask;
+        long now = nanoClock.getAsLong() - origin;
+        while (true) {
+            long next = slots.get(index);
+            long start = Math.max(next, now);
+            if (start - now > toleranceNanos) {
+                return false;
+            }
+            if (slots.compareAndSet(index, next, start + intervalNanos)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return the hash code of the substring between the indexes, without creating it
+     */
+    public static int hash(String text, int from, int to) {
+        int hash = 0;
+        for (int i = from; i < to; i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        return hash;
+    }
+}
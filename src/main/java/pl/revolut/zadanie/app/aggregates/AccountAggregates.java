@@ -0,0 +1,215 @@
+package pl.revolut.zadanie.app.aggregates;
+
+import pl.revolut.zadanie.app.dto.AccountDto;
+import pl.revolut.zadanie.app.dto.BalanceBucketDto;
+import pl.revolut.zadanie.app.model.Account;
+import pl.revolut.zadanie.app.model.AccountListener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aggregates of all accounts kept up to date by every change, so they are read without visiting the accounts: the
+ * total money held per currency, in a striped counter of the balance changes of each currency; the accounts ranked by balance, in a concurrent skip
+ * list; and the number of accounts per balance bucket, for buckets doubling in size.
+ * <p>
+ * The ranking and the buckets are updated with the balance read after the change, one account at a time, so while
+ * accounts change concurrently they may lag behind by the changes in flight, once the changes stop they match the
+ * balances. The total counts money moved into and out of the accounts, so transfers between accounts leave it as it is.
+ * Balances in different currencies are never added up, but they are ranked as they are, without converting them.
+ */
+public final class AccountAggregates implements AccountListener {
+    /**
+     * Negative balances, zero balances, then one bucket for balances in [2^i, 2^(i+1)) for every i up to 62.
+     */
+    static final int BUCKETS = 2 + 63;
+    private final ConcurrentHashMap<String, LongAdder> totals = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Account, Ranked> ranks = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<Ranked> ranking = new ConcurrentSkipListSet<>();
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong nextId = new AtomicLong();
+
+    /**
+     * Starts tracking an account which has been opened without notifying this listener, e.g. recovered from the journal.
+     */
+    public void track(Account account) {
+        long balance = account.getBalance();
+        totalOf(account).add(balance);
+        ranks.compute(account, (key, ranked) -> rerank(account, ranked, balance));
+    }
+
+    @Override
+    public void onCreated(Account account, long balance) {
+        totalOf(account).add(balance);
+        ranks.compute(account, (key, ranked) -> rerank(account, ranked, account.getBalance()));
+    }
+
+    @Override
+    public void onDeleted(Account account) {
+        totalOf(account).add(-account.getBalance());
+        ranks.computeIfPresent(account, (key, ranked) -> {
+            ranking.remove(ranked);
+            buckets.decrementAndGet(bucketOf(ranked.balance));
+            return null;
+        });
+    }
+
+    @Override
+    public void onBalanceAdjusted(Account account, long delta) {
+        totalOf(account).add(delta);
+        refresh(account);
+    }
+
+    @Override
+    public void onTransferred(Account from, Account to, long amount) {
+        refresh(from);
+        refresh(to);
+    }
+
+    /**
+     * @return the money held by all accounts of the currency
+     */
+    public long total(String currency) {
+        var total = totals.get(currency);
+        return total == null ? 0 : total.sum();
+    }
+
+    /**
+     * @return the money held by all accounts by currency, for every currency any account has been opened in
+     */
+    public Map<String, Long> totals() {
+        var sums = new TreeMap<String, Long>();
+        totals.forEach((currency, total) -> sums.put(currency, total.sum()));
+        return sums;
+    }
+
+    public int accounts() {
+        return ranks.size();
+    }
+
+    /**
+     * @return at most limit accounts with the largest balances, largest first
+     */
+    public List<AccountDto> largest(int limit) {
+        var largest = new ArrayList<AccountDto>(Math.min(limit, 1024));
+        for (Ranked ranked : ranking) {
+            if (largest.size() == limit) {
+                break;
+            }
+            largest.add(new AccountDto(ranked.iban, ranked.balance, ranked.currency));
+        }
+        return largest;
+    }
+
+    /**
+     * @return the buckets holding any accounts, in the order of balances
+     */
+    public List<BalanceBucketDto> histogram() {
+        var histogram = new ArrayList<BalanceBucketDto>();
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            long accounts = buckets.get(bucket);
+            if (accounts > 0) {
+                histogram.add(new BalanceBucketDto(lowerBound(bucket), upperBound(bucket), accounts));
+            }
+        }
+        return histogram;
+    }
+
+    private LongAdder totalOf(Account account) {
+        var total = totals.get(account.getCurrency());
+        return total != null ? total : totals.computeIfAbsent(account.getCurrency(), currency -> new LongAdder());
+    }
+
+    private void refresh(Account account) {
+        ranks.computeIfPresent(account, (key, ranked) -> rerank(account, ranked, account.getBalance()));
+    }
+
+    /**
+     * Runs while the entry of the account is locked, so the balance read is never older than the one ranked already.
+     */
+    private Ranked rerank(Account account, Ranked ranked, long balance) {
+        if (ranked != null) {
+            if (ranked.balance == balance) {
+                return ranked;
+            }
+            ranking.remove(ranked);
+            buckets.decrementAndGet(bucketOf(ranked.balance));
+        }
+        var reranked = new Ranked(account.getIban(), account.getCurrency(), balance, ranked == null ? nextId.getAndIncrement() : ranked.id);
+        ranking.add(reranked);
+        buckets.incrementAndGet(bucketOf(balance));
+        return reranked;
+    }
+
+    static int bucketOf(long balance) {
+        if (balance < 0) {
+            return 0;
+        }
+        if (balance == 0) {
+            return 1;
+        }
+        return 2 + 63 - Long.numberOfLeadingZeros(balance);
+    }
+
+    private static long lowerBound(int bucket) {
+        switch (bucket) {
+            case 0:
+                return Long.MIN_VALUE;
+            case 1:
+                return 0;
+            default:
+                return 1L << (bucket - 2);
+        }
+    }
+
+    /**
+     * @return exclusive upper bound, except for the last bucket which includes {@link Long#MAX_VALUE}
+     */
+    private static long upperBound(int bucket) {
+        switch (bucket) {
+            case 0:
+                return 0;
+            case 1:
+                return 1;
+            case BUCKETS - 1:
+                return Long.MAX_VALUE;
+            default:
+                return 1L << (bucket - 1);
+        }
+    }
+
+    /**
+     * Balance of an account as last ranked, ordered by balance descending, then by iban and by the account, as an iban
+     * may be reused by an account opened after the previous one has been deleted.
+     */
+    private static final class Ranked implements Comparable<Ranked> {
+        private final String iban;
+        private final String currency;
+        private final long balance;
+        private final long id;
+
+        private Ranked(String iban, String currency, long balance, long id) {
+            this.iban = iban;
+            this.currency = currency;
+            this.balance = balance;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(Ranked other) {
+            int byBalance = Long.compare(other.balance, balance);
+            if (byBalance != 0) {
+                return byBalance;
+            }
+            int byIban = iban.compareTo(other.iban);
+            return byIban != 0 ? byIban : Long.compare(id, other.id);
+        }
+    }
+}
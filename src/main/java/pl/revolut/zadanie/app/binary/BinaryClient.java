@@ -0,0 +1,122 @@
+package pl.revolut.zadanie.app.binary;
+
+import pl.revolut.zadanie.app.dto.TransferDto;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+
+import static pl.revolut.zadanie.app.binary.BinaryProtocol.*;
+
+/**
+ * Blocking client of the {@link BinaryProtocol}, sending one request at a time. Buffers are reused between requests,
+ * so transfers and balance reads do not allocate. Not thread safe, use one client per thread.
+ */
+public class BinaryClient implements AutoCloseable {
+    private final SocketChannel channel;
+    private final ByteBuffer request = ByteBuffer.allocate(Integer.BYTES + MAX_REQUEST);
+    private final ByteBuffer response = ByteBuffer.allocate(MAX_RESPONSE);
+    private long nextRequestId;
+
+    public BinaryClient(String host, int port) throws IOException {
+        channel = SocketChannel.open(new InetSocketAddress(host, port));
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+    }
+
+    /**
+     * @return one of the statuses of {@link BinaryProtocol}
+     */
+    public byte transfer(String from, String to, long amount) throws IOException {
+        begin(TRANSFER);
+        putIban(request, from);
+        putIban(request, to);
+        request.putLong(amount);
+        return exchange(TRANSFER);
+    }
+
+    /**
+     * @throws IllegalStateException if the account could not be read, e.g. it does not exist
+     */
+    public long balance(String iban) throws IOException {
+        begin(GET_BALANCE);
+        putIban(request, iban);
+        byte status = exchange(GET_BALANCE);
+        if (status != OK) {
+            throw new IllegalStateException(String.format("Could not read the balance of %s, status %d", iban, status));
+        }
+        return response.getLong();
+    }
+
+    /**
+     * @param statuses filled with the status of every transfer
+     * @return status of the whole batch, {@link BinaryProtocol#ROLLED_BACK} if an all or nothing batch has failed
+     */
+    public byte batch(List<TransferDto> transfers, boolean allOrNothing, byte[] statuses) throws IOException {
+        if (transfers.isEmpty() || transfers.size() > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException(String.format("A batch has to have between 1 and %d transfers", MAX_BATCH_SIZE));
+        }
+        begin(BATCH);
+        request.put(allOrNothing ? ALL_OR_NOTHING : PER_ITEM);
+        request.putShort((short) transfers.size());
+        for (var transfer : transfers) {
+            putIban(request, transfer.from());
+            putIban(request, transfer.to());
+            request.putLong(transfer.amount());
+        }
+        byte status = exchange(BATCH);
+        if (status != MALFORMED) {
+            int count = response.getShort();
+            response.get(statuses, 0, count);
+        }
+        return status;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void begin(byte operation) {
+        request.clear();
+        request.position(Integer.BYTES);
+        request.put(operation);
+        request.putLong(++nextRequestId);
+    }
+
+    private byte exchange(byte operation) throws IOException {
+        request.putInt(0, request.position() - Integer.BYTES);
+        request.flip();
+        while (request.hasRemaining()) {
+            channel.write(request);
+        }
+        response.clear();
+        response.limit(Integer.BYTES);
+        readFully();
+        int length = response.getInt(0);
+        if (length < RESPONSE_HEADER || length > MAX_RESPONSE - Integer.BYTES) {
+            throw new IOException("Malformed response of length " + length);
+        }
+        response.limit(Integer.BYTES + length);
+        readFully();
+        response.flip();
+        response.position(Integer.BYTES);
+        byte respondedOperation = response.get();
+        long requestId = response.getLong();
+        if (respondedOperation != operation || requestId != nextRequestId) {
+            throw new IOException(String.format("Expected a response to request %d, got %d", nextRequestId, requestId));
+        }
+        return response.get();
+    }
+
+    private void readFully() throws IOException {
+        while (response.hasRemaining()) {
+            if (channel.read(response) < 0) {
+                throw new EOFException("Server closed the connection");
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package pl.revolut.zadanie.app.binary;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Fixed layout frames of the binary protocol, all numbers are big endian. Every frame starts with the length of the
+ * rest of the frame as an int, followed by the operation and a request id chosen by the client, which is echoed in the
+ * response so responses can be matched with requests sent over the same connection without waiting.
+ * <pre>
+ * request:  length:int op:byte requestId:long body
+ *   TRANSFER     from:iban to:iban amount:long
+ *   GET_BALANCE  iban:iban
+ *   BATCH        mode:byte count:short count * (from:iban to:iban amount:long)
+ * response: length:int op:byte requestId:long status:byte body
+ *   TRANSFER     -
+ *   GET_BALANCE  balance:long
+ *   BATCH        count:short count * status:byte
+ * iban:     length:byte followed by {@value #MAX_IBAN_LENGTH} ascii bytes, padded with zeros
+ * </pre>
+ */
+public final class BinaryProtocol {
+    public static final int MAX_IBAN_LENGTH = 34;
+    public static final int MAX_BATCH_SIZE = 1024;
+
+    public static final byte TRANSFER = 1;
+    public static final byte GET_BALANCE = 2;
+    public static final byte BATCH = 3;
+
+    public static final byte PER_ITEM = 0;
+    public static final byte ALL_OR_NOTHING = 1;
+
+    public static final byte OK = 0;
+    public static final byte REJECTED = 1;
+    public static final byte NOT_FOUND = 2;
+    public static final byte ROLLED_BACK = 3;
+    public static final byte BUSY = 4;
+    public static final byte MALFORMED = 5;
+    public static final byte ERROR = 6;
+
+    static final int IBAN_FIELD = 1 + MAX_IBAN_LENGTH;
+    static final int TRANSFER_FIELDS = 2 * IBAN_FIELD + Long.BYTES;
+    static final int REQUEST_HEADER = 1 + Long.BYTES;
+    static final int BATCH_HEADER = 1 + Short.BYTES;
+    static final int MAX_REQUEST = REQUEST_HEADER + BATCH_HEADER + MAX_BATCH_SIZE * TRANSFER_FIELDS;
+    static final int RESPONSE_HEADER = REQUEST_HEADER + 1;
+    static final int MAX_RESPONSE = Integer.BYTES + RESPONSE_HEADER + Short.BYTES + MAX_BATCH_SIZE;
+
+    private BinaryProtocol() {
+    }
+
+    static void putIban(ByteBuffer buffer, String iban) {
+        int length = iban.length();
+        if (length == 0 || length > MAX_IBAN_LENGTH) {
+            throw new IllegalArgumentException(String.format("Iban %s has to have between 1 and %d characters", iban, MAX_IBAN_LENGTH));
+        }
+        buffer.put((byte) length);
+        for (int i = 0; i < length; i++) {
+            char character = iban.charAt(i);
+            if (character > Byte.MAX_VALUE) {
+                throw new IllegalArgumentException(String.format("Iban %s has to be ascii", iban));
+            }
+            buffer.put((byte) character);
+        }
+        for (int i = length; i < MAX_IBAN_LENGTH; i++) {
+            buffer.put((byte) 0);
+        }
+    }
+}
@@ -0,0 +1,488 @@
+package pl.revolut.zadanie.app.binary;
+
+import io.javalin.HttpResponseException;
+import io.javalin.NotFoundResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.revolut.zadanie.app.AccountController;
+import pl.revolut.zadanie.app.ReplicationController;
+import pl.revolut.zadanie.app.TransferBatchMode;
+import pl.revolut.zadanie.app.dto.TransferDto;
+import pl.revolut.zadanie.app.dto.TransferResultDto.TransferStatus;
+import pl.revolut.zadanie.app.metrics.Metrics;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+
+import static pl.revolut.zadanie.app.binary.BinaryProtocol.*;
+
+/**
+ * Serves the {@link BinaryProtocol} on a raw TCP port, next to the JSON API and through the same
+ * {@link AccountController}. Connections are spread over worker threads, each running its own selector, and requests
+ * are handled on the worker thread that read them. Buffers are allocated once per connection and ibans are decoded
+ * through a per worker {@link IbanCache}, so a successful transfer or balance read does not allocate on the server.
+ * Transfers completed later by the transfer executor are answered once they complete, possibly out of order.
+ */
+public class BinaryServer implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(BinaryServer.class);
+    private static final String METHOD = "BINARY";
+    private static final int OUTPUT_HIGH_WATER = 64 * 1024;
+    private static final int IBAN_CACHE_CAPACITY = 4096;
+    private final AccountController accountController;
+    private final ReplicationController replicationController;
+    private final Metrics metrics;
+    private final int port;
+    private final Worker[] workers;
+    private ServerSocketChannel serverChannel;
+    private Thread acceptor;
+    private volatile boolean running;
+
+    public BinaryServer(AccountController accountController, Metrics metrics, int port, int workerCount) {
+        this(accountController, null, metrics, port, workerCount);
+    }
+
+    /**
+     * @param replicationController null if this node neither is nor has a replica, otherwise transfers are refused as
+     *                              {@link BinaryProtocol#BUSY} while this node is a replica
+     */
+    public BinaryServer(AccountController accountController, ReplicationController replicationController, Metrics metrics, int port,
+                        int workerCount) {
+        this.accountController = accountController;
+        this.replicationController = replicationController;
+        this.metrics = metrics;
+        this.port = port;
+        this.workers = new Worker[workerCount];
+    }
+
+    public void start() {
+        try {
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(port));
+            running = true;
+            for (int i = 0; i < workers.length; i++) {
+                workers[i] = new Worker(Selector.open(), "binary-worker-" + i);
+                workers[i].thread.start();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not start the binary protocol server on port " + port, e);
+        }
+        acceptor = new Thread(this::accept, "binary-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        LOG.info("Binary protocol listening on port {}", port);
+    }
+
+    private void accept() {
+        int next = 0;
+        while (running) {
+            try {
+                var channel = serverChannel.accept();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                workers[next++ % workers.length].register(channel);
+            } catch (AsynchronousCloseException e) {
+                return;
+            } catch (IOException e) {
+                LOG.warn("Could not accept a binary protocol connection", e);
+            }
+        }
+    }
+
+    /**
+     * @return port the server listens on, useful when started on port 0
+     */
+    public int port() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        try {
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+            for (Worker worker : workers) {
+                if (worker != null) {
+                    worker.selector.wakeup();
+                    worker.thread.join();
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not close the binary protocol server", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Connection {
+        private final SocketChannel channel;
+        private final ByteBuffer in = ByteBuffer.allocate(Integer.BYTES + MAX_REQUEST);
+        private ByteBuffer out = ByteBuffer.allocate(2 * OUTPUT_HIGH_WATER);
+        private SelectionKey key;
+
+        private Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    private final class Worker implements Runnable {
+        private final Selector selector;
+        private final Thread thread;
+        private final IbanCache ibans = new IbanCache(IBAN_CACHE_CAPACITY);
+        private final Queue<SocketChannel> accepted = new ConcurrentLinkedQueue<>();
+        private final Queue<Runnable> completions = new ConcurrentLinkedQueue<>();
+
+        private Worker(Selector selector, String name) {
+            this.selector = selector;
+            this.thread = new Thread(this, name);
+            this.thread.setDaemon(true);
+        }
+
+        private void register(SocketChannel channel) {
+            accepted.add(channel);
+            selector.wakeup();
+        }
+
+        private void complete(Runnable completion) {
+            completions.add(completion);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    selector.select();
+                    registerAccepted();
+                    runCompletions();
+                    var selected = selector.selectedKeys().iterator();
+                    while (selected.hasNext()) {
+                        var key = selected.next();
+                        selected.remove();
+                        handle(key);
+                    }
+                }
+            } catch (IOException e) {
+                LOG.error("Binary protocol worker {} failed", thread.getName(), e);
+            } finally {
+                closeAll();
+            }
+        }
+
+        private void registerAccepted() throws IOException {
+            SocketChannel channel;
+            while ((channel = accepted.poll()) != null) {
+                var connection = new Connection(channel);
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            }
+        }
+
+        private void runCompletions() {
+            Runnable completion;
+            while ((completion = completions.poll()) != null) {
+                completion.run();
+            }
+        }
+
+        private void handle(SelectionKey key) {
+            var connection = (Connection) key.attachment();
+            if (!key.isValid()) {
+                return;
+            }
+            try {
+                if (key.isValid() && key.isWritable()) {
+                    flush(connection);
+                }
+                if (key.isValid() && key.isReadable() && connection.channel.read(connection.in) < 0) {
+                    close(connection);
+                    return;
+                }
+                process(connection);
+                if (connection.channel.isOpen()) {
+                    flush(connection);
+                }
+            } catch (IOException e) {
+                close(connection);
+            }
+        }
+
+        private void process(Connection connection) {
+            var in = connection.in;
+            in.flip();
+            while (in.remaining() >= Integer.BYTES && connection.out.position() < OUTPUT_HIGH_WATER) {
+                int length = in.getInt(in.position());
+                if (length < REQUEST_HEADER || length > MAX_REQUEST) {
+                    close(connection);
+                    return;
+                }
+                if (in.remaining() < Integer.BYTES + length) {
+                    break;
+                }
+                int start = in.position() + Integer.BYTES;
+                in.position(start + length);
+                dispatch(connection, in, start, length);
+            }
+            in.compact();
+        }
+
+        private void dispatch(Connection connection, ByteBuffer in, int start, int length) {
+            byte operation = in.get(start);
+            long requestId = in.getLong(start + 1);
+            int body = start + REQUEST_HEADER;
+            long startedAt = System.nanoTime();
+            switch (operation) {
+                case TRANSFER:
+                    if (length == REQUEST_HEADER + TRANSFER_FIELDS) {
+                        transfer(connection, requestId, in, body, startedAt);
+                        return;
+                    }
+                    break;
+                case GET_BALANCE:
+                    if (length == REQUEST_HEADER + IBAN_FIELD) {
+                        getBalance(connection, requestId, in, body, startedAt);
+                        return;
+                    }
+                    break;
+                case BATCH:
+                    int count = length > REQUEST_HEADER + BATCH_HEADER ? in.getShort(body + 1) : -1;
+                    if (count > 0 && count <= MAX_BATCH_SIZE && length == REQUEST_HEADER + BATCH_HEADER + count * TRANSFER_FIELDS) {
+                        batch(connection, requestId, in, body, count, startedAt);
+                        return;
+                    }
+                    break;
+                default:
+            }
+            respond(connection, operation, requestId, MALFORMED);
+        }
+
+        private void transfer(Connection connection, long requestId, ByteBuffer in, int body, long startedAt) {
+            var from = ibans.decode(in, body);
+            var to = ibans.decode(in, body + IBAN_FIELD);
+            if (from == null || to == null) {
+                respond(connection, TRANSFER, requestId, MALFORMED);
+                return;
+            }
+            CompletableFuture<Void> result;
+            try {
+                requireWritable();
+                result = accountController.transferFoundsBetweenAccountsAsync(from, to, in.getLong(body + 2 * IBAN_FIELD));
+            } catch (RuntimeException e) {
+                transferred(connection, requestId, statusOf(e), startedAt);
+                return;
+            }
+            if (!result.isDone()) {
+                result.whenComplete((ignored, error) -> complete(() -> {
+                    transferred(connection, requestId, error == null ? OK : statusOf(error), startedAt);
+                    flushQuietly(connection);
+                }));
+            } else if (result.isCompletedExceptionally()) {
+                transferred(connection, requestId, statusOf(result.handle((ignored, error) -> error).join()), startedAt);
+            } else {
+                transferred(connection, requestId, OK, startedAt);
+            }
+        }
+
+        private void transferred(Connection connection, long requestId, byte status, long startedAt) {
+            respond(connection, TRANSFER, requestId, status);
+            metrics.recordRequest(METHOD, "transfer", httpStatusOf(status), System.nanoTime() - startedAt);
+        }
+
+        private void getBalance(Connection connection, long requestId, ByteBuffer in, int body, long startedAt) {
+            var iban = ibans.decode(in, body);
+            byte status;
+            long balance = 0;
+            if (iban == null) {
+                status = MALFORMED;
+            } else {
+                try {
+                    balance = accountController.balanceOf(iban);
+                    status = OK;
+                } catch (RuntimeException e) {
+                    status = statusOf(e);
+                }
+            }
+            var out = reserve(connection, Long.BYTES);
+            writeHeader(out, GET_BALANCE, requestId, status, Long.BYTES);
+            out.putLong(balance);
+            metrics.recordRequest(METHOD, "balance", httpStatusOf(status), System.nanoTime() - startedAt);
+        }
+
+        private void batch(Connection connection, long requestId, ByteBuffer in, int body, int count, long startedAt) {
+            var mode = in.get(body) == ALL_OR_NOTHING ? TransferBatchMode.ALL_OR_NOTHING : TransferBatchMode.PER_ITEM;
+            var transfers = new ArrayList<TransferDto>(count);
+            for (int i = 0, offset = body + BATCH_HEADER; i < count; i++, offset += TRANSFER_FIELDS) {
+                var from = ibans.decode(in, offset);
+                var to = ibans.decode(in, offset + IBAN_FIELD);
+                if (from == null || to == null) {
+                    respond(connection, BATCH, requestId, MALFORMED);
+                    return;
+                }
+                transfers.add(new TransferDto(from, to, in.getLong(offset + 2 * IBAN_FIELD)));
+            }
+            try {
+                requireWritable();
+            } catch (RuntimeException e) {
+                byte status = statusOf(e);
+                respond(connection, BATCH, requestId, status);
+                metrics.recordRequest(METHOD, "batch", httpStatusOf(status), System.nanoTime() - startedAt);
+                return;
+            }
+            var results = accountController.transferFoundsInBatch(transfers, mode);
+            var out = reserve(connection, Short.BYTES + count);
+            int statusPosition = out.position() + Integer.BYTES + REQUEST_HEADER;
+            writeHeader(out, BATCH, requestId, OK, Short.BYTES + count);
+            out.putShort((short) count);
+            byte status = OK;
+            for (var result : results) {
+                byte itemStatus = statusOf(result.status());
+                if (itemStatus == ROLLED_BACK) {
+                    status = ROLLED_BACK;
+                }
+                out.put(itemStatus);
+            }
+            out.put(statusPosition, status);
+            metrics.recordRequest(METHOD, "batch", httpStatusOf(status), System.nanoTime() - startedAt);
+        }
+
+        private void requireWritable() {
+            if (replicationController != null) {
+                replicationController.requireWritable();
+            }
+        }
+
+        private void respond(Connection connection, byte operation, long requestId, byte status) {
+            writeHeader(reserve(connection, 0), operation, requestId, status, 0);
+        }
+
+        private void writeHeader(ByteBuffer out, byte operation, long requestId, byte status, int bodyLength) {
+            out.putInt(RESPONSE_HEADER + bodyLength);
+            out.put(operation);
+            out.putLong(requestId);
+            out.put(status);
+        }
+
+        /**
+         * Responses are normally bounded by {@link #OUTPUT_HIGH_WATER}, only late transfer completions can go
+         * beyond it, in which case the output buffer grows.
+         */
+        private ByteBuffer reserve(Connection connection, int bodyLength) {
+            int needed = Integer.BYTES + RESPONSE_HEADER + bodyLength;
+            if (connection.out.remaining() < needed) {
+                var grown = ByteBuffer.allocate(Math.max(2 * connection.out.capacity(), connection.out.position() + needed));
+                connection.out.flip();
+                grown.put(connection.out);
+                connection.out = grown;
+            }
+            return connection.out;
+        }
+
+        private void flush(Connection connection) throws IOException {
+            var out = connection.out;
+            if (out.position() > 0) {
+                out.flip();
+                connection.channel.write(out);
+                out.compact();
+            }
+            if (!connection.key.isValid()) {
+                return;
+            }
+            int interest = 0;
+            if (out.position() > 0) {
+                interest |= SelectionKey.OP_WRITE;
+            }
+            if (out.position() < OUTPUT_HIGH_WATER && connection.in.hasRemaining()) {
+                interest |= SelectionKey.OP_READ;
+            }
+            connection.key.interestOps(interest);
+        }
+
+        private void flushQuietly(Connection connection) {
+            if (!connection.channel.isOpen()) {
+                return;
+            }
+            try {
+                flush(connection);
+            } catch (IOException e) {
+                close(connection);
+            }
+        }
+
+        private void close(Connection connection) {
+            connection.key.cancel();
+            try {
+                connection.channel.close();
+            } catch (IOException e) {
+                LOG.warn("Could not close a binary protocol connection", e);
+            }
+        }
+
+        private void closeAll() {
+            for (var key : selector.keys()) {
+                close((Connection) key.attachment());
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                LOG.warn("Could not close the selector of {}", thread.getName(), e);
+            }
+        }
+    }
+
+    private static byte statusOf(Throwable error) {
+        var cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof NotFoundResponse) {
+            return NOT_FOUND;
+        }
+        if (cause instanceof HttpResponseException) {
+            int status = ((HttpResponseException) cause).getStatus();
+            return status == 429 || status == 503 ? BUSY : status < 500 ? REJECTED : ERROR;
+        }
+        if (cause instanceof RejectedExecutionException) {
+            return BUSY;
+        }
+        LOG.error("Binary protocol request failed", cause);
+        return ERROR;
+    }
+
+    private static byte statusOf(TransferStatus status) {
+        switch (status) {
+            case COMMITTED:
+                return OK;
+            case NOT_FOUND:
+                return NOT_FOUND;
+            case ROLLED_BACK:
+                return ROLLED_BACK;
+            default:
+                return REJECTED;
+        }
+    }
+
+    private static int httpStatusOf(byte status) {
+        switch (status) {
+            case OK:
+                return 200;
+            case NOT_FOUND:
+                return 404;
+            case BUSY:
+                return 429;
+            case ERROR:
+                return 500;
+            default:
+                return 400;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package pl.revolut.zadanie.app.binary;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static pl.revolut.zadanie.app.binary.BinaryProtocol.MAX_IBAN_LENGTH;
+
+/**
+ * Direct mapped cache of decoded ibans, so decoding an iban seen recently returns the same String instance, with its
+ * hash code already computed, instead of allocating a new one. Owned by a single thread.
+ */
+final class IbanCache {
+    private final String[] entries;
+
+    IbanCache(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity has to be a power of two");
+        }
+        entries = new String[capacity];
+    }
+
+    /**
+     * @return iban encoded at the given offset, null if it is not a valid iban field
+     */
+    String decode(ByteBuffer buffer, int offset) {
+        int length = buffer.get(offset) & 0xFF;
+        if (length == 0 || length > MAX_IBAN_LENGTH) {
+            return null;
+        }
+        int hash = 0;
+        for (int i = 1; i <= length; i++) {
+            byte character = buffer.get(offset + i);
+            if (character <= 0) {
+                return null;
+            }
+            hash = 31 * hash + character;
+        }
+        int slot = (hash ^ (hash >>> 16)) & (entries.length - 1);
+        var cached = entries[slot];
+        if (cached != null && matches(cached, buffer, offset, length)) {
+            return cached;
+        }
+        var bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(offset + 1 + i);
+        }
+        var iban = new String(bytes, StandardCharsets.US_ASCII);
+        entries[slot] = iban;
+        return iban;
+    }
+
+    private static boolean matches(String cached, ByteBuffer buffer, int offset, int length) {
+        if (cached.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (cached.charAt(i) != buffer.get(offset + 1 + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,318 @@
+package pl.revolut.zadanie.app.bulk;
+
+import pl.revolut.zadanie.app.fx.FxRates;
+import pl.revolut.zadanie.app.model.Account;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Files of accounts for bulk imports and exports, in one of the {@link AccountFileFormat}s:
+ * <ul>
+ * <li>csv - an {@code iban,balance} line per account, optionally after an {@code iban,balance} header, or an
+ * {@code iban,currency,balance} line per account after an {@code iban,currency,balance} header, the balance is
+ * whatever follows the last comma, so ibans can't contain line breaks</li>
+ * <li>binary - {@code magic:int recordBytes:int} followed by records of {@code recordBytes} bytes,
+ * {@code ibanLength:short iban:utf8 padding currency:ascii[3] balance:long} each, files written before accounts had
+ * currencies have another magic and no currency field</li>
+ * </ul>
+ * Accounts of files without currencies are in the {@link Account#DEFAULT_CURRENCY}, files are always written with
+ * currencies. Files are memory mapped in ranges of at most {@value RANGE_BYTES} bytes which are parsed in parallel, a file which
+ * can't be parsed in full is rejected as a whole.
+ */
+public final class AccountFile {
+    static final int MAGIC = 0x52564c41;
+    static final int CURRENCY_MAGIC = 0x52564c42;
+    private static final int HEADER_BYTES = 8;
+    private static final int CURRENCY_BYTES = 3;
+    private static final int RECORD_OVERHEAD = Short.BYTES + Long.BYTES;
+    private static final int RANGE_BYTES = 32 << 20;
+    private static final int MAX_LINE_BYTES = 4096;
+    private static final byte[] CSV_HEADER = "iban,balance".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CSV_CURRENCY_HEADER = "iban,currency,balance".getBytes(StandardCharsets.US_ASCII);
+
+    private AccountFile() {
+    }
+
+    public static ParsedAccounts read(Path file, AccountFileFormat format) throws IOException {
+        return read(file, format, RANGE_BYTES);
+    }
+
+    static ParsedAccounts read(Path file, AccountFileFormat format, int rangeBytes) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            var chunks = format == AccountFileFormat.CSV ? readCsv(channel, rangeBytes) : readBinary(channel, rangeBytes);
+            return new ParsedAccounts(chunks);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Writes the accounts as they are while being written, which is not a single point in time if they change
+     * meanwhile.
+     */
+    public static void write(OutputStream target, AccountFileFormat format, Collection<Account> accounts) throws IOException {
+        var out = new DataOutputStream(new BufferedOutputStream(target, 1 << 16));
+        if (format == AccountFileFormat.CSV) {
+            writeCsv(out, accounts);
+        } else {
+            writeBinary(out, new ArrayList<>(accounts));
+        }
+        out.flush();
+    }
+
+    private static List<ParsedAccounts.Chunk> readCsv(FileChannel channel, int rangeBytes) throws IOException {
+        long size = channel.size();
+        var firstLine = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, CSV_CURRENCY_HEADER.length + 1));
+        int headerEnd = indexOf(firstLine, (byte) '\n', 0);
+        headerEnd = headerEnd < 0 ? firstLine.limit() : headerEnd;
+        boolean withCurrencies = isHeader(firstLine, 0, headerEnd > 0 && firstLine.get(headerEnd - 1) == '\r' ? headerEnd - 1 : headerEnd,
+                CSV_CURRENCY_HEADER);
+        var starts = new ArrayList<Long>();
+        for (long start = 0; start < size; start += rangeBytes) {
+            starts.add(start);
+        }
+        return starts.parallelStream()
+                .map(start -> {
+                    try {
+                        return parseCsv(channel, start, Math.min(size, start + rangeBytes), size, withCurrencies);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                })
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Parses the lines starting within the range, the line running into the range belongs to the previous one.
+     * The byte before the range is mapped too, to tell whether a line starts right at the range.
+     */
+    private static ParsedAccounts.Chunk parseCsv(FileChannel channel, long start, long end, long size, boolean withCurrencies)
+            throws IOException {
+        long mapStart = start == 0 ? 0 : start - 1;
+        long mapEnd = Math.min(size, end + MAX_LINE_BYTES);
+        var buffer = channel.map(FileChannel.MapMode.READ_ONLY, mapStart, mapEnd - mapStart);
+        var chunk = new ParsedAccounts.Chunk((int) ((end - start) / 32) + 1);
+        var scratch = new byte[MAX_LINE_BYTES];
+        int position = start == 0 ? 0 : indexOf(buffer, (byte) '\n', 0) + 1;
+        if (position == 0 && start > 0) {
+            return chunk;
+        }
+        int owned = (int) (end - mapStart);
+        while (position < owned) {
+            int lineEnd = indexOf(buffer, (byte) '\n', position);
+            if (lineEnd < 0) {
+                if (mapEnd < size) {
+                    throw new IOException(String.format("Line at byte %d is longer than %d bytes", mapStart + position, MAX_LINE_BYTES));
+                }
+                lineEnd = buffer.limit();
+            }
+            if (lineEnd - position > MAX_LINE_BYTES) {
+                throw new IOException(String.format("Line at byte %d is longer than %d bytes", mapStart + position, MAX_LINE_BYTES));
+            }
+            parseLine(buffer, position, lineEnd, mapStart, withCurrencies, chunk, scratch);
+            position = lineEnd + 1;
+        }
+        return chunk;
+    }
+
+    private static void parseLine(MappedByteBuffer buffer, int start, int end, long offset, boolean withCurrencies,
+                                  ParsedAccounts.Chunk chunk, byte[] scratch) throws IOException {
+        if (end > start && buffer.get(end - 1) == '\r') {
+            end--;
+        }
+        if (end == start || (offset + start == 0 && isHeader(buffer, start, end, withCurrencies ? CSV_CURRENCY_HEADER : CSV_HEADER))) {
+            return;
+        }
+        int comma = lastIndexOf(buffer, (byte) ',', start, end);
+        int ibanEnd = withCurrencies ? lastIndexOf(buffer, (byte) ',', start, comma) : comma;
+        if (ibanEnd <= start || comma == end - 1) {
+            throw new IOException(String.format(withCurrencies ? "Expected iban,currency,balance at byte %d" : "Expected iban,balance at byte %d",
+                    offset + start));
+        }
+        for (int i = start; i < ibanEnd; i++) {
+            scratch[i - start] = buffer.get(i);
+        }
+        var iban = new String(scratch, 0, ibanEnd - start, StandardCharsets.UTF_8);
+        var currency = withCurrencies ? parseCurrency(buffer, ibanEnd + 1, comma, offset) : null;
+        chunk.add(iban, currency, parseBalance(buffer, comma + 1, end, offset));
+    }
+
+    private static boolean isHeader(MappedByteBuffer buffer, int start, int end, byte[] header) {
+        if (end - start != header.length) {
+            return false;
+        }
+        for (int i = 0; i < header.length; i++) {
+            if (buffer.get(start + i) != header[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String parseCurrency(ByteBuffer buffer, int start, int end, long offset) throws IOException {
+        if (end - start != CURRENCY_BYTES) {
+            throw new IOException(String.format("Expected a currency at byte %d", offset + start));
+        }
+        var code = new byte[CURRENCY_BYTES];
+        for (int i = 0; i < CURRENCY_BYTES; i++) {
+            code[i] = buffer.get(start + i);
+        }
+        try {
+            return FxRates.currencyCode(new String(code, StandardCharsets.US_ASCII));
+        } catch (IllegalArgumentException e) {
+            throw new IOException(String.format("%s at byte %d", e.getMessage(), offset + start));
+        }
+    }
+
+    /**
+     * @return index of the last occurrence before the end, start - 1 if none
+     */
+    private static int lastIndexOf(ByteBuffer buffer, byte value, int start, int end) {
+        int index = end - 1;
+        while (index >= start && buffer.get(index) != value) {
+            index--;
+        }
+        return index;
+    }
+
+    private static long parseBalance(MappedByteBuffer buffer, int start, int end, long offset) throws IOException {
+        boolean negative = buffer.get(start) == '-';
+        int position = negative ? start + 1 : start;
+        if (position == end) {
+            throw new IOException(String.format("Expected a balance at byte %d", offset + start));
+        }
+        long balance = 0;
+        try {
+            for (; position < end; position++) {
+                int digit = buffer.get(position) - '0';
+                if (digit < 0 || digit > 9) {
+                    throw new IOException(String.format("Expected a balance at byte %d", offset + start));
+                }
+                balance = Math.addExact(Math.multiplyExact(balance, 10), negative ? -digit : digit);
+            }
+        } catch (ArithmeticException e) {
+            throw new IOException(String.format("Balance out of range at byte %d", offset + start));
+        }
+        return balance;
+    }
+
+    private static int indexOf(MappedByteBuffer buffer, byte value, int from) {
+        for (int i = from; i < buffer.limit(); i++) {
+            if (buffer.get(i) == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static List<ParsedAccounts.Chunk> readBinary(FileChannel channel, int rangeBytes) throws IOException {
+        long size = channel.size();
+        var header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, HEADER_BYTES));
+        int magic = size < HEADER_BYTES ? 0 : header.getInt(0);
+        if (magic != MAGIC && magic != CURRENCY_MAGIC) {
+            throw new IOException("Not a binary account file");
+        }
+        int currencyBytes = magic == CURRENCY_MAGIC ? CURRENCY_BYTES : 0;
+        int recordBytes = header.getInt(Integer.BYTES);
+        if (recordBytes < RECORD_OVERHEAD + currencyBytes || (size - HEADER_BYTES) % recordBytes != 0) {
+            throw new IOException("Binary account file is truncated or corrupted");
+        }
+        long records = (size - HEADER_BYTES) / recordBytes;
+        long recordsPerRange = Math.max(1, rangeBytes / recordBytes);
+        var firstRecords = new ArrayList<Long>();
+        for (long first = 0; first < records; first += recordsPerRange) {
+            firstRecords.add(first);
+        }
+        return firstRecords.parallelStream()
+                .map(first -> {
+                    try {
+                        return parseBinary(channel, recordBytes, currencyBytes, first, (int) Math.min(recordsPerRange, records - first));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                })
+                .collect(Collectors.toList());
+    }
+
+    private static ParsedAccounts.Chunk parseBinary(FileChannel channel, int recordBytes, int currencyBytes, long first, int count)
+            throws IOException {
+        long start = HEADER_BYTES + first * recordBytes;
+        var buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, (long) count * recordBytes);
+        var chunk = new ParsedAccounts.Chunk(count);
+        var scratch = new byte[recordBytes];
+        for (int record = 0; record < count; record++) {
+            int position = record * recordBytes;
+            int ibanBytes = Short.toUnsignedInt(buffer.getShort(position));
+            if (ibanBytes > recordBytes - RECORD_OVERHEAD - currencyBytes) {
+                throw new IOException(String.format("Corrupted record at byte %d", start + position));
+            }
+            buffer.position(position + Short.BYTES);
+            buffer.get(scratch, 0, ibanBytes);
+            int balancePosition = position + recordBytes - Long.BYTES;
+            var currency = currencyBytes == 0 ? null : parseCurrency(buffer, balancePosition - currencyBytes, balancePosition, start);
+            chunk.add(new String(scratch, 0, ibanBytes, StandardCharsets.UTF_8), currency, buffer.getLong(balancePosition));
+        }
+        return chunk;
+    }
+
+    private static void writeCsv(DataOutputStream out, Collection<Account> accounts) throws IOException {
+        out.write(CSV_CURRENCY_HEADER);
+        out.write('\n');
+        for (Account account : accounts) {
+            var iban = account.getIban();
+            if (iban.indexOf('\n') >= 0 || iban.indexOf('\r') >= 0) {
+                throw new IOException(String.format("Iban %s can't be written to csv", iban));
+            }
+            out.write(iban.getBytes(StandardCharsets.UTF_8));
+            out.write(',');
+            out.write(currencyOf(account));
+            out.write(',');
+            out.write(Long.toString(account.getBalance()).getBytes(StandardCharsets.US_ASCII));
+            out.write('\n');
+        }
+    }
+
+    private static void writeBinary(DataOutputStream out, List<Account> accounts) throws IOException {
+        int maxIbanBytes = 0;
+        for (Account account : accounts) {
+            maxIbanBytes = Math.max(maxIbanBytes, account.getIban().getBytes(StandardCharsets.UTF_8).length);
+        }
+        if (maxIbanBytes > 0xFFFF) {
+            throw new IOException("Ibans longer than 65535 bytes can't be written to a binary file");
+        }
+        int recordBytes = RECORD_OVERHEAD + CURRENCY_BYTES + maxIbanBytes;
+        var padding = new byte[maxIbanBytes];
+        out.writeInt(CURRENCY_MAGIC);
+        out.writeInt(recordBytes);
+        for (Account account : accounts) {
+            var iban = account.getIban().getBytes(StandardCharsets.UTF_8);
+            out.writeShort(iban.length);
+            out.write(iban);
+            out.write(padding, 0, maxIbanBytes - iban.length);
+            out.write(currencyOf(account));
+            out.writeLong(account.getBalance());
+        }
+    }
+
+    private static byte[] currencyOf(Account account) throws IOException {
+        var currency = account.getCurrency().getBytes(StandardCharsets.US_ASCII);
+        if (currency.length != CURRENCY_BYTES) {
+            throw new IOException(String.format("Currency %s of account %s is not an ISO 4217 code", account.getCurrency(), account.getIban()));
+        }
+        return currency;
+    }
+}
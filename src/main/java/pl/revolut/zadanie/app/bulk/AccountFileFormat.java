@@ -0,0 +1,39 @@
+package pl.revolut.zadanie.app.bulk;
+
+import java.nio.file.Path;
+
+/**
+ * Formats of the files read and written by {@link AccountFile}.
+ */
+public enum AccountFileFormat {
+    CSV("csv", "text/csv"),
+    BINARY("binary", "application/octet-stream");
+
+    private final String name;
+    private final String contentType;
+
+    AccountFileFormat(String name, String contentType) {
+        this.name = name;
+        this.contentType = contentType;
+    }
+
+    public static AccountFileFormat fromName(String name) {
+        for (AccountFileFormat format : values()) {
+            if (format.name.equalsIgnoreCase(name)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException(String.format("Unknown account file format %s, expected one of csv, binary", name));
+    }
+
+    /**
+     * @return binary for files ending with .bin, csv for any other
+     */
+    public static AccountFileFormat forFile(Path file) {
+        return file.getFileName().toString().endsWith(".bin") ? BINARY : CSV;
+    }
+
+    public String contentType() {
+        return contentType;
+    }
+}
@@ -0,0 +1,70 @@
+package pl.revolut.zadanie.app.bulk;
+
+import pl.revolut.zadanie.app.dto.ImportResultDto;
+import pl.revolut.zadanie.app.model.Account;
+import pl.revolut.zadanie.app.model.AccountListener;
+import pl.revolut.zadanie.app.model.BalanceEngine;
+import pl.revolut.zadanie.app.store.AccountStore;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Creates the accounts read from an {@link AccountFile}, chunks in parallel. Accounts which already exist are left as
+ * they are, so an import can be repeated. Every account created is reported to the listener, a batch of them at a time,
+ * e.g. so that the journal records them.
+ */
+public final class AccountImporter {
+    private static final int ACCOUNTS_PER_CHANGE = 4096;
+    private final AccountStore store;
+    private final BalanceEngine balanceEngine;
+    private final AccountListener accountListener;
+    private final Predicate<String> owned;
+
+    /**
+     * @param owned accepts the ibans of accounts this node owns, the other ones are skipped
+     */
+    public AccountImporter(AccountStore store, BalanceEngine balanceEngine, AccountListener accountListener, Predicate<String> owned) {
+        this.store = store;
+        this.balanceEngine = balanceEngine;
+        this.accountListener = accountListener;
+        this.owned = owned;
+    }
+
+    public ImportResultDto importAccounts(ParsedAccounts accounts) {
+        long started = System.nanoTime();
+        var created = new LongAdder();
+        var existing = new LongAdder();
+        var notOwned = new LongAdder();
+        accounts.chunks().parallelStream().forEach(chunk -> {
+            for (int from = 0; from < chunk.size; from += ACCOUNTS_PER_CHANGE) {
+                accountListener.beforeChange();
+                try {
+                    for (int i = from; i < Math.min(chunk.size, from + ACCOUNTS_PER_CHANGE); i++) {
+                        var iban = chunk.ibans[i];
+                        var currency = chunk.currencies[i] == null ? Account.DEFAULT_CURRENCY : chunk.currencies[i];
+                        var balance = chunk.balances[i];
+                        if (!owned.test(iban)) {
+                            notOwned.increment();
+                        } else if (store.putIfAbsent(iban, () -> create(iban, currency, balance))) {
+                            created.increment();
+                        } else {
+                            existing.increment();
+                        }
+                    }
+                } finally {
+                    accountListener.afterChange();
+                }
+            }
+        });
+        return new ImportResultDto(created.sum(), existing.sum(), notOwned.sum(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
+
+    private Account create(String iban, String currency, long balance) {
+        var account = new Account(balance, iban, currency, balanceEngine, accountListener);
+        accountListener.onCreated(account, balance);
+        return account;
+    }
+}
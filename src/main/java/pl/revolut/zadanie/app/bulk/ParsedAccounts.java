@@ -0,0 +1,57 @@
+package pl.revolut.zadanie.app.bulk;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Accounts read from an {@link AccountFile}, in the chunks they were parsed in.
+ */
+public final class ParsedAccounts {
+    private final List<Chunk> chunks;
+    private final int count;
+
+    ParsedAccounts(List<Chunk> chunks) {
+        this.chunks = chunks;
+        this.count = chunks.stream().mapToInt(chunk -> chunk.size).sum();
+    }
+
+    public int count() {
+        return count;
+    }
+
+    List<Chunk> chunks() {
+        return chunks;
+    }
+
+    static final class Chunk {
+        String[] ibans;
+        /**
+         * Null for an account in the default currency.
+         */
+        String[] currencies;
+        long[] balances;
+        int size;
+
+        Chunk(int capacity) {
+            ibans = new String[capacity];
+            currencies = new String[capacity];
+            balances = new long[capacity];
+        }
+
+        void add(String iban, long balance) {
+            add(iban, null, balance);
+        }
+
+        void add(String iban, String currency, long balance) {
+            if (size == ibans.length) {
+                ibans = Arrays.copyOf(ibans, size * 2);
+                currencies = Arrays.copyOf(currencies, size * 2);
+                balances = Arrays.copyOf(balances, size * 2);
+            }
+            ibans[size] = iban;
+            currencies[size] = currency;
+            balances[size] = balance;
+            size++;
+        }
+    }
+}
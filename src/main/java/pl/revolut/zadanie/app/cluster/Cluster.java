@@ -0,0 +1,413 @@
+package pl.revolut.zadanie.app.cluster;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.javalin.BadRequestResponse;
+import io.javalin.Context;
+import io.javalin.HttpResponseException;
+import io.javalin.NotFoundResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.revolut.zadanie.app.admission.AdmissionControl;
+import pl.revolut.zadanie.app.dto.CreditDto;
+import pl.revolut.zadanie.app.model.Account;
+import pl.revolut.zadanie.app.store.AccountStore;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * One node of a cluster splitting the accounts between nodes with a {@link ConsistentHashRing} of their ibans. Every
+ * node must be started with the same list of nodes.
+ * <p>
+ * A transfer between accounts of two nodes runs as a saga coordinated by the node owning the source account: it
+ * records its intent, debits the source account, records the debit and sends the credit to the node owning the
+ * target account, the intent and the debit forced to the {@link IntentLog} before the next step. The target node applies a credit
+ * once per transaction id and records it before acknowledging it, so a credit which was not acknowledged is sent
+ * again, in the background and after a restart, until the target node either applies it or rejects it. A rejected
+ * credit, e.g. to an account which does not exist, is compensated by crediting the source account back.
+ * <p>
+ * Every credit also tells the lowest sequence of the transfers of its run the source node has not settled, i.e. not
+ * had acknowledged, compensated or aborted, so the target node remembers the ids of the credits it has applied only
+ * for as long as they may be sent again, see {@link ReceivedCredits}.
+ * <p>
+ * Until its credit is applied the money of a transfer is on neither account, so the sum of all balances is only
+ * conserved once every node has settled its intents. Intents are as durable as the balances they touch only with the
+ * journal enabled, and the journal and the intent log are forced separately: a crash right after a debit reached the
+ * journal and before the intent log recorded it loses the transfer.
+ */
+public class Cluster implements Partitions, AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(Cluster.class);
+    private static final ObjectWriter CREDIT_WRITER = new ObjectMapper().writerFor(CreditDto.class);
+    private static final Map<String, String> JSON_CONTENT = Map.of("Content-Type", "application/json");
+    private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+    private static final int MISDIRECTED_REQUEST = 421;
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final int SERVICE_UNAVAILABLE = 503;
+    private static final LongConsumer NO_VALIDATION = newBalance -> {
+    };
+    static final String CREDITS_PATH = "/cluster/credits";
+
+    private final ConsistentHashRing ring;
+    private final String self;
+    private final AccountStore store;
+    private final NodeClient client;
+    private final IntentLog log;
+    private final ReceivedCredits received;
+    private final Map<String, CompletableFuture<Void>> applying = new ConcurrentHashMap<>();
+    private final Map<String, Intent> undelivered = new ConcurrentHashMap<>();
+    private final Map<String, NavigableSet<Long>> unsettled = new HashMap<>();
+    private final String txIdPrefix;
+    private final AtomicLong txSequence = new AtomicLong();
+    private final ScheduledExecutorService redelivery;
+
+    Cluster(ConsistentHashRing ring, String self, AccountStore store, NodeClient client, IntentLog log, long redeliveryIntervalMillis) {
+        int index = ring.nodes().indexOf(self);
+        if (index < 0) {
+            throw new IllegalArgumentException(String.format("Node %s is not one of the cluster nodes %s", self, ring.nodes()));
+        }
+        this.ring = ring;
+        this.self = self;
+        this.store = store;
+        this.client = client;
+        this.log = log;
+        txIdPrefix = index + "-" + Long.toString(System.currentTimeMillis(), Character.MAX_RADIX) + "-";
+        received = log.received();
+        for (Intent intent : log.unsettled()) {
+            undelivered.put(intent.txId(), intent);
+            unsettled(intent.txId());
+        }
+        redelivery = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "cluster-redelivery");
+            thread.setDaemon(true);
+            return thread;
+        });
+        redelivery.scheduleWithFixedDelay(this::redeliver, redeliveryIntervalMillis, redeliveryIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Credits which were not acknowledged before the previous run of this node stopped are sent again.
+     *
+     * @param self            base url of this node, one of the nodes
+     * @param nodes           base urls of every node, e.g. {@code http://localhost:8081}
+     * @param virtualNodes    points on the ring per node
+     * @param intentDirectory directory of the intent log of this node
+     */
+    public static Cluster open(String self, List<String> nodes, int virtualNodes, AccountStore store, Path intentDirectory,
+                               int timeoutMillis, long redeliveryIntervalMillis) {
+        return new Cluster(new ConsistentHashRing(nodes, virtualNodes), self, store, new NodeClient(self, timeoutMillis),
+                IntentLog.open(intentDirectory), redeliveryIntervalMillis);
+    }
+
+    @Override
+    public String remoteOwnerOf(String iban) {
+        var owner = ring.ownerOf(iban);
+        return owner.equals(self) ? null : owner;
+    }
+
+    @Override
+    public CompletableFuture<Void> forwardTransfer(String owner, String ibanFrom, String ibanTo, long amount) {
+        var path = "/accounts/transfer/" + amount + "/from/" + encode(ibanFrom) + "/to/" + encode(ibanTo);
+        var response = call(owner, "GET", path, Map.of(), null);
+        if (response.status() >= 300) {
+            throw failure(response);
+        }
+        return DONE;
+    }
+
+    /**
+     * Completes once the credit has been applied or, if the target node cannot apply it now, once the debit has been
+     * recorded and the credit left to be sent again in the background.
+     */
+    @Override
+    public CompletableFuture<Void> transferOut(Account from, String owner, String ibanTo, long amount, LongConsumer newBalanceValidator) {
+        var intent = new Intent(nextTxId(), from.getIban(), ibanTo, amount);
+        log.started(intent);
+        try {
+            from.debitTransfer(ibanTo, amount, amount, false, newBalanceValidator);
+        } catch (RuntimeException e) {
+            log.aborted(intent.txId());
+            settled(intent.txId());
+            throw e;
+        }
+        log.debited(intent.txId());
+        deliver(intent, owner);
+        return DONE;
+    }
+
+    /**
+     * Applies a credit sent by the node owning the source account of a transfer, a credit sent again is acknowledged
+     * without being applied twice, and only once the credit sent first has been applied and recorded. Credits are not
+     * converted, they are sent only from and accepted only to accounts of the default currency.
+     */
+    public void receiveCredit(CreditDto credit) {
+        if (credit.amount() < 0) {
+            throw new BadRequestResponse("Cant credit negative founds");
+        }
+        var run = ReceivedCredits.runOf(credit.txId());
+        if (run != null && received.settle(run, credit.settledBelow())) {
+            log.settled(run, credit.settledBelow());
+        }
+        var applied = new CompletableFuture<Void>();
+        var first = applying.putIfAbsent(credit.txId(), applied);
+        if (first != null) {
+            try {
+                first.join();
+            } catch (CompletionException e) {
+                throw new HttpResponseException(SERVICE_UNAVAILABLE, String.format("Credit %s could not be applied, send it again", credit.txId()));
+            }
+            return;
+        }
+        try {
+            apply(credit);
+            applied.complete(null);
+        } catch (RuntimeException e) {
+            applied.completeExceptionally(e);
+            throw e;
+        } finally {
+            applying.remove(credit.txId());
+        }
+    }
+
+    /**
+     * The id of a credit which has not been both applied and recorded is forgotten, so the credit is applied when it
+     * is sent again.
+     */
+    private void apply(CreditDto credit) {
+        if (!received.add(credit.txId())) {
+            return;
+        }
+        var account = store.find(credit.iban());
+        if (account == null) {
+            received.remove(credit.txId());
+            throw new NotFoundResponse(String.format("Could not find an account with iban %s", credit.iban()));
+        }
+        if (!account.getCurrency().equals(Account.DEFAULT_CURRENCY)) {
+            received.remove(credit.txId());
+            throw new BadRequestResponse(String.format("Transfers between nodes are only supported between accounts in %s", Account.DEFAULT_CURRENCY));
+        }
+        RuntimeException listenerFailure;
+        try {
+            listenerFailure = account.applyCreditTransfer(credit.from(), credit.amount(), credit.amount(), false);
+        } catch (RuntimeException e) {
+            received.remove(credit.txId());
+            throw e;
+        }
+        if (listenerFailure != null) {
+            LOG.error("Applied the credit {} to {}, but a listener failed", credit.txId(), credit.iban(), listenerFailure);
+        }
+        try {
+            log.received(credit.txId());
+        } catch (RuntimeException e) {
+            try {
+                account.debitTransfer(credit.from(), credit.amount(), credit.amount(), false, NO_VALIDATION);
+                received.remove(credit.txId());
+            } catch (RuntimeException revertFailure) {
+                e.addSuppressed(revertFailure);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Sends the request to the node owning the account it is about and responds with the response of that node. The
+     * owner admits the request as one of the client which sent it to this node, see {@link #forwardedHeaders}.
+     *
+     * @param body            null for requests without a body
+     * @param responseHeaders headers copied from the response of the owner, besides its content type
+     */
+    public void forward(Context context, String owner, byte[] body, String... responseHeaders) {
+        if (context.header(NodeClient.FORWARDED_BY_HEADER) != null) {
+            throw new HttpResponseException(MISDIRECTED_REQUEST,
+                    String.format("Request forwarded by %s to %s, which does not own the account either", context.header(NodeClient.FORWARDED_BY_HEADER), self));
+        }
+        var query = context.queryString();
+        var headers = forwardedHeaders(context::header, context.ip());
+        var response = call(owner, context.method(), context.path() + (query == null ? "" : "?" + query), headers, body);
+        context.status(response.status());
+        if (response.contentType() != null) {
+            context.contentType(response.contentType());
+        }
+        for (String header : responseHeaders) {
+            var value = response.header(header);
+            if (value != null) {
+                context.header(header, value);
+            }
+        }
+        context.result(new ByteArrayInputStream(response.body()));
+    }
+
+    /**
+     * @param clientAddress address of the client, which identifies it to the {@link AdmissionControl} of the owner
+     *                      rather than the address of this node
+     */
+    static Map<String, String> forwardedHeaders(UnaryOperator<String> requestHeaders, String clientAddress) {
+        var headers = new HashMap<String, String>();
+        for (String header : List.of("Content-Type", "Accept", "Idempotency-Key")) {
+            var value = requestHeaders.apply(header);
+            if (value != null) {
+                headers.put(header, value);
+            }
+        }
+        headers.put(AdmissionControl.CLIENT_HEADER, clientAddress);
+        return headers;
+    }
+
+    /**
+     * @return transfers debited by this node whose credit has not been acknowledged yet
+     */
+    public int undeliveredCredits() {
+        return undelivered.size();
+    }
+
+    /**
+     * @return ids of the applied credits remembered so the credits are not applied again
+     */
+    int receivedCredits() {
+        return received.size();
+    }
+
+    /**
+     * The sequence is taken and marked unsettled at once, so no transfer gets a sequence below the lowest unsettled
+     * one a credit has already been sent with.
+     */
+    private String nextTxId() {
+        synchronized (unsettled) {
+            var txId = txIdPrefix + txSequence.incrementAndGet();
+            unsettled(txId);
+            return txId;
+        }
+    }
+
+    private void unsettled(String txId) {
+        synchronized (unsettled) {
+            unsettled.computeIfAbsent(ReceivedCredits.runOf(txId), run -> new TreeSet<>()).add(ReceivedCredits.sequenceOf(txId));
+        }
+    }
+
+    private void settled(String txId) {
+        synchronized (unsettled) {
+            var run = ReceivedCredits.runOf(txId);
+            var sequences = unsettled.get(run);
+            if (sequences != null && sequences.remove(ReceivedCredits.sequenceOf(txId)) && sequences.isEmpty()) {
+                unsettled.remove(run);
+            }
+        }
+    }
+
+    /**
+     * @return lowest unsettled sequence of the run of a transfer which is unsettled itself
+     */
+    private long settledBelow(String txId) {
+        synchronized (unsettled) {
+            var sequences = unsettled.get(ReceivedCredits.runOf(txId));
+            return sequences == null ? ReceivedCredits.sequenceOf(txId) : sequences.first();
+        }
+    }
+
+    private void deliver(Intent intent, String owner) {
+        byte[] credit;
+        try {
+            credit = CREDIT_WRITER.writeValueAsBytes(new CreditDto(intent.txId(), intent.from(), intent.to(), intent.amount(),
+                    settledBelow(intent.txId())));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        NodeClient.Response response;
+        try {
+            response = client.send(owner, "POST", CREDITS_PATH, JSON_CONTENT, credit);
+        } catch (IOException e) {
+            LOG.warn("Could not deliver the credit of {} to {}, will retry", intent, owner, e);
+            undelivered.put(intent.txId(), intent);
+            return;
+        }
+        if (response.status() < 300) {
+            log.completed(intent.txId());
+            undelivered.remove(intent.txId());
+            settled(intent.txId());
+        } else if (response.status() >= 500 || response.status() == TOO_MANY_REQUESTS) {
+            LOG.warn("Node {} could not apply the credit of {} now, will retry: {}", owner, intent, response.bodyAsString());
+            undelivered.put(intent.txId(), intent);
+        } else {
+            compensate(intent);
+            throw failure(response);
+        }
+    }
+
+    private void compensate(Intent intent) {
+        var account = store.find(intent.from());
+        if (account != null) {
+            account.creditTransfer(intent.to(), intent.amount(), intent.amount(), false);
+        } else {
+            LOG.error("Could not compensate {}, the source account has been deleted", intent);
+        }
+        log.compensated(intent.txId());
+        undelivered.remove(intent.txId());
+        settled(intent.txId());
+    }
+
+    private void redeliver() {
+        for (Intent intent : undelivered.values()) {
+            try {
+                deliver(intent, ring.ownerOf(intent.to()));
+            } catch (HttpResponseException e) {
+                LOG.warn("Credit of {} rejected, compensated: {}", intent, e.getMessage());
+            } catch (RuntimeException e) {
+                LOG.error("Could not redeliver the credit of {}", intent, e);
+            }
+        }
+    }
+
+    private NodeClient.Response call(String owner, String method, String pathAndQuery, Map<String, String> headers, byte[] body) {
+        try {
+            return client.send(owner, method, pathAndQuery, headers, body);
+        } catch (IOException e) {
+            throw new HttpResponseException(SERVICE_UNAVAILABLE, String.format("Node %s owning the account is unavailable: %s", owner, e.getMessage()));
+        }
+    }
+
+    private static HttpResponseException failure(NodeClient.Response response) {
+        var message = response.bodyAsString();
+        switch (response.status()) {
+            case 400:
+                return new BadRequestResponse(message);
+            case 404:
+                return new NotFoundResponse(message);
+            default:
+                return new HttpResponseException(response.status(), message);
+        }
+    }
+
+    private static String encode(String iban) {
+        return URLEncoder.encode(iban, StandardCharsets.UTF_8).replace("+", "%20");
+    }
+
+    @Override
+    public void close() {
+        redelivery.shutdownNow();
+        try {
+            redelivery.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.close();
+    }
+}
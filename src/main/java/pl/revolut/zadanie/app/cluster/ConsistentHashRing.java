@@ -0,0 +1,73 @@
+package pl.revolut.zadanie.app.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Assigns keys to nodes by placing every node on a ring of 64 bit hashes at a number of pseudo random points, a key
+ * belongs to the node of the first point at or after its own hash. Adding or removing a node only moves the keys of
+ * the points it gains or loses, and many points per node keep the share of every node close to even.
+ * <p>
+ * Points are kept in a sorted array, a lookup hashes the key and runs a binary search.
+ */
+public final class ConsistentHashRing {
+    private final List<String> nodes;
+    private final long[] points;
+    private final String[] owners;
+
+    /**
+     * @param nodes        every node of the cluster, each node must be given the same list in the same order
+     * @param virtualNodes points on the ring per node
+     */
+    public ConsistentHashRing(List<String> nodes, int virtualNodes) {
+        if (nodes.isEmpty() || virtualNodes <= 0) {
+            throw new IllegalArgumentException("A ring needs at least one node with at least one point");
+        }
+        this.nodes = List.copyOf(nodes);
+        var unsorted = new long[nodes.size() * virtualNodes];
+        var ownersOf = new String[unsorted.length];
+        for (int node = 0; node < nodes.size(); node++) {
+            for (int point = 0; point < virtualNodes; point++) {
+                unsorted[node * virtualNodes + point] = hash(nodes.get(node) + "#" + point);
+            }
+        }
+        points = unsorted.clone();
+        Arrays.sort(points);
+        for (int i = 0; i < unsorted.length; i++) {
+            ownersOf[Arrays.binarySearch(points, unsorted[i])] = nodes.get(i / virtualNodes);
+        }
+        owners = ownersOf;
+    }
+
+    public String ownerOf(String key) {
+        long hash = hash(key);
+        int index = Arrays.binarySearch(points, hash);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+
+    public List<String> nodes() {
+        return nodes;
+    }
+
+    /**
+     * FNV-1a over the UTF-8 bytes, finished with the MurmurHash3 mix so that keys differing in the last character
+     * still land far apart on the ring.
+     */
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
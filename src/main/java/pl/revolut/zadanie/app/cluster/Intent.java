@@ -0,0 +1,46 @@
+package pl.revolut.zadanie.app.cluster;
+
+import java.util.StringJoiner;
+
+/**
+ * A transfer from an account of this node to an account of another node.
+ */
+final class Intent {
+    private final String txId;
+    private final String from;
+    private final String to;
+    private final long amount;
+
+    Intent(String txId, String from, String to, long amount) {
+        this.txId = txId;
+        this.from = from;
+        this.to = to;
+        this.amount = amount;
+    }
+
+    String txId() {
+        return txId;
+    }
+
+    String from() {
+        return from;
+    }
+
+    String to() {
+        return to;
+    }
+
+    long amount() {
+        return amount;
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", Intent.class.getSimpleName() + "[", "]")
+                .add("txId='" + txId + "'")
+                .add("from='" + from + "'")
+                .add("to='" + to + "'")
+                .add("amount=" + amount)
+                .toString();
+    }
+}
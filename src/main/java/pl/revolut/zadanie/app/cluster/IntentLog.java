@@ -0,0 +1,257 @@
+package pl.revolut.zadanie.app.cluster;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Durable record of the cross partition transfers of this node: the steps of the transfers it started and the credits
+ * it received from other nodes. The records a crash must not lose, i.e. a transfer about to debit its source account,
+ * a completed debit and a received credit, are forced to disk before the step they record is acknowledged.
+ * <p>
+ * Binary layout of a record: {@code length:int type:byte txId fields... crc32:int}, where the length and crc cover
+ * everything in between and strings are written as {@code length:short utf8}. A torn record left at the end by a
+ * crash is ignored. On open the log is rewritten with only the records still needed, the transfers waiting for their
+ * credit and the {@link ReceivedCredits} their senders may still send again, so it holds the traffic of a single run.
+ */
+final class IntentLog implements AutoCloseable {
+    static final String FILE_NAME = "intents.log";
+    private static final byte STARTED = 1;
+    private static final byte DEBITED = 2;
+    private static final byte COMPLETED = 3;
+    private static final byte COMPENSATED = 4;
+    private static final byte ABORTED = 5;
+    private static final byte RECEIVED = 6;
+    private static final byte SETTLED = 7;
+    private static final int MAX_STRING_BYTES = Short.MAX_VALUE;
+
+    private final FileChannel channel;
+    private final Collection<Intent> unsettled;
+    private final ReceivedCredits received;
+    private final CRC32 crc = new CRC32();
+
+    private IntentLog(FileChannel channel, Collection<Intent> unsettled, ReceivedCredits received) {
+        this.channel = channel;
+        this.unsettled = unsettled;
+        this.received = received;
+    }
+
+    /**
+     * Transfers left started but not debited by a previous run are dropped, their debit never happened or, with the
+     * journal enabled, was not acknowledged before the crash.
+     */
+    static IntentLog open(Path directory) {
+        var path = directory.resolve(FILE_NAME);
+        try {
+            Files.createDirectories(directory);
+            var started = new LinkedHashMap<String, Intent>();
+            var debited = new LinkedHashMap<String, Intent>();
+            var received = new ReceivedCredits();
+            if (Files.exists(path)) {
+                replay(ByteBuffer.wrap(Files.readAllBytes(path)), started, debited, received);
+            }
+            var compacted = directory.resolve(FILE_NAME + ".tmp");
+            try (var channel = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                var log = new IntentLog(channel, List.of(), received);
+                for (Intent intent : debited.values()) {
+                    log.write(STARTED, intent);
+                    log.write(DEBITED, intent.txId());
+                }
+                received.settledRuns().forEach(log::settled);
+                for (String txId : received.txIds()) {
+                    log.write(RECEIVED, txId);
+                }
+                channel.force(false);
+            }
+            Files.move(compacted, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            var channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            return new IntentLog(channel, List.copyOf(debited.values()), received);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open the intent log " + path, e);
+        }
+    }
+
+    /**
+     * @return transfers debited by a previous run whose credit has not been confirmed
+     */
+    Collection<Intent> unsettled() {
+        return unsettled;
+    }
+
+    /**
+     * @return credits received by a previous run
+     */
+    ReceivedCredits received() {
+        return received;
+    }
+
+    void started(Intent intent) {
+        write(STARTED, intent);
+        force();
+    }
+
+    void debited(String txId) {
+        write(DEBITED, txId);
+        force();
+    }
+
+    void completed(String txId) {
+        write(COMPLETED, txId);
+    }
+
+    void compensated(String txId) {
+        write(COMPENSATED, txId);
+    }
+
+    void aborted(String txId) {
+        write(ABORTED, txId);
+    }
+
+    void received(String txId) {
+        write(RECEIVED, txId);
+        force();
+    }
+
+    /**
+     * Not forced, a record lost by a crash only keeps the ids it drops a while longer.
+     */
+    void settled(String run, long settledBelow) {
+        var buffer = buffer(SETTLED, run);
+        buffer.putLong(settledBelow);
+        append(buffer);
+    }
+
+    private void write(byte type, Intent intent) {
+        var buffer = buffer(type, intent.txId(), intent.from(), intent.to());
+        buffer.putLong(intent.amount());
+        append(buffer);
+    }
+
+    private void write(byte type, String txId) {
+        append(buffer(type, txId));
+    }
+
+    private static ByteBuffer buffer(byte type, String... strings) {
+        int size = Integer.BYTES + 1 + Long.BYTES + Integer.BYTES;
+        for (String string : strings) {
+            size += Short.BYTES + 3 * string.length();
+        }
+        var buffer = ByteBuffer.allocate(size);
+        buffer.putInt(0);
+        buffer.put(type);
+        for (String string : strings) {
+            putString(buffer, string);
+        }
+        return buffer;
+    }
+
+    /**
+     * Records are appended whole, a concurrent append never lands in the middle of another record.
+     */
+    private synchronized void append(ByteBuffer buffer) {
+        int end = buffer.position();
+        buffer.putInt(0, end - Integer.BYTES);
+        crc.reset();
+        crc.update(buffer.duplicate().position(Integer.BYTES).limit(end));
+        buffer.putInt((int) crc.getValue());
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write to the intent log", e);
+        }
+    }
+
+    /**
+     * Runs outside of the append lock, so a force waiting for the disk does not hold up the appends of other transfers
+     * and one force may cover the records of several.
+     */
+    private void force() {
+        try {
+            channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not force the intent log to disk", e);
+        }
+    }
+
+    private static void replay(ByteBuffer log, Map<String, Intent> started, Map<String, Intent> debited, ReceivedCredits received) {
+        var crc = new CRC32();
+        while (log.remaining() >= Integer.BYTES) {
+            int start = log.position();
+            int length = log.getInt();
+            if (length <= 1 || length > log.remaining() - Integer.BYTES) {
+                return;
+            }
+            crc.reset();
+            crc.update(log.duplicate().limit(start + Integer.BYTES + length));
+            if ((int) crc.getValue() != log.getInt(start + Integer.BYTES + length)) {
+                return;
+            }
+            byte type = log.get();
+            var txId = getString(log);
+            switch (type) {
+                case STARTED:
+                    started.put(txId, new Intent(txId, getString(log), getString(log), log.getLong()));
+                    break;
+                case DEBITED:
+                    var intent = started.remove(txId);
+                    if (intent != null) {
+                        debited.put(txId, intent);
+                    }
+                    break;
+                case COMPLETED:
+                case COMPENSATED:
+                case ABORTED:
+                    started.remove(txId);
+                    debited.remove(txId);
+                    break;
+                case RECEIVED:
+                    received.add(txId);
+                    break;
+                case SETTLED:
+                    received.settle(txId, log.getLong());
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown intent record type " + type);
+            }
+            log.position(start + Integer.BYTES + length + Integer.BYTES);
+        }
+    }
+
+    private static void putString(ByteBuffer buffer, String value) {
+        var bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_STRING_BYTES) {
+            throw new IllegalArgumentException("Iban too long to be recorded");
+        }
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        var bytes = new byte[buffer.getShort()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not close the intent log", e);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package pl.revolut.zadanie.app.cluster;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Blocking HTTP client for the calls between nodes. Connections are kept alive and reused by the JDK, up to
+ * {@code http.maxConnections} idle ones per node.
+ */
+class NodeClient {
+    static final String FORWARDED_BY_HEADER = "X-Forwarded-By";
+    private final String self;
+    private final int timeoutMillis;
+
+    /**
+     * @param self base url of this node, sent along with every call so a node never forwards a call again
+     */
+    NodeClient(String self, int timeoutMillis) {
+        this.self = self;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * @param pathAndQuery starting with a slash
+     * @param body         null for calls without a body
+     * @throws IOException if the node could not be reached or did not answer in time
+     */
+    Response send(String node, String method, String pathAndQuery, Map<String, String> headers, byte[] body) throws IOException {
+        var connection = (HttpURLConnection) new URL(node + pathAndQuery).openConnection();
+        connection.setConnectTimeout(timeoutMillis);
+        connection.setReadTimeout(timeoutMillis);
+        connection.setRequestMethod(method);
+        connection.setRequestProperty(FORWARDED_BY_HEADER, self);
+        headers.forEach(connection::setRequestProperty);
+        if (body != null) {
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(body.length);
+            try (var output = connection.getOutputStream()) {
+                output.write(body);
+            }
+        }
+        int status = connection.getResponseCode();
+        var stream = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+        return new Response(status, connection.getContentType(), connection.getHeaderFields(), readFully(stream));
+    }
+
+    private static byte[] readFully(InputStream stream) throws IOException {
+        if (stream == null) {
+            return new byte[0];
+        }
+        try (stream) {
+            var output = new ByteArrayOutputStream();
+            stream.transferTo(output);
+            return output.toByteArray();
+        }
+    }
+
+    static final class Response {
+        private final int status;
+        private final String contentType;
+        private final Map<String, List<String>> headers;
+        private final byte[] body;
+
+        Response(int status, String contentType, Map<String, List<String>> headers, byte[] body) {
+            this.status = status;
+            this.contentType = contentType;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        int status() {
+            return status;
+        }
+
+        String contentType() {
+            return contentType;
+        }
+
+        /**
+         * @return first value of the header, null if missing
+         */
+        String header(String name) {
+            for (Map.Entry<String, ? extends Iterable<String>> header : headers.entrySet()) {
+                if (name.equalsIgnoreCase(header.getKey())) {
+                    var values = header.getValue().iterator();
+                    return values.hasNext() ? values.next() : null;
+                }
+            }
+            return null;
+        }
+
+        byte[] body() {
+            return body;
+        }
+
+        String bodyAsString() {
+            return new String(body, StandardCharsets.UTF_8);
+        }
+    }
+}
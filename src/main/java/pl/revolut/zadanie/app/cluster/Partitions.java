@@ -0,0 +1,48 @@
+package pl.revolut.zadanie.app.cluster;
+
+import pl.revolut.zadanie.app.model.Account;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.LongConsumer;
+
+/**
+ * Tells which node owns an account and runs the parts of a transfer involving accounts owned by other nodes.
+ */
+public interface Partitions {
+    /**
+     * Every account is owned by this node.
+     */
+    Partitions SINGLE_NODE = new Partitions() {
+        @Override
+        public String remoteOwnerOf(String iban) {
+            return null;
+        }
+
+        @Override
+        public CompletableFuture<Void> forwardTransfer(String owner, String ibanFrom, String ibanTo, long amount) {
+            throw new IllegalStateException("There are no other nodes to forward to");
+        }
+
+        @Override
+        public CompletableFuture<Void> transferOut(Account from, String owner, String ibanTo, long amount, LongConsumer newBalanceValidator) {
+            throw new IllegalStateException("There are no other nodes to transfer to");
+        }
+    };
+
+    /**
+     * @return base url of the node owning the account, null if this node owns it
+     */
+    String remoteOwnerOf(String iban);
+
+    /**
+     * Runs the whole transfer on the node owning its source account.
+     */
+    CompletableFuture<Void> forwardTransfer(String owner, String ibanFrom, String ibanTo, long amount);
+
+    /**
+     * Debits an account of this node and credits an account of another node.
+     *
+     * @param owner base url of the node owning the target account
+     */
+    CompletableFuture<Void> transferOut(Account from, String owner, String ibanTo, long amount, LongConsumer newBalanceValidator);
+}
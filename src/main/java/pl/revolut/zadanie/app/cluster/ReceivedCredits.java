@@ -0,0 +1,147 @@
+package pl.revolut.zadanie.app.cluster;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongConsumer;
+
+/**
+ * Ids of the credits applied by this node, so a credit sent again is not applied twice, kept only for as long as their
+ * sender may send them again.
+ * <p>
+ * The id of a transfer is the run of the node which started it, i.e. its index and start time, followed by a sequence.
+ * Every credit carries the lowest sequence of its run its sender has not settled yet, below which the sender never
+ * sends a credit of the run again. The ids of the run below it are dropped, and a credit of the run below it arriving
+ * late, e.g. a request the sender gave up waiting for, is known to have been applied. Ids of another form, and the ids
+ * sent by nodes which do not send the sequence, are kept for good, as are the ids a run had in flight when it stopped.
+ */
+final class ReceivedCredits {
+    private final Map<String, Run> runs = new ConcurrentHashMap<>();
+    private final Set<String> others = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @return false if the credit has already been received
+     */
+    boolean add(String txId) {
+        var run = runOf(txId);
+        if (run == null) {
+            return others.add(txId);
+        }
+        return runs.computeIfAbsent(run, key -> new Run()).add(sequenceOf(txId));
+    }
+
+    void remove(String txId) {
+        var run = runOf(txId);
+        if (run == null) {
+            others.remove(txId);
+            return;
+        }
+        var received = runs.get(run);
+        if (received != null) {
+            received.remove(sequenceOf(txId));
+        }
+    }
+
+    /**
+     * Drops the ids of the run below the lowest sequence its sender has not settled.
+     *
+     * @return false if the run was known to be settled that far already
+     */
+    boolean settle(String run, long settledBelow) {
+        if (settledBelow <= 0) {
+            return false;
+        }
+        return runs.computeIfAbsent(run, key -> new Run()).settle(settledBelow);
+    }
+
+    /**
+     * @return the lowest sequence not settled by the sender of every run, for the runs settled at all
+     */
+    Map<String, Long> settledRuns() {
+        var settled = new TreeMap<String, Long>();
+        runs.forEach((run, received) -> {
+            long settledBelow = received.settledBelow();
+            if (settledBelow > 0) {
+                settled.put(run, settledBelow);
+            }
+        });
+        return settled;
+    }
+
+    List<String> txIds() {
+        var txIds = new ArrayList<String>(others);
+        runs.forEach((run, received) -> received.forEach(sequence -> txIds.add(run + sequence)));
+        return txIds;
+    }
+
+    int size() {
+        int size = others.size();
+        for (Run received : runs.values()) {
+            size += received.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return the id up to and including its last dash, null if the id has no sequence after it
+     */
+    static String runOf(String txId) {
+        int start = txId.lastIndexOf('-') + 1;
+        if (start == 0 || start == txId.length() || txId.length() - start > 18) {
+            return null;
+        }
+        for (int i = start; i < txId.length(); i++) {
+            if (txId.charAt(i) < '0' || txId.charAt(i) > '9') {
+                return null;
+            }
+        }
+        return txId.substring(0, start);
+    }
+
+    /**
+     * @return the sequence of an id with a {@link #runOf run}
+     */
+    static long sequenceOf(String txId) {
+        return Long.parseLong(txId.substring(txId.lastIndexOf('-') + 1));
+    }
+
+    private static final class Run {
+        private final TreeSet<Long> sequences = new TreeSet<>();
+        private long settledBelow;
+
+        synchronized boolean add(long sequence) {
+            return sequence >= settledBelow && sequences.add(sequence);
+        }
+
+        synchronized void remove(long sequence) {
+            sequences.remove(sequence);
+        }
+
+        synchronized boolean settle(long settledBelow) {
+            if (settledBelow <= this.settledBelow) {
+                return false;
+            }
+            this.settledBelow = settledBelow;
+            sequences.headSet(settledBelow).clear();
+            return true;
+        }
+
+        synchronized long settledBelow() {
+            return settledBelow;
+        }
+
+        synchronized void forEach(LongConsumer action) {
+            for (long sequence : sequences) {
+                action.accept(sequence);
+            }
+        }
+
+        synchronized int size() {
+            return sequences.size();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package pl.revolut.zadanie.app.concurrent;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded multi producer, single consumer ring buffer. Every slot carries a sequence number telling producers and the
+ * consumer whose turn it is, so neither side takes locks and a full buffer is detected without waiting.
+ */
+public class MpscRingBuffer<E> {
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+
+    public MpscRingBuffer(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity has to be a power of two");
+        }
+        elements = new AtomicReferenceArray<>(capacity);
+        sequences = new AtomicLongArray(capacity);
+        mask = capacity - 1;
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * @return false if the buffer is full
+     */
+    public boolean offer(E element) {
+        return publish(element) >= 0;
+    }
+
+    /**
+     * Positions are handed out in the order elements are polled, starting from 0 without gaps.
+     *
+     * @return position of the element, or -1 if the buffer is full
+     */
+    public long publish(E element) {
+        long position = claim();
+        if (position >= 0) {
+            elements.lazySet(indexOf(position), element);
+            commit(position);
+        }
+        return position;
+    }
+
+    /**
+     * Claims the next position for an element the caller keeps itself, e.g. in arrays preallocated for every
+     * {@link #indexOf index}, so nothing is allocated per element. The consumer sees it once it is committed.
+     *
+     * @return the claimed position, or -1 if the buffer is full
+     */
+    public long claim() {
+        long position = tail.get();
+        while (true) {
+            long sequence = sequences.get(indexOf(position));
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    return position;
+                }
+                position = tail.get();
+            } else if (sequence < position) {
+                return -1;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Hands the element kept at a claimed position over to the consumer.
+     */
+    public void commit(long position) {
+        sequences.set(indexOf(position), position + 1);
+    }
+
+    public int indexOf(long position) {
+        return (int) position & mask;
+    }
+
+    /**
+     * May only be called by the consumer thread.
+     *
+     * @return null if the buffer is empty
+     */
+    public E poll() {
+        long position = peek();
+        if (position < 0) {
+            return null;
+        }
+        int index = indexOf(position);
+        E element = elements.get(index);
+        elements.lazySet(index, null);
+        release(position);
+        return element;
+    }
+
+    /**
+     * May only be called by the consumer thread, which then reads the element kept by the producer and gives its
+     * index back to producers with {@link #release}.
+     *
+     * @return position of the next committed element, or -1 if there is none
+     */
+    public long peek() {
+        long position = head.get();
+        return sequences.get(indexOf(position)) == position + 1 ? position : -1;
+    }
+
+    /**
+     * May only be called by the consumer thread, for the position returned by {@link #peek}.
+     */
+    public void release(long position) {
+        sequences.set(indexOf(position), position + mask + 1);
+        head.lazySet(position + 1);
+    }
+
+    public boolean isEmpty() {
+        long position = head.get();
+        return sequences.get((int) position & mask) != position + 1;
+    }
+
+    public int size() {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+
+    /**
+     * @return position the next published element will get
+     */
+    public long nextPosition() {
+        return tail.get();
+    }
+}
@@ -0,0 +1,47 @@
+package pl.revolut.zadanie.app.concurrent;
+
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Lets many changes run concurrently while keeping them out of a snapshot. Every thread enters through its own stripe,
+ * so changes don't contend with each other, the snapshot closes all stripes.
+ */
+public class SnapshotGate {
+    private final ReentrantReadWriteLock[] stripes;
+    private final int mask;
+
+    public SnapshotGate(int stripes) {
+        if (Integer.bitCount(stripes) != 1) {
+            throw new IllegalArgumentException("Number of stripes has to be a power of two");
+        }
+        this.stripes = new ReentrantReadWriteLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new ReentrantReadWriteLock();
+        }
+        this.mask = stripes - 1;
+    }
+
+    public void enter() {
+        stripe().readLock().lock();
+    }
+
+    public void exit() {
+        stripe().readLock().unlock();
+    }
+
+    public void close() {
+        for (ReentrantReadWriteLock stripe : stripes) {
+            stripe.writeLock().lock();
+        }
+    }
+
+    public void open() {
+        for (int i = stripes.length - 1; i >= 0; i--) {
+            stripes[i].writeLock().unlock();
+        }
+    }
+
+    private ReentrantReadWriteLock stripe() {
+        return stripes[(int) Thread.currentThread().getId() & mask];
+    }
+}
@@ -9,11 +9,20 @@ import java.util.StringJoiner;
 public class AccountDto {
     private final long balance;
     private final String iban;
+    private final String currency;
 
-    @ConstructorProperties({"iban", "balance"})
     public AccountDto(String iban, long balance) {
+        this(iban, balance, null);
+    }
+
+    /**
+     * @param currency null for the default currency when creating, or the unchanged one when updating an account
+     */
+    @ConstructorProperties({"iban", "balance", "currency"})
+    public AccountDto(String iban, long balance, String currency) {
         this.iban = iban;
         this.balance = balance;
+        this.currency = currency;
     }
 
     public String iban() {
@@ -24,11 +33,16 @@ public class AccountDto {
         return balance;
     }
 
+    public String currency() {
+        return currency;
+    }
+
     @Override
     public String toString() {
         return new StringJoiner(", ", AccountDto.class.getSimpleName() + "[", "]")
                 .add("balance=" + balance)
                 .add("iban='" + iban + "'")
+                .add("currency='" + currency + "'")
                 .toString();
     }
 }
@@ -0,0 +1,58 @@
+package pl.revolut.zadanie.app.dto;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+
+import java.beans.ConstructorProperties;
+import java.util.StringJoiner;
+
+@JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
+public class AdmissionMetricsDto {
+    private final int concurrencyLimit;
+    private final int inFlight;
+    private final long clientLimited;
+    private final long accountLimited;
+    private final long concurrencyLimited;
+
+    /**
+     * @param concurrencyLimit current adaptive limit of requests in flight, 0 if not limited
+     */
+    @ConstructorProperties({"concurrencyLimit", "inFlight", "clientLimited", "accountLimited", "concurrencyLimited"})
+    public AdmissionMetricsDto(int concurrencyLimit, int inFlight, long clientLimited, long accountLimited, long concurrencyLimited) {
+        this.concurrencyLimit = concurrencyLimit;
+        this.inFlight = inFlight;
+        this.clientLimited = clientLimited;
+        this.accountLimited = accountLimited;
+        this.concurrencyLimited = concurrencyLimited;
+    }
+
+    public int concurrencyLimit() {
+        return concurrencyLimit;
+    }
+
+    public int inFlight() {
+        return inFlight;
+    }
+
+    public long clientLimited() {
+        return clientLimited;
+    }
+
+    public long accountLimited() {
+        return accountLimited;
+    }
+
+    public long concurrencyLimited() {
+        return concurrencyLimited;
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", AdmissionMetricsDto.class.getSimpleName() + "[", "]")
+                .add("concurrencyLimit=" + concurrencyLimit)
+                .add("inFlight=" + inFlight)
+                .add("clientLimited=" + clientLimited)
+                .add("accountLimited=" + accountLimited)
+                .add("concurrencyLimited=" + concurrencyLimited)
+                .toString();
+    }
+}
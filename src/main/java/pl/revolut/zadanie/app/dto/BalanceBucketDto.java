@@ -0,0 +1,45 @@
+package pl.revolut.zadanie.app.dto;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+
+import java.beans.ConstructorProperties;
+import java.util.StringJoiner;
+
+@JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
+public class BalanceBucketDto {
+    private final long from;
+    private final long to;
+    private final long accounts;
+
+    /**
+     * @param from inclusive lower bound of the balances
+     * @param to   exclusive upper bound of the balances
+     */
+    @ConstructorProperties({"from", "to", "accounts"})
+    public BalanceBucketDto(long from, long to, long accounts) {
+        this.from = from;
+        this.to = to;
+        this.accounts = accounts;
+    }
+
+    public long from() {
+        return from;
+    }
+
+    public long to() {
+        return to;
+    }
+
+    public long accounts() {
+        return accounts;
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", BalanceBucketDto.class.getSimpleName() + "[", "]")
+                .add("from=" + from)
+                .add("to=" + to)
+                .add("accounts=" + accounts)
+                .toString();
+    }
+}
@@ -0,0 +1,73 @@
+package pl.revolut.zadanie.app.dto;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+
+import java.beans.ConstructorProperties;
+import java.util.StringJoiner;
+
+/**
+ * The credit half of a transfer between accounts of two nodes, sent by the node owning the source account.
+ */
+@JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
+public class CreditDto {
+    private final String txId;
+    private final String from;
+    private final String iban;
+    private final long amount;
+    private final long settledBelow;
+
+    public CreditDto(String txId, String iban, long amount) {
+        this(txId, null, iban, amount);
+    }
+
+    /**
+     * @param from account debited by the source node, null if it is not known, e.g. sent by an older node
+     */
+    public CreditDto(String txId, String from, String iban, long amount) {
+        this(txId, from, iban, amount, 0);
+    }
+
+    /**
+     * @param settledBelow lowest sequence of the transfers of the run of txId the source node has not settled, it never
+     *                     sends the credits of the transfers below it again, 0 if it is not known
+     */
+    @ConstructorProperties({"txId", "from", "iban", "amount", "settledBelow"})
+    public CreditDto(String txId, String from, String iban, long amount, long settledBelow) {
+        this.txId = txId;
+        this.from = from;
+        this.iban = iban;
+        this.amount = amount;
+        this.settledBelow = settledBelow;
+    }
+
+    public String txId() {
+        return txId;
+    }
+
+    public String from() {
+        return from;
+    }
+
+    public String iban() {
+        return iban;
+    }
+
+    public long amount() {
+        return amount;
+    }
+
+    public long settledBelow() {
+        return settledBelow;
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", CreditDto.class.getSimpleName() + "[", "]")
+                .add("txId='" + txId + "'")
+                .add("from='" + from + "'")
+                .add("iban='" + iban + "'")
+                .add("amount=" + amount)
+                .add("settledBelow=" + settledBelow)
+                .toString();
+    }
+}
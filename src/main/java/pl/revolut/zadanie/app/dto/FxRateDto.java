@@ -0,0 +1,45 @@
+package pl.revolut.zadanie.app.dto;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+
+import java.beans.ConstructorProperties;
+import java.math.BigDecimal;
+import java.util.StringJoiner;
+
+@JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
+public class FxRateDto {
+    private final String from;
+    private final String to;
+    private final BigDecimal rate;
+
+    /**
+     * @param rate units of the to currency a unit of the from currency is worth
+     */
+    @ConstructorProperties({"from", "to", "rate"})
+    public FxRateDto(String from, String to, BigDecimal rate) {
+        this.from = from;
+        this.to = to;
+        this.rate = rate;
+    }
+
+    public String from() {
+        return from;
+    }
+
+    public String to() {
+        return to;
+    }
+
+    public BigDecimal rate() {
+        return rate;
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", FxRateDto.class.getSimpleName() + "[", "]")
+                .add("from='" + from + "'")
+                .add("to='" + to + "'")
+                .add("rate=" + rate)
+                .toString();
+    }
+}
@@ -0,0 +1,55 @@
+package pl.revolut.zadanie.app.dto;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+
+import java.beans.ConstructorProperties;
+import java.util.StringJoiner;
+
+@JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
+public class IdempotencyMetricsDto {
+    private final int capacity;
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final long expirations;
+
+    @ConstructorProperties({"capacity", "hits", "misses", "evictions", "expirations"})
+    public IdempotencyMetricsDto(int capacity, long hits, long misses, long evictions, long expirations) {
+        this.capacity = capacity;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.expirations = expirations;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public long hits() {
+        return hits;
+    }
+
+    public long misses() {
+        return misses;
+    }
+
+    public long evictions() {
+        return evictions;
+    }
+
+    public long expirations() {
+        return expirations;
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", IdempotencyMetricsDto.class.getSimpleName() + "[", "]")
+                .add("capacity=" + capacity)
+                .add("hits=" + hits)
+                .add("misses=" + misses)
+                .add("evictions=" + evictions)
+                .add("expirations=" + expirations)
+                .toString();
+    }
+}
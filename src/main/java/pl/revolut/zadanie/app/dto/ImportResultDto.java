@@ -0,0 +1,52 @@
+package pl.revolut.zadanie.app.dto;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+
+import java.beans.ConstructorProperties;
+import java.util.StringJoiner;
+
+@JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
+public class ImportResultDto {
+    private final long created;
+    private final long existing;
+    private final long notOwned;
+    private final long millis;
+
+    /**
+     * @param existing accounts left as they were, as an account with the same iban already existed
+     * @param notOwned accounts skipped, as they are owned by another node of the cluster
+     */
+    @ConstructorProperties({"created", "existing", "notOwned", "millis"})
+    public ImportResultDto(long created, long existing, long notOwned, long millis) {
+        this.created = created;
+        this.existing = existing;
+        this.notOwned = notOwned;
+        this.millis = millis;
+    }
+
+    public long created() {
+        return created;
+    }
+
+    public long existing() {
+        return existing;
+    }
+
+    public long notOwned() {
+        return notOwned;
+    }
+
+    public long millis() {
+        return millis;
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", ImportResultDto.class.getSimpleName() + "[", "]")
+                .add("created=" + created)
+                .add("existing=" + existing)
+                .add("notOwned=" + notOwned)
+                .add("millis=" + millis)
+                .toString();
+    }
+}
@@ -0,0 +1,80 @@
+package pl.revolut.zadanie.app.dto;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+
+import java.beans.ConstructorProperties;
+import java.util.StringJoiner;
+
+@JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
+public class LedgerEntryDto {
+    private final long txId;
+    private final long timestamp;
+    private final String from;
+    private final String to;
+    private final long amount;
+    private final Kind kind;
+
+    public LedgerEntryDto(long txId, long timestamp, String from, String to, long amount) {
+        this(txId, timestamp, from, to, amount, Kind.TRANSFER);
+    }
+
+    @ConstructorProperties({"txId", "timestamp", "from", "to", "amount", "kind"})
+    public LedgerEntryDto(long txId, long timestamp, String from, String to, long amount, Kind kind) {
+        this.txId = txId;
+        this.timestamp = timestamp;
+        this.from = from;
+        this.to = to;
+        this.amount = amount;
+        this.kind = kind;
+    }
+
+    public long txId() {
+        return txId;
+    }
+
+    /**
+     * @return milliseconds since the epoch
+     */
+    public long timestamp() {
+        return timestamp;
+    }
+
+    public String from() {
+        return from;
+    }
+
+    public String to() {
+        return to;
+    }
+
+    /**
+     * @return in the currency of the account of the leg, of the source account for a whole transfer
+     */
+    public long amount() {
+        return amount;
+    }
+
+    public Kind kind() {
+        return kind;
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", LedgerEntryDto.class.getSimpleName() + "[", "]")
+                .add("txId=" + txId)
+                .add("timestamp=" + timestamp)
+                .add("from='" + from + "'")
+                .add("to='" + to + "'")
+                .add("amount=" + amount)
+                .add("kind=" + kind)
+                .toString();
+    }
+
+    /**
+     * A whole transfer, or a single leg of a transfer whose debit and credit are applied separately, e.g. by two nodes
+     * or between two currencies, listed in the history of the account of the leg only.
+     */
+    public enum Kind {
+        TRANSFER, DEBIT, CREDIT
+    }
+}
@@ -0,0 +1,67 @@
+package pl.revolut.zadanie.app.dto;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+
+import java.beans.ConstructorProperties;
+import java.util.Map;
+import java.util.StringJoiner;
+
+@JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
+public class MetricsDto {
+    private final long uptimeSeconds;
+    private final Map<String, RouteMetricsDto> routes;
+    private final TransferMetricsDto transfers;
+    private final RequestMetricsDto requests;
+    private final Map<String, IdempotencyMetricsDto> idempotency;
+    private final AdmissionMetricsDto admission;
+
+    /**
+     * @param admission null if admission control is off
+     */
+    @ConstructorProperties({"uptimeSeconds", "routes", "transfers", "requests", "idempotency", "admission"})
+    public MetricsDto(long uptimeSeconds, Map<String, RouteMetricsDto> routes, TransferMetricsDto transfers,
+                      RequestMetricsDto requests, Map<String, IdempotencyMetricsDto> idempotency, AdmissionMetricsDto admission) {
+        this.uptimeSeconds = uptimeSeconds;
+        this.routes = routes;
+        this.transfers = transfers;
+        this.requests = requests;
+        this.idempotency = idempotency;
+        this.admission = admission;
+    }
+
+    public long uptimeSeconds() {
+        return uptimeSeconds;
+    }
+
+    public Map<String, RouteMetricsDto> routes() {
+        return routes;
+    }
+
+    public TransferMetricsDto transfers() {
+        return transfers;
+    }
+
+    public RequestMetricsDto requests() {
+        return requests;
+    }
+
+    public Map<String, IdempotencyMetricsDto> idempotency() {
+        return idempotency;
+    }
+
+    public AdmissionMetricsDto admission() {
+        return admission;
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", MetricsDto.class.getSimpleName() + "[", "]")
+                .add("uptimeSeconds=" + uptimeSeconds)
+                .add("routes=" + routes)
+                .add("transfers=" + transfers)
+                .add("requests=" + requests)
+                .add("idempotency=" + idempotency)
+                .add("admission=" + admission)
+                .toString();
+    }
+}
@@ -0,0 +1,38 @@
+package pl.revolut.zadanie.app.dto;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+
+import java.beans.ConstructorProperties;
+import java.util.Map;
+import java.util.StringJoiner;
+
+@JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
+public class MoneySupplyDto {
+    private final Map<String, Long> totals;
+    private final long accounts;
+
+    @ConstructorProperties({"totals", "accounts"})
+    public MoneySupplyDto(Map<String, Long> totals, long accounts) {
+        this.totals = totals;
+        this.accounts = accounts;
+    }
+
+    /**
+     * @return the money held by currency
+     */
+    public Map<String, Long> totals() {
+        return totals;
+    }
+
+    public long accounts() {
+        return accounts;
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", MoneySupplyDto.class.getSimpleName() + "[", "]")
+                .add("totals=" + totals)
+                .add("accounts=" + accounts)
+                .toString();
+    }
+}
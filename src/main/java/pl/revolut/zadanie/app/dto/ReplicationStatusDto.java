@@ -0,0 +1,69 @@
+package pl.revolut.zadanie.app.dto;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+
+import java.beans.ConstructorProperties;
+import java.util.StringJoiner;
+
+@JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
+public class ReplicationStatusDto {
+    private final String role;
+    private final String primary;
+    private final boolean connected;
+    private final long appliedSequence;
+    private final long lagMillis;
+    private final int replicas;
+
+    /**
+     * @param role            primary or replica
+     * @param primary         host:port followed by a replica, null for a primary
+     * @param appliedSequence last change of the primary applied by a replica, -1 if none or for a primary
+     * @param lagMillis       how long ago a replica was consistent with the primary, -1 if unknown or for a primary
+     * @param replicas        replicas connected to a primary
+     */
+    @ConstructorProperties({"role", "primary", "connected", "appliedSequence", "lagMillis", "replicas"})
+    public ReplicationStatusDto(String role, String primary, boolean connected, long appliedSequence, long lagMillis, int replicas) {
+        this.role = role;
+        this.primary = primary;
+        this.connected = connected;
+        this.appliedSequence = appliedSequence;
+        this.lagMillis = lagMillis;
+        this.replicas = replicas;
+    }
+
+    public String role() {
+        return role;
+    }
+
+    public String primary() {
+        return primary;
+    }
+
+    public boolean connected() {
+        return connected;
+    }
+
+    public long appliedSequence() {
+        return appliedSequence;
+    }
+
+    public long lagMillis() {
+        return lagMillis;
+    }
+
+    public int replicas() {
+        return replicas;
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", ReplicationStatusDto.class.getSimpleName() + "[", "]")
+                .add("role='" + role + "'")
+                .add("primary='" + primary + "'")
+                .add("connected=" + connected)
+                .add("appliedSequence=" + appliedSequence)
+                .add("lagMillis=" + lagMillis)
+                .add("replicas=" + replicas)
+                .toString();
+    }
+}
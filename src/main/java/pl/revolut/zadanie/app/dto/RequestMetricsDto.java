@@ -0,0 +1,34 @@
+package pl.revolut.zadanie.app.dto;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+
+import java.beans.ConstructorProperties;
+import java.util.StringJoiner;
+
+@JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
+public class RequestMetricsDto {
+    private final int queueDepth;
+    private final long rejected;
+
+    @ConstructorProperties({"queueDepth", "rejected"})
+    public RequestMetricsDto(int queueDepth, long rejected) {
+        this.queueDepth = queueDepth;
+        this.rejected = rejected;
+    }
+
+    public int queueDepth() {
+        return queueDepth;
+    }
+
+    public long rejected() {
+        return rejected;
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", RequestMetricsDto.class.getSimpleName() + "[", "]")
+                .add("queueDepth=" + queueDepth)
+                .add("rejected=" + rejected)
+                .toString();
+    }
+}
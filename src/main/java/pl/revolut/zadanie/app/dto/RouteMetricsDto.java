@@ -0,0 +1,91 @@
+package pl.revolut.zadanie.app.dto;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+
+import java.beans.ConstructorProperties;
+import java.util.StringJoiner;
+
+@JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
+public class RouteMetricsDto {
+    private final long count;
+    private final long clientErrors;
+    private final long notFound;
+    private final long serverErrors;
+    private final long meanMicros;
+    private final long p50Micros;
+    private final long p90Micros;
+    private final long p99Micros;
+    private final long p999Micros;
+    private final long maxMicros;
+
+    @ConstructorProperties({"count", "clientErrors", "notFound", "serverErrors", "meanMicros", "p50Micros", "p90Micros", "p99Micros", "p999Micros", "maxMicros"})
+    public RouteMetricsDto(long count, long clientErrors, long notFound, long serverErrors, long meanMicros,
+                           long p50Micros, long p90Micros, long p99Micros, long p999Micros, long maxMicros) {
+        this.count = count;
+        this.clientErrors = clientErrors;
+        this.notFound = notFound;
+        this.serverErrors = serverErrors;
+        this.meanMicros = meanMicros;
+        this.p50Micros = p50Micros;
+        this.p90Micros = p90Micros;
+        this.p99Micros = p99Micros;
+        this.p999Micros = p999Micros;
+        this.maxMicros = maxMicros;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public long clientErrors() {
+        return clientErrors;
+    }
+
+    public long notFound() {
+        return notFound;
+    }
+
+    public long serverErrors() {
+        return serverErrors;
+    }
+
+    public long meanMicros() {
+        return meanMicros;
+    }
+
+    public long p50Micros() {
+        return p50Micros;
+    }
+
+    public long p90Micros() {
+        return p90Micros;
+    }
+
+    public long p99Micros() {
+        return p99Micros;
+    }
+
+    public long p999Micros() {
+        return p999Micros;
+    }
+
+    public long maxMicros() {
+        return maxMicros;
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", RouteMetricsDto.class.getSimpleName() + "[", "]")
+                .add("count=" + count)
+                .add("clientErrors=" + clientErrors)
+                .add("notFound=" + notFound)
+                .add("serverErrors=" + serverErrors)
+                .add("meanMicros=" + meanMicros)
+                .add("p50Micros=" + p50Micros)
+                .add("p90Micros=" + p90Micros)
+                .add("p99Micros=" + p99Micros)
+                .add("p999Micros=" + p999Micros)
+                .add("maxMicros=" + maxMicros)
+                .toString();
+    }
+}
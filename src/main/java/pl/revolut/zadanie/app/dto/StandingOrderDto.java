@@ -0,0 +1,100 @@
+package pl.revolut.zadanie.app.dto;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+
+import java.beans.ConstructorProperties;
+import java.util.StringJoiner;
+
+@JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
+public class StandingOrderDto {
+    private final long id;
+    private final String from;
+    private final String to;
+    private final long amount;
+    private final long executeAt;
+    private final long intervalSeconds;
+    private final int executions;
+    private final int failures;
+    private final String lastFailure;
+
+    /**
+     * Only from, to, amount, executeAt and intervalSeconds are read when an order is created.
+     */
+    @ConstructorProperties({"id", "from", "to", "amount", "executeAt", "intervalSeconds", "executions", "failures", "lastFailure"})
+    public StandingOrderDto(long id, String from, String to, long amount, long executeAt, long intervalSeconds, int executions,
+                            int failures, String lastFailure) {
+        this.id = id;
+        this.from = from;
+        this.to = to;
+        this.amount = amount;
+        this.executeAt = executeAt;
+        this.intervalSeconds = intervalSeconds;
+        this.executions = executions;
+        this.failures = failures;
+        this.lastFailure = lastFailure;
+    }
+
+    public StandingOrderDto(String from, String to, long amount, long executeAt, long intervalSeconds) {
+        this(0, from, to, amount, executeAt, intervalSeconds, 0, 0, null);
+    }
+
+    public long id() {
+        return id;
+    }
+
+    public String from() {
+        return from;
+    }
+
+    public String to() {
+        return to;
+    }
+
+    public long amount() {
+        return amount;
+    }
+
+    /**
+     * @return milliseconds since the epoch of the next execution
+     */
+    public long executeAt() {
+        return executeAt;
+    }
+
+    /**
+     * @return seconds between executions, 0 for an order executed once
+     */
+    public long intervalSeconds() {
+        return intervalSeconds;
+    }
+
+    public int executions() {
+        return executions;
+    }
+
+    public int failures() {
+        return failures;
+    }
+
+    /**
+     * @return reason of the last failed execution, null if none failed
+     */
+    public String lastFailure() {
+        return lastFailure;
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", StandingOrderDto.class.getSimpleName() + "[", "]")
+                .add("id=" + id)
+                .add("from='" + from + "'")
+                .add("to='" + to + "'")
+                .add("amount=" + amount)
+                .add("executeAt=" + executeAt)
+                .add("intervalSeconds=" + intervalSeconds)
+                .add("executions=" + executions)
+                .add("failures=" + failures)
+                .add("lastFailure='" + lastFailure + "'")
+                .toString();
+    }
+}
@@ -0,0 +1,41 @@
+package pl.revolut.zadanie.app.dto;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+
+import java.beans.ConstructorProperties;
+import java.util.StringJoiner;
+
+@JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
+public class TransferDto {
+    private final String from;
+    private final String to;
+    private final long amount;
+
+    @ConstructorProperties({"from", "to", "amount"})
+    public TransferDto(String from, String to, long amount) {
+        this.from = from;
+        this.to = to;
+        this.amount = amount;
+    }
+
+    public String from() {
+        return from;
+    }
+
+    public String to() {
+        return to;
+    }
+
+    public long amount() {
+        return amount;
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", TransferDto.class.getSimpleName() + "[", "]")
+                .add("from='" + from + "'")
+                .add("to='" + to + "'")
+                .add("amount=" + amount)
+                .toString();
+    }
+}
@@ -0,0 +1,70 @@
+package pl.revolut.zadanie.app.dto;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+
+import java.beans.ConstructorProperties;
+import java.util.StringJoiner;
+
+@JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
+public class TransferMetricsDto {
+    private final long attempts;
+    private final long commits;
+    private final long aborts;
+    private final long retries;
+    private final long contentions;
+    private final long splitAccounts;
+    private final long insufficientFunds;
+
+    @ConstructorProperties({"attempts", "commits", "aborts", "retries", "contentions", "splitAccounts", "insufficientFunds"})
+    public TransferMetricsDto(long attempts, long commits, long aborts, long retries, long contentions,
+                              long splitAccounts, long insufficientFunds) {
+        this.attempts = attempts;
+        this.commits = commits;
+        this.aborts = aborts;
+        this.retries = retries;
+        this.contentions = contentions;
+        this.splitAccounts = splitAccounts;
+        this.insufficientFunds = insufficientFunds;
+    }
+
+    public long attempts() {
+        return attempts;
+    }
+
+    public long commits() {
+        return commits;
+    }
+
+    public long aborts() {
+        return aborts;
+    }
+
+    public long retries() {
+        return retries;
+    }
+
+    public long contentions() {
+        return contentions;
+    }
+
+    public long splitAccounts() {
+        return splitAccounts;
+    }
+
+    public long insufficientFunds() {
+        return insufficientFunds;
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", TransferMetricsDto.class.getSimpleName() + "[", "]")
+                .add("attempts=" + attempts)
+                .add("commits=" + commits)
+                .add("aborts=" + aborts)
+                .add("retries=" + retries)
+                .add("contentions=" + contentions)
+                .add("splitAccounts=" + splitAccounts)
+                .add("insufficientFunds=" + insufficientFunds)
+                .toString();
+    }
+}
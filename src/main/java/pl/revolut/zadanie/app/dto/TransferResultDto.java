@@ -0,0 +1,63 @@
+package pl.revolut.zadanie.app.dto;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+
+import java.beans.ConstructorProperties;
+import java.util.StringJoiner;
+
+@JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
+public class TransferResultDto {
+    private final String from;
+    private final String to;
+    private final long amount;
+    private final TransferStatus status;
+    private final String message;
+
+    @ConstructorProperties({"from", "to", "amount", "status", "message"})
+    public TransferResultDto(String from, String to, long amount, TransferStatus status, String message) {
+        this.from = from;
+        this.to = to;
+        this.amount = amount;
+        this.status = status;
+        this.message = message;
+    }
+
+    public static TransferResultDto of(TransferDto transfer, TransferStatus status, String message) {
+        return new TransferResultDto(transfer.from(), transfer.to(), transfer.amount(), status, message);
+    }
+
+    public String from() {
+        return from;
+    }
+
+    public String to() {
+        return to;
+    }
+
+    public long amount() {
+        return amount;
+    }
+
+    public TransferStatus status() {
+        return status;
+    }
+
+    public String message() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", TransferResultDto.class.getSimpleName() + "[", "]")
+                .add("from='" + from + "'")
+                .add("to='" + to + "'")
+                .add("amount=" + amount)
+                .add("status=" + status)
+                .add("message='" + message + "'")
+                .toString();
+    }
+
+    public enum TransferStatus {
+        COMMITTED, REJECTED, NOT_FOUND, ROLLED_BACK
+    }
+}
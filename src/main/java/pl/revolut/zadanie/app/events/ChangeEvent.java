@@ -0,0 +1,51 @@
+package pl.revolut.zadanie.app.events;
+
+/**
+ * Copy of a change read from a {@link ChangeLog}, reused by a reader for every change it reads.
+ */
+public final class ChangeEvent {
+    long sequence;
+    ChangeType type;
+    String iban;
+    String counterpart;
+    String currency;
+    long amount;
+    long timestamp;
+
+    public long sequence() {
+        return sequence;
+    }
+
+    public ChangeType type() {
+        return type;
+    }
+
+    public String iban() {
+        return iban;
+    }
+
+    /**
+     * @return account credited by a transfer, null for any other change
+     */
+    public String counterpart() {
+        return counterpart;
+    }
+
+    /**
+     * @return currency of a created account, null for any other change
+     */
+    public String currency() {
+        return currency;
+    }
+
+    public long amount() {
+        return amount;
+    }
+
+    /**
+     * @return epoch milliseconds of publishing the change
+     */
+    public long timestamp() {
+        return timestamp;
+    }
+}
@@ -0,0 +1,235 @@
+package pl.revolut.zadanie.app.events;
+
+import pl.revolut.zadanie.app.model.Account;
+import pl.revolut.zadanie.app.model.AccountListener;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The last committed changes of accounts, numbered from 0 in the order they are published, for subscribers following
+ * them with a {@link ChangeSubscription} each.
+ * <p>
+ * Changes are kept in a ring of preallocated slots, so publishing neither allocates nor waits for subscribers: a
+ * subscriber falling more than the capacity behind finds its next change overwritten and is told it has been lost.
+ * Every slot is guarded by a stamp, like a seqlock. A writer marks the slot as being written, fills it in and stamps it
+ * with the sequence of the change, a reader accepts a copy of the slot only if it was stamped with the same sequence
+ * before and after copying it.
+ * <p>
+ * Changes are published by the threads that committed them, so changes of one account committed concurrently may be
+ * published in another order. All changes but creations carry deltas, which add up the same in any order.
+ */
+public final class ChangeLog implements AccountListener, AutoCloseable {
+    static final int READ = 0;
+    static final int PENDING = 1;
+    static final int LOST = 2;
+    private static final long NOTIFIER_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private final int capacity;
+    private final int mask;
+    /**
+     * Per slot: sequence + 1 of the change in it, 0 if none yet, -(sequence + 1) while the change is being written.
+     */
+    private final AtomicLongArray stamps;
+    private final int[] types;
+    private final String[] ibans;
+    private final String[] counterparts;
+    private final long[] amounts;
+    private final long[] timestamps;
+    private final AtomicLong next = new AtomicLong();
+    private final ConcurrentLinkedQueue<Thread> waiting = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger waiters = new AtomicInteger();
+    private final Thread notifier;
+    private volatile boolean running = true;
+
+    /**
+     * @param capacity number of the last changes kept, a power of two
+     */
+    public ChangeLog(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity has to be a power of two");
+        }
+        this.capacity = capacity;
+        mask = capacity - 1;
+        stamps = new AtomicLongArray(capacity);
+        types = new int[capacity];
+        ibans = new String[capacity];
+        counterparts = new String[capacity];
+        amounts = new long[capacity];
+        timestamps = new long[capacity];
+        notifier = new Thread(this::notifyLoop, "change-log-notifier");
+        notifier.setDaemon(true);
+        notifier.start();
+    }
+
+    @Override
+    public void onCreated(Account account, long balance) {
+        publish(ChangeType.CREATED, account.getIban(), account.getCurrency(), balance);
+    }
+
+    @Override
+    public void onDeleted(Account account) {
+        publish(ChangeType.DELETED, account.getIban(), null, 0);
+    }
+
+    @Override
+    public void onBalanceAdjusted(Account account, long delta) {
+        publish(ChangeType.ADJUSTED, account.getIban(), null, delta);
+    }
+
+    @Override
+    public void onTransferred(Account from, Account to, long amount) {
+        publish(ChangeType.TRANSFERRED, from.getIban(), to.getIban(), amount);
+    }
+
+    /**
+     * @param counterpart account credited by a transfer, currency of a created account, otherwise null
+     * @return sequence of the published change
+     */
+    public long publish(ChangeType type, String iban, String counterpart, long amount) {
+        long sequence = next.getAndIncrement();
+        int index = (int) sequence & mask;
+        long stamp = stamps.get(index);
+        while (true) {
+            if (stamp > sequence + 1 || stamp < -sequence - 1) {
+                // a writer a whole ring ahead took the slot meanwhile, readers see this change as lost
+                return sequence;
+            }
+            if (stamp >= 0 && stamps.compareAndSet(index, stamp, -sequence - 1)) {
+                break;
+            }
+            Thread.onSpinWait();
+            stamp = stamps.get(index);
+        }
+        types[index] = type.ordinal();
+        ibans[index] = iban;
+        counterparts[index] = counterpart;
+        amounts[index] = amount;
+        timestamps[index] = System.currentTimeMillis();
+        stamps.set(index, sequence + 1);
+        if (waiters.get() > 0) {
+            LockSupport.unpark(notifier);
+        }
+        return sequence;
+    }
+
+    /**
+     * @param from sequence of the first change to read, at most {@link #nextSequence()} and at least
+     *             {@link #oldestSequence()}
+     */
+    public ChangeSubscription subscribe(long from) {
+        if (from > nextSequence()) {
+            throw new IllegalArgumentException(String.format("Change %d has not been published yet", from));
+        }
+        if (from < oldestSequence()) {
+            throw new IllegalArgumentException(String.format("Change %d is no longer kept, the oldest one is %d", from, oldestSequence()));
+        }
+        return new ChangeSubscription(this, from);
+    }
+
+    /**
+     * @return sequence the next published change will get
+     */
+    public long nextSequence() {
+        return next.get();
+    }
+
+    /**
+     * @return sequence of the oldest change still kept, unless it is overwritten meanwhile
+     */
+    public long oldestSequence() {
+        return Math.max(0, next.get() - capacity);
+    }
+
+    /**
+     * @return {@link #READ} if the change has been copied into the event, {@link #PENDING} if it hasn't been published
+     * yet, {@link #LOST} if it has been overwritten
+     */
+    int read(long sequence, ChangeEvent event) {
+        int index = (int) sequence & mask;
+        long stamp = stamps.get(index);
+        if (stamp == sequence + 1) {
+            int type = types[index];
+            event.iban = ibans[index];
+            event.counterpart = counterparts[index];
+            event.amount = amounts[index];
+            event.timestamp = timestamps[index];
+            VarHandle.acquireFence();
+            if (stamps.get(index) != stamp) {
+                return LOST;
+            }
+            event.sequence = sequence;
+            event.type = ChangeType.ofOrdinal(type);
+            if (event.type == ChangeType.CREATED) {
+                event.currency = event.counterpart;
+                event.counterpart = null;
+            } else {
+                event.currency = null;
+            }
+            return READ;
+        }
+        return stateOf(stamp, sequence);
+    }
+
+    /**
+     * @return {@link #READ} if the change can be read, otherwise as {@link #read(long, ChangeEvent)}
+     */
+    int stateOf(long sequence) {
+        return stateOf(stamps.get((int) sequence & mask), sequence);
+    }
+
+    private static int stateOf(long stamp, long sequence) {
+        if (stamp == sequence + 1) {
+            return READ;
+        }
+        return stamp > sequence + 1 || stamp < -sequence - 1 ? LOST : PENDING;
+    }
+
+    /**
+     * Makes the calling thread unparked whenever a change is published, until it unregisters. The caller has to check
+     * for changes after registering and before parking, see {@link ChangeSubscription#await(long)}.
+     */
+    void register() {
+        waiters.incrementAndGet();
+        waiting.add(Thread.currentThread());
+    }
+
+    void unregister() {
+        waiting.remove(Thread.currentThread());
+        waiters.decrementAndGet();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Wakes up the waiting subscribers on behalf of the publishers, so a publisher unparks at most one thread.
+     */
+    private void notifyLoop() {
+        while (running) {
+            LockSupport.parkNanos(this, NOTIFIER_PARK_NANOS);
+            for (Thread thread : waiting) {
+                LockSupport.unpark(thread);
+            }
+        }
+        for (Thread thread : waiting) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(notifier);
+        try {
+            notifier.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
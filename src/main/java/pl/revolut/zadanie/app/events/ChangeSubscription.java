@@ -0,0 +1,77 @@
+package pl.revolut.zadanie.app.events;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Cursor of a single subscriber of a {@link ChangeLog}, to be used by one thread at a time. Once a change has been
+ * lost the subscription stays lost, the subscriber has to start over, e.g. from a listing of all accounts.
+ */
+public final class ChangeSubscription {
+    private final ChangeLog log;
+    private long next;
+    private boolean lost;
+
+    ChangeSubscription(ChangeLog log, long from) {
+        this.log = log;
+        this.next = from;
+    }
+
+    /**
+     * @return true if the next change has been copied into the event, false if it hasn't been published yet or has
+     * been lost
+     */
+    public boolean poll(ChangeEvent event) {
+        if (lost) {
+            return false;
+        }
+        switch (log.read(next, event)) {
+            case ChangeLog.READ:
+                next++;
+                return true;
+            case ChangeLog.LOST:
+                lost = true;
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Waits for the next change to be published, or to be found lost.
+     *
+     * @return false if the timeout elapsed, the thread has been interrupted or the log has been closed first
+     */
+    public boolean await(long timeoutNanos) {
+        long deadline = System.nanoTime() + timeoutNanos;
+        log.register();
+        try {
+            while (log.isRunning() && !Thread.currentThread().isInterrupted()) {
+                if (lost || log.stateOf(next) != ChangeLog.PENDING) {
+                    return true;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                LockSupport.parkNanos(this, remaining);
+            }
+            return false;
+        } finally {
+            log.unregister();
+        }
+    }
+
+    /**
+     * @return true if changes have been overwritten before this subscriber read them
+     */
+    public boolean isLost() {
+        return lost;
+    }
+
+    /**
+     * @return sequence of the next change to read
+     */
+    public long nextSequence() {
+        return next;
+    }
+}
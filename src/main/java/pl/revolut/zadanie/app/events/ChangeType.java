@@ -0,0 +1,35 @@
+package pl.revolut.zadanie.app.events;
+
+/**
+ * Kinds of changes in a {@link ChangeLog}, the amount of a change means something else for each of them.
+ */
+public enum ChangeType {
+    /**
+     * Account opened with the amount as its balance.
+     */
+    CREATED("created"),
+    DELETED("deleted"),
+    /**
+     * Balance of the account changed by the amount, e.g. set or debited, negative for debits.
+     */
+    ADJUSTED("adjusted"),
+    /**
+     * Amount moved from the account to the counterpart.
+     */
+    TRANSFERRED("transferred");
+
+    private static final ChangeType[] VALUES = values();
+    private final String eventName;
+
+    ChangeType(String eventName) {
+        this.eventName = eventName;
+    }
+
+    static ChangeType ofOrdinal(int ordinal) {
+        return VALUES[ordinal];
+    }
+
+    public String eventName() {
+        return eventName;
+    }
+}
@@ -0,0 +1,29 @@
+package pl.revolut.zadanie.app.executor;
+
+import pl.revolut.zadanie.app.model.Account;
+import pl.revolut.zadanie.app.model.DebitCheck;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Runs every transfer on the calling thread, the returned future is always completed.
+ */
+public class DirectTransferExecutor implements TransferExecutor {
+    private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+
+    @Override
+    public CompletableFuture<Void> transfer(Account from, Account to, long amount, long credited, DebitCheck debitCheck) {
+        try {
+            if (from.tryTransferTo(to, amount, credited, debitCheck.newBalanceAccepted(), debitCheck.newBalanceValidator())) {
+                return DONE;
+            }
+            return CompletableFuture.failedFuture(debitCheck.rejected());
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,272 @@
+package pl.revolut.zadanie.app.executor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.revolut.zadanie.app.concurrent.MpscRingBuffer;
+import pl.revolut.zadanie.app.model.Account;
+import pl.revolut.zadanie.app.model.DebitCheck;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Partitions accounts into shards by iban hash, every shard is owned by a single thread which applies all the transfers
+ * debiting its accounts, so hot accounts are never contended.
+ * <p>
+ * Transfers are submitted to a bounded ring buffer of the shard owning the source account and rejected when it is full.
+ * A transfer between shards runs in two phases: the source shard debits the source account, then hands the command
+ * over to the target shard which credits the target account. Credits are never rejected, they travel through an
+ * unbounded queue whose length is bounded by the number of accepted debits, and a credit which could not be applied is
+ * tried again whenever the shard runs out of work. A transfer whose debit has been applied always completes normally,
+ * a listener failing once its credit has been applied is only logged. Until the credit is applied the money is
+ * in flight and not visible on any account, though the debit reports the whole transfer to the listeners, so a journal
+ * records it at once. Closing applies the credits still in flight, so it has to happen before the journal is closed.
+ * <p>
+ * Transfers are completed through a {@link TransferCompletion}, so with a journal forcing every batch to disk a shard
+ * goes on with the next transfer instead of waiting for the force of the previous one.
+ * <p>
+ * Debits are checked through the result code of the balance engine, see {@link DebitCheck}. Unlike with the
+ * {@link DirectTransferExecutor}, every transfer allocates the command carrying it between threads and its future.
+ * <p>
+ * Balance engines stay thread safe, so mutations done outside of the executor remain correct, they just contend with it.
+ */
+public class ShardedTransferExecutor implements TransferExecutor {
+    private static final Logger LOG = LoggerFactory.getLogger(ShardedTransferExecutor.class);
+    private static final int DRAIN_BATCH = 256;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Shard[] shards;
+    private final TransferCompletion completion;
+    private volatile boolean closed;
+
+    public ShardedTransferExecutor(int shardCount, int queueCapacity) {
+        this(shardCount, queueCapacity, TransferCompletion.IMMEDIATE);
+    }
+
+    public ShardedTransferExecutor(int shardCount, int queueCapacity, TransferCompletion completion) {
+        this.completion = completion;
+        shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(i, queueCapacity);
+        }
+        for (Shard shard : shards) {
+            shard.thread.start();
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> transfer(Account from, Account to, long amount, long credited, DebitCheck debitCheck) {
+        var command = new TransferCommand(from, to, amount, credited, debitCheck);
+        if (closed) {
+            command.result.completeExceptionally(new RejectedExecutionException("Transfer executor has been closed"));
+        } else if (!shardOf(from).submit(command)) {
+            command.result.completeExceptionally(new RejectedExecutionException("Transfer queue of the shard is full"));
+        }
+        return command.result;
+    }
+
+    public int queueDepth() {
+        int depth = 0;
+        for (Shard shard : shards) {
+            depth += shard.commands.size();
+        }
+        return depth;
+    }
+
+    private Shard shardOf(Account account) {
+        int hash = account.getIban().hashCode();
+        return shards[Math.floorMod(hash ^ (hash >>> 16), shards.length)];
+    }
+
+    /**
+     * Stops the shard threads, credits still in flight are applied on the calling thread and pending transfers rejected.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Shard shard : shards) {
+            shard.running = false;
+            LockSupport.unpark(shard.thread);
+        }
+        for (Shard shard : shards) {
+            try {
+                shard.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        for (Shard shard : shards) {
+            shard.drainCredits();
+            shard.retryFailedCredits();
+            shard.abandonFailedCredits();
+            shard.rejectPending();
+        }
+    }
+
+    private static class TransferCommand {
+        private final Account from;
+        private final Account to;
+        private final long amount;
+        private final long credited;
+        private final DebitCheck debitCheck;
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+        // mark of the debit, which a journal records together with the credit
+        private long debitMark;
+
+        TransferCommand(Account from, Account to, long amount, long credited, DebitCheck debitCheck) {
+            this.from = from;
+            this.to = to;
+            this.amount = amount;
+            this.credited = credited;
+            this.debitCheck = debitCheck;
+        }
+    }
+
+    private class Shard implements Runnable {
+        private final MpscRingBuffer<TransferCommand> commands;
+        private final Queue<TransferCommand> credits = new ConcurrentLinkedQueue<>();
+        private final Queue<TransferCommand> failedCredits = new ArrayDeque<>();
+        private final Thread thread;
+        private volatile boolean running = true;
+        private volatile boolean idle;
+
+        Shard(int index, int queueCapacity) {
+            commands = new MpscRingBuffer<>(queueCapacity);
+            thread = new Thread(this, "transfer-shard-" + index);
+            thread.setDaemon(true);
+        }
+
+        boolean submit(TransferCommand command) {
+            if (!commands.offer(command)) {
+                return false;
+            }
+            wakeUp();
+            return true;
+        }
+
+        void submitCredit(TransferCommand command) {
+            credits.add(command);
+            wakeUp();
+        }
+
+        private void wakeUp() {
+            if (idle) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        @Override
+        public void run() {
+            completion.defer();
+            while (running) {
+                if (drainCredits() + drainCommands() == 0) {
+                    idle = true;
+                    if (commands.isEmpty() && credits.isEmpty() && running) {
+                        LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                    }
+                    idle = false;
+                    retryFailedCredits();
+                }
+            }
+        }
+
+        private int drainCredits() {
+            int drained = 0;
+            TransferCommand command;
+            while ((command = credits.poll()) != null) {
+                credit(command, false);
+                drained++;
+            }
+            return drained;
+        }
+
+        private int drainCommands() {
+            int drained = 0;
+            TransferCommand command;
+            while (drained < DRAIN_BATCH && (command = commands.poll()) != null) {
+                debit(command);
+                drained++;
+            }
+            return drained;
+        }
+
+        private void debit(TransferCommand command) {
+            var target = shardOf(command.to);
+            if (target == this) {
+                try {
+                    if (command.from.tryTransferTo(command.to, command.amount, command.credited, command.debitCheck.newBalanceAccepted(),
+                            command.debitCheck.newBalanceValidator())) {
+                        completion.complete(command.result, completion.mark());
+                    } else {
+                        command.result.completeExceptionally(command.debitCheck.rejected());
+                    }
+                } catch (RuntimeException e) {
+                    command.result.completeExceptionally(e);
+                }
+                return;
+            }
+            try {
+                if (!command.from.tryDebitTransfer(command.to.getIban(), command.amount, command.credited, true,
+                        command.debitCheck.newBalanceAccepted(), command.debitCheck.newBalanceValidator())) {
+                    command.result.completeExceptionally(command.debitCheck.rejected());
+                    return;
+                }
+            } catch (RuntimeException e) {
+                command.result.completeExceptionally(e);
+                return;
+            }
+            command.debitMark = completion.mark();
+            target.submitCredit(command);
+        }
+
+        private void credit(TransferCommand command, boolean retried) {
+            RuntimeException listenerFailure;
+            try {
+                listenerFailure = command.to.applyCreditTransfer(command.from.getIban(), command.amount, command.credited, true);
+            } catch (RuntimeException e) {
+                if (!retried) {
+                    LOG.error("Could not credit {} with {} debited from {}, will retry", command.to.getIban(), command.credited,
+                            command.from.getIban(), e);
+                }
+                failedCredits.add(command);
+                return;
+            }
+            if (listenerFailure != null) {
+                LOG.error("Credited {} with {} debited from {}, but a listener failed", command.to.getIban(), command.credited,
+                        command.from.getIban(), listenerFailure);
+            }
+            completion.complete(command.result, command.debitMark);
+        }
+
+        private void retryFailedCredits() {
+            for (int i = failedCredits.size(); i > 0; i--) {
+                credit(failedCredits.poll(), true);
+            }
+        }
+
+        /**
+         * The debits of the credits still failing are kept, so their transfers complete, a journal has recorded them
+         * whole and applies their credits when it is replayed.
+         */
+        private void abandonFailedCredits() {
+            TransferCommand command;
+            while ((command = failedCredits.poll()) != null) {
+                LOG.error("Closed without crediting {} with {} debited from {}", command.to.getIban(), command.credited, command.from.getIban());
+                completion.complete(command.result, command.debitMark);
+            }
+        }
+
+        private void rejectPending() {
+            TransferCommand command;
+            while ((command = commands.poll()) != null) {
+                command.result.completeExceptionally(new RejectedExecutionException("Transfer executor has been closed"));
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package pl.revolut.zadanie.app.executor;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Completes the transfers applied by the threads of a {@link ShardedTransferExecutor} once the changes they made are
+ * durable, e.g. forced to disk by a journal, so the threads go on applying transfers instead of waiting for the disk.
+ */
+public interface TransferCompletion {
+    TransferCompletion IMMEDIATE = new TransferCompletion() {
+        @Override
+        public long mark() {
+            return 0;
+        }
+
+        @Override
+        public void complete(CompletableFuture<Void> result, long mark) {
+            result.complete(null);
+        }
+    };
+
+    /**
+     * Called by every thread of the executor before it applies a transfer, the changes it makes are not waited for on
+     * the thread from then on.
+     */
+    default void defer() {
+    }
+
+    /**
+     * @return mark of the changes the calling thread has made so far
+     */
+    long mark();
+
+    /**
+     * Completes the result once the changes up to the mark are durable, possibly on another thread.
+     */
+    void complete(CompletableFuture<Void> result, long mark);
+}
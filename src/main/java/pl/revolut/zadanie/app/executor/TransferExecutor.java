@@ -0,0 +1,26 @@
+package pl.revolut.zadanie.app.executor;
+
+import pl.revolut.zadanie.app.model.Account;
+import pl.revolut.zadanie.app.model.DebitCheck;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Decides on which thread a transfer between two accounts runs.
+ * The returned future fails with {@link java.util.concurrent.RejectedExecutionException} if the transfer could not be
+ * accepted, or with the exception of the {@link DebitCheck} if the transfer was rejected.
+ */
+public interface TransferExecutor extends AutoCloseable {
+
+    default CompletableFuture<Void> transfer(Account from, Account to, long amount, DebitCheck debitCheck) {
+        return transfer(from, to, amount, amount, debitCheck);
+    }
+
+    /**
+     * @param credited the amount converted to the currency of the credited account
+     */
+    CompletableFuture<Void> transfer(Account from, Account to, long amount, long credited, DebitCheck debitCheck);
+
+    @Override
+    void close();
+}
@@ -0,0 +1,57 @@
+package pl.revolut.zadanie.app.fx;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * The current {@link FxRates}, replaced as a whole, so a conversion reads a single volatile reference and uses rates
+ * which were all published together, while updates never block it.
+ */
+public final class FxRateTable {
+    private final Path file;
+    private volatile FxRates rates;
+
+    /**
+     * A table without rates, filled only through {@link #replace}.
+     */
+    public FxRateTable() {
+        this(FxRates.EMPTY, null);
+    }
+
+    /**
+     * @param file null if the rates are not read from a file
+     */
+    public FxRateTable(FxRates rates, Path file) {
+        this.rates = rates;
+        this.file = file;
+    }
+
+    /**
+     * Reads the rates from the file, which can be read again with {@link #reload()}.
+     */
+    public static FxRateTable read(Path file) throws IOException {
+        return new FxRateTable(FxRates.read(file), file);
+    }
+
+    public FxRates current() {
+        return rates;
+    }
+
+    public void replace(FxRates rates) {
+        this.rates = rates;
+    }
+
+    /**
+     * Replaces the rates with the ones read from the file again, they stay as they were if the file can't be read.
+     *
+     * @throws IllegalStateException if the rates were not read from a file
+     */
+    public FxRates reload() throws IOException {
+        if (file == null) {
+            throw new IllegalStateException("Rates are not read from a file");
+        }
+        var reloaded = FxRates.read(file);
+        rates = reloaded;
+        return reloaded;
+    }
+}
@@ -0,0 +1,179 @@
+package pl.revolut.zadanie.app.fx;
+
+import pl.revolut.zadanie.app.dto.FxRateDto;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable table of exchange rates between pairs of currencies, kept as fixed-point numbers with {@value DECIMALS}
+ * decimal places in a square matrix indexed by currency, so a conversion takes two map lookups and integer arithmetic
+ * and never allocates.
+ * <p>
+ * Only the pairs given are known, the rate of the reverse pair is not derived, as the buy and sell rates differ.
+ * A conversion multiplies the amount by the rate exactly, in 128 bits, and rounds the product down to whole units, so
+ * it never credits more than the rate is worth.
+ */
+public final class FxRates {
+    public static final int DECIMALS = 8;
+    public static final FxRates EMPTY = new FxRates(Map.of(), List.of(), new long[0]);
+    private static final long SCALE = 100_000_000L;
+    private static final long LOW_32_BITS = 0xFFFF_FFFFL;
+    private final Map<String, Integer> currencies;
+    private final List<String> codes;
+    /**
+     * Rate from the currency of the row to the currency of the column, 0 if unknown.
+     */
+    private final long[] rates;
+
+    private FxRates(Map<String, Integer> currencies, List<String> codes, long[] rates) {
+        this.currencies = currencies;
+        this.codes = codes;
+        this.rates = rates;
+    }
+
+    /**
+     * @throws IllegalArgumentException if a currency is not an ISO 4217 code, or a rate is not positive or has more
+     *                                  than {@value DECIMALS} decimal places
+     */
+    public static FxRates of(List<FxRateDto> rates) {
+        var currencies = new HashMap<String, Integer>();
+        var codes = new ArrayList<String>();
+        for (FxRateDto rate : rates) {
+            for (String code : new String[]{currencyCode(rate.from()), currencyCode(rate.to())}) {
+                if (!currencies.containsKey(code)) {
+                    currencies.put(code, codes.size());
+                    codes.add(code);
+                }
+            }
+        }
+        var matrix = new long[codes.size() * codes.size()];
+        for (FxRateDto rate : rates) {
+            if (rate.from().equals(rate.to())) {
+                throw new IllegalArgumentException(String.format("Rate from %s to itself", rate.from()));
+            }
+            matrix[currencies.get(rate.from()) * codes.size() + currencies.get(rate.to())] = fixedPoint(rate);
+        }
+        return new FxRates(Map.copyOf(currencies), List.copyOf(codes), matrix);
+    }
+
+    /**
+     * Reads a rate per line as {@code from,to,rate}, e.g. {@code EUR,PLN,4.2917}, skipping blank lines and lines
+     * starting with #.
+     */
+    public static FxRates read(Path file) throws IOException {
+        var rates = new ArrayList<FxRateDto>();
+        var lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        for (int i = 0; i < lines.size(); i++) {
+            var line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            var fields = line.split("\\s*,\\s*");
+            try {
+                if (fields.length != 3) {
+                    throw new IllegalArgumentException("Expected from,to,rate");
+                }
+                rates.add(new FxRateDto(fields[0], fields[1], new BigDecimal(fields[2])));
+            } catch (IllegalArgumentException e) {
+                throw new IOException(String.format("Malformed rate at line %d of %s: %s", i + 1, file, e.getMessage()));
+            }
+        }
+        try {
+            return of(rates);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(String.format("Invalid rates in %s: %s", file, e.getMessage()));
+        }
+    }
+
+    /**
+     * @return the code, if it is an ISO 4217 currency code
+     * @throws IllegalArgumentException otherwise
+     */
+    public static String currencyCode(String code) {
+        if (code == null) {
+            throw new IllegalArgumentException("Currency is required");
+        }
+        try {
+            return Currency.getInstance(code).getCurrencyCode();
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(String.format("Unknown currency %s", code));
+        }
+    }
+
+    /**
+     * @return the amount, which can't be negative, converted and rounded down to whole units of the to currency
+     * @throws MissingRateException if the rate is unknown
+     * @throws ArithmeticException  if the converted amount does not fit in a long
+     */
+    public long convert(String from, String to, long amount) {
+        if (from.equals(to)) {
+            return amount;
+        }
+        var fromIndex = currencies.get(from);
+        var toIndex = currencies.get(to);
+        long rate = fromIndex == null || toIndex == null ? 0 : rates[fromIndex * codes.size() + toIndex];
+        if (rate == 0) {
+            throw new MissingRateException(from, to);
+        }
+        return multiply(amount, rate);
+    }
+
+    public List<FxRateDto> rates() {
+        var list = new ArrayList<FxRateDto>();
+        for (int from = 0; from < codes.size(); from++) {
+            for (int to = 0; to < codes.size(); to++) {
+                long rate = rates[from * codes.size() + to];
+                if (rate != 0) {
+                    list.add(new FxRateDto(codes.get(from), codes.get(to), BigDecimal.valueOf(rate, DECIMALS).stripTrailingZeros()));
+                }
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Divides the 128 bit product of the amount and the rate by the scale, which takes less than 32 bits, one 32 bit
+     * digit at a time, so every partial dividend fits in a long.
+     *
+     * @return floor(amount * rate / 10^{@value DECIMALS})
+     */
+    static long multiply(long amount, long rate) {
+        if (amount < 0) {
+            throw new IllegalArgumentException("Can't convert a negative amount");
+        }
+        long high = Math.multiplyHigh(amount, rate);
+        long low = amount * rate;
+        if (high >= SCALE) {
+            throw new ArithmeticException("Converted amount out of range");
+        }
+        long dividend = high << 32 | low >>> 32;
+        long upper = dividend / SCALE;
+        dividend = (dividend % SCALE) << 32 | low & LOW_32_BITS;
+        long lower = dividend / SCALE;
+        if (upper > Integer.MAX_VALUE) {
+            throw new ArithmeticException("Converted amount out of range");
+        }
+        return upper << 32 | lower;
+    }
+
+    private static long fixedPoint(FxRateDto rate) {
+        if (rate.rate() == null || rate.rate().signum() <= 0) {
+            throw new IllegalArgumentException(String.format("Rate from %s to %s has to be positive", rate.from(), rate.to()));
+        }
+        try {
+            return rate.rate().setScale(DECIMALS).unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException(String.format("Rate from %s to %s has to fit in %d decimal places",
+                    rate.from(), rate.to(), DECIMALS));
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package pl.revolut.zadanie.app.fx;
+
+/**
+ * Thrown when an amount has to be converted between currencies the rate table has no rate for.
+ */
+public class MissingRateException extends RuntimeException {
+
+    MissingRateException(String from, String to) {
+        super(String.format("No exchange rate from %s to %s", from, to));
+    }
+}
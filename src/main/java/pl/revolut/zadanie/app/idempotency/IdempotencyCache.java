@@ -0,0 +1,256 @@
+package pl.revolut.zadanie.app.idempotency;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Outcomes of operations identified by client chosen keys, so an operation retried with the same key is answered
+ * with the outcome of the first attempt instead of being executed again. A retry arriving while the first attempt is
+ * still running gets the same pending outcome.
+ * <p>
+ * The cache holds at most a fixed number of entries in buckets of {@value #WAYS}, each bucket is an immutable array
+ * replaced with a compare and set, so lookups take no locks and two attempts with the same key can not both insert it.
+ * An entry expires after the configured time, when a bucket is full the completed entry closest to expiring is
+ * evicted. Pending entries are neither evicted nor expired, an operation whose bucket holds only pending entries is
+ * refused without running. Failures that are not replayable, e.g. rejections under load, are dropped so the operation can be retried. An entry
+ * keeps the request and the outcome, so the cache takes as much memory as the largest of those times its capacity, it
+ * is up to the callers to bound them.
+ */
+public final class IdempotencyCache<V> {
+    private static final int WAYS = 8;
+    private static final Entry<?>[] NO_ENTRIES = new Entry<?>[0];
+
+    private final AtomicReferenceArray<Entry<V>[]> buckets;
+    private final int mask;
+    private final long ttlNanos;
+    private final Predicate<Throwable> replayable;
+    private final LongSupplier nanoClock;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    /**
+     * @param capacity   maximum number of cached outcomes, rounded up to a power of two
+     * @param replayable whether an operation that failed with the given exception should be answered with the same
+     *                   failure when retried
+     */
+    public IdempotencyCache(int capacity, long ttl, TimeUnit unit, Predicate<Throwable> replayable) {
+        this(capacity, ttl, unit, replayable, System::nanoTime);
+    }
+
+    IdempotencyCache(int capacity, long ttl, TimeUnit unit, Predicate<Throwable> replayable, LongSupplier nanoClock) {
+        if (capacity <= 0 || ttl <= 0) {
+            throw new IllegalArgumentException("Capacity and time to live have to be positive");
+        }
+        int needed = (capacity + WAYS - 1) / WAYS;
+        int bucketCount = needed == 1 ? 1 : Integer.highestOneBit(needed - 1) << 1;
+        this.buckets = new AtomicReferenceArray<>(bucketCount);
+        for (int i = 0; i < bucketCount; i++) {
+            buckets.set(i, noEntries());
+        }
+        this.mask = bucketCount - 1;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.replayable = replayable;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Runs the operation unless an operation with the same key has already been run.
+     *
+     * @param request the request the key was sent with, or a collision resistant digest of it, a key sent again with a
+     *                request that is not equal to it is refused
+     * @throws IdempotencyKeyReusedException if the key has already been used for a different request
+     * @throws IdempotencyCacheFullException  if the operation can't be remembered, it has not been run
+     */
+    public CompletableFuture<V> execute(String key, Object request, Supplier<CompletableFuture<V>> operation) {
+        int index = bucketOf(key);
+        while (true) {
+            long now = nanoClock.getAsLong();
+            var bucket = bucket(index);
+            var cached = find(bucket, key, now);
+            if (cached != null) {
+                if (!cached.request.equals(request)) {
+                    throw new IdempotencyKeyReusedException(key);
+                }
+                hits.increment();
+                return cached.outcome;
+            }
+            var entry = new Entry<V>(key, request, now + ttlNanos, new CompletableFuture<>());
+            var inserted = inserted(bucket, entry, now);
+            if (inserted == null) {
+                throw new IdempotencyCacheFullException(key);
+            }
+            if (buckets.compareAndSet(index, bucket, inserted)) {
+                misses.increment();
+                countDropped(bucket, inserted, now);
+                run(index, entry, operation);
+                return entry.outcome;
+            }
+        }
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return entries dropped before they expired to make room for new ones
+     */
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    public long expirations() {
+        return expirations.sum();
+    }
+
+    public int capacity() {
+        return buckets.length() * WAYS;
+    }
+
+    private void run(int index, Entry<V> entry, Supplier<CompletableFuture<V>> operation) {
+        CompletableFuture<V> outcome;
+        try {
+            outcome = operation.get();
+        } catch (RuntimeException e) {
+            outcome = CompletableFuture.failedFuture(e);
+        }
+        outcome.whenComplete((value, error) -> {
+            if (error == null) {
+                entry.outcome.complete(value);
+                return;
+            }
+            var cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (!replayable.test(cause)) {
+                remove(index, entry);
+            }
+            entry.outcome.completeExceptionally(cause);
+        });
+    }
+
+    private void remove(int index, Entry<V> entry) {
+        while (true) {
+            var bucket = bucket(index);
+            int way = indexOf(bucket, entry);
+            if (way < 0) {
+                return;
+            }
+            @SuppressWarnings("unchecked")
+            Entry<V>[] removed = (Entry<V>[]) new Entry<?>[bucket.length - 1];
+            System.arraycopy(bucket, 0, removed, 0, way);
+            System.arraycopy(bucket, way + 1, removed, way, bucket.length - way - 1);
+            if (buckets.compareAndSet(index, bucket, removed)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return null if the bucket is full of pending entries
+     */
+    private Entry<V>[] inserted(Entry<V>[] bucket, Entry<V> entry, long now) {
+        @SuppressWarnings("unchecked")
+        Entry<V>[] inserted = (Entry<V>[]) new Entry<?>[bucket.length + 1];
+        int length = 0;
+        for (Entry<V> cached : bucket) {
+            if (!cached.expired(now)) {
+                inserted[length++] = cached;
+            }
+        }
+        if (length == WAYS) {
+            int evicted = soonestToExpire(inserted, length);
+            if (evicted < 0) {
+                return null;
+            }
+            inserted[evicted] = inserted[--length];
+        }
+        inserted[length++] = entry;
+        return length == inserted.length ? inserted : Arrays.copyOf(inserted, length);
+    }
+
+    private void countDropped(Entry<V>[] bucket, Entry<V>[] inserted, long now) {
+        int expired = 0;
+        for (Entry<V> cached : bucket) {
+            if (cached.expired(now)) {
+                expired++;
+            }
+        }
+        expirations.add(expired);
+        evictions.add(bucket.length + 1 - inserted.length - expired);
+    }
+
+    /**
+     * @return index of the completed entry closest to expiring, -1 if every entry is pending
+     */
+    private static int soonestToExpire(Entry<?>[] entries, int length) {
+        int soonest = -1;
+        for (int i = 0; i < length; i++) {
+            if (entries[i].outcome.isDone() && (soonest < 0 || entries[i].expiresAtNanos - entries[soonest].expiresAtNanos < 0)) {
+                soonest = i;
+            }
+        }
+        return soonest;
+    }
+
+    private Entry<V> find(Entry<V>[] bucket, String key, long now) {
+        for (Entry<V> entry : bucket) {
+            if (entry.key.equals(key) && !entry.expired(now)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private static int indexOf(Entry<?>[] bucket, Entry<?> entry) {
+        for (int i = 0; i < bucket.length; i++) {
+            if (bucket[i] == entry) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private Entry<V>[] bucket(int index) {
+        return buckets.get(index);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> Entry<V>[] noEntries() {
+        return (Entry<V>[]) NO_ENTRIES;
+    }
+
+    private int bucketOf(String key) {
+        int hash = key.hashCode() * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    private static final class Entry<V> {
+        private final String key;
+        private final Object request;
+        private final long expiresAtNanos;
+        private final CompletableFuture<V> outcome;
+
+        private Entry(String key, Object request, long expiresAtNanos, CompletableFuture<V> outcome) {
+            this.key = key;
+            this.request = request;
+            this.expiresAtNanos = expiresAtNanos;
+            this.outcome = outcome;
+        }
+
+        private boolean expired(long now) {
+            return now - expiresAtNanos >= 0 && outcome.isDone();
+        }
+    }
+}
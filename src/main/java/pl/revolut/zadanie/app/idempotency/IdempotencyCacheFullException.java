@@ -0,0 +1,12 @@
+package pl.revolut.zadanie.app.idempotency;
+
+/**
+ * Thrown instead of running an operation when every entry of the bucket of its key is still pending, so none can be
+ * evicted without letting a retry of an operation in flight run again.
+ */
+public class IdempotencyCacheFullException extends RuntimeException {
+
+    IdempotencyCacheFullException(String key) {
+        super(String.format("Too many operations in flight to remember idempotency key %s, try again later", key));
+    }
+}
@@ -0,0 +1,11 @@
+package pl.revolut.zadanie.app.idempotency;
+
+/**
+ * Thrown when an idempotency key is sent again with a request different from the one it was first used for.
+ */
+public class IdempotencyKeyReusedException extends RuntimeException {
+
+    IdempotencyKeyReusedException(String key) {
+        super(String.format("Idempotency key %s has already been used for a different request", key));
+    }
+}
@@ -0,0 +1,23 @@
+package pl.revolut.zadanie.app.journal;
+
+/**
+ * When journal records are forced to disk.
+ * <ul>
+ * <li>{@link #BATCH} - after every batch of records written by the journal writer, a change is acknowledged only once
+ * it is on disk, concurrent changes share a single fsync</li>
+ * <li>{@link #INTERVAL} - at most every fsync interval, changes are acknowledged right away and the last interval
+ * may be lost on a crash</li>
+ * </ul>
+ */
+public enum Durability {
+    BATCH, INTERVAL;
+
+    public static Durability fromName(String name) {
+        for (Durability durability : values()) {
+            if (durability.name().equalsIgnoreCase(name)) {
+                return durability;
+            }
+        }
+        throw new IllegalArgumentException(String.format("Unknown journal durability %s, expected one of batch, interval", name));
+    }
+}
@@ -0,0 +1,411 @@
+package pl.revolut.zadanie.app.journal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.revolut.zadanie.app.concurrent.MpscRingBuffer;
+import pl.revolut.zadanie.app.concurrent.SnapshotGate;
+import pl.revolut.zadanie.app.executor.TransferCompletion;
+import pl.revolut.zadanie.app.model.Account;
+import pl.revolut.zadanie.app.model.AccountListener;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+/**
+ * Append only journal of every committed change of the account book, with periodic snapshots so recovery only replays
+ * the journal tail.
+ * <p>
+ * Changes are handed over through a lock free ring buffer to a single writer thread, which writes them in batches to
+ * the current segment file and forces each batch, or the batches of an interval, to disk with a single fsync.
+ * The position of a record in the ring buffer is its sequence, so the journal is written in sequence order.
+ * <p>
+ * A snapshot closes the {@link SnapshotGate} for as long as it takes to copy the balances, so it contains exactly
+ * the changes journaled before its sequence.
+ * <p>
+ * A transfer whose credit is applied later by this application, e.g. by another shard, is journaled as a whole with its
+ * debit, so a crash before the credit can't lose the money in flight. The credit is journaled by nothing, until it is
+ * applied it is counted in the balance of the credited account in snapshots instead.
+ * <p>
+ * With {@link Durability#BATCH} a change is acknowledged once it is on disk: the thread which made it waits for the
+ * force, unless it has {@link #defer deferred} that to the journal, like the shards of a sharded transfer executor, whose
+ * transfers the writer completes after the force covering them.
+ */
+public class Journal implements AccountListener, TransferCompletion, AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(Journal.class);
+    private static final int QUEUE_CAPACITY = 1 << 16;
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+    private static final long SEGMENT_SIZE = 64L << 20;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Path directory;
+    private final Durability durability;
+    private final long fsyncIntervalNanos;
+    private final Map<String, Long> recovered;
+    private final Map<String, String> recoveredCurrencies;
+    private final long firstSequence;
+    private final MpscRingBuffer<JournalRecord> records = new MpscRingBuffer<>(QUEUE_CAPACITY);
+    private final SnapshotGate gate = new SnapshotGate(64);
+    private final ThreadLocal<Appender> appenders = ThreadLocal.withInitial(Appender::new);
+    private final Queue<DeferredCompletion> deferred = new ConcurrentLinkedQueue<>();
+    private final Object durabilityMonitor = new Object();
+    private final ConcurrentSkipListMap<Long, Path> segments = new ConcurrentSkipListMap<>();
+    private final Map<String, Long> creditsInFlight = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService snapshots = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        var thread = new Thread(runnable, "journal-snapshot");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+    private final CRC32 crc = new CRC32();
+    private final Thread writer;
+    private FileChannel segment;
+    private volatile long durableSequence;
+    private volatile boolean idle;
+    private volatile boolean running = true;
+
+    private Journal(Path directory, Durability durability, long fsyncIntervalMillis, JournalRecovery recovery) throws IOException {
+        this.directory = directory;
+        this.durability = durability;
+        this.fsyncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(fsyncIntervalMillis);
+        this.recovered = recovery.balances();
+        this.recoveredCurrencies = recovery.currencies();
+        this.firstSequence = recovery.nextSequence();
+        this.durableSequence = firstSequence - 1;
+        for (Path existing : JournalRecovery.segments(directory)) {
+            segments.put(JournalRecovery.firstSequenceOf(existing), existing);
+        }
+        openSegment(firstSequence);
+        writer = new Thread(this::writeLoop, "journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Recovers the state left in the directory and starts journaling after it.
+     */
+    public static Journal open(Path directory, Durability durability, long fsyncIntervalMillis) {
+        try {
+            Files.createDirectories(directory);
+            return new Journal(directory, durability, fsyncIntervalMillis, JournalRecovery.recover(directory));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open the journal in " + directory, e);
+        }
+    }
+
+    /**
+     * @return balances by iban as of the last change journaled before the restart
+     */
+    public Map<String, Long> recovered() {
+        return recovered;
+    }
+
+    /**
+     * @return currency of a recovered account
+     */
+    public String recoveredCurrency(String iban) {
+        return recoveredCurrencies.getOrDefault(iban, Account.DEFAULT_CURRENCY);
+    }
+
+    public void scheduleSnapshots(Supplier<Collection<Account>> accounts, long periodSeconds) {
+        snapshots.scheduleAtFixedRate(() -> {
+            try {
+                snapshot(accounts);
+            } catch (RuntimeException | IOException e) {
+                LOG.error("Could not take a snapshot", e);
+            }
+        }, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Takes a snapshot of all the accounts of the book and deletes journal segments and snapshots it makes obsolete.
+     * The accounts are listed once no change is running, so none can be missed.
+     */
+    public void snapshot(Supplier<Collection<Account>> accounts) throws IOException {
+        long sequence;
+        ArrayList<String> ibans;
+        ArrayList<String> currencies;
+        long[] balances;
+        gate.close();
+        try {
+            sequence = firstSequence + records.nextPosition();
+            var book = accounts.get();
+            ibans = new ArrayList<>(book.size());
+            currencies = new ArrayList<>(book.size());
+            balances = new long[book.size()];
+            for (Account account : book) {
+                balances[ibans.size()] = account.getBalance() + creditsInFlight.getOrDefault(account.getIban(), 0L);
+                ibans.add(account.getIban());
+                currencies.add(account.getCurrency());
+            }
+        } finally {
+            gate.open();
+        }
+        Snapshots.write(directory, sequence, ibans, currencies, balances);
+        deleteSegmentsBefore(sequence);
+        Snapshots.deleteOlderThan(directory, sequence);
+        LOG.info("Took a snapshot of {} accounts at sequence {}", ibans.size(), sequence);
+    }
+
+    @Override
+    public void beforeChange() {
+        gate.enter();
+    }
+
+    @Override
+    public void afterChange() {
+        gate.exit();
+        if (durability == Durability.BATCH) {
+            var appender = appenders.get();
+            if (!appender.deferring) {
+                awaitDurable(appender);
+            }
+        }
+    }
+
+    @Override
+    public void defer() {
+        appenders.get().deferring = true;
+    }
+
+    /**
+     * @return sequence of the last record appended by the calling thread, -1 if none
+     */
+    @Override
+    public long mark() {
+        return appenders.get().sequence;
+    }
+
+    @Override
+    public void complete(CompletableFuture<Void> result, long mark) {
+        if (durability != Durability.BATCH || mark < 0 || durableSequence >= mark || !running) {
+            result.complete(null);
+            return;
+        }
+        deferred.add(new DeferredCompletion(mark, result));
+        if (idle) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    @Override
+    public void onCreated(Account account, long balance) {
+        append(account.getCurrency().equals(Account.DEFAULT_CURRENCY) ? JournalRecord.create(account.getIban(), balance)
+                : JournalRecord.create(account.getIban(), account.getCurrency(), balance));
+    }
+
+    @Override
+    public void onDeleted(Account account) {
+        append(JournalRecord.delete(account.getIban()));
+    }
+
+    @Override
+    public void onBalanceAdjusted(Account account, long delta) {
+        append(JournalRecord.adjust(account.getIban(), delta));
+    }
+
+    @Override
+    public void onTransferred(Account from, Account to, long amount) {
+        append(JournalRecord.transfer(from.getIban(), to.getIban(), amount));
+    }
+
+    @Override
+    public void onExchanged(Account from, Account to, long amount, long credited) {
+        append(JournalRecord.exchange(from.getIban(), to.getIban(), amount, credited));
+    }
+
+    @Override
+    public void onTransferDebited(Account from, String ibanTo, long amount, long credited, boolean local) {
+        if (!local) {
+            AccountListener.super.onTransferDebited(from, ibanTo, amount, credited, local);
+            return;
+        }
+        append(amount == credited ? JournalRecord.transfer(from.getIban(), ibanTo, amount)
+                : JournalRecord.exchange(from.getIban(), ibanTo, amount, credited));
+        creditsInFlight.merge(ibanTo, credited, Long::sum);
+    }
+
+    @Override
+    public void onTransferCredited(String ibanFrom, Account to, long amount, long credited, boolean local) {
+        if (!local) {
+            AccountListener.super.onTransferCredited(ibanFrom, to, amount, credited, local);
+            return;
+        }
+        creditsInFlight.computeIfPresent(to.getIban(), (iban, inFlight) -> inFlight == credited ? null : inFlight - credited);
+    }
+
+    private void append(JournalRecord record) {
+        long position;
+        while ((position = records.publish(record)) < 0) {
+            LockSupport.unpark(writer);
+            Thread.onSpinWait();
+        }
+        appenders.get().sequence = firstSequence + position;
+        if (idle) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    private void awaitDurable(Appender appender) {
+        long sequence = appender.sequence;
+        appender.sequence = -1;
+        if (sequence < 0 || durableSequence >= sequence) {
+            return;
+        }
+        synchronized (durabilityMonitor) {
+            while (durableSequence < sequence && running) {
+                try {
+                    durabilityMonitor.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void writeLoop() {
+        long nextSequence = firstSequence;
+        long lastForce = System.nanoTime();
+        while (running || !records.isEmpty()) {
+            try {
+                JournalRecord record;
+                long batchStart = nextSequence;
+                while ((record = records.poll()) != null) {
+                    if (writeBuffer.remaining() < record.maxEncodedSize()) {
+                        flush();
+                    }
+                    record.encode(nextSequence++, writeBuffer, crc);
+                }
+                boolean written = nextSequence != batchStart;
+                flush();
+                boolean unforced = durableSequence < nextSequence - 1;
+                if (unforced && (durability == Durability.BATCH || System.nanoTime() - lastForce >= fsyncIntervalNanos)) {
+                    segment.force(false);
+                    lastForce = System.nanoTime();
+                    publishDurable(nextSequence - 1);
+                }
+                completeDurable();
+                if (segment.position() >= SEGMENT_SIZE) {
+                    openSegment(nextSequence);
+                }
+                if (!written) {
+                    idle = true;
+                    if (records.isEmpty() && running) {
+                        LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                    }
+                    idle = false;
+                }
+            } catch (IOException e) {
+                LOG.error("Could not write to the journal, retrying", e);
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    private void flush() throws IOException {
+        writeBuffer.flip();
+        while (writeBuffer.hasRemaining()) {
+            segment.write(writeBuffer);
+        }
+        writeBuffer.clear();
+    }
+
+    /**
+     * Completions deferred by different threads are queued out of sequence order, one behind a later sequence waits for
+     * the force covering that sequence too.
+     */
+    private void completeDurable() {
+        DeferredCompletion completion;
+        while ((completion = deferred.peek()) != null && completion.sequence <= durableSequence) {
+            deferred.poll();
+            completion.result.complete(null);
+        }
+    }
+
+    private void publishDurable(long sequence) {
+        durableSequence = sequence;
+        synchronized (durabilityMonitor) {
+            durabilityMonitor.notifyAll();
+        }
+    }
+
+    private void openSegment(long firstSequence) throws IOException {
+        if (segment != null) {
+            segment.force(false);
+            segment.close();
+        }
+        var path = directory.resolve(JournalRecovery.segmentName(firstSequence));
+        segment = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        segments.put(firstSequence, path);
+    }
+
+    /**
+     * A segment is obsolete once the segment after it starts at or before the sequence.
+     */
+    private void deleteSegmentsBefore(long sequence) throws IOException {
+        for (var entry : segments.headMap(sequence, true).entrySet()) {
+            var next = segments.higherKey(entry.getKey());
+            if (next != null && next <= sequence) {
+                Files.deleteIfExists(entry.getValue());
+                segments.remove(entry.getKey());
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        snapshots.shutdownNow();
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+            segment.force(false);
+            segment.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            LOG.error("Could not close the journal", e);
+        }
+        synchronized (durabilityMonitor) {
+            durabilityMonitor.notifyAll();
+        }
+        DeferredCompletion completion;
+        while ((completion = deferred.poll()) != null) {
+            completion.result.complete(null);
+        }
+    }
+
+    private static final class Appender {
+        private long sequence = -1;
+        private boolean deferring;
+    }
+
+    private static final class DeferredCompletion {
+        private final long sequence;
+        private final CompletableFuture<Void> result;
+
+        private DeferredCompletion(long sequence, CompletableFuture<Void> result) {
+            this.sequence = sequence;
+            this.result = result;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package pl.revolut.zadanie.app.journal;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * A single change of the account book. Balance changes are recorded as deltas, so changes of the same account made
+ * concurrently give the same result whatever order they end up in the journal. Accounts of the default currency are
+ * created with {@link #CREATE} records, which don't record the currency, others with {@link #CREATE_IN_CURRENCY}.
+ * <p>
+ * Binary layout: {@code length:int sequence:long type:byte fields... crc32:int}, where the length and crc cover
+ * everything in between and strings are written as {@code length:short utf8}.
+ */
+class JournalRecord {
+    static final byte CREATE = 1;
+    static final byte DELETE = 2;
+    static final byte ADJUST = 3;
+    static final byte TRANSFER = 4;
+    static final byte CREATE_IN_CURRENCY = 5;
+    static final byte EXCHANGE = 6;
+    private static final int MAX_IBAN_BYTES = Short.MAX_VALUE;
+
+    private final byte type;
+    private final String iban;
+    private final String otherIban;
+    private final long amount;
+    private final long credited;
+
+    /**
+     * @param otherIban the credited iban of a transfer, or the currency of a created account
+     */
+    private JournalRecord(byte type, String iban, String otherIban, long amount, long credited) {
+        this.type = type;
+        this.iban = iban;
+        this.otherIban = otherIban;
+        this.amount = amount;
+        this.credited = credited;
+    }
+
+    static JournalRecord create(String iban, long balance) {
+        return new JournalRecord(CREATE, iban, null, balance, 0);
+    }
+
+    static JournalRecord create(String iban, String currency, long balance) {
+        return new JournalRecord(CREATE_IN_CURRENCY, iban, currency, balance, 0);
+    }
+
+    static JournalRecord delete(String iban) {
+        return new JournalRecord(DELETE, iban, null, 0, 0);
+    }
+
+    static JournalRecord adjust(String iban, long delta) {
+        return new JournalRecord(ADJUST, iban, null, delta, 0);
+    }
+
+    static JournalRecord transfer(String from, String to, long amount) {
+        return new JournalRecord(TRANSFER, from, to, amount, 0);
+    }
+
+    static JournalRecord exchange(String from, String to, long amount, long credited) {
+        return new JournalRecord(EXCHANGE, from, to, amount, credited);
+    }
+
+    /**
+     * Upper bound of the encoded size, every iban char takes at most 3 bytes in UTF-8.
+     */
+    int maxEncodedSize() {
+        return Integer.BYTES + Long.BYTES + 1 + 2 * Short.BYTES + 3 * (iban.length() + (otherIban == null ? 0 : otherIban.length())) + 2 * Long.BYTES + Integer.BYTES;
+    }
+
+    void encode(long sequence, ByteBuffer buffer, CRC32 crc) {
+        int start = buffer.position();
+        buffer.putInt(0);
+        buffer.putLong(sequence);
+        buffer.put(type);
+        putString(buffer, iban);
+        if (otherIban != null) {
+            putString(buffer, otherIban);
+        }
+        if (type != DELETE) {
+            buffer.putLong(amount);
+        }
+        if (type == EXCHANGE) {
+            buffer.putLong(credited);
+        }
+        int end = buffer.position();
+        buffer.putInt(start, end - start - Integer.BYTES);
+        crc.reset();
+        crc.update(buffer.duplicate().position(start + Integer.BYTES).limit(end));
+        buffer.putInt((int) crc.getValue());
+    }
+
+    /**
+     * Applies a record read from the journal, positioned right after its type, to the recovered balances and the
+     * currencies of the accounts not in the default one. Changes of accounts which don't exist anymore are skipped.
+     */
+    static void apply(byte type, ByteBuffer body, Map<String, Long> balances, Map<String, String> currencies) {
+        switch (type) {
+            case CREATE:
+                var created = getString(body);
+                balances.put(created, body.getLong());
+                currencies.remove(created);
+                break;
+            case CREATE_IN_CURRENCY:
+                var createdInCurrency = getString(body);
+                currencies.put(createdInCurrency, getString(body));
+                balances.put(createdInCurrency, body.getLong());
+                break;
+            case DELETE:
+                var deleted = getString(body);
+                balances.remove(deleted);
+                currencies.remove(deleted);
+                break;
+            case ADJUST:
+                balances.computeIfPresent(getString(body), (iban, balance) -> balance + body.getLong());
+                break;
+            case TRANSFER:
+                var from = getString(body);
+                var to = getString(body);
+                long amount = body.getLong();
+                balances.computeIfPresent(from, (iban, balance) -> balance - amount);
+                balances.computeIfPresent(to, (iban, balance) -> balance + amount);
+                break;
+            case EXCHANGE:
+                var debited = getString(body);
+                var exchangedTo = getString(body);
+                long debitedAmount = body.getLong();
+                long creditedAmount = body.getLong();
+                balances.computeIfPresent(debited, (iban, balance) -> balance - debitedAmount);
+                balances.computeIfPresent(exchangedTo, (iban, balance) -> balance + creditedAmount);
+                break;
+            default:
+                throw new IllegalStateException("Unknown journal record type " + type);
+        }
+    }
+
+    private static void putString(ByteBuffer buffer, String value) {
+        var bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_IBAN_BYTES) {
+            throw new IllegalArgumentException("Iban too long to be journaled");
+        }
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        var bytes = new byte[buffer.getShort()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,128 @@
+package pl.revolut.zadanie.app.journal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Rebuilds the balances from the newest snapshot and the journal records written after it. A torn or corrupted
+ * record ends the journal, the segment is truncated right before it.
+ */
+final class JournalRecovery {
+    static final Logger LOG = LoggerFactory.getLogger(JournalRecovery.class);
+    static final String SEGMENT_PREFIX = "journal-";
+    static final String SEGMENT_SUFFIX = ".log";
+
+    private final Map<String, Long> balances;
+    private final Map<String, String> currencies;
+    private long nextSequence;
+
+    private JournalRecovery(Map<String, Long> balances, Map<String, String> currencies, long nextSequence) {
+        this.balances = balances;
+        this.currencies = currencies;
+        this.nextSequence = nextSequence;
+    }
+
+    static JournalRecovery recover(Path directory) throws IOException {
+        var snapshot = Snapshots.readLatest(directory);
+        var recovery = snapshot
+                .map(it -> new JournalRecovery(it.balances, it.currencies, it.sequence))
+                .orElseGet(() -> new JournalRecovery(new HashMap<>(), new HashMap<>(), 0));
+        var segments = segments(directory);
+        for (int i = 0; i < segments.size(); i++) {
+            if (!recovery.replay(segments.get(i))) {
+                for (Path unreachable : segments.subList(i + 1, segments.size())) {
+                    LOG.warn("Deleting journal segment {} written after a corrupted record", unreachable);
+                    Files.delete(unreachable);
+                }
+                break;
+            }
+        }
+        LOG.info("Recovered {} accounts, journal continues at sequence {}", recovery.balances.size(), recovery.nextSequence);
+        return recovery;
+    }
+
+    Map<String, Long> balances() {
+        return balances;
+    }
+
+    /**
+     * @return currencies by iban of the accounts not in the default currency
+     */
+    Map<String, String> currencies() {
+        return currencies;
+    }
+
+    long nextSequence() {
+        return nextSequence;
+    }
+
+    /**
+     * @return false if the segment ended with a torn or corrupted record
+     */
+    private boolean replay(Path segment) throws IOException {
+        try (var channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            var crc = new CRC32();
+            while (buffer.remaining() >= Integer.BYTES) {
+                int start = buffer.position();
+                int length = buffer.getInt();
+                if (length <= Long.BYTES || length > buffer.remaining() - Integer.BYTES) {
+                    return truncate(channel, segment, start);
+                }
+                var body = buffer.slice().limit(length);
+                crc.reset();
+                crc.update(body.duplicate());
+                buffer.position(buffer.position() + length);
+                if ((int) crc.getValue() != buffer.getInt()) {
+                    return truncate(channel, segment, start);
+                }
+                long sequence = body.getLong();
+                byte type = body.get();
+                if (sequence >= nextSequence) {
+                    JournalRecord.apply(type, body, balances, currencies);
+                    nextSequence = sequence + 1;
+                }
+            }
+            return buffer.remaining() == 0 || truncate(channel, segment, buffer.position());
+        }
+    }
+
+    private static boolean truncate(FileChannel channel, Path segment, long position) throws IOException {
+        LOG.warn("Journal segment {} ends with a torn or corrupted record at {}, truncating", segment, position);
+        channel.truncate(position);
+        return false;
+    }
+
+    /**
+     * @return segments ordered by the sequence of their first record
+     */
+    static List<Path> segments(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().startsWith(SEGMENT_PREFIX) && file.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted((first, second) -> Long.compare(firstSequenceOf(first), firstSequenceOf(second)))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    static long firstSequenceOf(Path segment) {
+        var name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    static String segmentName(long firstSequence) {
+        return String.format("%s%020d%s", SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX);
+    }
+}
@@ -0,0 +1,143 @@
+package pl.revolut.zadanie.app.journal;
+
+import pl.revolut.zadanie.app.model.Account;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Compact binary snapshots of every balance, named after the first journal sequence they don't contain.
+ * <p>
+ * Binary layout: {@code magic:int sequence:long count:int (iban:utf currency:utf balance:long)... crc32:long}.
+ * Snapshots taken before accounts had currencies have no currency fields and a different magic, their accounts are
+ * in the default currency.
+ */
+final class Snapshots {
+    private static final int MAGIC_WITHOUT_CURRENCIES = 0x52564c53;
+    private static final int MAGIC = 0x52564c43;
+    private static final String PREFIX = "snapshot-";
+    private static final String SUFFIX = ".bin";
+
+    private Snapshots() {
+    }
+
+    static void write(Path directory, long sequence, List<String> ibans, List<String> currencies, long[] balances) throws IOException {
+        var temporary = directory.resolve(fileName(sequence) + ".tmp");
+        var fileStream = new FileOutputStream(temporary.toFile());
+        var checked = new CheckedOutputStream(fileStream, new CRC32());
+        try (var out = new DataOutputStream(new BufferedOutputStream(checked, 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeLong(sequence);
+            out.writeInt(ibans.size());
+            for (int i = 0; i < ibans.size(); i++) {
+                out.writeUTF(ibans.get(i));
+                out.writeUTF(currencies.get(i));
+                out.writeLong(balances[i]);
+            }
+            out.flush();
+            out.writeLong(checked.getChecksum().getValue());
+            out.flush();
+            fileStream.getFD().sync();
+        }
+        Files.move(temporary, directory.resolve(fileName(sequence)), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return the newest snapshot which can be read in full
+     */
+    static Optional<Snapshot> readLatest(Path directory) throws IOException {
+        for (Path file : list(directory)) {
+            try {
+                return Optional.of(read(file));
+            } catch (IOException e) {
+                JournalRecovery.LOG.warn("Skipping unreadable snapshot {}", file, e);
+            }
+        }
+        return Optional.empty();
+    }
+
+    static void deleteOlderThan(Path directory, long sequence) throws IOException {
+        for (Path file : list(directory)) {
+            if (sequenceOf(file) < sequence) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private static Snapshot read(Path file) throws IOException {
+        var checked = new CheckedInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16), new CRC32());
+        try (var in = new DataInputStream(checked)) {
+            int magic = in.readInt();
+            if (magic != MAGIC && magic != MAGIC_WITHOUT_CURRENCIES) {
+                throw new IOException("Not a snapshot");
+            }
+            long sequence = in.readLong();
+            int count = in.readInt();
+            var balances = new HashMap<String, Long>(Math.max(16, (int) (count / 0.75f) + 1));
+            var currencies = new HashMap<String, String>();
+            for (int i = 0; i < count; i++) {
+                var iban = in.readUTF();
+                if (magic == MAGIC) {
+                    var currency = in.readUTF();
+                    if (!currency.equals(Account.DEFAULT_CURRENCY)) {
+                        currencies.put(iban, currency);
+                    }
+                }
+                balances.put(iban, in.readLong());
+            }
+            long expectedChecksum = checked.getChecksum().getValue();
+            if (in.readLong() != expectedChecksum) {
+                throw new IOException("Snapshot checksum mismatch");
+            }
+            return new Snapshot(sequence, balances, currencies);
+        }
+    }
+
+    /**
+     * @return snapshots from the newest to the oldest
+     */
+    private static List<Path> list(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().startsWith(PREFIX) && file.getFileName().toString().endsWith(SUFFIX))
+                    .sorted((first, second) -> Long.compare(sequenceOf(second), sequenceOf(first)))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static long sequenceOf(Path file) {
+        var name = file.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    private static String fileName(long sequence) {
+        return String.format("%s%020d%s", PREFIX, sequence, SUFFIX);
+    }
+
+    static class Snapshot {
+        final long sequence;
+        final Map<String, Long> balances;
+        final Map<String, String> currencies;
+
+        Snapshot(long sequence, Map<String, Long> balances, Map<String, String> currencies) {
+            this.sequence = sequence;
+            this.balances = balances;
+            this.currencies = currencies;
+        }
+    }
+}
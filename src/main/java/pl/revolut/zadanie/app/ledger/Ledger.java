@@ -0,0 +1,171 @@
+package pl.revolut.zadanie.app.ledger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.revolut.zadanie.app.concurrent.MpscRingBuffer;
+import pl.revolut.zadanie.app.dto.LedgerEntryDto;
+import pl.revolut.zadanie.app.model.Account;
+import pl.revolut.zadanie.app.model.AccountListener;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * History of the committed transfers of every account, kept since the application started.
+ * <p>
+ * A transfer is handed over through a lock free ring buffer to a single writer thread appending it to the
+ * {@link LedgerLog}, so recording it adds neither a lock nor a write to the transaction of the transfer. The transfer
+ * is written into arrays preallocated for every slot of the ring buffer, so recording it allocates nothing. The history
+ * trails the transfers by the time the writer takes to drain the ring buffer. A transfer applied in two steps, between
+ * shards or nodes, and a transfer between two currencies are recorded as a debit and a credit, each in the currency of
+ * its account.
+ * <p>
+ * Transfers wait for room in a full ring buffer only while the writer is alive. Once it has stopped, e.g. out of
+ * memory for another segment, they are counted as {@link #dropped()} instead of being recorded, so a broken history
+ * never holds up a transfer.
+ */
+public class Ledger implements AccountListener, AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(Ledger.class);
+    private static final int QUEUE_CAPACITY = 1 << 16;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final LedgerLog log;
+    private final MpscRingBuffer<Void> records = new MpscRingBuffer<>(QUEUE_CAPACITY);
+    private final String[] froms = new String[QUEUE_CAPACITY];
+    private final String[] tos = new String[QUEUE_CAPACITY];
+    private final long[] amounts = new long[QUEUE_CAPACITY];
+    private final long[] timestamps = new long[QUEUE_CAPACITY];
+    private final LedgerEntryDto.Kind[] kinds = new LedgerEntryDto.Kind[QUEUE_CAPACITY];
+    private final Thread writer;
+    private final LongAdder dropped = new LongAdder();
+    private volatile boolean idle;
+    private volatile boolean running = true;
+
+    private Ledger(LedgerLog log) {
+        this.log = log;
+        writer = new Thread(this::writeLoop, "ledger-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Keeps the log in direct buffers.
+     */
+    public static Ledger offHeap() {
+        return new Ledger(LedgerLog.offHeap());
+    }
+
+    /**
+     * Keeps the log in files mapped into memory, so it can outgrow the memory given to the process.
+     */
+    public static Ledger mapped(Path directory) {
+        return new Ledger(LedgerLog.mapped(directory));
+    }
+
+    @Override
+    public void onTransferred(Account from, Account to, long amount) {
+        record(from.getIban(), to.getIban(), amount, System.currentTimeMillis(), LedgerEntryDto.Kind.TRANSFER);
+    }
+
+    @Override
+    public void onExchanged(Account from, Account to, long amount, long credited) {
+        long timestamp = System.currentTimeMillis();
+        record(from.getIban(), to.getIban(), amount, timestamp, LedgerEntryDto.Kind.DEBIT);
+        record(from.getIban(), to.getIban(), credited, timestamp, LedgerEntryDto.Kind.CREDIT);
+    }
+
+    @Override
+    public void onTransferDebited(Account from, String ibanTo, long amount, long credited, boolean local) {
+        record(from.getIban(), ibanTo, amount, System.currentTimeMillis(), LedgerEntryDto.Kind.DEBIT);
+    }
+
+    @Override
+    public void onTransferCredited(String ibanFrom, Account to, long amount, long credited, boolean local) {
+        record(ibanFrom, to.getIban(), credited, System.currentTimeMillis(), LedgerEntryDto.Kind.CREDIT);
+    }
+
+    private void record(String from, String to, long amount, long timestamp, LedgerEntryDto.Kind kind) {
+        long position;
+        while ((position = records.claim()) < 0) {
+            if (!writer.isAlive()) {
+                dropped.increment();
+                return;
+            }
+            LockSupport.unpark(writer);
+            Thread.onSpinWait();
+        }
+        int index = records.indexOf(position);
+        froms[index] = from;
+        tos[index] = to;
+        amounts[index] = amount;
+        timestamps[index] = timestamp;
+        kinds[index] = kind;
+        records.commit(position);
+        if (idle) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    /**
+     * @see LedgerLog#history(String, long, long, long, int)
+     */
+    public List<LedgerEntryDto> history(String iban, long fromTimestamp, long toTimestamp, long beforeTxId, int limit) {
+        return log.history(iban, fromTimestamp, toTimestamp, beforeTxId, limit);
+    }
+
+    /**
+     * @return number of transfers and legs of transfers appended to the log so far
+     */
+    public long size() {
+        return log.size();
+    }
+
+    /**
+     * @return number of transfers and legs of transfers not recorded because the writer had stopped
+     */
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    private void writeLoop() {
+        try {
+            write();
+        } catch (RuntimeException | Error e) {
+            LOG.error("Could not append to the ledger, no more transfers will be recorded", e);
+        }
+    }
+
+    private void write() {
+        while (running || !records.isEmpty()) {
+            long position;
+            boolean written = false;
+            while ((position = records.peek()) >= 0) {
+                int index = records.indexOf(position);
+                log.append(froms[index], tos[index], amounts[index], timestamps[index], kinds[index]);
+                records.release(position);
+                written = true;
+            }
+            if (!written) {
+                idle = true;
+                if (records.isEmpty() && running) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                idle = false;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package pl.revolut.zadanie.app.ledger;
+
+import pl.revolut.zadanie.app.dto.LedgerEntryDto;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Append only log of transfers, stored column by column in fixed size segments outside of the heap, either in direct
+ * buffers or in memory mapped files. The position of an entry in the log is its transaction id.
+ * <p>
+ * Every entry points back at the previous entry of its source account and at the previous entry of its target
+ * account, so the history of an account is a chain walked from its newest entry. An entry of a single leg of a
+ * transfer, its debit or its credit, is on the chain of the account of that leg only. Every
+ * {@value #CHECKPOINT_INTERVAL}th entry of an account is also kept on the heap as a checkpoint, so the newest entry
+ * before a point in time is found with a binary search and a short walk instead of walking the whole chain.
+ * <p>
+ * Entries are appended by a single writer thread, readers take no locks: an entry is written before it becomes
+ * the head of an account chain, and timestamps never decrease along the log, so they are ordered along every chain.
+ */
+final class LedgerLog {
+    static final int SEGMENT_SHIFT = 20;
+    static final int SEGMENT_ENTRIES = 1 << SEGMENT_SHIFT;
+    private static final int CHECKPOINT_INTERVAL = 64;
+    private static final int TIMESTAMPS = 0;
+    private static final int AMOUNTS = TIMESTAMPS + Long.BYTES * SEGMENT_ENTRIES;
+    private static final int PREVIOUS_FROM = AMOUNTS + Long.BYTES * SEGMENT_ENTRIES;
+    private static final int PREVIOUS_TO = PREVIOUS_FROM + Long.BYTES * SEGMENT_ENTRIES;
+    private static final int FROM = PREVIOUS_TO + Long.BYTES * SEGMENT_ENTRIES;
+    private static final int TO = FROM + Integer.BYTES * SEGMENT_ENTRIES;
+    private static final int KINDS = TO + Integer.BYTES * SEGMENT_ENTRIES;
+    private static final int SEGMENT_BYTES = KINDS + SEGMENT_ENTRIES;
+    private static final LedgerEntryDto.Kind[] KIND_VALUES = LedgerEntryDto.Kind.values();
+    private static final String SEGMENT_PREFIX = "ledger-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final Path directory;
+    private final Map<String, History> histories = new ConcurrentHashMap<>();
+    private volatile ByteBuffer[] segments = new ByteBuffer[0];
+    private volatile String[] ibans = new String[1024];
+    private volatile long size;
+    private long lastTimestamp;
+
+    private LedgerLog(Path directory) {
+        this.directory = directory;
+    }
+
+    static LedgerLog offHeap() {
+        return new LedgerLog(null);
+    }
+
+    /**
+     * Segments left in the directory by a previous run are deleted, the log starts empty.
+     */
+    static LedgerLog mapped(Path directory) {
+        try {
+            Files.createDirectories(directory);
+            try (DirectoryStream<Path> previous = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+                for (Path segment : previous) {
+                    Files.delete(segment);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open the ledger in " + directory, e);
+        }
+        return new LedgerLog(directory);
+    }
+
+    /**
+     * @see #append(String, String, long, long, LedgerEntryDto.Kind)
+     */
+    long append(String ibanFrom, String ibanTo, long amount, long timestamp) {
+        return append(ibanFrom, ibanTo, amount, timestamp, LedgerEntryDto.Kind.TRANSFER);
+    }
+
+    /**
+     * May only be called by the writer thread.
+     *
+     * @param ibanFrom  null if the debited account of a credit is not known
+     * @param amount    in the currency of the account of the leg, of the source account for a whole transfer
+     * @param timestamp milliseconds since the epoch, raised to the timestamp of the previous entry if it is earlier
+     * @return transaction id of the entry
+     */
+    long append(String ibanFrom, String ibanTo, long amount, long timestamp, LedgerEntryDto.Kind kind) {
+        long txId = size;
+        var segment = segment(txId);
+        int index = (int) txId & (SEGMENT_ENTRIES - 1);
+        var from = ibanFrom == null ? null : history(ibanFrom);
+        var to = ibanTo.equals(ibanFrom) ? from : history(ibanTo);
+        boolean debited = kind != LedgerEntryDto.Kind.CREDIT;
+        boolean credited = kind != LedgerEntryDto.Kind.DEBIT;
+        lastTimestamp = Math.max(lastTimestamp, timestamp);
+        segment.putLong(TIMESTAMPS + Long.BYTES * index, lastTimestamp);
+        segment.putLong(AMOUNTS + Long.BYTES * index, amount);
+        segment.putLong(PREVIOUS_FROM + Long.BYTES * index, debited ? from.head : -1);
+        segment.putLong(PREVIOUS_TO + Long.BYTES * index, credited ? to.head : -1);
+        segment.putInt(FROM + Integer.BYTES * index, from == null ? -1 : from.id);
+        segment.putInt(TO + Integer.BYTES * index, to.id);
+        segment.put(KINDS + index, (byte) kind.ordinal());
+        if (debited) {
+            from.append(txId);
+        }
+        if (credited && (to != from || !debited)) {
+            to.append(txId);
+        }
+        size = txId + 1;
+        return txId;
+    }
+
+    /**
+     * Newest entries of the account first.
+     *
+     * @param fromTimestamp inclusive, milliseconds since the epoch
+     * @param toTimestamp   exclusive, milliseconds since the epoch
+     * @param beforeTxId    exclusive, the transaction id of the last entry of the previous page
+     */
+    List<LedgerEntryDto> history(String iban, long fromTimestamp, long toTimestamp, long beforeTxId, int limit) {
+        var history = histories.get(iban);
+        var page = new ArrayList<LedgerEntryDto>(Math.min(limit, 256));
+        if (history == null) {
+            return page;
+        }
+        long txId = newestCandidate(history, toTimestamp, beforeTxId);
+        while (txId >= 0 && page.size() < limit) {
+            var segment = segments[(int) (txId >>> SEGMENT_SHIFT)];
+            int index = (int) txId & (SEGMENT_ENTRIES - 1);
+            long timestamp = segment.getLong(TIMESTAMPS + Long.BYTES * index);
+            if (timestamp < fromTimestamp) {
+                break;
+            }
+            int from = segment.getInt(FROM + Integer.BYTES * index);
+            var kind = KIND_VALUES[segment.get(KINDS + index)];
+            if (timestamp < toTimestamp && txId < beforeTxId) {
+                var ibans = this.ibans;
+                page.add(new LedgerEntryDto(txId, timestamp, from < 0 ? null : ibans[from], ibans[segment.getInt(TO + Integer.BYTES * index)],
+                        segment.getLong(AMOUNTS + Long.BYTES * index), kind));
+            }
+            boolean onSourceChain = kind == LedgerEntryDto.Kind.DEBIT || kind == LedgerEntryDto.Kind.TRANSFER && from == history.id;
+            txId = segment.getLong((onSourceChain ? PREVIOUS_FROM : PREVIOUS_TO) + Long.BYTES * index);
+        }
+        return page;
+    }
+
+    long size() {
+        return size;
+    }
+
+    /**
+     * @return the first checkpoint too new for the page, so at most a checkpoint interval of entries is skipped, or
+     * the head of the chain if no checkpoint is too new
+     */
+    private long newestCandidate(History history, long toTimestamp, long beforeTxId) {
+        long head = history.head;
+        int count = history.checkpointCount;
+        var checkpoints = history.checkpoints;
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            long checkpoint = checkpoints[middle];
+            if (checkpoint >= beforeTxId || timestamp(checkpoint) >= toTimestamp) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low < count ? checkpoints[low] : head;
+    }
+
+    private long timestamp(long txId) {
+        return segments[(int) (txId >>> SEGMENT_SHIFT)].getLong(TIMESTAMPS + Long.BYTES * ((int) txId & (SEGMENT_ENTRIES - 1)));
+    }
+
+    private History history(String iban) {
+        var history = histories.get(iban);
+        if (history == null) {
+            int id = histories.size();
+            var ibans = this.ibans;
+            if (id == ibans.length) {
+                ibans = Arrays.copyOf(ibans, 2 * ibans.length);
+            }
+            ibans[id] = iban;
+            this.ibans = ibans;
+            history = new History(id);
+            histories.put(iban, history);
+        }
+        return history;
+    }
+
+    private ByteBuffer segment(long txId) {
+        int segment = (int) (txId >>> SEGMENT_SHIFT);
+        var segments = this.segments;
+        if (segment == segments.length) {
+            segments = Arrays.copyOf(segments, segment + 1);
+            segments[segment] = allocate(segment);
+            this.segments = segments;
+        }
+        return segments[segment];
+    }
+
+    private ByteBuffer allocate(int segment) {
+        if (directory == null) {
+            return ByteBuffer.allocateDirect(SEGMENT_BYTES);
+        }
+        var path = directory.resolve(SEGMENT_PREFIX + segment + SEGMENT_SUFFIX);
+        try (var channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_BYTES);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not map the ledger segment " + path, e);
+        }
+    }
+
+    private static final class History {
+        private final int id;
+        private volatile long head = -1;
+        private volatile long[] checkpoints = new long[4];
+        private volatile int checkpointCount;
+        private int entries;
+
+        private History(int id) {
+            this.id = id;
+        }
+
+        /**
+         * Checkpoints are published before the head, a reader may see a checkpoint newer than the head it read, which
+         * is as good a place to start walking from.
+         */
+        private void append(long txId) {
+            if (entries++ % CHECKPOINT_INTERVAL == 0) {
+                var checkpoints = this.checkpoints;
+                if (checkpointCount == checkpoints.length) {
+                    checkpoints = Arrays.copyOf(checkpoints, 2 * checkpoints.length);
+                }
+                checkpoints[checkpointCount] = txId;
+                this.checkpoints = checkpoints;
+                checkpointCount++;
+            }
+            head = txId;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package pl.revolut.zadanie.app.limits;
+
+import io.javalin.BadRequestResponse;
+import pl.revolut.zadanie.app.model.Account;
+
+/**
+ * Caps the amount of a single debit.
+ */
+public final class MaxTransferRule implements TransferRule {
+    private final long maxAmount;
+
+    public MaxTransferRule(long maxAmount) {
+        if (maxAmount < 1) {
+            throw new IllegalArgumentException("Max transfer has to be positive");
+        }
+        this.maxAmount = maxAmount;
+    }
+
+    @Override
+    public void check(Account account, long amount, long newBalance, long nowNanos) {
+        if (amount > maxAmount) {
+            throw new BadRequestResponse(String.format("Transfer of %d exceeds the limit of %d per transfer", amount, maxAmount));
+        }
+    }
+}
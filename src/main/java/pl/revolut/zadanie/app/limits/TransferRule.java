@@ -0,0 +1,26 @@
+package pl.revolut.zadanie.app.limits;
+
+import pl.revolut.zadanie.app.model.Account;
+
+/**
+ * A rule every debit of an account has to pass, checked by {@link TransferRules} while the balance engine holds the
+ * account, so no other debit of the account commits between the check and the debit.
+ */
+@FunctionalInterface
+public interface TransferRule {
+    /**
+     * May record the debit, e.g. in counters of the account, it is then reverted with {@link #revert} if the debit
+     * does not commit.
+     *
+     * @param amount   debited, negative for a validated credit
+     * @param nowNanos time of the check, the same for every rule of a chain
+     * @throws RuntimeException to reject the debit, e.g. {@link io.javalin.BadRequestResponse}
+     */
+    void check(Account account, long amount, long newBalance, long nowNanos);
+
+    /**
+     * Reverts what a passed {@link #check} recorded.
+     */
+    default void revert(Account account, long amount, long checkedAtNanos) {
+    }
+}
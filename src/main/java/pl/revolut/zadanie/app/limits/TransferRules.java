@@ -0,0 +1,61 @@
+package pl.revolut.zadanie.app.limits;
+
+import pl.revolut.zadanie.app.model.Account;
+import pl.revolut.zadanie.app.model.Debit;
+
+import java.util.List;
+import java.util.function.LongConsumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Chain of {@link TransferRule}s used as the new balance validator, so the rules run inside the balance engine with
+ * the account and the amount of the {@link Debit} validated on the thread, without anything allocated per debit.
+ * <p>
+ * Rules are checked in order, the first to throw rejects the debit and the rules which passed before it are reverted.
+ * A debit validated again, because its transaction is retried, is reverted before the rules are checked again.
+ */
+public final class TransferRules implements LongConsumer, Debit.Recorder {
+    private final TransferRule[] rules;
+    private final LongSupplier nanoClock;
+
+    public TransferRules(List<TransferRule> rules) {
+        this(rules, System::nanoTime);
+    }
+
+    TransferRules(List<TransferRule> rules, LongSupplier nanoClock) {
+        this.rules = rules.toArray(new TransferRule[0]);
+        this.nanoClock = nanoClock;
+    }
+
+    @Override
+    public void accept(long newBalance) {
+        var debit = Debit.current();
+        if (debit == null) {
+            throw new IllegalStateException("Transfer rules validate debits of accounts only");
+        }
+        debit.revert();
+        var account = debit.account();
+        long amount = debit.amount();
+        long now = nanoClock.getAsLong();
+        for (int i = 0; i < rules.length; i++) {
+            try {
+                rules[i].check(account, amount, newBalance, now);
+            } catch (RuntimeException e) {
+                revert(account, amount, now, i);
+                throw e;
+            }
+        }
+        debit.recorded(this, now);
+    }
+
+    @Override
+    public void revert(Account account, long amount, long recordedAtNanos) {
+        revert(account, amount, recordedAtNanos, rules.length);
+    }
+
+    private void revert(Account account, long amount, long checkedAtNanos, int passedRules) {
+        for (int i = passedRules - 1; i >= 0; i--) {
+            rules[i].revert(account, amount, checkedAtNanos);
+        }
+    }
+}
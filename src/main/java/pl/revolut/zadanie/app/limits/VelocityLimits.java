@@ -0,0 +1,171 @@
+package pl.revolut.zadanie.app.limits;
+
+import io.javalin.BadRequestResponse;
+import pl.revolut.zadanie.app.model.Account;
+import pl.revolut.zadanie.app.model.AccountListener;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Limits the money debited from an account within sliding windows, e.g. an hour and a day, with counters kept per
+ * account from its first debit until it is deleted.
+ * <p>
+ * A window is a ring of buckets of equal width, the money debited is added to the bucket of the time of the debit and
+ * buckets older than the window are cleared as time passes, so a debit counts against the window for at least the
+ * window less one bucket. The counters of an account are a single array holding, for every window, the newest bucket,
+ * the sum of the ring and the ring itself, checked and updated under the lock of the array, which only debits of the
+ * same account contend for.
+ */
+public final class VelocityLimits implements TransferRule, AccountListener {
+    private static final long NO_BUCKET = Long.MIN_VALUE;
+    private final Window[] windows;
+    private final int[] offsets;
+    private final int length;
+    private final ConcurrentHashMap<Account, long[]> counters = new ConcurrentHashMap<>();
+    private final Function<Account, long[]> newCounters = account -> newCounters();
+
+    public VelocityLimits(List<Window> windows) {
+        if (windows.isEmpty()) {
+            throw new IllegalArgumentException("At least one window is required");
+        }
+        this.windows = windows.toArray(new Window[0]);
+        this.offsets = new int[this.windows.length];
+        int length = 0;
+        for (int i = 0; i < this.windows.length; i++) {
+            offsets[i] = length;
+            length += 2 + this.windows[i].buckets;
+        }
+        this.length = length;
+    }
+
+    @Override
+    public void check(Account account, long amount, long newBalance, long nowNanos) {
+        if (amount <= 0) {
+            return;
+        }
+        var accountCounters = counters.get(account);
+        if (accountCounters == null) {
+            accountCounters = counters.computeIfAbsent(account, newCounters);
+        }
+        synchronized (accountCounters) {
+            for (int i = 0; i < windows.length; i++) {
+                var window = windows[i];
+                int offset = offsets[i];
+                advance(accountCounters, offset, window, Math.floorDiv(nowNanos, window.bucketNanos));
+                long debited = accountCounters[offset + 1];
+                if (amount > window.limit - debited) {
+                    throw new BadRequestResponse(String.format("Transfer of %d exceeds the %s limit of %d, %d left",
+                            amount, window.name, window.limit, window.limit - debited));
+                }
+            }
+            add(accountCounters, nowNanos, amount);
+        }
+    }
+
+    @Override
+    public void revert(Account account, long amount, long checkedAtNanos) {
+        var accountCounters = counters.get(account);
+        if (amount <= 0 || accountCounters == null) {
+            return;
+        }
+        synchronized (accountCounters) {
+            add(accountCounters, checkedAtNanos, -amount);
+        }
+    }
+
+    /**
+     * Adds the amount to the bucket of the given time in every window still holding it.
+     */
+    private void add(long[] accountCounters, long atNanos, long amount) {
+        for (int i = 0; i < windows.length; i++) {
+            var window = windows[i];
+            int offset = offsets[i];
+            long bucket = Math.floorDiv(atNanos, window.bucketNanos);
+            long newest = accountCounters[offset];
+            if (bucket <= newest && newest - bucket < window.buckets) {
+                accountCounters[offset + 2 + Math.floorMod(bucket, window.buckets)] += amount;
+                accountCounters[offset + 1] += amount;
+            }
+        }
+    }
+
+    @Override
+    public void onDeleted(Account account) {
+        counters.remove(account);
+    }
+
+    /**
+     * @return money debited from the account within the window, as of its last debit
+     */
+    long debited(Account account, int window) {
+        var accountCounters = counters.get(account);
+        if (accountCounters == null) {
+            return 0;
+        }
+        synchronized (accountCounters) {
+            return accountCounters[offsets[window] + 1];
+        }
+    }
+
+    int accounts() {
+        return counters.size();
+    }
+
+    private long[] newCounters() {
+        var newCounters = new long[length];
+        for (int offset : offsets) {
+            newCounters[offset] = NO_BUCKET;
+        }
+        return newCounters;
+    }
+
+    /**
+     * Clears the buckets which have left the window by the given bucket.
+     */
+    private static void advance(long[] counters, int offset, Window window, long bucket) {
+        long newest = counters[offset];
+        if (bucket <= newest) {
+            return;
+        }
+        if (newest == NO_BUCKET || bucket - newest >= window.buckets) {
+            for (int i = 0; i < window.buckets; i++) {
+                counters[offset + 2 + i] = 0;
+            }
+            counters[offset + 1] = 0;
+        } else {
+            for (long cleared = newest + 1; cleared <= bucket; cleared++) {
+                int index = offset + 2 + Math.floorMod(cleared, window.buckets);
+                counters[offset + 1] -= counters[index];
+                counters[index] = 0;
+            }
+        }
+        counters[offset] = bucket;
+    }
+
+    /**
+     * Limit of the money debited within a sliding window.
+     */
+    public static final class Window {
+        private final String name;
+        private final long limit;
+        private final int buckets;
+        private final long bucketNanos;
+
+        /**
+         * @param name    named in rejections, e.g. hourly
+         * @param buckets the ring of the window is made of, the more the closer to an exact sliding window
+         */
+        public Window(String name, long limit, long duration, TimeUnit unit, int buckets) {
+            if (limit < 1 || buckets < 1 || unit.toNanos(duration) < buckets) {
+                throw new IllegalArgumentException("Limit and buckets have to be positive and the window longer than its buckets");
+            }
+            this.name = name;
+            this.limit = limit;
+            this.buckets = buckets;
+            this.bucketNanos = unit.toNanos(duration) / buckets;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package pl.revolut.zadanie.app.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Registry of the metrics collected on the hot path. Once a route has been seen, recording a request only looks up
+ * two maps and updates counters, so collecting can stay on in production.
+ */
+public class Metrics {
+    private static final String UNMATCHED = "unmatched";
+    private final long startedAt = System.nanoTime();
+    private final ConcurrentMap<String, ConcurrentMap<String, RouteMetrics>> routes = new ConcurrentHashMap<>();
+    private final LongAdder insufficientFunds = new LongAdder();
+
+    /**
+     * @param path route the request has been matched with, e.g. /accounts/:iban, rather than the requested path
+     */
+    public void recordRequest(String method, String path, int status, long nanos) {
+        route(method, path == null || path.isEmpty() ? UNMATCHED : path).record(status, nanos);
+    }
+
+    /**
+     * Counts transfers and withdrawals rejected because the new balance would not be valid.
+     */
+    public void recordInsufficientFunds() {
+        insufficientFunds.increment();
+    }
+
+    public long insufficientFunds() {
+        return insufficientFunds.sum();
+    }
+
+    public long uptimeSeconds() {
+        return TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startedAt);
+    }
+
+    /**
+     * @return metrics by "METHOD path", sorted
+     */
+    public Map<String, RouteMetrics> routes() {
+        var all = new TreeMap<String, RouteMetrics>();
+        routes.forEach((method, byPath) -> byPath.forEach((path, metrics) -> all.put(method + " " + path, metrics)));
+        return all;
+    }
+
+    private RouteMetrics route(String method, String path) {
+        var byPath = routes.get(method);
+        if (byPath == null) {
+            byPath = routes.computeIfAbsent(method, ignored -> new ConcurrentHashMap<>());
+        }
+        var metrics = byPath.get(path);
+        if (metrics == null) {
+            metrics = byPath.computeIfAbsent(path, ignored -> new RouteMetrics());
+        }
+        return metrics;
+    }
+}
@@ -0,0 +1,44 @@
+package pl.revolut.zadanie.app.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies and outcomes of the requests matched by a single route.
+ */
+public final class RouteMetrics {
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder clientErrors = new LongAdder();
+    private final LongAdder notFound = new LongAdder();
+    private final LongAdder serverErrors = new LongAdder();
+
+    void record(int status, long nanos) {
+        latency.record(nanos);
+        if (status == 404) {
+            notFound.increment();
+        }
+        if (status >= 500) {
+            serverErrors.increment();
+        } else if (status >= 400) {
+            clientErrors.increment();
+        }
+    }
+
+    public LatencyHistogram latency() {
+        return latency;
+    }
+
+    /**
+     * @return requests answered with 4xx, including not found
+     */
+    public long clientErrors() {
+        return clientErrors.sum();
+    }
+
+    public long notFound() {
+        return notFound.sum();
+    }
+
+    public long serverErrors() {
+        return serverErrors.sum();
+    }
+}
@@ -1,72 +1,418 @@
 package pl.revolut.zadanie.app.model;
 
-import org.multiverse.api.StmUtils;
-import org.multiverse.api.references.TxnLong;
-import org.multiverse.api.references.TxnRef;
-
-import java.util.Date;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
 import java.util.function.LongConsumer;
+import java.util.function.LongPredicate;
 
+/**
+ * An account may be split by the {@link HotAccounts} of its engine, after which money credited to it lands in one of
+ * its sub-balances picked at random, so concurrent credits to it don't conflict. Sub-balances only grow until they are
+ * collected into the balance of the account, which happens before every debit, so a debit is validated against the
+ * whole balance and an account can't be overdrawn. Debits from a split account are slower than from an account which
+ * isn't, collecting counts as transfers in the {@link TransferCounters} of the engine.
+ * <p>
+ * Balances are whole units of the currency of the account, money moves between accounts of different currencies only
+ * through {@link #transferTo(Account, long, long, LongConsumer)} with the amount converted by the caller.
+ * <p>
+ * Debits are validated as the {@link Debit} of the thread, so validators may keep state of the account, e.g. its limits,
+ * which is reverted if the debit does not commit.
+ */
 public class Account {
-    private final TxnRef<Date> lastModified = StmUtils.newTxnRef(new Date());
-    private final TxnLong balance = StmUtils.newTxnLong();
+    /**
+     * Currency of the accounts opened without one, e.g. by the deployments which had one currency only.
+     */
+    public static final String DEFAULT_CURRENCY = "PLN";
+    private static final BalanceEngine DEFAULT_ENGINE = new StmBalanceEngine();
+    private static final LongConsumer NO_VALIDATION = it -> {
+    };
+    private static final LongPredicate ACCEPT_ALL = it -> true;
+    private static final LongPredicate NON_NEGATIVE = it -> it >= 0;
+    private final Balance balance;
     private final String iban;
+    private final String currency;
+    private final AccountListener listener;
+    private final BalanceEngine engine;
+    private volatile Account[] subBalances;
 
     public Account(long balance, String iban) {
+        this(balance, iban, DEFAULT_ENGINE);
+    }
+
+    public Account(long balance, String iban, BalanceEngine balanceEngine) {
+        this(balance, iban, balanceEngine, AccountListener.NONE);
+    }
+
+    public Account(long balance, String iban, BalanceEngine balanceEngine, AccountListener listener) {
+        this(balance, iban, DEFAULT_CURRENCY, balanceEngine, listener);
+    }
+
+    /**
+     * @param currency ISO 4217 code, interned so accounts of the same currency are told apart by reference
+     */
+    public Account(long balance, String iban, String currency, BalanceEngine balanceEngine, AccountListener listener) {
         this.iban = iban;
-        StmUtils.atomic(() -> this.balance.set(balance));
+        this.currency = currency.intern();
+        this.balance = balanceEngine.open(balance);
+        this.listener = listener;
+        this.engine = balanceEngine;
+        balanceEngine.hotAccounts().onOpened(this);
+    }
+
+    /**
+     * Sub-balance of a split account, changed only by the account itself.
+     */
+    private Account(String iban, String currency, BalanceEngine balanceEngine) {
+        this.iban = iban;
+        this.currency = currency;
+        this.balance = balanceEngine.open(0);
+        this.listener = AccountListener.NONE;
+        this.engine = balanceEngine;
     }
 
     public long getBalance() {
-        return StmUtils.atomic(() -> balance.get());
+        if (subBalances == null) {
+            return balance.get();
+        }
+        return engine.balancesOf(List.of(this))[0];
     }
 
     public void setBalance(long balance) {
-        StmUtils.atomic(() -> {
-            this.balance.set(balance);
-            updateLastModified();
-        });
+        collectCredits();
+        listener.beforeChange();
+        try {
+            long previousBalance = this.balance.getAndSet(balance);
+            listener.onBalanceAdjusted(this, balance - previousBalance);
+        } finally {
+            listener.afterChange();
+        }
+    }
+
+    public void incrementBalance(long value, LongConsumer newBalanceValidator) {
+        boolean credit = newBalanceValidator == NO_VALIDATION && value >= 0;
+        if (!credit) {
+            collectCredits();
+        }
+        listener.beforeChange();
+        try {
+            int outcome;
+            if (credit) {
+                outcome = creditedBalance(value).increment(value, newBalanceValidator);
+            } else {
+                var debit = Debit.begin(this, -value);
+                try {
+                    outcome = balance.increment(value, newBalanceValidator);
+                } catch (RuntimeException e) {
+                    debit.revert();
+                    throw e;
+                } finally {
+                    debit.end();
+                }
+            }
+            listener.onBalanceAdjusted(this, value);
+            if (credit) {
+                credited(outcome);
+            }
+        } finally {
+            listener.afterChange();
+        }
+    }
+
+    public void decrementBalance(long value, LongConsumer newBalanceValidator) {
+        collectCredits();
+        listener.beforeChange();
+        try {
+            var debit = Debit.begin(this, value);
+            try {
+                balance.decrement(value, newBalanceValidator);
+            } catch (RuntimeException e) {
+                debit.revert();
+                throw e;
+            } finally {
+                debit.end();
+            }
+            listener.onBalanceAdjusted(this, -value);
+        } finally {
+            listener.afterChange();
+        }
     }
 
-    void incrementBalance(long value, LongConsumer newBalanceValidator) {
-        StmUtils.atomic(() -> {
-            long newBalance = balance.incrementAndGet(value);
-            updateLastModified();
-            newBalanceValidator.accept(newBalance);
-        });
+    /**
+     * Debits the first leg of a transfer whose credit is applied separately, by {@link #creditTransfer}, so listeners
+     * can tell both legs apart from plain debits and credits.
+     *
+     * @param ibanTo   account the credit goes to
+     * @param credited the amount converted to the currency of the credited account
+     * @param local    false if the credit is applied by another node
+     */
+    public void debitTransfer(String ibanTo, long amount, long credited, boolean local, LongConsumer newBalanceValidator) {
+        tryDebitTransfer(ibanTo, amount, credited, local, ACCEPT_ALL, newBalanceValidator);
     }
 
-    void decrementBalance(long value, LongConsumer newBalanceValidator) {
-        StmUtils.atomic(() -> {
-            balance.decrement(value);
-            updateLastModified();
-            newBalanceValidator.accept(balance.get());
-        });
+    /**
+     * @return false if the new balance has not been accepted
+     */
+    public boolean tryDebitTransfer(String ibanTo, long amount, long credited, boolean local, LongPredicate newBalanceAccepted,
+                                    LongConsumer newBalanceValidator) {
+        collectCredits();
+        listener.beforeChange();
+        try {
+            var debit = Debit.begin(this, amount);
+            try {
+                if (balance.tryDecrement(amount, newBalanceAccepted, newBalanceValidator) == Balance.REJECTED) {
+                    debit.revert();
+                    return false;
+                }
+            } catch (RuntimeException e) {
+                debit.revert();
+                throw e;
+            } finally {
+                debit.end();
+            }
+            listener.onTransferDebited(this, ibanTo, amount, credited, local);
+            return true;
+        } finally {
+            listener.afterChange();
+        }
     }
 
-    void incrementBalance(long value) {
-        incrementBalance(value, it -> {
-        });
+    /**
+     * Credits the second leg of a transfer debited by {@link #debitTransfer}.
+     *
+     * @param ibanFrom account the transfer has been debited from
+     */
+    public void creditTransfer(String ibanFrom, long amount, long credited, boolean local) {
+        var listenerFailure = applyCreditTransfer(ibanFrom, amount, credited, local);
+        if (listenerFailure != null) {
+            throw listenerFailure;
+        }
+    }
 
+    /**
+     * Credits like {@link #creditTransfer}, except that a failure of the listeners once the credit has been applied is
+     * returned rather than thrown, so it is not mistaken for a credit which has not been applied.
+     *
+     * @return null unless the credit has been applied and a listener failed
+     */
+    public RuntimeException applyCreditTransfer(String ibanFrom, long amount, long credited, boolean local) {
+        listener.beforeChange();
+        int outcome;
+        try {
+            outcome = creditedBalance(credited).increment(credited, NO_VALIDATION);
+        } catch (RuntimeException e) {
+            listener.afterChange();
+            throw e;
+        }
+        RuntimeException listenerFailure = null;
+        try {
+            listener.onTransferCredited(ibanFrom, this, amount, credited, local);
+            credited(outcome);
+        } catch (RuntimeException e) {
+            listenerFailure = e;
+        }
+        try {
+            listener.afterChange();
+        } catch (RuntimeException e) {
+            if (listenerFailure == null) {
+                listenerFailure = e;
+            } else {
+                listenerFailure.addSuppressed(e);
+            }
+        }
+        return listenerFailure;
     }
 
-    void decrementBalance(long value) {
-        decrementBalance(value, it -> {
-        });
+    public void incrementBalance(long value) {
+        incrementBalance(value, NO_VALIDATION);
     }
 
-    private void updateLastModified() {
-        this.lastModified.set(new Date());
+    public void decrementBalance(long value) {
+        decrementBalance(value, NO_VALIDATION);
     }
 
     public void transferTo(Account accountTo, long amount, LongConsumer newBalanceValidator) {
-        StmUtils.atomic(() -> {
-            this.decrementBalance(amount, newBalanceValidator);
-            accountTo.incrementBalance(amount);
-        });
+        requireSameCurrency(accountTo);
+        tryTransferTo(accountTo, amount, amount, ACCEPT_ALL, newBalanceValidator);
+    }
+
+    /**
+     * Debits the amount and credits it converted to the currency of the other account in a single change, so neither
+     * is ever visible without the other.
+     *
+     * @param credited the amount converted to the currency of the other account
+     */
+    public void transferTo(Account accountTo, long amount, long credited, LongConsumer newBalanceValidator) {
+        tryTransferTo(accountTo, amount, credited, ACCEPT_ALL, newBalanceValidator);
+    }
+
+    /**
+     * @return false if the new balance has not been accepted
+     */
+    public boolean tryTransferTo(Account accountTo, long amount, LongPredicate newBalanceAccepted) {
+        requireSameCurrency(accountTo);
+        return tryTransferTo(accountTo, amount, amount, newBalanceAccepted, NO_VALIDATION);
+    }
+
+    /**
+     * Transfers like {@link #transferTo(Account, long, long, LongConsumer)}, reporting a new balance which is not
+     * accepted instead of throwing.
+     *
+     * @return false if the new balance has not been accepted
+     */
+    public boolean tryTransferTo(Account accountTo, long amount, long credited, LongPredicate newBalanceAccepted,
+                                 LongConsumer newBalanceValidator) {
+        collectCredits();
+        listener.beforeChange();
+        try {
+            int outcome;
+            var debit = Debit.begin(this, amount);
+            try {
+                outcome = balance.tryTransferTo(accountTo.creditedBalance(credited), amount, credited, newBalanceAccepted, newBalanceValidator);
+                if (outcome == Balance.REJECTED) {
+                    debit.revert();
+                    return false;
+                }
+            } catch (RuntimeException e) {
+                debit.revert();
+                throw e;
+            } finally {
+                debit.end();
+            }
+            if (currency == accountTo.currency && amount == credited) {
+                listener.onTransferred(this, accountTo, amount);
+            } else {
+                listener.onExchanged(this, accountTo, amount, credited);
+            }
+            accountTo.credited(outcome);
+            return true;
+        } finally {
+            listener.afterChange();
+        }
+    }
+
+    private void requireSameCurrency(Account accountTo) {
+        if (currency != accountTo.currency) {
+            throw new IllegalArgumentException(String.format("Can't transfer from %s to %s without converting the amount", currency, accountTo.currency));
+        }
+    }
+
+    /**
+     * @return true if credits to this account are kept in sub-balances
+     */
+    public boolean isSplit() {
+        return subBalances != null;
+    }
+
+    /**
+     * Starts keeping credits in the given number of sub-balances, if not split yet.
+     */
+    synchronized void split(int count) {
+        if (subBalances != null) {
+            return;
+        }
+        var split = new Account[count];
+        for (int i = 0; i < count; i++) {
+            split[i] = new Account(iban, currency, engine);
+        }
+        subBalances = split;
+        engine.transferCounters().split();
+    }
+
+    /**
+     * Moves the money credited to the sub-balances into the balance of the account, every sub-balance atomically.
+     */
+    void collectCredits() {
+        var split = subBalances;
+        if (split == null) {
+            return;
+        }
+        for (Account subBalance : split) {
+            long credited = subBalance.balance.get();
+            if (credited > 0) {
+                subBalance.balance.tryTransferTo(balance, credited, credited, NON_NEGATIVE, NO_VALIDATION);
+            }
+        }
+    }
+
+    /**
+     * @return the balance an amount credited to this account by the current thread goes to, only positive amounts go
+     * to a sub-balance so sub-balances can't become negative
+     */
+    private Balance creditedBalance(long amount) {
+        var split = subBalances;
+        if (split == null || amount < 0) {
+            return balance;
+        }
+        return split[ThreadLocalRandom.current().nextInt(split.length)].balance;
+    }
+
+    private void credited(int outcome) {
+        if (outcome == Balance.CONTENDED) {
+            engine.hotAccounts().onContendedCredit(this);
+        }
+    }
+
+    /**
+     * Reads the balances of the accounts with the reader of an engine, which reads them at a single point in time,
+     * together with the sub-balances of the split accounts. Balances read while an account was being split are read
+     * again, as credits could have already gone to its sub-balances.
+     */
+    static long[] balancesOf(List<Account> accounts, Function<List<Account>, long[]> reader) {
+        while (true) {
+            var split = new Account[accounts.size()][];
+            boolean anySplit = false;
+            for (int i = 0; i < split.length; i++) {
+                split[i] = accounts.get(i).subBalances;
+                anySplit |= split[i] != null;
+            }
+            var balances = anySplit ? readSplit(accounts, split, reader) : reader.apply(accounts);
+            if (unchanged(accounts, split)) {
+                return balances;
+            }
+        }
+    }
+
+    private static long[] readSplit(List<Account> accounts, Account[][] split, Function<List<Account>, long[]> reader) {
+        var expanded = new ArrayList<Account>(accounts.size());
+        for (int i = 0; i < split.length; i++) {
+            expanded.add(accounts.get(i));
+            if (split[i] != null) {
+                expanded.addAll(List.of(split[i]));
+            }
+        }
+        var expandedBalances = reader.apply(expanded);
+        var balances = new long[accounts.size()];
+        int next = 0;
+        for (int i = 0; i < split.length; i++) {
+            balances[i] = expandedBalances[next++];
+            int subBalances = split[i] == null ? 0 : split[i].length;
+            for (int j = 0; j < subBalances; j++) {
+                balances[i] += expandedBalances[next++];
+            }
+        }
+        return balances;
+    }
+
+    private static boolean unchanged(List<Account> accounts, Account[][] split) {
+        for (int i = 0; i < split.length; i++) {
+            if (accounts.get(i).subBalances != split[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    Balance balance() {
+        return balance;
     }
 
     public String getIban() {
         return iban;
     }
-}
\ No newline at end of file
+
+    public String getCurrency() {
+        return currency;
+    }
+}
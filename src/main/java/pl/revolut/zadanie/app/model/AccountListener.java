@@ -0,0 +1,79 @@
+package pl.revolut.zadanie.app.model;
+
+/**
+ * Notified about every committed change of an account, on the thread that made the change and after the change has
+ * been committed, so a rolled back or retried transaction is never reported.
+ * <p>
+ * Every change is reported between {@link #beforeChange()} and {@link #afterChange()}, which listeners may use to keep
+ * the change and its notification indivisible for an observer, e.g. a snapshot.
+ */
+public interface AccountListener {
+    AccountListener NONE = new AccountListener() {
+    };
+
+    /**
+     * @return listener notifying all the given listeners, in the given order
+     */
+    static AccountListener compose(AccountListener... listeners) {
+        switch (listeners.length) {
+            case 0:
+                return NONE;
+            case 1:
+                return listeners[0];
+            default:
+                return new CompositeAccountListener(listeners.clone());
+        }
+    }
+
+    default void beforeChange() {
+    }
+
+    default void afterChange() {
+    }
+
+    default void onCreated(Account account, long balance) {
+    }
+
+    default void onDeleted(Account account) {
+    }
+
+    /**
+     * @param delta difference between the new and the previous balance, negative for debits
+     */
+    default void onBalanceAdjusted(Account account, long delta) {
+    }
+
+    default void onTransferred(Account from, Account to, long amount) {
+    }
+
+    /**
+     * A transfer between accounts of different currencies, reported by default as a debit and a credit.
+     *
+     * @param credited the amount converted to the currency of the credited account
+     */
+    default void onExchanged(Account from, Account to, long amount, long credited) {
+        onBalanceAdjusted(from, -amount);
+        onBalanceAdjusted(to, credited);
+    }
+
+    /**
+     * The debit of a transfer whose credit is applied separately, later, e.g. on the thread of another shard or by
+     * another node, reported by default as a debit.
+     *
+     * @param ibanTo   account the credit goes to
+     * @param credited the amount converted to the currency of the credited account
+     * @param local    true if the credit is applied by this application too, reported with local set as well
+     */
+    default void onTransferDebited(Account from, String ibanTo, long amount, long credited, boolean local) {
+        onBalanceAdjusted(from, -amount);
+    }
+
+    /**
+     * The credit of a transfer debited separately, see {@link #onTransferDebited}, reported by default as a credit.
+     *
+     * @param ibanFrom account the transfer has been debited from
+     */
+    default void onTransferCredited(String ibanFrom, Account to, long amount, long credited, boolean local) {
+        onBalanceAdjusted(to, credited);
+    }
+}
@@ -0,0 +1,64 @@
+package pl.revolut.zadanie.app.model;
+
+import java.util.function.LongConsumer;
+import java.util.function.LongPredicate;
+
+/**
+ * Balance of a single account, owned by the {@link BalanceEngine} that opened it.
+ * Validators are called with the new balance before it becomes visible and may reject it by throwing.
+ * Changes return one of the outcomes below, so contention can be told apart without allocating.
+ */
+interface Balance {
+    /**
+     * The change has been applied without waiting for another change.
+     */
+    int COMMITTED = 0;
+    /**
+     * The change has been applied after waiting for, or being retried after, a conflicting change of another thread.
+     */
+    int CONTENDED = 1;
+    /**
+     * The new balance has not been accepted, nothing has been changed.
+     */
+    int REJECTED = 2;
+
+    long get();
+
+    /**
+     * @return the previous balance
+     */
+    long getAndSet(long balance);
+
+    /**
+     * @return {@link #COMMITTED} or {@link #CONTENDED}
+     */
+    int increment(long value, LongConsumer newBalanceValidator);
+
+    /**
+     * @return {@link #COMMITTED} or {@link #CONTENDED}
+     */
+    int decrement(long value, LongConsumer newBalanceValidator);
+
+    /**
+     * @param amount   debited from this balance
+     * @param credited credited to the other balance, the amount converted to its currency
+     * @return {@link #COMMITTED} or {@link #CONTENDED}
+     */
+    int transferTo(Balance to, long amount, long credited, LongConsumer newBalanceValidator);
+
+    /**
+     * Decrements like {@link #decrement} unless the new balance is not accepted, which is reported instead of thrown,
+     * before the validator is called.
+     *
+     * @return {@link #REJECTED} if the new balance has not been accepted
+     */
+    int tryDecrement(long value, LongPredicate newBalanceAccepted, LongConsumer newBalanceValidator);
+
+    /**
+     * Transfers like {@link #transferTo} unless the new balance of this account is not accepted, which is reported
+     * instead of thrown, before the validator is called, so neither outcome allocates.
+     *
+     * @return {@link #REJECTED} if the new balance of this account has not been accepted
+     */
+    int tryTransferTo(Balance to, long amount, long credited, LongPredicate newBalanceAccepted, LongConsumer newBalanceValidator);
+}
@@ -0,0 +1,50 @@
+package pl.revolut.zadanie.app.model;
+
+import java.util.List;
+import java.util.function.LongConsumer;
+
+/**
+ * Keeps the balances of accounts and moves money between them atomically.
+ * Accounts opened by different engines can't transfer money between each other.
+ */
+public interface BalanceEngine {
+
+    static BalanceEngine forName(String name) {
+        return forName(name, HotAccounts.DISABLED);
+    }
+
+    static BalanceEngine forName(String name, HotAccounts hotAccounts) {
+        switch (name) {
+            case "stm":
+                return new StmBalanceEngine(hotAccounts);
+            case "striped":
+                return new StripedLockBalanceEngine(StripedLockBalanceEngine.DEFAULT_STRIPES, hotAccounts);
+            default:
+                throw new IllegalArgumentException(String.format("Unknown balance engine %s, expected one of stm, striped", name));
+        }
+    }
+
+    Balance open(long initialBalance);
+
+    /**
+     * Reads the balances of all the given accounts at a single point in time, sub-balances of split accounts included.
+     */
+    long[] balancesOf(List<Account> accounts);
+
+    /**
+     * Executes all transfers or none of them. Credits to split accounts go to their balances, not their sub-balances.
+     *
+     * @throws TransferBatchException if any of the transfers fails, no transfer is applied in that case
+     */
+    void transferAll(List<Transfer> transfers, LongConsumer newBalanceValidator);
+
+    /**
+     * @return counters of transfers between two accounts of this engine
+     */
+    TransferCounters transferCounters();
+
+    /**
+     * @return policy splitting the accounts of this engine receiving many contended credits
+     */
+    HotAccounts hotAccounts();
+}
@@ -0,0 +1,75 @@
+package pl.revolut.zadanie.app.model;
+
+/**
+ * Notifies listeners in order, {@link #afterChange()} in reverse order so the listeners nest.
+ */
+final class CompositeAccountListener implements AccountListener {
+    private final AccountListener[] listeners;
+
+    CompositeAccountListener(AccountListener[] listeners) {
+        this.listeners = listeners;
+    }
+
+    @Override
+    public void beforeChange() {
+        for (AccountListener listener : listeners) {
+            listener.beforeChange();
+        }
+    }
+
+    @Override
+    public void afterChange() {
+        for (int i = listeners.length - 1; i >= 0; i--) {
+            listeners[i].afterChange();
+        }
+    }
+
+    @Override
+    public void onCreated(Account account, long balance) {
+        for (AccountListener listener : listeners) {
+            listener.onCreated(account, balance);
+        }
+    }
+
+    @Override
+    public void onDeleted(Account account) {
+        for (AccountListener listener : listeners) {
+            listener.onDeleted(account);
+        }
+    }
+
+    @Override
+    public void onBalanceAdjusted(Account account, long delta) {
+        for (AccountListener listener : listeners) {
+            listener.onBalanceAdjusted(account, delta);
+        }
+    }
+
+    @Override
+    public void onTransferred(Account from, Account to, long amount) {
+        for (AccountListener listener : listeners) {
+            listener.onTransferred(from, to, amount);
+        }
+    }
+
+    @Override
+    public void onExchanged(Account from, Account to, long amount, long credited) {
+        for (AccountListener listener : listeners) {
+            listener.onExchanged(from, to, amount, credited);
+        }
+    }
+
+    @Override
+    public void onTransferDebited(Account from, String ibanTo, long amount, long credited, boolean local) {
+        for (AccountListener listener : listeners) {
+            listener.onTransferDebited(from, ibanTo, amount, credited, local);
+        }
+    }
+
+    @Override
+    public void onTransferCredited(String ibanFrom, Account to, long amount, long credited, boolean local) {
+        for (AccountListener listener : listeners) {
+            listener.onTransferCredited(ibanFrom, to, amount, credited, local);
+        }
+    }
+}
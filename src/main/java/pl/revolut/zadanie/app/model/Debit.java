@@ -0,0 +1,94 @@
+package pl.revolut.zadanie.app.model;
+
+/**
+ * The debit a new balance validator is called for, so a validator which needs more than the new balance, e.g. to keep
+ * limits of accounts, finds the account and the amount without a validator allocated for every debit. Every thread has
+ * one debit, filled in by the account or the batch of transfers for as long as its balance engine runs the debit.
+ * <p>
+ * A validator may record the debit, e.g. in counters of the account, while the engine still holds the account. The
+ * record is reverted when the debit does not commit after all, and before the debit is validated again because the
+ * transaction running it is retried, so a debit is recorded at most once whatever the engine.
+ */
+public final class Debit {
+    private static final ThreadLocal<Debit> DEBITS = ThreadLocal.withInitial(Debit::new);
+    private Account account;
+    private long amount;
+    private Recorder recorder;
+    private long recordedAtNanos;
+
+    private Debit() {
+    }
+
+    /**
+     * @return the debit being validated on this thread, null if there is none
+     */
+    public static Debit current() {
+        var debit = DEBITS.get();
+        return debit.account != null ? debit : null;
+    }
+
+    static Debit begin(Account account, long amount) {
+        var debit = DEBITS.get();
+        debit.account = account;
+        debit.amount = amount;
+        return debit;
+    }
+
+    /**
+     * Begins the debit of a transfer in a batch, which carries its record over retries of the batch.
+     */
+    static Debit begin(Transfer transfer) {
+        var debit = begin(transfer.from, transfer.amount);
+        debit.recorder = transfer.recorder;
+        debit.recordedAtNanos = transfer.recordedAtNanos;
+        return debit;
+    }
+
+    public Account account() {
+        return account;
+    }
+
+    /**
+     * @return the amount debited, negative for a validated credit
+     */
+    public long amount() {
+        return amount;
+    }
+
+    /**
+     * Remembers that the debit has been recorded, to be reverted with the given recorder if it does not commit.
+     */
+    public void recorded(Recorder recorder, long atNanos) {
+        this.recorder = recorder;
+        this.recordedAtNanos = atNanos;
+    }
+
+    /**
+     * Reverts the record of this debit, if it has been recorded.
+     */
+    public void revert() {
+        var recorder = this.recorder;
+        if (recorder != null) {
+            this.recorder = null;
+            recorder.revert(account, amount, recordedAtNanos);
+        }
+    }
+
+    /**
+     * Ends the debit, keeping its record.
+     */
+    void end() {
+        account = null;
+        recorder = null;
+    }
+
+    void end(Transfer transfer) {
+        transfer.recorder = recorder;
+        transfer.recordedAtNanos = recordedAtNanos;
+        end();
+    }
+
+    public interface Recorder {
+        void revert(Account account, long amount, long recordedAtNanos);
+    }
+}
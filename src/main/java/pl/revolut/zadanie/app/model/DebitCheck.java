@@ -0,0 +1,63 @@
+package pl.revolut.zadanie.app.model;
+
+import java.util.function.LongConsumer;
+import java.util.function.LongPredicate;
+import java.util.function.Supplier;
+
+/**
+ * Checks the debits of transfers, first whether the new balance is accepted, then by the validator, which rejects by
+ * throwing.
+ */
+public final class DebitCheck {
+    private static final LongPredicate ACCEPT_ALL = it -> true;
+
+    private final LongPredicate newBalanceAccepted;
+    private final Supplier<? extends RuntimeException> rejection;
+    private final LongConsumer newBalanceValidator;
+    private final LongConsumer asValidator;
+
+    /**
+     * @param rejection makes the exception of a new balance not accepted, e.g. counting it as well
+     */
+    public DebitCheck(LongPredicate newBalanceAccepted, Supplier<? extends RuntimeException> rejection, LongConsumer newBalanceValidator) {
+        this.newBalanceAccepted = newBalanceAccepted;
+        this.rejection = rejection;
+        this.newBalanceValidator = newBalanceValidator;
+        this.asValidator = newBalance -> {
+            if (!newBalanceAccepted.test(newBalance)) {
+                throw rejection.get();
+            }
+            newBalanceValidator.accept(newBalance);
+        };
+    }
+
+    /**
+     * @return a check of every new balance by the validator alone
+     */
+    public static DebitCheck of(LongConsumer newBalanceValidator) {
+        return new DebitCheck(ACCEPT_ALL, () -> new IllegalStateException("Every new balance is accepted"), newBalanceValidator);
+    }
+
+    public LongPredicate newBalanceAccepted() {
+        return newBalanceAccepted;
+    }
+
+    public LongConsumer newBalanceValidator() {
+        return newBalanceValidator;
+    }
+
+    /**
+     * @return the exception of a debit whose new balance has not been accepted
+     */
+    public RuntimeException rejected() {
+        return rejection.get();
+    }
+
+    /**
+     * @return both steps as a single validator rejecting by throwing, for changes which report no result code, e.g.
+     * batches of transfers
+     */
+    public LongConsumer asValidator() {
+        return asValidator;
+    }
+}
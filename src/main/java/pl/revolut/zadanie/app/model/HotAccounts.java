@@ -0,0 +1,66 @@
+package pl.revolut.zadanie.app.model;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Decides which accounts keep the money credited to them in sub-balances, so credits to an account receiving a large
+ * share of all transfers, e.g. of a merchant, stop conflicting with each other, see {@link Account}. An account is
+ * split when it is opened if its iban has been designated, or once more of the credits to it than the threshold were
+ * contended within a second. A split account stays split until the app restarts.
+ */
+public final class HotAccounts {
+    public static final HotAccounts DISABLED = new HotAccounts(0, List.of(), 0);
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final Function<Account, AtomicInteger> NEW_COUNTER = account -> new AtomicInteger();
+    private final int subBalances;
+    private final Set<String> designatedIbans;
+    private final int contentionsPerSecond;
+    private final ConcurrentHashMap<Account, AtomicInteger> contentions = new ConcurrentHashMap<>();
+    private volatile long windowStart = System.nanoTime();
+
+    /**
+     * @param subBalances          sub-balances of a split account, 0 to never split accounts
+     * @param designatedIbans      accounts split as soon as they are opened
+     * @param contentionsPerSecond contended credits to an account within a second to split it, 0 to split only the
+     *                             designated accounts
+     */
+    public HotAccounts(int subBalances, Collection<String> designatedIbans, int contentionsPerSecond) {
+        if (subBalances < 0 || contentionsPerSecond < 0) {
+            throw new IllegalArgumentException("Sub-balances and contentions per second can't be negative");
+        }
+        this.subBalances = subBalances;
+        this.designatedIbans = Set.copyOf(designatedIbans);
+        this.contentionsPerSecond = contentionsPerSecond;
+    }
+
+    void onOpened(Account account) {
+        if (subBalances > 0 && designatedIbans.contains(account.getIban())) {
+            account.split(subBalances);
+        }
+    }
+
+    /**
+     * Counts the contentions of accounts in windows of a second, only accounts contended in the current window are
+     * tracked.
+     */
+    void onContendedCredit(Account account) {
+        if (subBalances == 0 || contentionsPerSecond == 0 || account.isSplit()) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (now - windowStart > WINDOW_NANOS) {
+            windowStart = now;
+            contentions.clear();
+        }
+        if (contentions.computeIfAbsent(account, NEW_COUNTER).incrementAndGet() >= contentionsPerSecond) {
+            contentions.remove(account);
+            account.split(subBalances);
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package pl.revolut.zadanie.app.model;
+
+import org.multiverse.api.StmUtils;
+import org.multiverse.api.references.TxnLong;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.function.LongConsumer;
+import java.util.function.LongPredicate;
+
+/**
+ * Balances kept in Multiverse transactional references, every change runs in an STM transaction.
+ * <p>
+ * Reads don't open a transaction, they take the last committed value of the reference, waiting for a transaction
+ * committing it at that very moment. Every change also bumps the version of the balance, so balances of many accounts
+ * are read consistently by reading their versions before and after reading the balances, and retrying if any changed.
+ * <p>
+ * Changes run a transaction object reused by the thread and keep the time of the last change as epoch millis, so they
+ * allocate nothing but what Multiverse allocates itself.
+ */
+public class StmBalanceEngine implements BalanceEngine {
+    private static final LongPredicate ACCEPT_ALL = it -> true;
+    private static final int OPTIMISTIC_SNAPSHOT_ATTEMPTS = 8;
+    private final TransferCounters transferCounters = new TransferCounters();
+    private final ThreadLocal<StmChange> changes = ThreadLocal.withInitial(StmChange::new);
+    private final boolean transactionalReads;
+    private final HotAccounts hotAccounts;
+
+    public StmBalanceEngine() {
+        this(HotAccounts.DISABLED);
+    }
+
+    public StmBalanceEngine(HotAccounts hotAccounts) {
+        this(false, hotAccounts);
+    }
+
+    /**
+     * @param transactionalReads read every balance in a transaction, as before reads bypassed them, kept for comparison
+     */
+    StmBalanceEngine(boolean transactionalReads, HotAccounts hotAccounts) {
+        this.transactionalReads = transactionalReads;
+        this.hotAccounts = hotAccounts;
+    }
+
+    @Override
+    public Balance open(long initialBalance) {
+        return new StmBalance(initialBalance);
+    }
+
+    @Override
+    public long[] balancesOf(List<Account> accounts) {
+        return Account.balancesOf(accounts, this::readAtOnce);
+    }
+
+    private long[] readAtOnce(List<Account> accounts) {
+        var stmBalances = new StmBalance[accounts.size()];
+        for (int i = 0; i < stmBalances.length; i++) {
+            stmBalances[i] = stmBalanceOf(accounts.get(i).balance());
+        }
+        var balances = new long[stmBalances.length];
+        if (!transactionalReads) {
+            var versions = new long[stmBalances.length];
+            for (int attempt = 0; attempt < OPTIMISTIC_SNAPSHOT_ATTEMPTS; attempt++) {
+                if (tryReadUnchanged(stmBalances, versions, balances)) {
+                    return balances;
+                }
+            }
+        }
+        StmUtils.atomic(() -> {
+            for (int i = 0; i < balances.length; i++) {
+                balances[i] = stmBalances[i].balance.get();
+            }
+        });
+        return balances;
+    }
+
+    /**
+     * Balances read between reading the same versions twice were all committed at the moment the first read of
+     * versions ended.
+     */
+    private static boolean tryReadUnchanged(StmBalance[] stmBalances, long[] versions, long[] balances) {
+        for (int i = 0; i < stmBalances.length; i++) {
+            versions[i] = atomicGet(stmBalances[i].version);
+        }
+        for (int i = 0; i < stmBalances.length; i++) {
+            balances[i] = atomicGet(stmBalances[i].balance);
+        }
+        for (int i = 0; i < stmBalances.length; i++) {
+            if (atomicGet(stmBalances[i].version) != versions[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Multiverse gives up waiting for a reference locked by committing transactions with an exception after spinning
+     * for a while, the read then waits in a transaction.
+     */
+    private static long atomicGet(TxnLong reference) {
+        try {
+            return reference.atomicGet();
+        } catch (RuntimeException lockedForTooLong) {
+            return StmUtils.atomic(() -> reference.get());
+        }
+    }
+
+    private static StmBalance stmBalanceOf(Balance balance) {
+        if (!(balance instanceof StmBalance)) {
+            throw new IllegalArgumentException("Can't read an account opened by another balance engine");
+        }
+        return (StmBalance) balance;
+    }
+
+    @Override
+    public void transferAll(List<Transfer> transfers, LongConsumer newBalanceValidator) {
+        transfers.forEach(transfer -> transfer.from.collectCredits());
+        try {
+            StmUtils.atomic(() -> {
+                for (int i = 0; i < transfers.size(); i++) {
+                    try {
+                        transfers.get(i).execute(newBalanceValidator);
+                    } catch (RuntimeException e) {
+                        throw new TransferBatchException(i, e);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            transfers.forEach(Transfer::revert);
+            throw e;
+        }
+    }
+
+    @Override
+    public TransferCounters transferCounters() {
+        return transferCounters;
+    }
+
+    @Override
+    public HotAccounts hotAccounts() {
+        return hotAccounts;
+    }
+
+    private class StmBalance implements Balance {
+        private final TxnLong lastModifiedMillis = StmUtils.newTxnLong(System.currentTimeMillis());
+        private final TxnLong balance = StmUtils.newTxnLong();
+        private final TxnLong version = StmUtils.newTxnLong();
+
+        StmBalance(long balance) {
+            StmUtils.atomic(() -> this.balance.set(balance));
+        }
+
+        @Override
+        public long get() {
+            return transactionalReads ? StmUtils.atomic(() -> balance.get()) : atomicGet(balance);
+        }
+
+        @Override
+        public long getAndSet(long balance) {
+            return StmUtils.atomic(() -> {
+                long previousBalance = this.balance.getAndSet(balance);
+                modified(System.currentTimeMillis());
+                return previousBalance;
+            });
+        }
+
+        @Override
+        public int increment(long value, LongConsumer newBalanceValidator) {
+            return changes.get().run(this, null, -value, 0, ACCEPT_ALL, newBalanceValidator);
+        }
+
+        @Override
+        public int decrement(long value, LongConsumer newBalanceValidator) {
+            return changes.get().run(this, null, value, 0, ACCEPT_ALL, newBalanceValidator);
+        }
+
+        @Override
+        public int transferTo(Balance to, long amount, long credited, LongConsumer newBalanceValidator) {
+            return transfer(to, amount, credited, ACCEPT_ALL, newBalanceValidator);
+        }
+
+        @Override
+        public int tryDecrement(long value, LongPredicate newBalanceAccepted, LongConsumer newBalanceValidator) {
+            return changes.get().run(this, null, value, 0, newBalanceAccepted, newBalanceValidator);
+        }
+
+        @Override
+        public int tryTransferTo(Balance to, long amount, long credited, LongPredicate newBalanceAccepted, LongConsumer newBalanceValidator) {
+            return transfer(to, amount, credited, newBalanceAccepted, newBalanceValidator);
+        }
+
+        private int transfer(Balance to, long amount, long credited, LongPredicate newBalanceAccepted, LongConsumer newBalanceValidator) {
+            if (!(to instanceof StmBalance)) {
+                throw new IllegalArgumentException("Can't transfer to an account opened by another balance engine");
+            }
+            try {
+                int outcome = changes.get().run(this, (StmBalance) to, amount, credited, newBalanceAccepted, newBalanceValidator);
+                if (outcome == REJECTED) {
+                    transferCounters.abort();
+                } else {
+                    transferCounters.commit();
+                }
+                return outcome;
+            } catch (RuntimeException e) {
+                transferCounters.abort();
+                throw e;
+            }
+        }
+
+        private void modified(long nowMillis) {
+            this.lastModifiedMillis.set(nowMillis);
+            this.version.increment();
+        }
+    }
+
+    /**
+     * A debit of one balance, optionally credited to another, as a transaction reused by every change made on the
+     * same thread, so a change allocates no callback. A transaction retried after a conflict runs it again with the
+     * same arguments, a nested one joins the enclosing transaction, e.g. of {@link #transferAll}.
+     */
+    private final class StmChange implements Callable<Boolean> {
+        private StmBalance from;
+        private StmBalance to;
+        private long amount;
+        private long credited;
+        private LongPredicate newBalanceAccepted;
+        private LongConsumer newBalanceValidator;
+        private int attempts;
+
+        /**
+         * @param to     null to change only the balance of {@code from}
+         * @param amount   debited from {@code from}, negative to credit it
+         * @param credited credited to {@code to}
+         * @return {@link Balance#CONTENDED} if the transaction had to be retried after a conflict
+         */
+        int run(StmBalance from, StmBalance to, long amount, long credited, LongPredicate newBalanceAccepted, LongConsumer newBalanceValidator) {
+            this.from = from;
+            this.to = to;
+            this.amount = amount;
+            this.credited = credited;
+            this.newBalanceAccepted = newBalanceAccepted;
+            this.newBalanceValidator = newBalanceValidator;
+            this.attempts = 0;
+            try {
+                if (!StmUtils.atomic(this)) {
+                    return Balance.REJECTED;
+                }
+                return attempts > 1 ? Balance.CONTENDED : Balance.COMMITTED;
+            } finally {
+                this.from = null;
+                this.to = null;
+                this.newBalanceAccepted = null;
+                this.newBalanceValidator = null;
+            }
+        }
+
+        @Override
+        public Boolean call() {
+            attempts++;
+            if (to != null) {
+                transferCounters.attempt();
+            }
+            long newBalance = from.balance.get() - amount;
+            if (!newBalanceAccepted.test(newBalance)) {
+                return Boolean.FALSE;
+            }
+            newBalanceValidator.accept(newBalance);
+            long nowMillis = System.currentTimeMillis();
+            from.balance.set(newBalance);
+            from.modified(nowMillis);
+            if (to != null) {
+                to.balance.increment(credited);
+                to.modified(nowMillis);
+            }
+            return Boolean.TRUE;
+        }
+    }
+}
@@ -0,0 +1,389 @@
+package pl.revolut.zadanie.app.model;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongConsumer;
+import java.util.function.LongPredicate;
+
+/**
+ * Balances kept in a slab of primitive longs indexed by an account slot, with no per account objects besides the slot.
+ * Writers take the lock stripes of the touched slots in ascending order, so transfers can't deadlock, and validate
+ * the new balance before writing it, so a rejected operation never leaves a trace. Readers take no locks.
+ * Slots of deleted accounts are not reclaimed.
+ * <p>
+ * Every stripe also has a sequence, odd while the stripe is held, so balances of many accounts are read consistently
+ * without locks by reading them between two reads of the same even sequences of their stripes.
+ */
+public class StripedLockBalanceEngine implements BalanceEngine {
+    static final int DEFAULT_STRIPES = 1024;
+    private static final VarHandle SLAB = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final int CHUNK_SHIFT = 12;
+    private static final int SLOTS_PER_CHUNK = 1 << CHUNK_SHIFT;
+    private static final int FIELDS_PER_SLOT = 2;
+    private static final int BALANCE = 0;
+    private static final int LAST_MODIFIED = 1;
+    private static final int SEQUENCE_PADDING = 8;
+    private static final int OPTIMISTIC_SNAPSHOT_ATTEMPTS = 8;
+
+    private final ReentrantLock[] stripes;
+    private final long[] sequences;
+    private final int stripeMask;
+    private final AtomicInteger nextSlot = new AtomicInteger();
+    private final TransferCounters transferCounters = new TransferCounters();
+    private final HotAccounts hotAccounts;
+    private volatile long[][] chunks = new long[0][];
+
+    public StripedLockBalanceEngine(int stripes) {
+        this(stripes, HotAccounts.DISABLED);
+    }
+
+    public StripedLockBalanceEngine(int stripes, HotAccounts hotAccounts) {
+        if (Integer.bitCount(stripes) != 1) {
+            throw new IllegalArgumentException("Number of stripes has to be a power of two");
+        }
+        this.stripes = new ReentrantLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+        this.sequences = new long[stripes * SEQUENCE_PADDING];
+        this.stripeMask = stripes - 1;
+        this.hotAccounts = hotAccounts;
+    }
+
+    @Override
+    public Balance open(long initialBalance) {
+        int slot = nextSlot.getAndIncrement();
+        ensureCapacity(slot);
+        var balance = new StripedBalance(slot);
+        lock(slot);
+        try {
+            write(slot, initialBalance);
+        } finally {
+            unlock(slot);
+        }
+        return balance;
+    }
+
+    @Override
+    public long[] balancesOf(List<Account> accounts) {
+        return Account.balancesOf(accounts, this::readAtOnce);
+    }
+
+    private long[] readAtOnce(List<Account> accounts) {
+        var slots = new int[accounts.size()];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = slotOf(accounts.get(i));
+        }
+        var lockedStripes = Arrays.stream(slots).map(slot -> slot & stripeMask).sorted().distinct().toArray();
+        var balances = new long[slots.length];
+        var sequencesRead = new long[lockedStripes.length];
+        for (int attempt = 0; attempt < OPTIMISTIC_SNAPSHOT_ATTEMPTS; attempt++) {
+            if (tryReadUnchanged(slots, lockedStripes, sequencesRead, balances)) {
+                return balances;
+            }
+            Thread.onSpinWait();
+        }
+        lockAll(lockedStripes);
+        try {
+            for (int i = 0; i < slots.length; i++) {
+                balances[i] = read(slots[i]);
+            }
+            return balances;
+        } finally {
+            unlockAll(lockedStripes);
+        }
+    }
+
+    private boolean tryReadUnchanged(int[] slots, int[] stripes, long[] sequencesRead, long[] balances) {
+        for (int i = 0; i < stripes.length; i++) {
+            sequencesRead[i] = (long) SLAB.getAcquire(sequences, stripes[i] * SEQUENCE_PADDING);
+            if ((sequencesRead[i] & 1) != 0) {
+                return false;
+            }
+        }
+        for (int i = 0; i < slots.length; i++) {
+            balances[i] = read(slots[i]);
+        }
+        VarHandle.loadLoadFence();
+        for (int i = 0; i < stripes.length; i++) {
+            if ((long) SLAB.getAcquire(sequences, stripes[i] * SEQUENCE_PADDING) != sequencesRead[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void transferAll(List<Transfer> transfers, LongConsumer newBalanceValidator) {
+        transfers.forEach(transfer -> transfer.from.collectCredits());
+        var lockedStripes = stripesOf(transfers);
+        lockAll(lockedStripes);
+        try {
+            for (int i = 0; i < transfers.size(); i++) {
+                var transfer = transfers.get(i);
+                var debit = Debit.begin(transfer);
+                try {
+                    transfer(slotOf(transfer.from), slotOf(transfer.to), transfer.amount, transfer.credited, newBalanceValidator);
+                } catch (RuntimeException e) {
+                    undo(transfers, i);
+                    throw new TransferBatchException(i, e);
+                } finally {
+                    debit.end(transfer);
+                }
+            }
+        } finally {
+            unlockAll(lockedStripes);
+        }
+    }
+
+    private void lockAll(int[] sortedStripes) {
+        for (int stripe : sortedStripes) {
+            acquire(stripe);
+        }
+    }
+
+    private void unlockAll(int[] sortedStripes) {
+        for (int i = sortedStripes.length - 1; i >= 0; i--) {
+            release(sortedStripes[i]);
+        }
+    }
+
+    private void undo(List<Transfer> transfers, int failedIndex) {
+        for (int i = failedIndex - 1; i >= 0; i--) {
+            var transfer = transfers.get(i);
+            int from = slotOf(transfer.from);
+            int to = slotOf(transfer.to);
+            write(to, read(to) - transfer.credited);
+            write(from, read(from) + transfer.amount);
+            transfer.revert();
+        }
+    }
+
+    private int[] stripesOf(List<Transfer> transfers) {
+        var touched = new int[transfers.size() * 2];
+        for (int i = 0; i < transfers.size(); i++) {
+            touched[2 * i] = slotOf(transfers.get(i).from) & stripeMask;
+            touched[2 * i + 1] = slotOf(transfers.get(i).to) & stripeMask;
+        }
+        return Arrays.stream(touched).sorted().distinct().toArray();
+    }
+
+    private int slotOf(Account account) {
+        return slotOf(account.balance());
+    }
+
+    private int slotOf(Balance balance) {
+        if (!(balance instanceof StripedBalance) || ((StripedBalance) balance).engine() != this) {
+            throw new IllegalArgumentException("Can't transfer to an account opened by another balance engine");
+        }
+        return ((StripedBalance) balance).slot;
+    }
+
+    /**
+     * Requires the stripes of both slots to be held.
+     */
+    private void transfer(int from, int to, long amount, long credited, LongConsumer newBalanceValidator) {
+        long newBalance = read(from) - amount;
+        newBalanceValidator.accept(newBalance);
+        write(from, newBalance);
+        write(to, read(to) + credited);
+    }
+
+    private void ensureCapacity(int slot) {
+        int chunk = slot >>> CHUNK_SHIFT;
+        if (chunk < chunks.length) {
+            return;
+        }
+        synchronized (this) {
+            var current = chunks;
+            if (chunk >= current.length) {
+                var grown = Arrays.copyOf(current, Math.max(chunk + 1, current.length * 2));
+                for (int i = current.length; i < grown.length; i++) {
+                    grown[i] = new long[SLOTS_PER_CHUNK * FIELDS_PER_SLOT];
+                }
+                chunks = grown;
+            }
+        }
+    }
+
+    private long read(int slot) {
+        return (long) SLAB.getVolatile(chunks[slot >>> CHUNK_SHIFT], offset(slot, BALANCE));
+    }
+
+    private void write(int slot, long balance) {
+        var chunk = chunks[slot >>> CHUNK_SHIFT];
+        SLAB.setVolatile(chunk, offset(slot, BALANCE), balance);
+        SLAB.setRelease(chunk, offset(slot, LAST_MODIFIED), System.currentTimeMillis());
+    }
+
+    private static int offset(int slot, int field) {
+        return (slot & (SLOTS_PER_CHUNK - 1)) * FIELDS_PER_SLOT + field;
+    }
+
+    @Override
+    public TransferCounters transferCounters() {
+        return transferCounters;
+    }
+
+    @Override
+    public HotAccounts hotAccounts() {
+        return hotAccounts;
+    }
+
+    /**
+     * Locks the stripe and makes its sequence odd before anything is written.
+     *
+     * @return true if the stripe was held by another thread
+     */
+    private boolean acquire(int stripe) {
+        var lock = stripes[stripe];
+        boolean contended = !lock.tryLock();
+        if (contended) {
+            transferCounters.contention();
+            lock.lock();
+        }
+        int sequence = stripe * SEQUENCE_PADDING;
+        SLAB.setOpaque(sequences, sequence, (long) SLAB.getOpaque(sequences, sequence) + 1);
+        VarHandle.storeStoreFence();
+        return contended;
+    }
+
+    /**
+     * Makes the sequence of the stripe even, once everything written is visible, and unlocks it.
+     */
+    private void release(int stripe) {
+        int sequence = stripe * SEQUENCE_PADDING;
+        SLAB.setRelease(sequences, sequence, (long) SLAB.getOpaque(sequences, sequence) + 1);
+        stripes[stripe].unlock();
+    }
+
+    private boolean lock(int slot) {
+        return acquire(slot & stripeMask);
+    }
+
+    private void unlock(int slot) {
+        release(slot & stripeMask);
+    }
+
+    private boolean lockInOrder(int first, int second) {
+        int firstStripe = Math.min(first & stripeMask, second & stripeMask);
+        int secondStripe = Math.max(first & stripeMask, second & stripeMask);
+        boolean contended = acquire(firstStripe);
+        if (secondStripe != firstStripe) {
+            contended |= acquire(secondStripe);
+        }
+        return contended;
+    }
+
+    private void unlockBoth(int first, int second) {
+        release(first & stripeMask);
+        if ((second & stripeMask) != (first & stripeMask)) {
+            release(second & stripeMask);
+        }
+    }
+
+    private class StripedBalance implements Balance {
+        private final int slot;
+
+        StripedBalance(int slot) {
+            this.slot = slot;
+        }
+
+        StripedLockBalanceEngine engine() {
+            return StripedLockBalanceEngine.this;
+        }
+
+        @Override
+        public long get() {
+            return read(slot);
+        }
+
+        @Override
+        public long getAndSet(long balance) {
+            lock(slot);
+            try {
+                long previousBalance = read(slot);
+                write(slot, balance);
+                return previousBalance;
+            } finally {
+                unlock(slot);
+            }
+        }
+
+        @Override
+        public int increment(long value, LongConsumer newBalanceValidator) {
+            boolean contended = lock(slot);
+            try {
+                long newBalance = read(slot) + value;
+                newBalanceValidator.accept(newBalance);
+                write(slot, newBalance);
+                return contended ? CONTENDED : COMMITTED;
+            } finally {
+                unlock(slot);
+            }
+        }
+
+        @Override
+        public int decrement(long value, LongConsumer newBalanceValidator) {
+            return increment(-value, newBalanceValidator);
+        }
+
+        @Override
+        public int tryDecrement(long value, LongPredicate newBalanceAccepted, LongConsumer newBalanceValidator) {
+            boolean contended = lock(slot);
+            try {
+                long newBalance = read(slot) - value;
+                if (!newBalanceAccepted.test(newBalance)) {
+                    return REJECTED;
+                }
+                newBalanceValidator.accept(newBalance);
+                write(slot, newBalance);
+                return contended ? CONTENDED : COMMITTED;
+            } finally {
+                unlock(slot);
+            }
+        }
+
+        @Override
+        public int transferTo(Balance to, long amount, long credited, LongConsumer newBalanceValidator) {
+            int toSlot = slotOf(to);
+            transferCounters.attempt();
+            boolean contended = lockInOrder(slot, toSlot);
+            try {
+                transfer(slot, toSlot, amount, credited, newBalanceValidator);
+                transferCounters.commit();
+                return contended ? CONTENDED : COMMITTED;
+            } catch (RuntimeException e) {
+                transferCounters.abort();
+                throw e;
+            } finally {
+                unlockBoth(slot, toSlot);
+            }
+        }
+
+        @Override
+        public int tryTransferTo(Balance to, long amount, long credited, LongPredicate newBalanceAccepted, LongConsumer newBalanceValidator) {
+            int toSlot = slotOf(to);
+            transferCounters.attempt();
+            boolean contended = lockInOrder(slot, toSlot);
+            try {
+                if (!newBalanceAccepted.test(read(slot) - amount)) {
+                    transferCounters.abort();
+                    return REJECTED;
+                }
+                transfer(slot, toSlot, amount, credited, newBalanceValidator);
+                transferCounters.commit();
+                return contended ? CONTENDED : COMMITTED;
+            } catch (RuntimeException e) {
+                transferCounters.abort();
+                throw e;
+            } finally {
+                unlockBoth(slot, toSlot);
+            }
+        }
+    }
+}
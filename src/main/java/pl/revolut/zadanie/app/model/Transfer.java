@@ -0,0 +1,65 @@
+package pl.revolut.zadanie.app.model;
+
+import java.util.function.LongConsumer;
+
+public class Transfer {
+    final Account from;
+    final Account to;
+    final long amount;
+    final long credited;
+    Debit.Recorder recorder;
+    long recordedAtNanos;
+
+    public Transfer(Account from, Account to, long amount) {
+        this(from, to, amount, amount);
+    }
+
+    /**
+     * @param credited the amount converted to the currency of the credited account
+     */
+    public Transfer(Account from, Account to, long amount, long credited) {
+        this.from = from;
+        this.to = to;
+        this.amount = amount;
+        this.credited = credited;
+    }
+
+    public Account from() {
+        return from;
+    }
+
+    public Account to() {
+        return to;
+    }
+
+    public long amount() {
+        return amount;
+    }
+
+    public long credited() {
+        return credited;
+    }
+
+    /**
+     * Moves the money without notifying listeners, the caller reports the whole batch once it has been committed.
+     */
+    void execute(LongConsumer newBalanceValidator) {
+        var debit = Debit.begin(this);
+        try {
+            from.balance().transferTo(to.balance(), amount, credited, newBalanceValidator);
+        } finally {
+            debit.end(this);
+        }
+    }
+
+    /**
+     * Reverts the record validators kept of this transfer, once the batch has failed.
+     */
+    void revert() {
+        var recorder = this.recorder;
+        if (recorder != null) {
+            this.recorder = null;
+            recorder.revert(from, amount, recordedAtNanos);
+        }
+    }
+}
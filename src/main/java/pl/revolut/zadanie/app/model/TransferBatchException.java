@@ -0,0 +1,22 @@
+package pl.revolut.zadanie.app.model;
+
+/**
+ * Thrown when a transfer inside an all-or-nothing batch fails, the whole batch has been rolled back.
+ */
+public class TransferBatchException extends RuntimeException {
+    private final int index;
+
+    TransferBatchException(int index, RuntimeException cause) {
+        super(cause.getMessage(), cause);
+        this.index = index;
+    }
+
+    public int index() {
+        return index;
+    }
+
+    @Override
+    public synchronized RuntimeException getCause() {
+        return (RuntimeException) super.getCause();
+    }
+}
@@ -0,0 +1,69 @@
+package pl.revolut.zadanie.app.model;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts how transfers between two accounts went inside a {@link BalanceEngine}. An attempt is counted every time the
+ * transfer is tried, so an STM transaction retried after a conflict adds attempts but a single commit or abort.
+ * Updating the counters does not allocate.
+ */
+public final class TransferCounters {
+    private final LongAdder attempts = new LongAdder();
+    private final LongAdder commits = new LongAdder();
+    private final LongAdder aborts = new LongAdder();
+    private final LongAdder contentions = new LongAdder();
+    private final LongAdder splitAccounts = new LongAdder();
+
+    void attempt() {
+        attempts.increment();
+    }
+
+    void commit() {
+        commits.increment();
+    }
+
+    void abort() {
+        aborts.increment();
+    }
+
+    void contention() {
+        contentions.increment();
+    }
+
+    void split() {
+        splitAccounts.increment();
+    }
+
+    public long attempts() {
+        return attempts.sum();
+    }
+
+    public long commits() {
+        return commits.sum();
+    }
+
+    /**
+     * @return transfers rolled back, most often because the new balance has been rejected
+     */
+    public long aborts() {
+        return aborts.sum();
+    }
+
+    public long retries() {
+        return Math.max(0, attempts() - commits() - aborts());
+    }
+
+    /**
+     * @return times a writer had to wait for a lock held by another thread, always 0 for engines without locks
+     */
+    public long contentions() {
+        return contentions.sum();
+    }
+
+    /**
+     * @return accounts keeping credits in sub-balances, see {@link HotAccounts}
+     */
+    public long splitAccounts() {
+        return splitAccounts.sum();
+    }
+}
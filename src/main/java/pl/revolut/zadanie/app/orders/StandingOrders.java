@@ -0,0 +1,355 @@
+package pl.revolut.zadanie.app.orders;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.revolut.zadanie.app.dto.StandingOrderDto;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Transfers scheduled for a future time, once or repeatedly every interval, kept in a {@link TimerWheel} until due.
+ * <p>
+ * Every tick moves the due orders to a queue, which is drained at most at the given rate, in batches executed by a
+ * bounded number of workers, so thousands of orders due at midnight are spread over as long as the rate requires
+ * instead of hitting the accounts at once. Each order of a batch is transferred through the given transfer function,
+ * then a repeated order is scheduled again for its next execution after now, executions missed while it waited are
+ * skipped. Orders are kept in memory only, they don't survive a restart.
+ */
+public final class StandingOrders implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(StandingOrders.class);
+    private final OrderTransfer transfer;
+    private final TimerWheel<Order> wheel;
+    private final ArrayDeque<Order> due = new ArrayDeque<>();
+    private final ConcurrentSkipListMap<Long, Order> orders = new ConcurrentSkipListMap<>();
+    private final Semaphore batchesInFlight;
+    private final Executor workers;
+    private final ExecutorService ownedWorkers;
+    private final ScheduledExecutorService ticker;
+    private final LongSupplier millisClock;
+    private final double ordersPerTick;
+    private final int batchSize;
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private long nextId = 1;
+    private double allowance;
+
+    /**
+     * @param ordersPerSecond rate due orders are executed at, at most
+     * @param parallelism     batches executed at once, at most
+     */
+    public StandingOrders(OrderTransfer transfer, long tickMillis, int ordersPerSecond, int parallelism, int batchSize) {
+        this(transfer, tickMillis, ordersPerSecond, parallelism, batchSize, newWorkers(parallelism), System::currentTimeMillis, true);
+    }
+
+    /**
+     * @param ticking false to leave calling {@link #tick} to the caller
+     */
+    StandingOrders(OrderTransfer transfer, long tickMillis, int ordersPerSecond, int parallelism, int batchSize, Executor workers,
+                   LongSupplier millisClock, boolean ticking) {
+        if (ordersPerSecond < 1 || parallelism < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("Rate, parallelism and batch size have to be positive");
+        }
+        this.transfer = transfer;
+        this.wheel = new TimerWheel<>(tickMillis, millisClock.getAsLong());
+        this.batchesInFlight = new Semaphore(parallelism);
+        this.workers = workers;
+        this.ownedWorkers = workers instanceof ExecutorService ? (ExecutorService) workers : null;
+        this.millisClock = millisClock;
+        this.ordersPerTick = ordersPerSecond * tickMillis / 1000.0;
+        this.batchSize = batchSize;
+        if (ticking) {
+            ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                var thread = new Thread(runnable, "standing-orders-ticker");
+                thread.setDaemon(true);
+                return thread;
+            });
+            ticker.scheduleAtFixedRate(this::tickSafely, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+        } else {
+            ticker = null;
+        }
+    }
+
+    /**
+     * @param executeAtMillis time of the first execution, a past one executes the order with the next tick
+     * @param intervalMillis  time between executions, 0 to execute the order once
+     * @throws IllegalArgumentException if the order is invalid
+     */
+    public StandingOrderDto create(String from, String to, long amount, long executeAtMillis, long intervalMillis) {
+        if (from == null || to == null) {
+            throw new IllegalArgumentException("Both accounts of an order are required");
+        }
+        if (amount <= 0) {
+            throw new IllegalArgumentException("Amount of an order has to be positive");
+        }
+        if (intervalMillis < 0) {
+            throw new IllegalArgumentException("Interval of an order can't be negative");
+        }
+        synchronized (wheel) {
+            var order = new Order(nextId++, from, to, amount, executeAtMillis, intervalMillis);
+            orders.put(order.id, order);
+            wheel.schedule(order, executeAtMillis);
+            return order.toDto();
+        }
+    }
+
+    /**
+     * @return null if there is no such order, orders executed once are forgotten once executed
+     */
+    public StandingOrderDto get(long id) {
+        var order = orders.get(id);
+        if (order == null) {
+            return null;
+        }
+        synchronized (wheel) {
+            return order.toDto();
+        }
+    }
+
+    /**
+     * @param from  null for orders from any account
+     * @param after id the page starts after, 0 for the first page
+     * @return at most limit orders ordered by id
+     */
+    public List<StandingOrderDto> list(String from, long after, int limit) {
+        var page = new ArrayList<Order>(Math.min(limit, 1024));
+        for (var order : orders.tailMap(after, false).values()) {
+            if (page.size() == limit) {
+                break;
+            }
+            if (from == null || from.equals(order.from)) {
+                page.add(order);
+            }
+        }
+        var dtos = new ArrayList<StandingOrderDto>(page.size());
+        synchronized (wheel) {
+            page.forEach(order -> dtos.add(order.toDto()));
+        }
+        return dtos;
+    }
+
+    /**
+     * Cancels the order, an execution already started completes but the order is not executed again.
+     *
+     * @return false if there is no such order
+     */
+    public boolean cancel(long id) {
+        synchronized (wheel) {
+            var order = orders.remove(id);
+            if (order == null) {
+                return false;
+            }
+            order.cancelled = true;
+            wheel.cancel(order);
+            return true;
+        }
+    }
+
+    /**
+     * @return orders waiting for their time, not counting those due and waiting to be executed
+     */
+    public int pending() {
+        synchronized (wheel) {
+            return wheel.size();
+        }
+    }
+
+    public long executed() {
+        return executed.sum();
+    }
+
+    public long failed() {
+        return failed.sum();
+    }
+
+    /**
+     * Moves the orders due by now to the queue and hands out to the workers as many of them as the rate allows.
+     */
+    void tick() {
+        long now = millisClock.getAsLong();
+        synchronized (wheel) {
+            wheel.advance(now, due::add);
+            allowance = Math.min(allowance + ordersPerTick, Math.max(ordersPerTick, 1));
+        }
+        while (batchesInFlight.tryAcquire()) {
+            var batch = nextBatch();
+            if (batch.isEmpty()) {
+                batchesInFlight.release();
+                return;
+            }
+            try {
+                workers.execute(() -> {
+                    try {
+                        execute(batch);
+                    } finally {
+                        batchesInFlight.release();
+                    }
+                });
+            } catch (RuntimeException e) {
+                batchesInFlight.release();
+                requeue(batch);
+                throw e;
+            }
+        }
+    }
+
+    private void tickSafely() {
+        try {
+            tick();
+        } catch (RuntimeException e) {
+            LOG.error("Could not execute due standing orders", e);
+        }
+    }
+
+    private List<Order> nextBatch() {
+        synchronized (wheel) {
+            var batch = new ArrayList<Order>(Math.min(batchSize, due.size()));
+            while (batch.size() < batchSize && allowance >= 1 && !due.isEmpty()) {
+                var order = due.poll();
+                if (!order.cancelled) {
+                    batch.add(order);
+                    allowance--;
+                }
+            }
+            return batch;
+        }
+    }
+
+    private void requeue(List<Order> batch) {
+        synchronized (wheel) {
+            for (int i = batch.size() - 1; i >= 0; i--) {
+                due.addFirst(batch.get(i));
+            }
+        }
+    }
+
+    /**
+     * Starts the transfers of the whole batch before waiting for any, so transfers executed asynchronously overlap.
+     */
+    private void execute(List<Order> batch) {
+        var transfers = new CompletableFuture<?>[batch.size()];
+        for (int i = 0; i < transfers.length; i++) {
+            var order = batch.get(i);
+            try {
+                transfers[i] = transfer.transfer(order.from, order.to, order.amount);
+            } catch (RuntimeException e) {
+                transfers[i] = CompletableFuture.failedFuture(e);
+            }
+        }
+        for (int i = 0; i < transfers.length; i++) {
+            String failure = null;
+            try {
+                transfers[i].join();
+            } catch (CompletionException e) {
+                failure = String.valueOf(e.getCause().getMessage());
+            } catch (RuntimeException e) {
+                failure = String.valueOf(e.getMessage());
+            }
+            executed(batch.get(i), failure);
+        }
+    }
+
+    private void executed(Order order, String failure) {
+        if (failure == null) {
+            executed.increment();
+        } else {
+            failed.increment();
+        }
+        synchronized (wheel) {
+            if (failure == null) {
+                order.executions++;
+            } else {
+                order.failures++;
+                order.lastFailure = failure;
+            }
+            if (order.cancelled) {
+                return;
+            }
+            if (order.intervalMillis == 0) {
+                orders.remove(order.id);
+                return;
+            }
+            long now = millisClock.getAsLong();
+            long next = order.executeAtMillis + order.intervalMillis;
+            if (next <= now) {
+                next += ((now - next) / order.intervalMillis + 1) * order.intervalMillis;
+            }
+            order.executeAtMillis = next;
+            wheel.schedule(order, next);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+        }
+        if (ownedWorkers != null) {
+            ownedWorkers.shutdown();
+            try {
+                ownedWorkers.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static ExecutorService newWorkers(int parallelism) {
+        var threadNumber = new AtomicInteger();
+        return Executors.newFixedThreadPool(parallelism, runnable -> {
+            var thread = new Thread(runnable, "standing-orders-worker-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @FunctionalInterface
+    public interface OrderTransfer {
+        /**
+         * @return completed once the transfer has been committed, failed if it has been rejected, may also throw
+         */
+        CompletableFuture<Void> transfer(String from, String to, long amount);
+    }
+
+    /**
+     * Fields but the ids are guarded by the wheel.
+     */
+    private static final class Order extends TimerWheel.Timer {
+        private final long id;
+        private final String from;
+        private final String to;
+        private final long amount;
+        private final long intervalMillis;
+        private long executeAtMillis;
+        private int executions;
+        private int failures;
+        private String lastFailure;
+        private boolean cancelled;
+
+        private Order(long id, String from, String to, long amount, long executeAtMillis, long intervalMillis) {
+            this.id = id;
+            this.from = from;
+            this.to = to;
+            this.amount = amount;
+            this.executeAtMillis = executeAtMillis;
+            this.intervalMillis = intervalMillis;
+        }
+
+        private StandingOrderDto toDto() {
+            return new StandingOrderDto(id, from, to, amount, executeAtMillis, intervalMillis / 1000, executions, failures, lastFailure);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package pl.revolut.zadanie.app.orders;
+
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timer wheel of {@value LEVELS} levels of {@value SLOTS} slots, so a timer is scheduled and cancelled in
+ * constant time whatever the number of pending timers, and a tick costs only the timers expiring in it, plus the
+ * timers moved down a level once every {@value SLOTS} ticks of the level above.
+ * <p>
+ * A slot of level 0 holds the timers of one tick, a slot of level n those of {@value SLOTS}^n ticks. Timers are their
+ * own list nodes, so a pending timer takes no memory but its own fields. Timers further than the levels reach, over
+ * 2^32 ticks, wait in the farthest slot and move down from there. Not thread safe.
+ */
+final class TimerWheel<T extends TimerWheel.Timer> {
+    static final int LEVELS = 4;
+    static final int SLOTS = 256;
+    private static final int SLOT_BITS = 8;
+    private static final long MAX_DELTA = (1L << (SLOT_BITS * LEVELS)) - 1;
+    private final Timer[] slots = new Timer[LEVELS * SLOTS];
+    private final long tickMillis;
+    private long nextTick;
+    private int size;
+
+    /**
+     * @param nowMillis time the wheel starts at, timers due before it expire with the first tick
+     */
+    TimerWheel(long tickMillis, long nowMillis) {
+        if (tickMillis < 1) {
+            throw new IllegalArgumentException("Tick has to be at least a millisecond");
+        }
+        this.tickMillis = tickMillis;
+        this.nextTick = Math.floorDiv(nowMillis, tickMillis);
+    }
+
+    /**
+     * Schedules the timer to expire with the first tick not earlier than the deadline, or with the next tick if the
+     * deadline has passed.
+     */
+    void schedule(T scheduled, long deadlineMillis) {
+        Timer timer = scheduled;
+        if (timer.slot >= 0) {
+            throw new IllegalStateException("Timer is already scheduled");
+        }
+        timer.deadlineTick = -Math.floorDiv(-deadlineMillis, tickMillis);
+        place(timer);
+        size++;
+    }
+
+    /**
+     * @return false if the timer was not pending
+     */
+    boolean cancel(T cancelled) {
+        Timer timer = cancelled;
+        if (timer.slot < 0) {
+            return false;
+        }
+        unlink(timer);
+        size--;
+        return true;
+    }
+
+    /**
+     * Expires every timer due by the given time, in the order of their ticks. The timers are no longer pending when
+     * passed to the consumer, which may schedule them again.
+     */
+    @SuppressWarnings("unchecked")
+    void advance(long nowMillis, Consumer<? super T> expired) {
+        long nowTick = Math.floorDiv(nowMillis, tickMillis);
+        while (nextTick <= nowTick) {
+            if (size == 0) {
+                nextTick = nowTick + 1;
+                return;
+            }
+            long tick = nextTick;
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((tick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+                    cascade(level * SLOTS + index(tick, level));
+                }
+            }
+            var timer = detach(index(tick, 0));
+            nextTick = tick + 1;
+            while (timer != null) {
+                var next = timer.next;
+                timer.next = null;
+                size--;
+                expired.accept((T) timer);
+                timer = next;
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void cascade(int slot) {
+        var timer = detach(slot);
+        while (timer != null) {
+            var next = timer.next;
+            timer.next = null;
+            place(timer);
+            timer = next;
+        }
+    }
+
+    private void place(Timer timer) {
+        long tick = Math.max(timer.deadlineTick, nextTick);
+        long delta = tick - nextTick;
+        if (delta > MAX_DELTA) {
+            delta = MAX_DELTA;
+            tick = nextTick + MAX_DELTA;
+        }
+        int level = 0;
+        while (delta >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        link(timer, level * SLOTS + index(tick, level));
+    }
+
+    private void link(Timer timer, int slot) {
+        var head = slots[slot];
+        timer.slot = slot;
+        timer.prev = null;
+        timer.next = head;
+        if (head != null) {
+            head.prev = timer;
+        }
+        slots[slot] = timer;
+    }
+
+    private void unlink(Timer timer) {
+        if (timer.prev == null) {
+            slots[timer.slot] = timer.next;
+        } else {
+            timer.prev.next = timer.next;
+        }
+        if (timer.next != null) {
+            timer.next.prev = timer.prev;
+        }
+        timer.prev = null;
+        timer.next = null;
+        timer.slot = -1;
+    }
+
+    /**
+     * @return the first timer of the slot, the rest still linked to it, all of them marked as not pending
+     */
+    private Timer detach(int slot) {
+        var head = slots[slot];
+        slots[slot] = null;
+        for (var timer = head; timer != null; timer = timer.next) {
+            timer.prev = null;
+            timer.slot = -1;
+        }
+        return head;
+    }
+
+    private static int index(long tick, int level) {
+        return (int) (tick >>> (SLOT_BITS * level)) & (SLOTS - 1);
+    }
+
+    /**
+     * A node of the lists of the wheel, extended by the scheduled objects.
+     */
+    abstract static class Timer {
+        private Timer prev;
+        private Timer next;
+        private long deadlineTick;
+        private int slot = -1;
+    }
+}
@@ -0,0 +1,309 @@
+package pl.revolut.zadanie.app.replication;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.revolut.zadanie.app.model.Account;
+import pl.revolut.zadanie.app.model.AccountListener;
+import pl.revolut.zadanie.app.model.BalanceEngine;
+import pl.revolut.zadanie.app.store.AccountStore;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongConsumer;
+import java.util.function.LongSupplier;
+
+import static pl.revolut.zadanie.app.replication.ReplicationProtocol.*;
+
+/**
+ * Keeps the accounts of a replica up to date with the primary, applying the stream of a {@link ReplicationServer} on
+ * a single thread, through the same account operations and listener as changes made by the replica itself, so
+ * whatever the listener maintains, e.g. the ledger or the aggregates, follows the primary too.
+ * <p>
+ * Changes are applied in the order of the change log of the primary, which may differ from the order they were
+ * committed in for changes of the same account made concurrently, so a balance may briefly differ from any balance
+ * the primary had, but it adds up to the same one. The primary has already validated every change, so none is
+ * validated again. The replica is consistent with the primary as of the timestamp of the last change or heartbeat it
+ * applied, the lag is how long ago that was by the clock of the replica. A broken connection is retried until the
+ * client is closed or promoted, starting over with a snapshot.
+ */
+public final class ReplicaClient implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(ReplicaClient.class);
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+    private static final int READ_TIMEOUT_MILLIS = 5000;
+    private static final long RECONNECT_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final int INPUT_BUFFER = 64 * 1024;
+    private static final LongConsumer NO_VALIDATION = newBalance -> {
+    };
+    private final String host;
+    private final int port;
+    private final AccountStore store;
+    private final BalanceEngine balanceEngine;
+    private final AccountListener listener;
+    private final LongSupplier millisClock;
+    private final Thread applier;
+    private volatile Socket socket;
+    private volatile boolean running = true;
+    private volatile boolean promoted;
+    private volatile boolean connected;
+    private volatile long appliedSequence = -1;
+    private volatile long syncedAtMillis = -1;
+    private volatile int snapshots;
+
+    public ReplicaClient(String host, int port, AccountStore store, BalanceEngine balanceEngine, AccountListener listener) {
+        this(host, port, store, balanceEngine, listener, System::currentTimeMillis);
+    }
+
+    ReplicaClient(String host, int port, AccountStore store, BalanceEngine balanceEngine, AccountListener listener,
+                  LongSupplier millisClock) {
+        this.host = host;
+        this.port = port;
+        this.store = store;
+        this.balanceEngine = balanceEngine;
+        this.listener = listener;
+        this.millisClock = millisClock;
+        this.applier = new Thread(this::run, "replica-applier");
+        this.applier.setDaemon(true);
+    }
+
+    public void start() {
+        applier.start();
+    }
+
+    /**
+     * @return host:port of the primary
+     */
+    public String primary() {
+        return host + ":" + port;
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * @return true once the replica has stopped following the primary to take over from it
+     */
+    public boolean isPromoted() {
+        return promoted;
+    }
+
+    /**
+     * @return sequence of the last change of the primary applied, -1 if none
+     */
+    public long appliedSequence() {
+        return appliedSequence;
+    }
+
+    /**
+     * @return milliseconds since the time of the primary the replica is consistent as of, -1 if it has not loaded a
+     * snapshot yet
+     */
+    public long lagMillis() {
+        long syncedAt = syncedAtMillis;
+        return syncedAt < 0 ? -1 : Math.max(0, millisClock.getAsLong() - syncedAt);
+    }
+
+    /**
+     * @return snapshots loaded, more than one if the replica has reconnected or fallen behind
+     */
+    public int snapshots() {
+        return snapshots;
+    }
+
+    /**
+     * Stops following the primary once the change being applied, if any, has been applied, so the replica can take
+     * writes without racing with the stream. The primary is not fenced off, it has to be down or stopped first.
+     */
+    public void promote() {
+        close();
+        promoted = true;
+        LOG.info("Promoted to primary at sequence {} of {}", appliedSequence, primary());
+    }
+
+    private void run() {
+        while (running) {
+            try (var connection = new Socket()) {
+                connection.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+                connection.setSoTimeout(READ_TIMEOUT_MILLIS);
+                socket = connection;
+                if (!running) {
+                    return;
+                }
+                connected = true;
+                LOG.info("Replicating {}", primary());
+                apply(new DataInputStream(new BufferedInputStream(connection.getInputStream(), INPUT_BUFFER)));
+            } catch (IOException e) {
+                if (running) {
+                    LOG.warn("Lost the primary {}, reconnecting: {}", primary(), e.getMessage());
+                }
+            } finally {
+                connected = false;
+                socket = null;
+            }
+            if (running) {
+                LockSupport.parkNanos(this, RECONNECT_NANOS);
+            }
+        }
+    }
+
+    private void apply(DataInputStream input) throws IOException {
+        while (running) {
+            byte op = input.readByte();
+            switch (op) {
+                case SNAPSHOT:
+                    applySnapshot(input);
+                    break;
+                case CHANGE:
+                    applyChange(input);
+                    break;
+                case HEARTBEAT:
+                    long nextSequence = input.readLong();
+                    long timestamp = input.readLong();
+                    appliedSequence = nextSequence - 1;
+                    syncedAtMillis = timestamp;
+                    break;
+                default:
+                    throw new IOException("Unknown frame " + op);
+            }
+        }
+    }
+
+    /**
+     * Replaces the accounts with those of the snapshot, keeping the accounts whose currency hasn't changed.
+     */
+    private void applySnapshot(DataInputStream input) throws IOException {
+        long sequence = input.readLong();
+        long timestamp = input.readLong();
+        int count = input.readInt();
+        var ibans = new HashSet<String>(Math.max(16, count * 4 / 3 + 1));
+        for (int i = 0; i < count; i++) {
+            if (input.readByte() != ACCOUNT) {
+                throw new IOException("Snapshot cut short after " + i + " accounts");
+            }
+            var iban = input.readUTF();
+            var currency = input.readUTF();
+            long balance = input.readLong();
+            ibans.add(iban);
+            load(iban, currency, balance);
+        }
+        for (Account account : new ArrayList<>(store.values())) {
+            if (!ibans.contains(account.getIban())) {
+                delete(account.getIban());
+            }
+        }
+        appliedSequence = sequence - 1;
+        syncedAtMillis = timestamp;
+        snapshots++;
+        LOG.info("Loaded a snapshot of {} accounts at sequence {} of {}", count, sequence, primary());
+    }
+
+    private void applyChange(DataInputStream input) throws IOException {
+        long sequence = input.readLong();
+        var type = readType(input);
+        var iban = input.readUTF();
+        var counterpart = input.readUTF();
+        long amount = input.readLong();
+        long timestamp = input.readLong();
+        if (sequence != appliedSequence + 1) {
+            throw new IOException(String.format("Expected change %d, got %d", appliedSequence + 1, sequence));
+        }
+        switch (type) {
+            case CREATED:
+                load(iban, counterpart, amount);
+                break;
+            case DELETED:
+                delete(iban);
+                break;
+            case ADJUSTED:
+                var account = store.find(iban);
+                if (account != null) {
+                    account.incrementBalance(amount);
+                }
+                break;
+            case TRANSFERRED:
+                transfer(store.find(iban), store.find(counterpart), amount);
+                break;
+            default:
+                throw new IOException("Unexpected change " + type);
+        }
+        appliedSequence = sequence;
+        syncedAtMillis = timestamp;
+    }
+
+    /**
+     * Applies the sides of the transfer whose accounts exist, they may have been deleted by the changes that follow.
+     */
+    private static void transfer(Account from, Account to, long amount) {
+        if (from != null && to != null && from.getCurrency().equals(to.getCurrency())) {
+            from.transferTo(to, amount, NO_VALIDATION);
+            return;
+        }
+        if (from != null) {
+            from.incrementBalance(-amount);
+        }
+        if (to != null) {
+            to.incrementBalance(amount);
+        }
+    }
+
+    private void load(String iban, String currency, long balance) {
+        var account = store.find(iban);
+        if (account != null && account.getCurrency().equals(currency)) {
+            if (account.getBalance() != balance) {
+                account.setBalance(balance);
+            }
+            return;
+        }
+        if (account != null) {
+            delete(iban);
+        }
+        listener.beforeChange();
+        try {
+            var created = new Account(balance, iban, currency, balanceEngine, listener);
+            store.put(iban, created);
+            listener.onCreated(created, balance);
+        } finally {
+            listener.afterChange();
+        }
+    }
+
+    private void delete(String iban) {
+        listener.beforeChange();
+        try {
+            var removed = store.remove(iban);
+            if (removed != null) {
+                listener.onDeleted(removed);
+            }
+        } finally {
+            listener.afterChange();
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        var connection = socket;
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (IOException e) {
+                LOG.warn("Could not close the connection to {}", primary(), e);
+            }
+        }
+        if (applier.isAlive() && applier != Thread.currentThread()) {
+            LockSupport.unpark(applier);
+            try {
+                applier.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package pl.revolut.zadanie.app.replication;
+
+import pl.revolut.zadanie.app.events.ChangeEvent;
+import pl.revolut.zadanie.app.events.ChangeType;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Frames streamed by the primary to a replica, all numbers are big endian and strings are modified UTF-8 as written by
+ * {@link DataOutput#writeUTF(String)}. A stream starts with a snapshot, the accounts as of the sequence of the first
+ * change following it, then carries every change in the order of the change log, with a heartbeat whenever the replica
+ * has been sent every change published so far. A lost change starts the stream over with another snapshot.
+ * <pre>
+ * SNAPSHOT   op:byte sequence:long timestamp:long count:int, followed by count ACCOUNT frames
+ * ACCOUNT    op:byte iban:utf currency:utf balance:long
+ * CHANGE     op:byte sequence:long type:byte iban:utf counterpart:utf amount:long timestamp:long
+ * HEARTBEAT  op:byte nextSequence:long timestamp:long
+ * </pre>
+ * The counterpart of a change is the credited account of a transfer, the currency of a created account, otherwise empty.
+ * Timestamps are milliseconds of the clock of the primary.
+ */
+final class ReplicationProtocol {
+    static final byte SNAPSHOT = 1;
+    static final byte ACCOUNT = 2;
+    static final byte CHANGE = 3;
+    static final byte HEARTBEAT = 4;
+
+    private static final ChangeType[] TYPES = ChangeType.values();
+
+    private ReplicationProtocol() {
+    }
+
+    static void writeChange(DataOutput output, ChangeEvent event) throws IOException {
+        output.writeByte(CHANGE);
+        output.writeLong(event.sequence());
+        output.writeByte(event.type().ordinal());
+        output.writeUTF(event.iban());
+        var counterpart = event.type() == ChangeType.CREATED ? event.currency() : event.counterpart();
+        output.writeUTF(counterpart == null ? "" : counterpart);
+        output.writeLong(event.amount());
+        output.writeLong(event.timestamp());
+    }
+
+    static void writeHeartbeat(DataOutput output, long nextSequence, long timestamp) throws IOException {
+        output.writeByte(HEARTBEAT);
+        output.writeLong(nextSequence);
+        output.writeLong(timestamp);
+    }
+
+    static ChangeType readType(DataInput input) throws IOException {
+        int ordinal = input.readUnsignedByte();
+        if (ordinal >= TYPES.length) {
+            throw new IOException("Unknown change type " + ordinal);
+        }
+        return TYPES[ordinal];
+    }
+}
@@ -0,0 +1,290 @@
+package pl.revolut.zadanie.app.replication;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.revolut.zadanie.app.concurrent.SnapshotGate;
+import pl.revolut.zadanie.app.events.ChangeEvent;
+import pl.revolut.zadanie.app.events.ChangeLog;
+import pl.revolut.zadanie.app.events.ChangeSubscription;
+import pl.revolut.zadanie.app.model.Account;
+import pl.revolut.zadanie.app.model.AccountListener;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+import static pl.revolut.zadanie.app.replication.ReplicationProtocol.*;
+
+/**
+ * Streams the committed changes of the primary to its replicas over TCP, see {@link ReplicationProtocol}.
+ * <p>
+ * Every replica is served by its own thread following the {@link ChangeLog} with a subscription of its own, so
+ * committing a change costs the primary no more than publishing it, whatever the number of replicas. A replica first
+ * gets a snapshot of the accounts, listed while the {@link SnapshotGate} keeps changes out, so the snapshot holds
+ * exactly the changes before the first one streamed after it. A replica falling more than the capacity of the change
+ * log behind, e.g. over a slow link, is sent another snapshot instead of slowing down the primary.
+ * <p>
+ * Listing the accounts keeps changes waiting, so snapshots are taken at most once per the minimum interval, whatever
+ * the number of replicas. A replica needing a snapshot within the interval gets the last one, followed by the changes
+ * made since, as long as the change log still keeps them, otherwise it waits for the interval to pass.
+ */
+public final class ReplicationServer implements AccountListener, AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(ReplicationServer.class);
+    private static final long HEARTBEAT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final int MAX_CHANGES_BETWEEN_HEARTBEATS = 4096;
+    private static final int OUTPUT_BUFFER = 64 * 1024;
+    private static final long DEFAULT_MIN_SNAPSHOT_INTERVAL_MILLIS = 1000;
+    private final ChangeLog changeLog;
+    private final SnapshotGate gate = new SnapshotGate(64);
+    private final int port;
+    private final Set<Socket> replicas = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger replicaNumber = new AtomicInteger();
+    private final long minSnapshotIntervalNanos;
+    private final Object snapshotLock = new Object();
+    private Snapshot lastSnapshot;
+    private volatile int snapshots;
+    private Supplier<Collection<Account>> accounts;
+    private ServerSocket serverSocket;
+    private Thread acceptor;
+    private volatile boolean running;
+
+    /**
+     * @param port 0 for any free port, see {@link #port()}
+     */
+    public ReplicationServer(ChangeLog changeLog, int port) {
+        this(changeLog, port, DEFAULT_MIN_SNAPSHOT_INTERVAL_MILLIS);
+    }
+
+    /**
+     * @param port                      0 for any free port, see {@link #port()}
+     * @param minSnapshotIntervalMillis how long a snapshot is sent to replicas needing one before another one is taken
+     */
+    public ReplicationServer(ChangeLog changeLog, int port, long minSnapshotIntervalMillis) {
+        this.changeLog = changeLog;
+        this.port = port;
+        this.minSnapshotIntervalNanos = TimeUnit.MILLISECONDS.toNanos(minSnapshotIntervalMillis);
+    }
+
+    /**
+     * @param accounts all the accounts of the primary, listed for every snapshot
+     */
+    public void start(Supplier<Collection<Account>> accounts) {
+        this.accounts = accounts;
+        try {
+            serverSocket = new ServerSocket();
+            serverSocket.bind(new InetSocketAddress(port));
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not start replication on port " + port, e);
+        }
+        running = true;
+        acceptor = new Thread(this::accept, "replication-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        LOG.info("Replication listening on port {}", port());
+    }
+
+    public int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return replicas connected now
+     */
+    public int replicas() {
+        return replicas.size();
+    }
+
+    /**
+     * @return snapshots of the accounts taken, each sent to one or more replicas
+     */
+    public int snapshots() {
+        return snapshots;
+    }
+
+    @Override
+    public void beforeChange() {
+        gate.enter();
+    }
+
+    @Override
+    public void afterChange() {
+        gate.exit();
+    }
+
+    private void accept() {
+        while (running) {
+            try {
+                var socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                replicas.add(socket);
+                var sender = new Thread(() -> stream(socket), "replication-sender-" + replicaNumber.getAndIncrement());
+                sender.setDaemon(true);
+                sender.start();
+            } catch (IOException e) {
+                if (running) {
+                    LOG.warn("Could not accept a replica", e);
+                }
+            }
+        }
+    }
+
+    private void stream(Socket socket) {
+        var replica = socket.getRemoteSocketAddress();
+        LOG.info("Replica {} connected", replica);
+        try (socket; var output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), OUTPUT_BUFFER))) {
+            var event = new ChangeEvent();
+            while (isStreaming()) {
+                var subscription = sendSnapshot(output);
+                while (isStreaming() && !subscription.isLost()) {
+                    int sent = 0;
+                    while (sent < MAX_CHANGES_BETWEEN_HEARTBEATS && subscription.poll(event)) {
+                        writeChange(output, event);
+                        sent++;
+                    }
+                    if (sent == MAX_CHANGES_BETWEEN_HEARTBEATS || subscription.isLost()) {
+                        continue;
+                    }
+                    writeHeartbeat(output, subscription.nextSequence(), System.currentTimeMillis());
+                    output.flush();
+                    subscription.await(HEARTBEAT_NANOS);
+                }
+                if (subscription.isLost()) {
+                    LOG.warn("Replica {} fell more than the change log behind, sending another snapshot", replica);
+                }
+            }
+        } catch (IOException e) {
+            if (running) {
+                LOG.info("Replica {} disconnected: {}", replica, e.getMessage());
+            }
+        } finally {
+            replicas.remove(socket);
+        }
+    }
+
+    private boolean isStreaming() {
+        return running && changeLog.isRunning();
+    }
+
+    /**
+     * @return subscription following the changes made after the snapshot
+     */
+    private ChangeSubscription sendSnapshot(DataOutputStream output) throws IOException {
+        Snapshot snapshot;
+        ChangeSubscription subscription;
+        synchronized (snapshotLock) {
+            snapshot = lastSnapshot;
+            subscription = snapshot == null ? null : resume(snapshot);
+            if (subscription == null) {
+                awaitSnapshotInterval(snapshot);
+                snapshot = takeSnapshot();
+                lastSnapshot = snapshot;
+                snapshots++;
+                subscription = changeLog.subscribe(snapshot.sequence);
+            }
+        }
+        output.writeByte(SNAPSHOT);
+        output.writeLong(snapshot.sequence);
+        output.writeLong(snapshot.timestamp);
+        output.writeInt(snapshot.ibans.size());
+        for (int i = 0; i < snapshot.ibans.size(); i++) {
+            output.writeByte(ACCOUNT);
+            output.writeUTF(snapshot.ibans.get(i));
+            output.writeUTF(snapshot.currencies.get(i));
+            output.writeLong(snapshot.balances[i]);
+        }
+        return subscription;
+    }
+
+    /**
+     * @return subscription following the changes made after the snapshot, null if it is too old to be sent again
+     */
+    private ChangeSubscription resume(Snapshot snapshot) {
+        if (System.nanoTime() - snapshot.takenAtNanos >= minSnapshotIntervalNanos) {
+            return null;
+        }
+        try {
+            return changeLog.subscribe(snapshot.sequence);
+        } catch (IllegalArgumentException noLongerKept) {
+            return null;
+        }
+    }
+
+    private void awaitSnapshotInterval(Snapshot previous) {
+        if (previous == null) {
+            return;
+        }
+        long remaining;
+        while (isStreaming() && (remaining = previous.takenAtNanos + minSnapshotIntervalNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(this, remaining);
+        }
+    }
+
+    private Snapshot takeSnapshot() {
+        gate.close();
+        try {
+            long sequence = changeLog.nextSequence();
+            long timestamp = System.currentTimeMillis();
+            var book = accounts.get();
+            var ibans = new ArrayList<String>(book.size());
+            var currencies = new ArrayList<String>(book.size());
+            var balances = new long[book.size()];
+            for (Account account : book) {
+                balances[ibans.size()] = account.getBalance();
+                ibans.add(account.getIban());
+                currencies.add(account.getCurrency());
+            }
+            return new Snapshot(sequence, timestamp, System.nanoTime(), ibans, currencies, balances);
+        } finally {
+            gate.open();
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        if (serverSocket == null) {
+            return;
+        }
+        try {
+            serverSocket.close();
+            for (Socket socket : replicas) {
+                socket.close();
+            }
+            acceptor.join();
+        } catch (IOException e) {
+            LOG.warn("Could not close replication", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Snapshot {
+        private final long sequence;
+        private final long timestamp;
+        private final long takenAtNanos;
+        private final List<String> ibans;
+        private final List<String> currencies;
+        private final long[] balances;
+
+        private Snapshot(long sequence, long timestamp, long takenAtNanos, List<String> ibans, List<String> currencies, long[] balances) {
+            this.sequence = sequence;
+            this.timestamp = timestamp;
+            this.takenAtNanos = takenAtNanos;
+            this.ibans = ibans;
+            this.currencies = currencies;
+            this.balances = balances;
+        }
+    }
+}
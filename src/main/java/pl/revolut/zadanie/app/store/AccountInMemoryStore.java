@@ -3,40 +3,100 @@ package pl.revolut.zadanie.app.store;
 
 import pl.revolut.zadanie.app.model.Account;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.NavigableSet;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
-public class AccountInMemoryStore {
+/**
+ * Accounts by iban, with an ordered index of ibans for cursor based paging. The index is updated while the map entry
+ * is locked, so both always agree on which ibans exist.
+ */
+public class AccountInMemoryStore implements AccountStore {
     private final Map<String, Account> store;
+    private final NavigableSet<String> ibans = new ConcurrentSkipListSet<>();
 
     public AccountInMemoryStore(int initialCapacity) {
         store = new ConcurrentHashMap<>(initialCapacity);
     }
 
+    @Override
     public boolean contains(String iban) {
         return store.containsKey(iban);
     }
 
-    public Optional<Account> get(String iban) {
-        return Optional.ofNullable(store.get(iban));
+    @Override
+    public Account find(String iban) {
+        return store.get(iban);
     }
 
+    @Override
     public Account put(String iban, Account bankAccount) {
-        return store.put(iban, bankAccount);
+        var previous = new Account[1];
+        store.compute(iban, (key, current) -> {
+            previous[0] = current;
+            ibans.add(key);
+            return bankAccount;
+        });
+        return previous[0];
     }
 
+    @Override
+    public boolean putIfAbsent(String iban, Supplier<Account> accountFactory) {
+        var created = new boolean[1];
+        store.computeIfAbsent(iban, key -> {
+            var account = accountFactory.get();
+            created[0] = true;
+            ibans.add(key);
+            return account;
+        });
+        return created[0];
+    }
+
+    @Override
     public Account remove(String iban) {
-        return store.remove(iban);
+        var removed = new Account[1];
+        store.computeIfPresent(iban, (key, current) -> {
+            removed[0] = current;
+            ibans.remove(key);
+            return null;
+        });
+        return removed[0];
     }
 
+    @Override
     public Set<Account> getAll() {
         return store.entrySet()
                 .stream()
                 .map(Map.Entry::getValue)
                 .collect(Collectors.toSet());
     }
+
+    @Override
+    public Collection<Account> values() {
+        return Collections.unmodifiableCollection(store.values());
+    }
+
+    @Override
+    public List<Account> page(String afterIban, int limit) {
+        var page = new ArrayList<Account>(Math.min(limit, 1024));
+        var candidates = afterIban == null ? ibans : ibans.tailSet(afterIban, false);
+        for (String iban : candidates) {
+            if (page.size() == limit) {
+                break;
+            }
+            var account = store.get(iban);
+            if (account != null) {
+                page.add(account);
+            }
+        }
+        return page;
+    }
 }
@@ -0,0 +1,69 @@
+package pl.revolut.zadanie.app.store;
+
+import pl.revolut.zadanie.app.model.Account;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Accounts by iban.
+ */
+public interface AccountStore {
+
+    static AccountStore forName(String name, int initialCapacity) {
+        switch (name) {
+            case "map":
+                return new AccountInMemoryStore(initialCapacity);
+            case "packed":
+                return new PackedIndexAccountStore(initialCapacity);
+            default:
+                throw new IllegalArgumentException(String.format("Unknown account store %s, expected one of map, packed", name));
+        }
+    }
+
+    /**
+     * @return account with the given iban, null if there is none, unlike {@link #get(String)} it never allocates
+     */
+    Account find(String iban);
+
+    default Optional<Account> get(String iban) {
+        return Optional.ofNullable(find(iban));
+    }
+
+    default boolean contains(String iban) {
+        return find(iban) != null;
+    }
+
+    /**
+     * @return account previously stored with the given iban, null if there was none
+     */
+    Account put(String iban, Account bankAccount);
+
+    /**
+     * Creates the account only if there is none with the given iban, atomically.
+     *
+     * @return true if the account has been created
+     */
+    boolean putIfAbsent(String iban, Supplier<Account> accountFactory);
+
+    /**
+     * @return removed account, null if there was none
+     */
+    Account remove(String iban);
+
+    Set<Account> getAll();
+
+    /**
+     * @return live view of all accounts, iterating it copies nothing and reflects changes made meanwhile
+     */
+    Collection<Account> values();
+
+    /**
+     * @param afterIban exclusive cursor, null to start from the first account
+     * @return at most limit accounts ordered by iban
+     */
+    List<Account> page(String afterIban, int limit);
+}
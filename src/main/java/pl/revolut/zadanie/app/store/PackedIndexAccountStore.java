@@ -0,0 +1,341 @@
+package pl.revolut.zadanie.app.store;
+
+import pl.revolut.zadanie.app.model.Account;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Accounts in dense slots, found through an open addressing index of ibans packed into three longs, so a lookup
+ * compares primitive keys instead of hashing and comparing Strings and there are no per entry map nodes.
+ * An iban of up to 36 digits and upper case letters is packed twelve characters per long, in base 37 so that no
+ * character is ever encoded as 0. Other ibans are kept in a plain map.
+ * <p>
+ * Writers are serialized by a lock. Readers take no locks: a key is written before its cell is published, cells are
+ * never reused, deleted ones become tombstones until the index is rebuilt into a new table, and a slot reused by
+ * another account is told apart by comparing the iban of the account found.
+ * <p>
+ * Paging scans all the accounts, keeping the page in a bounded heap.
+ */
+public class PackedIndexAccountStore implements AccountStore {
+    private static final VarHandle CELLS = MethodHandles.arrayElementVarHandle(int[].class);
+    private static final int EMPTY = 0;
+    private static final int TOMBSTONE = -1;
+    private static final int WORDS = 3;
+    private static final int CHARS_PER_WORD = 12;
+    private static final int MAX_PACKED_LENGTH = WORDS * CHARS_PER_WORD;
+    private static final int RADIX = 37;
+    private static final double MAX_LOAD = 0.7;
+    private static final int CHUNK_SHIFT = 12;
+    private static final int SLOTS_PER_CHUNK = 1 << CHUNK_SHIFT;
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final Map<String, Account> irregular = new ConcurrentHashMap<>();
+    private volatile Table table;
+    private volatile AtomicReferenceArray<Account>[] chunks;
+    private volatile int packedCount;
+    private int usedCells;
+    private int nextSlot;
+    private int[] freeSlots = new int[16];
+    private int freeSlotCount;
+
+    public PackedIndexAccountStore(int initialCapacity) {
+        table = new Table(tableSizeFor(initialCapacity));
+        chunks = noChunks();
+    }
+
+    private static AtomicReferenceArray<Account>[] noChunks() {
+        @SuppressWarnings("unchecked")
+        AtomicReferenceArray<Account>[] chunks = (AtomicReferenceArray<Account>[]) new AtomicReferenceArray<?>[0];
+        return chunks;
+    }
+
+    @Override
+    public Account find(String iban) {
+        if (!packable(iban)) {
+            return irregular.get(iban);
+        }
+        int slot = table.find(word(iban, 0), word(iban, 1), word(iban, 2));
+        if (slot < 0) {
+            return null;
+        }
+        var account = account(slot);
+        return account != null && account.getIban().equals(iban) ? account : null;
+    }
+
+    @Override
+    public Account put(String iban, Account bankAccount) {
+        writeLock.lock();
+        try {
+            if (!packable(iban)) {
+                return irregular.put(iban, bankAccount);
+            }
+            long w0 = word(iban, 0), w1 = word(iban, 1), w2 = word(iban, 2);
+            int slot = table.find(w0, w1, w2);
+            if (slot >= 0) {
+                return chunks[slot >>> CHUNK_SHIFT].getAndSet(slot & (SLOTS_PER_CHUNK - 1), bankAccount);
+            }
+            insert(w0, w1, w2, bankAccount);
+            return null;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean putIfAbsent(String iban, Supplier<Account> accountFactory) {
+        writeLock.lock();
+        try {
+            if (find(iban) != null) {
+                return false;
+            }
+            if (packable(iban)) {
+                insert(word(iban, 0), word(iban, 1), word(iban, 2), accountFactory.get());
+            } else {
+                irregular.put(iban, accountFactory.get());
+            }
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public Account remove(String iban) {
+        writeLock.lock();
+        try {
+            if (!packable(iban)) {
+                return irregular.remove(iban);
+            }
+            var table = this.table;
+            int cell = table.cellOf(word(iban, 0), word(iban, 1), word(iban, 2));
+            if (cell < 0) {
+                return null;
+            }
+            int slot = (int) CELLS.getAcquire(table.cells, cell) - 1;
+            CELLS.setRelease(table.cells, cell, TOMBSTONE);
+            var removed = chunks[slot >>> CHUNK_SHIFT].getAndSet(slot & (SLOTS_PER_CHUNK - 1), null);
+            freeSlot(slot);
+            packedCount--;
+            return removed;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public Set<Account> getAll() {
+        return new HashSet<>(values());
+    }
+
+    @Override
+    public Collection<Account> values() {
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<Account> iterator() {
+                return new AccountIterator();
+            }
+
+            @Override
+            public int size() {
+                return packedCount + irregular.size();
+            }
+        };
+    }
+
+    @Override
+    public List<Account> page(String afterIban, int limit) {
+        Comparator<Account> byIban = Comparator.comparing(Account::getIban);
+        var heap = new PriorityQueue<Account>(Math.min(limit, 1024) + 1, byIban.reversed());
+        for (Account account : values()) {
+            if (afterIban != null && account.getIban().compareTo(afterIban) <= 0) {
+                continue;
+            }
+            if (heap.size() < limit) {
+                heap.add(account);
+            } else if (byIban.compare(account, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(account);
+            }
+        }
+        var page = new ArrayList<>(heap);
+        page.sort(byIban);
+        return page;
+    }
+
+    private void insert(long w0, long w1, long w2, Account account) {
+        int slot = allocateSlot();
+        chunks[slot >>> CHUNK_SHIFT].set(slot & (SLOTS_PER_CHUNK - 1), account);
+        if (usedCells + 1 > table.cells.length * MAX_LOAD) {
+            rebuild();
+        }
+        table.publish(w0, w1, w2, slot);
+        usedCells++;
+        packedCount++;
+    }
+
+    /**
+     * Copies the live cells into a new table, dropping tombstones, readers keep using the old table until they are
+     * done with it.
+     */
+    private void rebuild() {
+        var old = table;
+        var rebuilt = new Table(tableSizeFor(packedCount + 1));
+        for (int cell = 0; cell < old.cells.length; cell++) {
+            int value = (int) CELLS.getAcquire(old.cells, cell);
+            if (value != EMPTY && value != TOMBSTONE) {
+                rebuilt.publish(old.keys[WORDS * cell], old.keys[WORDS * cell + 1], old.keys[WORDS * cell + 2], value - 1);
+            }
+        }
+        usedCells = packedCount;
+        table = rebuilt;
+    }
+
+    private int allocateSlot() {
+        if (freeSlotCount > 0) {
+            return freeSlots[--freeSlotCount];
+        }
+        int slot = nextSlot++;
+        if (slot >>> CHUNK_SHIFT >= chunks.length) {
+            var grown = Arrays.copyOf(chunks, chunks.length + 1);
+            grown[chunks.length] = new AtomicReferenceArray<>(SLOTS_PER_CHUNK);
+            chunks = grown;
+        }
+        return slot;
+    }
+
+    private void freeSlot(int slot) {
+        if (freeSlotCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, 2 * freeSlots.length);
+        }
+        freeSlots[freeSlotCount++] = slot;
+    }
+
+    private Account account(int slot) {
+        var chunks = this.chunks;
+        int chunk = slot >>> CHUNK_SHIFT;
+        return chunk < chunks.length ? chunks[chunk].get(slot & (SLOTS_PER_CHUNK - 1)) : null;
+    }
+
+    static boolean packable(String iban) {
+        int length = iban.length();
+        if (length == 0 || length > MAX_PACKED_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            char character = iban.charAt(i);
+            if (!(character >= '0' && character <= '9') && !(character >= 'A' && character <= 'Z')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static long word(String iban, int word) {
+        long packed = 0;
+        int end = Math.min(iban.length(), (word + 1) * CHARS_PER_WORD);
+        for (int i = word * CHARS_PER_WORD; i < end; i++) {
+            char character = iban.charAt(i);
+            packed = packed * RADIX + (character <= '9' ? character - '0' + 1 : character - 'A' + 11);
+        }
+        return packed;
+    }
+
+    private static int tableSizeFor(int accounts) {
+        int cells = (int) Math.min(1 << 30, (long) Math.ceil(Math.max(accounts, 8) / MAX_LOAD) * 2);
+        return Integer.highestOneBit(cells - 1) << 1;
+    }
+
+    private static final class Table {
+        private final long[] keys;
+        private final int[] cells;
+        private final int mask;
+
+        private Table(int size) {
+            keys = new long[WORDS * size];
+            cells = new int[size];
+            mask = size - 1;
+        }
+
+        /**
+         * @return slot of the account with the given key, -1 if there is none
+         */
+        private int find(long w0, long w1, long w2) {
+            int cell = cellOf(w0, w1, w2);
+            return cell < 0 ? -1 : (int) CELLS.getAcquire(cells, cell) - 1;
+        }
+
+        private int cellOf(long w0, long w1, long w2) {
+            for (int cell = hash(w0, w1, w2) & mask; ; cell = (cell + 1) & mask) {
+                int value = (int) CELLS.getAcquire(cells, cell);
+                if (value == EMPTY) {
+                    return -1;
+                }
+                if (value != TOMBSTONE && keys[WORDS * cell] == w0 && keys[WORDS * cell + 1] == w1 && keys[WORDS * cell + 2] == w2) {
+                    return cell;
+                }
+            }
+        }
+
+        private void publish(long w0, long w1, long w2, int slot) {
+            int cell = hash(w0, w1, w2) & mask;
+            while ((int) CELLS.getAcquire(cells, cell) != EMPTY) {
+                cell = (cell + 1) & mask;
+            }
+            keys[WORDS * cell] = w0;
+            keys[WORDS * cell + 1] = w1;
+            keys[WORDS * cell + 2] = w2;
+            CELLS.setRelease(cells, cell, slot + 1);
+        }
+
+        private static int hash(long w0, long w1, long w2) {
+            long hash = w0 * 0x9E3779B97F4A7C15L + w1 * 0xC2B2AE3D27D4EB4FL + w2 * 0x165667B19E3779F9L;
+            return (int) (hash ^ (hash >>> 29) ^ (hash >>> 47));
+        }
+    }
+
+    private final class AccountIterator implements Iterator<Account> {
+        private final AtomicReferenceArray<Account>[] chunks = PackedIndexAccountStore.this.chunks;
+        private final Iterator<Account> irregularAccounts = irregular.values().iterator();
+        private int slot;
+        private Account next;
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && slot < chunks.length * SLOTS_PER_CHUNK) {
+                next = chunks[slot >>> CHUNK_SHIFT].get(slot & (SLOTS_PER_CHUNK - 1));
+                slot++;
+            }
+            if (next == null && irregularAccounts.hasNext()) {
+                next = irregularAccounts.next();
+            }
+            return next != null;
+        }
+
+        @Override
+        public Account next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            var account = next;
+            next = null;
+            return account;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package pl.revolut.zadanie.app;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import pl.revolut.zadanie.Main;
+import pl.revolut.zadanie.app.cluster.ConsistentHashRing;
+import pl.revolut.zadanie.app.dto.AccountDto;
+import pl.revolut.zadanie.utils.HttpTestClient;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Three nodes of a cluster started in one JVM, every node is sent requests about accounts of every other node.
+ */
+public class ClusterIntegrationTest {
+    private static final List<String> NODES = List.of("http://localhost:8091", "http://localhost:8092", "http://localhost:8093");
+    private static final int ACCOUNTS = 30;
+    private static final ConsistentHashRing RING = new ConsistentHashRing(NODES, 128);
+    private static final List<App> apps = new ArrayList<>();
+    private static Path intentDirectory;
+    private static HttpTestClient httpClient;
+    private static ExecutorService cachedThreadPool;
+    private static ExecutorService fixedThreadPool;
+
+    @BeforeAll
+    public static void beforeAll() throws IOException {
+        intentDirectory = Files.createTempDirectory("intents");
+        for (int node = 0; node < NODES.size(); node++) {
+            var settings = new Properties();
+            settings.setProperty("app.port", String.valueOf(8091 + node));
+            settings.setProperty("app.cluster.nodes", String.join(",", NODES));
+            settings.setProperty("app.cluster.intentDirectory", intentDirectory.resolve(String.valueOf(node)).toString());
+            var app = Main.manualDependencyInjectionApp(settings);
+            app.start();
+            apps.add(app);
+        }
+        cachedThreadPool = Executors.newCachedThreadPool();
+        fixedThreadPool = Executors.newFixedThreadPool(16);
+        httpClient = new HttpTestClient(cachedThreadPool);
+    }
+
+    @AfterAll
+    public static void afterAll() throws IOException {
+        cachedThreadPool.shutdownNow();
+        fixedThreadPool.shutdownNow();
+        apps.forEach(App::close);
+        try (Stream<Path> files = Files.walk(intentDirectory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @AfterEach
+    public void afterEach() throws IOException, InterruptedException {
+        for (int i = 0; i < ACCOUNTS; i++) {
+            httpClient.delete(NODES.get(0) + "/accounts/" + iban(i));
+        }
+    }
+
+    @Test
+    public void should_keep_every_account_on_the_node_owning_it_and_read_it_through_any_node() throws IOException, InterruptedException {
+        createAccounts(NODES.get(0), 100);
+
+        int listed = 0;
+        for (String node : NODES) {
+            var local = httpClient.get(node + "/accounts", AccountDto[].class);
+            for (AccountDto account : local) {
+                assertEquals(node, RING.ownerOf(account.iban()), "Expected only accounts owned by " + node);
+            }
+            listed += local.length;
+        }
+        var total = 0L;
+        for (int i = 0; i < ACCOUNTS; i++) {
+            total += httpClient.get(NODES.get(2) + "/accounts/" + iban(i), AccountDto.class).balance();
+        }
+
+        int listedAccounts = listed;
+        long totalBalance = total;
+        Assertions.assertAll(
+                () -> assertEquals(ACCOUNTS, listedAccounts, "Expected every account on exactly one node"),
+                () -> assertEquals(100L * ACCOUNTS, totalBalance, "Expected every account to be read through another node")
+        );
+    }
+
+    @Test
+    public void should_transfer_between_accounts_of_different_nodes() throws IOException, InterruptedException {
+        createAccounts(NODES.get(1), 100);
+        var from = iban(0);
+        var to = otherNodeAccount(from);
+        var thirdNode = NODES.stream().filter(node -> !node.equals(RING.ownerOf(from)) && !node.equals(RING.ownerOf(to))).findFirst().orElseThrow();
+
+        httpClient.get(thirdNode + "/accounts/transfer/75/from/" + from + "/to/" + to);
+        httpClient.get(thirdNode + "/accounts/transfer/75/from/" + from + "/to/" + to);
+
+        Assertions.assertAll(
+                () -> assertEquals(25, httpClient.get(NODES.get(0) + "/accounts/" + from, AccountDto.class).balance(), "Expected only the first transfer to be debited"),
+                () -> assertEquals(175, httpClient.get(NODES.get(0) + "/accounts/" + to, AccountDto.class).balance(), "Expected only the first transfer to be credited")
+        );
+    }
+
+    @Test
+    public void should_credit_the_source_account_back_if_the_target_account_does_not_exist() throws IOException, InterruptedException {
+        createAccounts(NODES.get(0), 100);
+        var from = iban(0);
+        var missing = NODES.stream().filter(node -> !node.equals(RING.ownerOf(from))).findFirst()
+                .map(node -> Stream.iterate(0, i -> i + 1).map(i -> "MISSING" + i).filter(iban -> RING.ownerOf(iban).equals(node)).findFirst().orElseThrow())
+                .orElseThrow();
+
+        httpClient.get(NODES.get(0) + "/accounts/transfer/75/from/" + from + "/to/" + missing);
+
+        assertEquals(100, httpClient.get(NODES.get(0) + "/accounts/" + from, AccountDto.class).balance(), "Expected the debit to be compensated");
+    }
+
+    @Test
+    public void should_keep_the_total_balance_with_concurrent_transfers_across_nodes() throws Exception {
+        createAccounts(NODES.get(2), 1_000);
+        var random = new Random(42);
+        var transfers = new ArrayList<CompletableFuture<String>>();
+        for (int i = 0; i < 2_000; i++) {
+            var node = NODES.get(random.nextInt(NODES.size()));
+            var from = iban(random.nextInt(ACCOUNTS));
+            var to = iban(random.nextInt(ACCOUNTS));
+            var amount = 1 + random.nextInt(100);
+            transfers.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return httpClient.get(node + "/accounts/transfer/" + amount + "/from/" + from + "/to/" + to);
+                } catch (IOException | InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }, fixedThreadPool));
+        }
+        CompletableFuture.allOf(transfers.toArray(new CompletableFuture[0])).get();
+
+        var total = 0L;
+        for (int i = 0; i < ACCOUNTS; i++) {
+            total += httpClient.get(NODES.get(random.nextInt(NODES.size())) + "/accounts/" + iban(i), AccountDto.class).balance();
+        }
+
+        assertEquals(1_000L * ACCOUNTS, total, "Expected no money to be created or lost");
+    }
+
+    private static void createAccounts(String node, long balance) throws IOException, InterruptedException {
+        for (int i = 0; i < ACCOUNTS; i++) {
+            httpClient.post(node + "/accounts", "{\"iban\":\"" + iban(i) + "\",\"balance\":\"" + balance + "\"}");
+        }
+    }
+
+    private static String otherNodeAccount(String iban) {
+        for (int i = 0; i < ACCOUNTS; i++) {
+            if (!RING.ownerOf(iban(i)).equals(RING.ownerOf(iban))) {
+                return iban(i);
+            }
+        }
+        throw new IllegalStateException("Every account is owned by the same node");
+    }
+
+    private static String iban(int i) {
+        return String.format("PL%026d", i);
+    }
+}
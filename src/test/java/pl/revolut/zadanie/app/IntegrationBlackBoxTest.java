@@ -71,6 +71,50 @@ public class IntegrationBlackBoxTest {
         );
     }
 
+    @Test
+    public void should_commit_each_transfer_of_a_per_item_batch_independently() throws IOException, InterruptedException {
+        httpClient.post("http://localhost:8080/accounts", "{\"iban\":\"A\",\"balance\":\"75\"}");
+        httpClient.post("http://localhost:8080/accounts", "{\"iban\":\"B\",\"balance\":\"75\"}");
+
+        httpClient.post("http://localhost:8080/accounts/transfers?mode=per-item",
+                "{\"from\":\"A\",\"to\":\"B\",\"amount\":50}\n{\"from\":\"A\",\"to\":\"B\",\"amount\":50}\n{\"from\":\"B\",\"to\":\"A\",\"amount\":25}\n");
+
+        Assertions.assertAll(
+                () -> assertEquals(50, httpClient.get("http://localhost:8080/accounts/A", AccountDto.class).balance(), "Expected account A to have 50"),
+                () -> assertEquals(100, httpClient.get("http://localhost:8080/accounts/B", AccountDto.class).balance(), "Expected account B to have 100")
+        );
+    }
+
+    @Test
+    public void should_roll_back_the_whole_all_or_nothing_batch_if_one_transfer_fails() throws IOException, InterruptedException {
+        httpClient.post("http://localhost:8080/accounts", "{\"iban\":\"A\",\"balance\":\"75\"}");
+        httpClient.post("http://localhost:8080/accounts", "{\"iban\":\"B\",\"balance\":\"75\"}");
+
+        httpClient.post("http://localhost:8080/accounts/transfers?mode=all-or-nothing",
+                "[{\"from\":\"A\",\"to\":\"B\",\"amount\":50},{\"from\":\"A\",\"to\":\"B\",\"amount\":50}]");
+
+        Assertions.assertAll(
+                () -> assertEquals(75, httpClient.get("http://localhost:8080/accounts/A", AccountDto.class).balance(), "Expected account A to have 75"),
+                () -> assertEquals(75, httpClient.get("http://localhost:8080/accounts/B", AccountDto.class).balance(), "Expected account B to have 75")
+        );
+    }
+
+    @Test
+    public void should_page_accounts_ordered_by_iban() throws IOException, InterruptedException {
+        httpClient.post("http://localhost:8080/accounts", "{\"iban\":\"B\",\"balance\":\"20\"}");
+        httpClient.post("http://localhost:8080/accounts", "{\"iban\":\"A\",\"balance\":\"10\"}");
+
+        var firstPage = httpClient.get("http://localhost:8080/accounts?limit=1", AccountDto[].class);
+        var secondPage = httpClient.get("http://localhost:8080/accounts?limit=1&after=A&consistent=true", AccountDto[].class);
+
+        Assertions.assertAll(
+                () -> assertEquals(1, firstPage.length, "Expected one account on the first page"),
+                () -> assertEquals("A", firstPage[0].iban(), "Expected account A on the first page"),
+                () -> assertEquals(1, secondPage.length, "Expected one account on the second page"),
+                () -> assertEquals(20, secondPage[0].balance(), "Expected account B with 20 on the second page")
+        );
+    }
+
     @Test
     public void should_transfer_between_accounts_atomically_and_with_no_deadlocks() throws ExecutionException, InterruptedException, IOException {
         httpClient.post("http://localhost:8080/accounts", "{\"iban\":\"A\",\"balance\":\"1001\"}");
@@ -0,0 +1,57 @@
+package pl.revolut.zadanie.app;
+
+import io.javalin.HttpResponseException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class PooledRequestExecutorTest {
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final PooledRequestExecutor executor = new PooledRequestExecutor(1, 1, BackPressure.REJECT);
+
+    @AfterEach
+    public void afterEach() {
+        release.countDown();
+        executor.close();
+    }
+
+    @Test
+    public void should_reject_with_too_many_requests_once_the_queue_is_full() {
+        var running = executor.submit(this::blocked);
+        var queued = executor.submit(this::blocked);
+        var rejected = executor.submit(this::blocked);
+
+        var failure = assertThrows(CompletionException.class, rejected::join);
+        release.countDown();
+
+        Assertions.assertAll(
+                () -> assertEquals(429, ((HttpResponseException) failure.getCause()).getStatus(), "Expected 429 once the queue is full"),
+                () -> assertEquals(1, executor.rejectedCount(), "Expected a single rejected request"),
+                () -> assertEquals("done", running.join(), "Expected the running request to complete"),
+                () -> assertEquals("done", queued.join(), "Expected the queued request to complete")
+        );
+    }
+
+    @Test
+    public void should_complete_exceptionally_when_the_request_throws() {
+        CompletableFuture<Void> result = executor.submit(() -> {
+            throw new IllegalStateException("failed");
+        });
+
+        var failure = assertThrows(CompletionException.class, result::join);
+
+        assertEquals(IllegalStateException.class, failure.getCause().getClass());
+    }
+
+    private CompletableFuture<String> blocked() throws InterruptedException {
+        release.await();
+        return CompletableFuture.completedFuture("done");
+    }
+}
@@ -0,0 +1,113 @@
+package pl.revolut.zadanie.app.admission;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AdmissionControlTest {
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    public void should_admit_a_burst_and_then_the_refill_rate() {
+        var limiter = new RateLimiter(10, 3, 16, clock::get);
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(limiter.tryAcquire("client"), "Expected the burst admitted");
+        }
+        assertFalse(limiter.tryAcquire("client"), "Expected the empty bucket to reject");
+        assertTrue(limiter.tryAcquire("other client"), "Expected other clients unaffected");
+
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+        assertTrue(limiter.tryAcquire("client"), "Expected a permit refilled after the interval");
+        assertFalse(limiter.tryAcquire("client"), "Expected a single permit refilled");
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        for (int i = 0; i < 3; i++) {
+            assertTrue(limiter.tryAcquire("client"), "Expected the bucket refilled up to the burst only");
+        }
+        assertFalse(limiter.tryAcquire("client"));
+    }
+
+    @Test
+    public void should_limit_the_account_updated_or_debited_by_a_request() {
+        var admission = new AdmissionControl(null, new RateLimiter(1, 1, 1024, clock::get), null);
+
+        assertEquals(AdmissionControl.NOT_LIMITED, admission.admit("GET", "/accounts/transfer/5/from/A/to/B", "client"));
+        assertEquals(AdmissionControl.ACCOUNT_LIMITED, admission.admit("GET", "/accounts/transfer/7/from/A/to/C", "client"));
+        assertEquals(AdmissionControl.ACCOUNT_LIMITED, admission.admit("PATCH", "/accounts/A", "client"));
+        assertEquals(AdmissionControl.NOT_LIMITED, admission.admit("GET", "/accounts/transfer/5/from/B/to/A", "client"),
+                "Expected credits to a limited account admitted");
+        assertEquals(AdmissionControl.NOT_LIMITED, admission.admit("GET", "/accounts/A", "client"), "Expected reads admitted");
+        assertEquals(AdmissionControl.NOT_LIMITED, admission.admit("POST", "/accounts/transfers", "client"), "Expected batches admitted");
+        assertEquals(AdmissionControl.NOT_LIMITED, admission.admit("DELETE", "/accounts/C", "client"));
+        assertEquals(2, admission.metrics().accountLimited());
+    }
+
+    @Test
+    public void should_limit_clients_but_never_metrics_nor_change_streams() {
+        var admission = new AdmissionControl(new RateLimiter(1, 1, 1024, clock::get), null, null);
+
+        assertEquals(AdmissionControl.NOT_LIMITED, admission.admit("GET", "/accounts/A", "client"));
+        assertEquals(AdmissionControl.CLIENT_LIMITED, admission.admit("GET", "/accounts/B", "client"));
+        assertEquals(AdmissionControl.NOT_LIMITED, admission.admit("GET", "/metrics", "client"));
+        assertEquals(AdmissionControl.NOT_LIMITED, admission.admit("GET", "/events", "client"));
+        assertEquals(AdmissionControl.NOT_LIMITED, admission.admit("GET", "/accounts/B", "another client"));
+    }
+
+    @Test
+    public void should_exempt_the_traffic_between_cluster_nodes_only_when_sent_by_a_node() {
+        var admission = new AdmissionControl(new RateLimiter(1, 1, 1024, clock::get), null, null);
+
+        assertEquals(AdmissionControl.NOT_LIMITED, admission.admit("POST", "/cluster/credits", "10.0.0.2", true));
+        assertEquals(AdmissionControl.NOT_LIMITED, admission.admit("POST", "/cluster/credits", "10.0.0.2", true));
+        assertEquals(AdmissionControl.NOT_LIMITED, admission.admit("POST", "/cluster/credits", "10.0.0.9"));
+        assertEquals(AdmissionControl.CLIENT_LIMITED, admission.admit("POST", "/cluster/credits", "10.0.0.9"),
+                "Expected a client which is not a node limited on the cluster paths");
+    }
+
+    @Test
+    public void should_reject_requests_over_the_concurrency_limit_until_one_is_released() {
+        var concurrency = new ConcurrencyLimiter(2, 2, clock::get);
+        var admission = new AdmissionControl(null, null, concurrency);
+
+        assertEquals(AdmissionControl.ADMITTED, admission.admit("GET", "/accounts/A", "client"));
+        assertEquals(AdmissionControl.ADMITTED, admission.admit("GET", "/accounts/A", "client"));
+        assertEquals(AdmissionControl.CONCURRENCY_LIMITED, admission.admit("GET", "/accounts/A", "client"));
+
+        concurrency.release(1_000);
+
+        assertEquals(AdmissionControl.ADMITTED, admission.admit("GET", "/accounts/A", "client"));
+        assertEquals(1, admission.metrics().concurrencyLimited());
+    }
+
+    @Test
+    public void should_grow_the_concurrency_limit_while_latency_is_flat_and_shrink_it_once_latency_rises() {
+        var concurrency = new ConcurrencyLimiter(16, 1024, clock::get);
+
+        runWindows(concurrency, 20, 1_000_000);
+        int grown = concurrency.limit();
+        runWindows(concurrency, 20, 10_000_000);
+        int shrunk = concurrency.limit();
+
+        assertTrue(grown > 16, "Expected the limit grown while latency is flat, was " + grown);
+        assertTrue(shrunk < grown, "Expected the limit shrunk once latency rose, was " + shrunk + " after " + grown);
+    }
+
+    private void runWindows(ConcurrencyLimiter concurrency, int windows, long latencyNanos) {
+        for (int window = 0; window < windows; window++) {
+            int acquired = 0;
+            while (concurrency.tryAcquire()) {
+                acquired++;
+            }
+            clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+            for (int i = 0; i < acquired; i++) {
+                concurrency.release(latencyNanos);
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package pl.revolut.zadanie.app.aggregates;
+
+import org.junit.jupiter.api.Test;
+import pl.revolut.zadanie.app.model.Account;
+import pl.revolut.zadanie.app.model.BalanceEngine;
+import pl.revolut.zadanie.app.model.StripedLockBalanceEngine;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class AccountAggregatesTest {
+    private final BalanceEngine engine = new StripedLockBalanceEngine(64);
+    private final AccountAggregates aggregates = new AccountAggregates();
+
+    @Test
+    public void should_keep_the_aggregates_up_to_date_with_every_change() {
+        var accountA = create("A", 100);
+        var accountB = create("B", 0);
+        var accountC = create("C", 7);
+
+        accountA.transferTo(accountB, 30, balance -> {
+        });
+        accountC.setBalance(500);
+
+        assertEquals(600, aggregates.total(Account.DEFAULT_CURRENCY));
+        assertEquals(3, aggregates.accounts());
+        assertEquals(List.of("C=500", "A=70"), largest(2));
+        assertEquals(List.of("16..32=1", "64..128=1", "256..512=1"), histogram());
+
+        aggregates.onDeleted(accountC);
+
+        assertEquals(100, aggregates.total(Account.DEFAULT_CURRENCY));
+        assertEquals(2, aggregates.accounts());
+        assertEquals(List.of("A=70", "B=30"), largest(10));
+        assertEquals(List.of("16..32=1", "64..128=1"), histogram());
+    }
+
+    @Test
+    public void should_include_tracked_accounts_and_order_equal_balances_by_iban() {
+        var accountB = new Account(5, "B", engine, aggregates);
+        var accountA = new Account(5, "A", engine, aggregates);
+        aggregates.track(accountB);
+        aggregates.track(accountA);
+        create("Z", 0);
+
+        assertEquals(10, aggregates.total(Account.DEFAULT_CURRENCY));
+        assertEquals(List.of("A=5", "B=5", "Z=0"), largest(3));
+        assertEquals(List.of("0..1=1", "4..8=2"), histogram());
+    }
+
+    @Test
+    public void should_place_balances_in_buckets_doubling_in_size() {
+        assertEquals(0, AccountAggregates.bucketOf(-1));
+        assertEquals(1, AccountAggregates.bucketOf(0));
+        assertEquals(2, AccountAggregates.bucketOf(1));
+        assertEquals(3, AccountAggregates.bucketOf(2));
+        assertEquals(3, AccountAggregates.bucketOf(3));
+        assertEquals(4, AccountAggregates.bucketOf(4));
+        assertEquals(AccountAggregates.BUCKETS - 1, AccountAggregates.bucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void should_match_the_balances_once_concurrent_transfers_stop() throws Exception {
+        var accounts = IntStream.range(0, 64).mapToObj(i -> create("A" + i, 1_000)).toArray(Account[]::new);
+        var threads = Executors.newFixedThreadPool(8);
+        try {
+            var transfers = IntStream.range(0, 8)
+                    .mapToObj(seed -> CompletableFuture.runAsync(() -> {
+                        var random = new SplittableRandom(seed);
+                        for (int i = 0; i < 20_000; i++) {
+                            var from = accounts[random.nextInt(accounts.length)];
+                            var to = accounts[random.nextInt(accounts.length)];
+                            if (from != to) {
+                                from.transferTo(to, random.nextInt(1, 50), balance -> {
+                                    if (balance < 0) {
+                                        throw new IllegalStateException("Not enough funds");
+                                    }
+                                });
+                            }
+                        }
+                    }, threads).exceptionally(e -> null))
+                    .collect(Collectors.toList());
+            for (CompletableFuture<Void> transfer : transfers) {
+                transfer.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            threads.shutdownNow();
+        }
+
+        assertEquals(64_000, aggregates.total(Account.DEFAULT_CURRENCY));
+        var expected = Arrays.stream(accounts)
+                .sorted(Comparator.comparingLong(Account::getBalance).reversed().thenComparing(Account::getIban))
+                .map(account -> account.getIban() + "=" + account.getBalance())
+                .collect(Collectors.toList());
+        assertEquals(expected, largest(64));
+        assertEquals(64, histogram().stream().mapToLong(bucket -> Long.parseLong(bucket.substring(bucket.indexOf('=') + 1))).sum());
+    }
+
+    @Test
+    public void should_keep_the_total_of_every_currency_apart() {
+        var pln = create("A", 100);
+        var eur = new Account(40, "B", "EUR", engine, aggregates);
+        aggregates.onCreated(eur, 40);
+
+        pln.incrementBalance(5);
+        eur.incrementBalance(-10);
+
+        assertEquals(Map.of("EUR", 30L, Account.DEFAULT_CURRENCY, 105L), aggregates.totals());
+        assertEquals(0, aggregates.total("USD"));
+    }
+
+    private Account create(String iban, long balance) {
+        var account = new Account(balance, iban, engine, aggregates);
+        aggregates.onCreated(account, balance);
+        return account;
+    }
+
+    private List<String> largest(int limit) {
+        return aggregates.largest(limit).stream()
+                .map(account -> account.iban() + "=" + account.balance())
+                .collect(Collectors.toList());
+    }
+
+    private List<String> histogram() {
+        return aggregates.histogram().stream()
+                .map(bucket -> bucket.from() + ".." + bucket.to() + "=" + bucket.accounts())
+                .collect(Collectors.toList());
+    }
+}
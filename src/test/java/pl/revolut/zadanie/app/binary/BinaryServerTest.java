@@ -0,0 +1,103 @@
+package pl.revolut.zadanie.app.binary;
+
+import io.javalin.BadRequestResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pl.revolut.zadanie.app.AccountController;
+import pl.revolut.zadanie.app.ReplicationController;
+import pl.revolut.zadanie.app.dto.TransferDto;
+import pl.revolut.zadanie.app.executor.DirectTransferExecutor;
+import pl.revolut.zadanie.app.idempotency.IdempotencyCache;
+import pl.revolut.zadanie.app.metrics.Metrics;
+import pl.revolut.zadanie.app.model.Account;
+import pl.revolut.zadanie.app.model.AccountListener;
+import pl.revolut.zadanie.app.model.BalanceEngine;
+import pl.revolut.zadanie.app.model.DebitCheck;
+import pl.revolut.zadanie.app.model.StripedLockBalanceEngine;
+import pl.revolut.zadanie.app.replication.ReplicaClient;
+import pl.revolut.zadanie.app.store.AccountInMemoryStore;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class BinaryServerTest {
+    private final DebitCheck positiveBalance = new DebitCheck(newBalance -> newBalance >= 0, () -> new BadRequestResponse("Not enough founds"),
+            newBalance -> {
+            });
+    private final BalanceEngine engine = new StripedLockBalanceEngine(64);
+    private final AccountInMemoryStore store = new AccountInMemoryStore(16);
+    private AccountController controller;
+    private BinaryServer server;
+    private BinaryClient client;
+
+    @BeforeEach
+    public void beforeEach() throws IOException {
+        store.put("A", new Account(75, "A", engine));
+        store.put("B", new Account(75, "B", engine));
+        controller = new AccountController(store, engine, new DirectTransferExecutor(), AccountListener.NONE, positiveBalance,
+                new IdempotencyCache<>(16, 1, TimeUnit.MINUTES, AccountController::isReplayable),
+                new IdempotencyCache<>(16, 1, TimeUnit.MINUTES, AccountController::isReplayable));
+        server = new BinaryServer(controller, new Metrics(), 0, 2);
+        server.start();
+        client = new BinaryClient("localhost", server.port());
+    }
+
+    @AfterEach
+    public void afterEach() throws IOException {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void should_transfer_and_read_balances() throws IOException {
+        byte status = client.transfer("A", "B", 50);
+
+        Assertions.assertAll(
+                () -> assertEquals(BinaryProtocol.OK, status, "Expected the transfer to succeed"),
+                () -> assertEquals(25, client.balance("A"), "Expected account A to have 25"),
+                () -> assertEquals(125, client.balance("B"), "Expected account B to have 125")
+        );
+    }
+
+    @Test
+    public void should_report_rejected_and_not_found_transfers() throws IOException {
+        Assertions.assertAll(
+                () -> assertEquals(BinaryProtocol.REJECTED, client.transfer("A", "B", 100), "Expected not enough founds"),
+                () -> assertEquals(BinaryProtocol.NOT_FOUND, client.transfer("A", "C", 1), "Expected an unknown account"),
+                () -> assertEquals(75, client.balance("A"), "Expected account A to have 75")
+        );
+    }
+
+    @Test
+    public void should_roll_back_the_whole_all_or_nothing_batch_if_one_transfer_fails() throws IOException {
+        var statuses = new byte[2];
+
+        byte status = client.batch(List.of(new TransferDto("A", "B", 50), new TransferDto("A", "B", 50)), true, statuses);
+
+        Assertions.assertAll(
+                () -> assertEquals(BinaryProtocol.ROLLED_BACK, status, "Expected the batch to be rolled back"),
+                () -> assertArrayEquals(new byte[]{BinaryProtocol.ROLLED_BACK, BinaryProtocol.REJECTED}, statuses, "Expected the failed item to be rejected and the other rolled back"),
+                () -> assertEquals(75, client.balance("A"), "Expected account A to have 75")
+        );
+    }
+
+    @Test
+    public void should_refuse_transfers_but_serve_balances_while_a_replica() throws IOException {
+        var replica = new ReplicaClient("localhost", 1, store, engine, AccountListener.NONE);
+        try (var replicaServer = new BinaryServer(controller, new ReplicationController(null, replica), new Metrics(), 0, 1)) {
+            replicaServer.start();
+            try (var replicaClient = new BinaryClient("localhost", replicaServer.port())) {
+                Assertions.assertAll(
+                        () -> assertEquals(BinaryProtocol.BUSY, replicaClient.transfer("A", "B", 50), "Expected the transfer to be refused"),
+                        () -> assertEquals(75, replicaClient.balance("A"), "Expected account A to have 75")
+                );
+            }
+        }
+    }
+}
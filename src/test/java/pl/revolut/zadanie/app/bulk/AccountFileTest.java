@@ -0,0 +1,140 @@
+package pl.revolut.zadanie.app.bulk;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pl.revolut.zadanie.app.model.Account;
+import pl.revolut.zadanie.app.model.AccountListener;
+import pl.revolut.zadanie.app.model.BalanceEngine;
+import pl.revolut.zadanie.app.model.StripedLockBalanceEngine;
+import pl.revolut.zadanie.app.store.AccountInMemoryStore;
+import pl.revolut.zadanie.app.store.AccountStore;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class AccountFileTest {
+    private final BalanceEngine engine = new StripedLockBalanceEngine(64);
+    private Path directory;
+
+    @BeforeEach
+    public void beforeEach() throws IOException {
+        directory = Files.createTempDirectory("bulk");
+    }
+
+    @AfterEach
+    public void afterEach() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void should_import_exported_accounts_in_every_format() throws IOException {
+        var accounts = IntStream.range(0, 1000)
+                .mapToObj(i -> new Account(i % 7 == 0 ? -i : (long) i * 1_000_003, "PL" + i + (i % 3 == 0 ? "\u017b\u00d3\u0141W" : ""), engine))
+                .collect(Collectors.toList());
+
+        for (AccountFileFormat format : AccountFileFormat.values()) {
+            var file = directory.resolve("accounts." + format);
+            try (OutputStream out = Files.newOutputStream(file)) {
+                AccountFile.write(out, format, accounts);
+            }
+            for (int rangeBytes : new int[]{7, 100, 1 << 20}) {
+                assertEquals(balances(accounts), importAll(AccountFile.read(file, format, rangeBytes)),
+                        String.format("Expected the exported balances in %s read in ranges of %d bytes", format, rangeBytes));
+            }
+        }
+    }
+
+    @Test
+    public void should_keep_the_currencies_of_exported_accounts_in_every_format() throws IOException {
+        var accounts = List.of(new Account(100, "A", "EUR", engine, AccountListener.NONE), new Account(200, "B", engine));
+
+        for (AccountFileFormat format : AccountFileFormat.values()) {
+            var file = directory.resolve("currencies." + format);
+            try (OutputStream out = Files.newOutputStream(file)) {
+                AccountFile.write(out, format, accounts);
+            }
+            var store = new AccountInMemoryStore(16);
+            new AccountImporter(store, engine, AccountListener.NONE, iban -> true).importAccounts(AccountFile.read(file, format, 7));
+
+            assertEquals(Map.of("A", "EUR", "B", Account.DEFAULT_CURRENCY),
+                    store.values().stream().collect(Collectors.toMap(Account::getIban, Account::getCurrency)),
+                    "Expected the exported currencies in " + format);
+        }
+        var withUnknownCurrency = csv("iban,currency,balance\nA,XYZ,100\n");
+        assertThrows(IOException.class, () -> AccountFile.read(withUnknownCurrency, AccountFileFormat.CSV));
+    }
+
+    @Test
+    public void should_read_csv_with_or_without_a_header_and_any_line_endings() throws IOException {
+        var withHeader = csv("iban,balance\r\nA,100\r\nB,-5\r\n");
+        var withoutHeader = csv("A,100\n\nB,-5");
+
+        assertEquals(Map.of("A", 100L, "B", -5L), importAll(AccountFile.read(withHeader, AccountFileFormat.CSV, 5)));
+        assertEquals(Map.of("A", 100L, "B", -5L), importAll(AccountFile.read(withoutHeader, AccountFileFormat.CSV, 5)));
+    }
+
+    @Test
+    public void should_reject_a_file_with_a_malformed_line() throws IOException {
+        for (String content : List.of("A,100\nB\n", "A,100\nB,1x\n", "A,\n", ",5\n", "A,99999999999999999999\n")) {
+            var file = csv(content);
+
+            assertThrows(IOException.class, () -> AccountFile.read(file, AccountFileFormat.CSV), "Expected " + content + " rejected");
+        }
+        var notBinary = csv("A,100\n");
+        assertThrows(IOException.class, () -> AccountFile.read(notBinary, AccountFileFormat.BINARY));
+    }
+
+    @Test
+    public void should_import_only_the_owned_accounts_which_do_not_exist_yet() throws IOException {
+        AccountStore store = new AccountInMemoryStore(16);
+        store.put("A", new Account(1, "A", engine));
+        var created = new AtomicInteger();
+        var importer = new AccountImporter(store, engine, new AccountListener() {
+            @Override
+            public void onCreated(Account account, long balance) {
+                created.incrementAndGet();
+            }
+        }, iban -> !iban.startsWith("REMOTE"));
+
+        var result = importer.importAccounts(AccountFile.read(csv("A,100\nB,200\nREMOTE1,300\n"), AccountFileFormat.CSV));
+
+        assertEquals(1, result.created());
+        assertEquals(1, result.existing());
+        assertEquals(1, result.notOwned());
+        assertEquals(1, created.get(), "Expected only the created account reported");
+        assertEquals(Map.of("A", 1L, "B", 200L), balances(store.values().stream().collect(Collectors.toList())));
+    }
+
+    private Path csv(String content) throws IOException {
+        return Files.write(Files.createTempFile(directory, "accounts", ".csv"), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Map<String, Long> importAll(ParsedAccounts parsed) {
+        var store = new AccountInMemoryStore(parsed.count());
+        new AccountImporter(store, engine, AccountListener.NONE, iban -> true).importAccounts(parsed);
+        assertEquals(parsed.count(), store.values().size(), "Expected every parsed account imported");
+        return balances(store.values().stream().collect(Collectors.toList()));
+    }
+
+    private static Map<String, Long> balances(List<Account> accounts) {
+        return accounts.stream().collect(Collectors.toMap(Account::getIban, Account::getBalance));
+    }
+}
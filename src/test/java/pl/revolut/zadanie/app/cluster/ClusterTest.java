@@ -0,0 +1,271 @@
+package pl.revolut.zadanie.app.cluster;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.javalin.BadRequestResponse;
+import io.javalin.NotFoundResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pl.revolut.zadanie.app.dto.CreditDto;
+import pl.revolut.zadanie.app.model.Account;
+import pl.revolut.zadanie.app.model.AccountListener;
+import pl.revolut.zadanie.app.model.BalanceEngine;
+import pl.revolut.zadanie.app.model.StripedLockBalanceEngine;
+import pl.revolut.zadanie.app.store.AccountStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ClusterTest {
+    private static final String SELF = "http://localhost:8081";
+    private static final String OTHER = "http://localhost:8082";
+    private static final LongConsumer POSITIVE_BALANCE = balance -> {
+        if (balance < 0) {
+            throw new BadRequestResponse("Not enough founds");
+        }
+    };
+
+    private final BalanceEngine engine = new StripedLockBalanceEngine(64);
+    private Path directory;
+    private AccountStore store;
+    private Account source;
+    private FakeNodeClient client;
+    private Cluster cluster;
+
+    @BeforeEach
+    public void beforeEach() throws IOException {
+        directory = Files.createTempDirectory("intents");
+        store = AccountStore.forName("map", 16);
+        source = new Account(100, "A", engine);
+        store.put("A", source);
+        client = new FakeNodeClient();
+        cluster = open(client);
+    }
+
+    @AfterEach
+    public void afterEach() throws IOException {
+        cluster.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void should_debit_the_source_account_and_send_the_credit_to_the_owner_of_the_target_account() {
+        cluster.transferOut(source, OTHER, "B", 30, POSITIVE_BALANCE).join();
+
+        Assertions.assertAll(
+                () -> assertEquals(70, source.getBalance(), "Expected the source account to be debited"),
+                () -> assertEquals(1, client.credits.size(), "Expected a single credit"),
+                () -> assertEquals("B", client.credits.get(0).iban()),
+                () -> assertEquals(30, client.credits.get(0).amount()),
+                () -> assertEquals(0, cluster.undeliveredCredits())
+        );
+    }
+
+    @Test
+    public void should_neither_debit_nor_credit_if_the_source_account_has_not_enough_founds() {
+        assertThrows(BadRequestResponse.class, () -> cluster.transferOut(source, OTHER, "B", 300, POSITIVE_BALANCE));
+
+        Assertions.assertAll(
+                () -> assertEquals(100, source.getBalance()),
+                () -> assertTrue(client.credits.isEmpty(), "Expected no credit")
+        );
+    }
+
+    @Test
+    public void should_credit_the_source_account_back_if_the_target_account_does_not_exist() {
+        client.status = 404;
+
+        assertThrows(NotFoundResponse.class, () -> cluster.transferOut(source, OTHER, "B", 30, POSITIVE_BALANCE));
+
+        Assertions.assertAll(
+                () -> assertEquals(100, source.getBalance(), "Expected the debit to be compensated"),
+                () -> assertEquals(0, cluster.undeliveredCredits())
+        );
+    }
+
+    @Test
+    public void should_send_the_credit_again_once_the_owner_of_the_target_account_is_back() throws InterruptedException {
+        client.reachable = false;
+
+        cluster.transferOut(source, OTHER, "B", 30, POSITIVE_BALANCE).join();
+        assertEquals(1, cluster.undeliveredCredits(), "Expected the credit to wait for the target node");
+
+        client.reachable = true;
+        awaitDelivery(cluster);
+
+        Assertions.assertAll(
+                () -> assertEquals(70, source.getBalance()),
+                () -> assertEquals(1, client.credits.size(), "Expected the credit to be delivered once")
+        );
+    }
+
+    @Test
+    public void should_send_the_credits_not_acknowledged_before_a_restart() throws InterruptedException {
+        client.reachable = false;
+        cluster.transferOut(source, OTHER, "B", 30, POSITIVE_BALANCE).join();
+        cluster.close();
+
+        var restartedClient = new FakeNodeClient();
+        cluster = open(restartedClient);
+        awaitDelivery(cluster);
+
+        Assertions.assertAll(
+                () -> assertEquals(1, restartedClient.credits.size(), "Expected the credit to be sent after the restart"),
+                () -> assertEquals(30, restartedClient.credits.get(0).amount())
+        );
+    }
+
+    @Test
+    public void should_apply_a_credit_sent_again_once() {
+        var credit = new CreditDto("1-abc-1", "A", 30);
+
+        cluster.receiveCredit(credit);
+        cluster.receiveCredit(credit);
+
+        assertEquals(130, source.getBalance(), "Expected a single credit");
+    }
+
+    @Test
+    public void should_apply_a_credit_sent_again_after_it_could_not_be_applied() {
+        var failures = new AtomicInteger(1);
+        var target = new Account(100, "F", engine, new AccountListener() {
+            @Override
+            public void beforeChange() {
+                if (failures.getAndDecrement() > 0) {
+                    throw new IllegalStateException("Journal unavailable");
+                }
+            }
+        });
+        store.put("F", target);
+        var credit = new CreditDto("1-abc-1", "F", 30);
+
+        assertThrows(IllegalStateException.class, () -> cluster.receiveCredit(credit));
+        cluster.receiveCredit(credit);
+        cluster.receiveCredit(credit);
+
+        assertEquals(130, target.getBalance(), "Expected the credit sent again applied once");
+    }
+
+    @Test
+    public void should_remember_a_credit_applied_before_a_listener_failed() {
+        var target = new Account(100, "F", engine, new AccountListener() {
+            @Override
+            public void onTransferCredited(String ibanFrom, Account to, long amount, long credited, boolean local) {
+                throw new IllegalStateException("Listener failed");
+            }
+        });
+        store.put("F", target);
+        var credit = new CreditDto("1-abc-1", "F", 30);
+
+        cluster.receiveCredit(credit);
+        cluster.receiveCredit(credit);
+
+        assertEquals(130, target.getBalance(), "Expected a single credit");
+    }
+
+    @Test
+    public void should_remember_the_received_credits_after_a_restart() {
+        var credit = new CreditDto("1-abc-1", "A", 30);
+        cluster.receiveCredit(credit);
+        cluster.close();
+
+        cluster = open(new FakeNodeClient());
+        cluster.receiveCredit(credit);
+
+        assertEquals(130, source.getBalance(), "Expected a single credit");
+    }
+
+    @Test
+    public void should_forget_the_received_credits_their_sender_has_settled() {
+        cluster.receiveCredit(new CreditDto("1-abc-1", "X", "A", 10, 1));
+        cluster.receiveCredit(new CreditDto("1-abc-2", "X", "A", 10, 1));
+        cluster.receiveCredit(new CreditDto("1-abc-3", "X", "A", 10, 3));
+        cluster.receiveCredit(new CreditDto("1-abc-1", "X", "A", 10, 1));
+        cluster.close();
+
+        cluster = open(new FakeNodeClient());
+        cluster.receiveCredit(new CreditDto("1-abc-2", "X", "A", 10, 2));
+
+        Assertions.assertAll(
+                () -> assertEquals(130, source.getBalance(), "Expected every credit applied once"),
+                () -> assertEquals(1, cluster.receivedCredits(), "Expected only the credit which may still be sent again remembered")
+        );
+    }
+
+    @Test
+    public void should_send_the_lowest_unsettled_sequence_with_every_credit() throws InterruptedException {
+        client.reachable = false;
+        cluster.transferOut(source, OTHER, "B", 10, POSITIVE_BALANCE).join();
+        client.reachable = true;
+        cluster.transferOut(source, OTHER, "C", 20, POSITIVE_BALANCE).join();
+        awaitDelivery(cluster);
+        cluster.transferOut(source, OTHER, "D", 30, POSITIVE_BALANCE).join();
+
+        var settledBelow = client.credits.stream().collect(Collectors.toMap(CreditDto::iban, CreditDto::settledBelow));
+        var first = ReceivedCredits.sequenceOf(client.credits.stream().filter(credit -> credit.iban().equals("B")).findFirst().get().txId());
+        Assertions.assertAll(
+                () -> assertEquals(first, (long) settledBelow.get("C"), "Expected the undelivered credit to hold the sequence back"),
+                () -> assertEquals(first, (long) settledBelow.get("B")),
+                () -> assertEquals(first + 2, (long) settledBelow.get("D"), "Expected the sequence to move past the delivered credits")
+        );
+    }
+
+    @Test
+    public void should_forward_the_client_of_a_request_rather_than_the_address_of_this_node() {
+        var headers = Cluster.forwardedHeaders(Map.of("X-Client-Id", "mobile-7", "Content-Type", "application/json", "Cookie", "a=b")::get,
+                "10.0.0.5");
+
+        assertEquals(Map.of("X-Client-Id", "10.0.0.5", "Content-Type", "application/json"), headers,
+                "Expected the address of the client to identify it rather than the id it sent");
+    }
+
+    private Cluster open(NodeClient client) {
+        return new Cluster(new ConsistentHashRing(List.of(SELF, OTHER), 16), SELF, store, client, IntentLog.open(directory), 10);
+    }
+
+    private static void awaitDelivery(Cluster cluster) throws InterruptedException {
+        for (int i = 0; i < 1_000 && cluster.undeliveredCredits() > 0; i++) {
+            Thread.sleep(5);
+        }
+        assertEquals(0, cluster.undeliveredCredits(), "Expected every credit to be delivered");
+    }
+
+    private static final class FakeNodeClient extends NodeClient {
+        private final List<CreditDto> credits = new CopyOnWriteArrayList<>();
+        private volatile boolean reachable = true;
+        private volatile int status = 200;
+
+        private FakeNodeClient() {
+            super(SELF, 1_000);
+        }
+
+        @Override
+        Response send(String node, String method, String pathAndQuery, Map<String, String> headers, byte[] body) throws IOException {
+            if (!reachable) {
+                throw new IOException("Connection refused");
+            }
+            if (Cluster.CREDITS_PATH.equals(pathAndQuery) && status < 300) {
+                credits.add(new ObjectMapper().readValue(body, CreditDto.class));
+            }
+            return new Response(status, "text/plain", Map.of(), new byte[0]);
+        }
+    }
+}
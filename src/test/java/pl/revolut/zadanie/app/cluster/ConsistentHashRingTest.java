@@ -0,0 +1,59 @@
+package pl.revolut.zadanie.app.cluster;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ConsistentHashRingTest {
+    private static final int KEYS = 100_000;
+
+    @Test
+    public void should_split_keys_evenly_between_nodes() {
+        var nodes = List.of("http://localhost:8081", "http://localhost:8082", "http://localhost:8083");
+        var ring = new ConsistentHashRing(nodes, 128);
+        var keysPerNode = new HashMap<String, Integer>();
+
+        for (int i = 0; i < KEYS; i++) {
+            keysPerNode.merge(ring.ownerOf(String.format("PL%026d", i)), 1, Integer::sum);
+        }
+
+        Assertions.assertAll(
+                () -> assertEquals(3, keysPerNode.size(), "Expected every node to own keys"),
+                () -> assertTrue(keysPerNode.values().stream().allMatch(keys -> keys > KEYS / 4 && keys < KEYS * 5 / 12),
+                        "Expected every node to own about a third of the keys, got " + keysPerNode)
+        );
+    }
+
+    @Test
+    public void should_only_move_keys_to_a_node_joining_the_ring() {
+        var nodes = List.of("http://localhost:8081", "http://localhost:8082", "http://localhost:8083");
+        var joined = "http://localhost:8084";
+        var before = new ConsistentHashRing(nodes, 128);
+        var after = new ConsistentHashRing(List.of(nodes.get(0), nodes.get(1), nodes.get(2), joined), 128);
+        int moved = 0;
+        int movedElsewhere = 0;
+
+        for (int i = 0; i < KEYS; i++) {
+            var key = String.format("PL%026d", i);
+            var owner = after.ownerOf(key);
+            if (!owner.equals(before.ownerOf(key))) {
+                moved++;
+                if (!owner.equals(joined)) {
+                    movedElsewhere++;
+                }
+            }
+        }
+
+        int movedKeys = moved;
+        int movedToOthers = movedElsewhere;
+        Assertions.assertAll(
+                () -> assertEquals(0, movedToOthers, "Expected keys to move to the joining node only"),
+                () -> assertTrue(movedKeys > KEYS / 6 && movedKeys < KEYS / 3, "Expected about a quarter of the keys to move, got " + movedKeys)
+        );
+    }
+}
@@ -0,0 +1,139 @@
+package pl.revolut.zadanie.app.events;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import pl.revolut.zadanie.app.model.Account;
+import pl.revolut.zadanie.app.model.BalanceEngine;
+import pl.revolut.zadanie.app.model.StripedLockBalanceEngine;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ChangeLogTest {
+    private final BalanceEngine engine = new StripedLockBalanceEngine(64);
+    private final ChangeLog changeLog = new ChangeLog(16);
+
+    @AfterEach
+    public void afterEach() {
+        changeLog.close();
+    }
+
+    @Test
+    public void should_publish_committed_changes_in_order() {
+        var subscription = changeLog.subscribe(changeLog.nextSequence());
+        var accountA = create("A", 100);
+        var accountB = create("B", 0);
+
+        accountA.transferTo(accountB, 30, balance -> {
+        });
+        accountB.setBalance(500);
+        changeLog.onDeleted(accountA);
+
+        assertEquals(List.of("0 created A 100", "1 created B 0", "2 transferred A->B 30", "3 adjusted B 470", "4 deleted A 0"),
+                readAll(subscription));
+    }
+
+    @Test
+    public void should_resume_from_a_kept_sequence() {
+        IntStream.range(0, 10).forEach(i -> changeLog.publish(ChangeType.ADJUSTED, "A", null, i));
+
+        var subscription = changeLog.subscribe(7);
+
+        assertEquals(List.of("7 adjusted A 7", "8 adjusted A 8", "9 adjusted A 9"), readAll(subscription));
+        assertThrows(IllegalArgumentException.class, () -> changeLog.subscribe(11), "Expected unpublished changes rejected");
+    }
+
+    @Test
+    public void should_report_changes_overwritten_before_a_slow_subscriber_read_them() {
+        var subscription = changeLog.subscribe(0);
+        IntStream.range(0, 40).forEach(i -> changeLog.publish(ChangeType.ADJUSTED, "A", null, i));
+
+        assertEquals(List.of(), readAll(subscription));
+        assertTrue(subscription.isLost());
+        assertEquals(24, changeLog.oldestSequence());
+        assertThrows(IllegalArgumentException.class, () -> changeLog.subscribe(0), "Expected overwritten changes rejected");
+        assertEquals(16, readAll(changeLog.subscribe(changeLog.oldestSequence())).size());
+    }
+
+    @Test
+    public void should_wake_up_a_waiting_subscriber_once_a_change_is_published() throws Exception {
+        var subscription = changeLog.subscribe(changeLog.nextSequence());
+        var awaited = CompletableFuture.supplyAsync(() -> subscription.await(TimeUnit.SECONDS.toNanos(30)));
+
+        Thread.sleep(50);
+        changeLog.publish(ChangeType.CREATED, "A", null, 1);
+
+        assertTrue(awaited.get(5, TimeUnit.SECONDS), "Expected the subscriber woken up before the timeout");
+        assertEquals(List.of("0 created A 1"), readAll(subscription));
+    }
+
+    @Test
+    public void should_deliver_every_change_to_every_subscriber_keeping_up() throws Exception {
+        var largeLog = new ChangeLog(1 << 16);
+        var threads = Executors.newFixedThreadPool(12);
+        try {
+            var subscribers = IntStream.range(0, 8)
+                    .mapToObj(i -> largeLog.subscribe(0))
+                    .map(subscription -> CompletableFuture.supplyAsync(() -> sumOfAmounts(subscription, 40_000), threads))
+                    .collect(Collectors.toList());
+            var publishers = IntStream.range(0, 4)
+                    .mapToObj(i -> CompletableFuture.runAsync(() -> IntStream.range(0, 10_000)
+                            .forEach(j -> largeLog.publish(ChangeType.ADJUSTED, "A" + i, null, j)), threads))
+                    .collect(Collectors.toList());
+            for (CompletableFuture<Void> publisher : publishers) {
+                publisher.get(30, TimeUnit.SECONDS);
+            }
+
+            for (CompletableFuture<Map<String, Long>> subscriber : subscribers) {
+                assertEquals(Map.of("A0", 49_995_000L, "A1", 49_995_000L, "A2", 49_995_000L, "A3", 49_995_000L),
+                        subscriber.get(30, TimeUnit.SECONDS));
+            }
+        } finally {
+            threads.shutdownNow();
+            largeLog.close();
+        }
+    }
+
+    private Account create(String iban, long balance) {
+        var account = new Account(balance, iban, engine, changeLog);
+        changeLog.onCreated(account, balance);
+        return account;
+    }
+
+    private static Map<String, Long> sumOfAmounts(ChangeSubscription subscription, int changes) {
+        var sums = new HashMap<String, Long>();
+        var event = new ChangeEvent();
+        for (int read = 0; read < changes; ) {
+            if (subscription.poll(event)) {
+                sums.merge(event.iban(), event.amount(), Long::sum);
+                read++;
+            } else if (subscription.isLost()) {
+                throw new IllegalStateException("Expected no change lost");
+            } else {
+                subscription.await(TimeUnit.MILLISECONDS.toNanos(100));
+            }
+        }
+        return sums;
+    }
+
+    private static List<String> readAll(ChangeSubscription subscription) {
+        var read = new ArrayList<String>();
+        var event = new ChangeEvent();
+        while (subscription.poll(event)) {
+            read.add(String.format("%d %s %s%s %d", event.sequence(), event.type().eventName(), event.iban(),
+                    event.counterpart() == null ? "" : "->" + event.counterpart(), event.amount()));
+        }
+        return read;
+    }
+}
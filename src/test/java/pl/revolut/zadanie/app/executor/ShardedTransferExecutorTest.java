@@ -0,0 +1,140 @@
+package pl.revolut.zadanie.app.executor;
+
+import io.javalin.BadRequestResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import pl.revolut.zadanie.app.limits.MaxTransferRule;
+import pl.revolut.zadanie.app.limits.TransferRules;
+import pl.revolut.zadanie.app.model.Account;
+import pl.revolut.zadanie.app.model.AccountListener;
+import pl.revolut.zadanie.app.model.BalanceEngine;
+import pl.revolut.zadanie.app.model.DebitCheck;
+import pl.revolut.zadanie.app.model.StripedLockBalanceEngine;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ShardedTransferExecutorTest {
+    private final DebitCheck positiveBalance = new DebitCheck(newBalance -> newBalance >= 0, IllegalArgumentException::new, newBalance -> {
+    });
+    private final BalanceEngine engine = new StripedLockBalanceEngine(64);
+    private final ShardedTransferExecutor executor = new ShardedTransferExecutor(4, 1024);
+
+    @AfterEach
+    public void afterEach() {
+        executor.close();
+    }
+
+    @Test
+    public void should_conserve_money_when_transferring_across_shards() {
+        Account[] accounts = IntStream.range(0, 32)
+                .mapToObj(i -> new Account(1_000, "A" + i, engine))
+                .toArray(Account[]::new);
+
+        IntStream.range(0, 200_000)
+                .parallel()
+                .mapToObj(value -> {
+                    var random = new SplittableRandom(value);
+                    var from = accounts[random.nextInt(accounts.length)];
+                    var to = accounts[random.nextInt(accounts.length)];
+                    return executor.transfer(from, to, random.nextInt(1, 300), positiveBalance)
+                            .exceptionally(e -> null);
+                })
+                .forEach(CompletableFuture::join);
+
+        Assertions.assertAll(
+                () -> assertEquals(32_000, Arrays.stream(accounts).mapToLong(Account::getBalance).sum(), "Expected the total balance to stay 32 000"),
+                () -> assertTrue(Arrays.stream(accounts).allMatch(account -> account.getBalance() >= 0), "Expected no account to be overdrawn")
+        );
+    }
+
+    @Test
+    public void should_fail_the_transfer_if_the_new_balance_is_rejected() {
+        var accountA = new Account(100, "A", engine);
+        var accountB = new Account(100, "B", engine);
+
+        var exception = assertThrows(CompletionException.class, () -> executor.transfer(accountA, accountB, 200, positiveBalance).join());
+
+        Assertions.assertAll(
+                () -> assertTrue(exception.getCause() instanceof IllegalArgumentException, "Expected the validator exception"),
+                () -> assertEquals(100, accountA.getBalance(), "Expected account A to have 100"),
+                () -> assertEquals(100, accountB.getBalance(), "Expected account B to have 100")
+        );
+    }
+
+    @Test
+    public void should_apply_the_transfer_rules_to_debits_checked_by_result_code() {
+        var limited = new DebitCheck(newBalance -> newBalance >= 0, IllegalArgumentException::new,
+                new TransferRules(List.of(new MaxTransferRule(50))));
+        var accountA = new Account(1_000, "A", engine);
+        var targets = IntStream.range(0, 8).mapToObj(i -> new Account(0, "B" + i, engine)).toArray(Account[]::new);
+
+        for (Account target : targets) {
+            executor.transfer(accountA, target, 50, limited).join();
+            var overLimit = assertThrows(CompletionException.class, () -> executor.transfer(accountA, target, 51, limited).join());
+            assertTrue(overLimit.getCause() instanceof BadRequestResponse, "Expected the transfer rule exception");
+        }
+        var overdraft = assertThrows(CompletionException.class, () -> executor.transfer(targets[0], accountA, 51, positiveBalance).join());
+
+        Assertions.assertAll(
+                () -> assertTrue(overdraft.getCause() instanceof IllegalArgumentException, "Expected the rejection of the check"),
+                () -> assertEquals(600, accountA.getBalance(), "Expected account A to have 600"),
+                () -> assertTrue(Arrays.stream(targets).allMatch(target -> target.getBalance() == 50), "Expected every target to have 50")
+        );
+    }
+
+    @Test
+    public void should_complete_a_transfer_credited_on_another_shard_even_if_a_listener_of_the_credit_fails() {
+        var failingListener = new AccountListener() {
+            @Override
+            public void onTransferCredited(String ibanFrom, Account to, long amount, long credited, boolean local) {
+                throw new IllegalStateException("Listener failed");
+            }
+        };
+        var accountA = new Account(1_000, "A", engine);
+        var targets = IntStream.range(0, 8).mapToObj(i -> new Account(0, "B" + i, engine, failingListener)).toArray(Account[]::new);
+
+        for (Account target : targets) {
+            executor.transfer(accountA, target, 10, positiveBalance).join();
+        }
+
+        Assertions.assertAll(
+                () -> assertEquals(920, accountA.getBalance(), "Expected account A to have 920"),
+                () -> assertTrue(Arrays.stream(targets).allMatch(target -> target.getBalance() == 10), "Expected every target to have 10")
+        );
+    }
+
+    @Test
+    public void should_credit_again_a_credit_which_could_not_be_applied_rather_than_fail_the_transfer() {
+        var accountA = new Account(1_000, "A", engine);
+        var targets = IntStream.range(0, 8).mapToObj(i -> new Account(0, "B" + i, engine, new AccountListener() {
+            private final AtomicInteger failures = new AtomicInteger(1);
+
+            @Override
+            public void beforeChange() {
+                if (failures.getAndDecrement() > 0) {
+                    throw new IllegalStateException("Journal unavailable");
+                }
+            }
+        })).toArray(Account[]::new);
+
+        for (Account target : targets) {
+            executor.transfer(accountA, target, 10, positiveBalance).join();
+        }
+
+        Assertions.assertAll(
+                () -> assertEquals(920, accountA.getBalance(), "Expected account A to have 920"),
+                () -> assertTrue(Arrays.stream(targets).allMatch(target -> target.getBalance() == 10), "Expected every target to have 10")
+        );
+    }
+}
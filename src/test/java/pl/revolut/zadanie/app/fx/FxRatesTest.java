@@ -0,0 +1,75 @@
+package pl.revolut.zadanie.app.fx;
+
+import org.junit.jupiter.api.Test;
+import pl.revolut.zadanie.app.dto.FxRateDto;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class FxRatesTest {
+
+    @Test
+    public void should_convert_with_the_rate_of_the_pair_rounding_down() {
+        var rates = FxRates.of(List.of(
+                new FxRateDto("EUR", "PLN", new BigDecimal("4.2917")),
+                new FxRateDto("PLN", "EUR", new BigDecimal("0.23210001"))));
+
+        assertEquals(429, rates.convert("EUR", "PLN", 100));
+        assertEquals(23, rates.convert("PLN", "EUR", 100));
+        assertEquals(2_321_000, rates.convert("PLN", "EUR", 10_000_000));
+        assertEquals(7, rates.convert("EUR", "EUR", 7));
+        assertThrows(MissingRateException.class, () -> rates.convert("EUR", "USD", 1));
+        assertThrows(MissingRateException.class, () -> rates.convert("USD", "EUR", 1));
+    }
+
+    @Test
+    public void should_multiply_exactly_up_to_the_largest_amount() {
+        var random = new SplittableRandom(42);
+        for (int i = 0; i < 100_000; i++) {
+            long amount = random.nextLong(Long.MAX_VALUE);
+            long rate = random.nextLong(1, 100_000_000_000L);
+            var exact = BigInteger.valueOf(amount).multiply(BigInteger.valueOf(rate)).divide(BigInteger.valueOf(100_000_000L));
+            if (exact.bitLength() < Long.SIZE) {
+                assertEquals(exact.longValueExact(), FxRates.multiply(amount, rate), amount + " * " + rate);
+            } else {
+                assertThrows(ArithmeticException.class, () -> FxRates.multiply(amount, rate), amount + " * " + rate);
+            }
+        }
+        assertEquals(Long.MAX_VALUE, FxRates.multiply(Long.MAX_VALUE, 100_000_000L));
+        assertThrows(ArithmeticException.class, () -> FxRates.multiply(Long.MAX_VALUE, 100_000_001L));
+    }
+
+    @Test
+    public void should_reject_unknown_currencies_and_rates_which_are_not_exact() {
+        assertThrows(IllegalArgumentException.class, () -> FxRates.of(List.of(new FxRateDto("EUR", "XYZ", BigDecimal.ONE))));
+        assertThrows(IllegalArgumentException.class, () -> FxRates.of(List.of(new FxRateDto("EUR", "PLN", BigDecimal.ZERO))));
+        assertThrows(IllegalArgumentException.class, () -> FxRates.of(List.of(new FxRateDto("EUR", "PLN", new BigDecimal("4.123456789")))));
+        assertThrows(IllegalArgumentException.class, () -> FxRates.of(List.of(new FxRateDto("EUR", "EUR", BigDecimal.ONE))));
+    }
+
+    @Test
+    public void should_read_rates_from_a_file() throws IOException {
+        var file = Files.createTempFile("rates", ".csv");
+        try {
+            Files.write(file, List.of("# from,to,rate", "EUR,PLN,4.2917", "", "USD, PLN, 3.9"));
+
+            var rates = FxRates.read(file);
+
+            assertEquals(List.of("EUR->PLN 4.2917", "USD->PLN 3.9"), rates.rates().stream()
+                    .map(rate -> rate.from() + "->" + rate.to() + " " + rate.rate().toPlainString())
+                    .collect(Collectors.toList()));
+            Files.write(file, List.of("EUR,PLN"));
+            assertThrows(IOException.class, () -> FxRates.read(file));
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package pl.revolut.zadanie.app.idempotency;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class IdempotencyCacheTest {
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicInteger executions = new AtomicInteger();
+    private final IdempotencyCache<String> cache = new IdempotencyCache<>(16, 10, TimeUnit.NANOSECONDS,
+            failure -> failure instanceof IllegalArgumentException, clock::get);
+
+    @Test
+    public void should_replay_the_outcome_of_the_first_execution() {
+        var first = cache.execute("key", 1, this::succeed).join();
+        var replayed = cache.execute("key", 1, this::succeed).join();
+
+        Assertions.assertAll(
+                () -> assertEquals("done 1", first, "Expected the first execution to run"),
+                () -> assertEquals("done 1", replayed, "Expected the retry to get the first outcome"),
+                () -> assertEquals(1, executions.get(), "Expected a single execution"),
+                () -> assertEquals(1, cache.hits(), "Expected a single hit"),
+                () -> assertEquals(1, cache.misses(), "Expected a single miss")
+        );
+    }
+
+    @Test
+    public void should_share_the_pending_outcome_with_a_concurrent_retry() {
+        var pending = new CompletableFuture<String>();
+
+        var first = cache.execute("key", 1, () -> pending);
+        var retry = cache.execute("key", 1, this::succeed);
+        pending.complete("done");
+
+        Assertions.assertAll(
+                () -> assertSame(first, retry, "Expected the retry to get the pending outcome"),
+                () -> assertEquals("done", retry.join(), "Expected the retry to complete with the first outcome"),
+                () -> assertEquals(0, executions.get(), "Expected the retry not to run")
+        );
+    }
+
+    @Test
+    public void should_refuse_a_key_reused_for_a_different_request() {
+        cache.execute("key", 1, this::succeed);
+
+        assertThrows(IdempotencyKeyReusedException.class, () -> cache.execute("key", 2, this::succeed));
+    }
+
+    @Test
+    public void should_refuse_a_key_reused_for_a_different_request_of_the_same_hash() {
+        cache.execute("key", List.of("Aa", "B", 10L), this::succeed);
+
+        assertThrows(IdempotencyKeyReusedException.class, () -> cache.execute("key", List.of("BB", "B", 10L), this::succeed));
+    }
+
+    @Test
+    public void should_replay_only_replayable_failures() {
+        var rejected = cache.execute("rejected", 1, () -> CompletableFuture.failedFuture(new IllegalArgumentException("rejected")));
+        var busy = cache.execute("busy", 1, () -> {
+            throw new IllegalStateException("busy");
+        });
+
+        Assertions.assertAll(
+                () -> assertThrows(CompletionException.class, rejected::join),
+                () -> assertThrows(CompletionException.class, busy::join),
+                () -> assertThrows(CompletionException.class, () -> cache.execute("rejected", 1, this::succeed).join(),
+                        "Expected the replayable failure to be replayed"),
+                () -> assertEquals("done 1", cache.execute("busy", 1, this::succeed).join(),
+                        "Expected the operation to run again after a failure that is not replayable")
+        );
+    }
+
+    @Test
+    public void should_run_again_once_the_outcome_expired() {
+        cache.execute("key", 1, this::succeed);
+        clock.addAndGet(10);
+
+        var afterExpiry = cache.execute("key", 1, this::succeed).join();
+
+        Assertions.assertAll(
+                () -> assertEquals("done 2", afterExpiry, "Expected the operation to run again"),
+                () -> assertEquals(1, cache.expirations(), "Expected the expired outcome to be counted")
+        );
+    }
+
+    @Test
+    public void should_hold_at_most_its_capacity() {
+        for (int i = 0; i < 1000; i++) {
+            cache.execute("key" + i, 1, this::succeed);
+        }
+
+        Assertions.assertAll(
+                () -> assertEquals(16, cache.capacity()),
+                () -> assertEquals(1000 - cache.capacity(), cache.evictions(), "Expected every outcome above the capacity to be evicted"),
+                () -> assertEquals("done 1000", cache.execute("key999", 1, this::succeed).join(), "Expected the latest outcome to be kept")
+        );
+    }
+
+    @Test
+    public void should_refuse_to_run_rather_than_evict_a_pending_outcome() {
+        var singleBucket = new IdempotencyCache<String>(8, 10, TimeUnit.NANOSECONDS, failure -> false, clock::get);
+        var operations = new ArrayList<CompletableFuture<String>>();
+        var pending = new ArrayList<CompletableFuture<String>>();
+        for (int i = 0; i < 8; i++) {
+            var operation = new CompletableFuture<String>();
+            operations.add(operation);
+            pending.add(singleBucket.execute("key" + i, 1, () -> operation));
+        }
+        clock.addAndGet(10);
+
+        assertThrows(IdempotencyCacheFullException.class, () -> singleBucket.execute("key8", 1, this::succeed));
+        var retry = singleBucket.execute("key0", 1, this::succeed);
+        operations.get(3).complete("done");
+        var afterCompletion = singleBucket.execute("key8", 1, this::succeed).join();
+
+        Assertions.assertAll(
+                () -> assertSame(pending.get(0), retry, "Expected the retry to get the pending outcome, even past its time to live"),
+                () -> assertEquals("done 1", afterCompletion, "Expected the operation to run once a completed outcome could be evicted"),
+                () -> assertEquals(1, executions.get(), "Expected the refused operation not to run")
+        );
+    }
+
+    private CompletableFuture<String> succeed() {
+        return CompletableFuture.completedFuture("done " + executions.incrementAndGet());
+    }
+}
@@ -0,0 +1,188 @@
+package pl.revolut.zadanie.app.journal;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pl.revolut.zadanie.app.executor.ShardedTransferExecutor;
+import pl.revolut.zadanie.app.model.Account;
+import pl.revolut.zadanie.app.model.BalanceEngine;
+import pl.revolut.zadanie.app.model.DebitCheck;
+import pl.revolut.zadanie.app.model.StripedLockBalanceEngine;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class JournalTest {
+    private final BalanceEngine engine = new StripedLockBalanceEngine(64);
+    private final Map<String, Account> book = new ConcurrentHashMap<>();
+    private Path directory;
+
+    @BeforeEach
+    public void beforeEach() throws IOException {
+        directory = Files.createTempDirectory("journal");
+    }
+
+    @AfterEach
+    public void afterEach() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void should_recover_balances_from_the_journal() {
+        try (var journal = Journal.open(directory, Durability.BATCH, 10)) {
+            var accountA = create(journal, "A", 100);
+            var accountB = create(journal, "B", 100);
+            var accountC = create(journal, "C", 100);
+
+            accountA.transferTo(accountB, 30, balance -> {
+            });
+            accountB.setBalance(500);
+            accountC.decrementBalance(40);
+            delete(journal, "A");
+        }
+
+        try (var journal = Journal.open(directory, Durability.BATCH, 10)) {
+            assertEquals(Map.of("B", 500L, "C", 60L), journal.recovered(), "Expected balances as of before the restart");
+        }
+    }
+
+    @Test
+    public void should_recover_balances_from_a_snapshot_and_the_journal_tail() throws IOException {
+        try (var journal = Journal.open(directory, Durability.INTERVAL, 10)) {
+            var accounts = IntStream.range(0, 16)
+                    .mapToObj(i -> create(journal, "A" + i, 1_000))
+                    .toArray(Account[]::new);
+            IntStream.range(0, 100_000).parallel().forEach(i -> accounts[i % 16].transferTo(accounts[(i + 1) % 16], 1, balance -> {
+            }));
+
+            journal.snapshot(book::values);
+            IntStream.range(0, 100_000).parallel().forEach(i -> accounts[i % 16].transferTo(accounts[(i + 3) % 16], 1, balance -> {
+            }));
+        }
+
+        try (var journal = Journal.open(directory, Durability.INTERVAL, 10)) {
+            assertEquals(balances(), journal.recovered(), "Expected balances as of before the restart");
+        }
+    }
+
+    @Test
+    public void should_recover_up_to_a_torn_record() throws IOException {
+        try (var journal = Journal.open(directory, Durability.BATCH, 10)) {
+            create(journal, "A", 100).setBalance(200);
+        }
+        var segment = JournalRecovery.segments(directory).get(0);
+        Files.write(segment, new byte[]{0, 0, 0, 42, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        try (var journal = Journal.open(directory, Durability.BATCH, 10)) {
+            var recoveredAccount = new Account(journal.recovered().get("A"), "A", engine, journal);
+            book.put("A", recoveredAccount);
+            recoveredAccount.setBalance(300);
+        }
+
+        try (var journal = Journal.open(directory, Durability.BATCH, 10)) {
+            assertEquals(Map.of("A", 300L), journal.recovered(), "Expected the torn record to be dropped and journaling to continue after it");
+        }
+    }
+
+    @Test
+    public void should_recover_currencies_and_exchanges_from_a_snapshot_and_the_journal_tail() throws IOException {
+        try (var journal = Journal.open(directory, Durability.BATCH, 10)) {
+            var accountA = create(journal, "A", "EUR", 100);
+            var accountB = create(journal, "B", Account.DEFAULT_CURRENCY, 0);
+            accountA.transferTo(accountB, 10, 43, balance -> {
+            });
+            journal.snapshot(book::values);
+            var accountC = create(journal, "C", "USD", 5);
+            accountC.transferTo(accountA, 5, 4, balance -> {
+            });
+        }
+
+        try (var journal = Journal.open(directory, Durability.BATCH, 10)) {
+            assertEquals(Map.of("A", 94L, "B", 43L, "C", 0L), journal.recovered(), "Expected balances as of before the restart");
+            assertEquals("EUR", journal.recoveredCurrency("A"));
+            assertEquals(Account.DEFAULT_CURRENCY, journal.recoveredCurrency("B"));
+            assertEquals("USD", journal.recoveredCurrency("C"));
+        }
+    }
+
+    @Test
+    public void should_recover_a_transfer_whose_credit_was_still_in_flight() throws IOException {
+        try (var journal = Journal.open(directory, Durability.BATCH, 10)) {
+            var accountA = create(journal, "A", 100);
+            var accountB = create(journal, "B", 0);
+            accountA.debitTransfer("B", 30, 30, true, balance -> {
+            });
+            journal.snapshot(book::values);
+            accountA.debitTransfer("B", 20, 20, true, balance -> {
+            });
+            accountB.creditTransfer("A", 30, 30, true);
+        }
+
+        try (var journal = Journal.open(directory, Durability.BATCH, 10)) {
+            assertEquals(Map.of("A", 50L, "B", 50L), journal.recovered(), "Expected the credits in flight to have reached B");
+        }
+    }
+
+    @Test
+    public void should_complete_the_transfers_of_the_shards_once_the_journal_has_forced_them() {
+        try (var journal = Journal.open(directory, Durability.BATCH, 10)) {
+            var accounts = IntStream.range(0, 8).mapToObj(i -> create(journal, "A" + i, 100)).toArray(Account[]::new);
+            try (var executor = new ShardedTransferExecutor(4, 1024, journal)) {
+                IntStream.range(0, 8)
+                        .mapToObj(i -> executor.transfer(accounts[i], accounts[(i + 1) % 8], 10 + i, DebitCheck.of(balance -> {
+                        })))
+                        .collect(Collectors.toList())
+                        .forEach(CompletableFuture::join);
+            }
+        }
+
+        try (var journal = Journal.open(directory, Durability.BATCH, 10)) {
+            var expected = IntStream.range(0, 8).boxed().collect(Collectors.toMap(i -> "A" + i, i -> i == 0 ? 107L : 99L));
+            assertEquals(expected, journal.recovered(), "Expected every completed transfer to have been journaled");
+        }
+    }
+
+    private Account create(Journal journal, String iban, long balance) {
+        return create(journal, iban, Account.DEFAULT_CURRENCY, balance);
+    }
+
+    private Account create(Journal journal, String iban, String currency, long balance) {
+        journal.beforeChange();
+        try {
+            var account = new Account(balance, iban, currency, engine, journal);
+            book.put(iban, account);
+            journal.onCreated(account, balance);
+            return account;
+        } finally {
+            journal.afterChange();
+        }
+    }
+
+    private void delete(Journal journal, String iban) {
+        journal.beforeChange();
+        try {
+            journal.onDeleted(book.remove(iban));
+        } finally {
+            journal.afterChange();
+        }
+    }
+
+    private Map<String, Long> balances() {
+        return book.values().stream().collect(Collectors.toMap(Account::getIban, Account::getBalance));
+    }
+}
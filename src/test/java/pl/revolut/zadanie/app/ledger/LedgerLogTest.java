@@ -0,0 +1,223 @@
+package pl.revolut.zadanie.app.ledger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import pl.revolut.zadanie.app.dto.LedgerEntryDto;
+import pl.revolut.zadanie.app.model.Account;
+import pl.revolut.zadanie.app.model.StripedLockBalanceEngine;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LedgerLogTest {
+
+    @Test
+    public void should_list_the_history_of_an_account_newest_first() {
+        var log = LedgerLog.offHeap();
+        log.append("A", "B", 10, 1_000);
+        log.append("B", "C", 20, 2_000);
+        log.append("C", "A", 30, 3_000);
+
+        var history = log.history("A", 0, Long.MAX_VALUE, Long.MAX_VALUE, 10);
+
+        Assertions.assertAll(
+                () -> assertEquals(2, history.size(), "Expected both transfers of A"),
+                () -> assertEquals("C", history.get(0).from(), "Expected the newest transfer first"),
+                () -> assertEquals(30, history.get(0).amount()),
+                () -> assertEquals(2, history.get(0).txId()),
+                () -> assertEquals("B", history.get(1).to()),
+                () -> assertEquals(1_000, history.get(1).timestamp()),
+                () -> assertTrue(log.history("D", 0, Long.MAX_VALUE, Long.MAX_VALUE, 10).isEmpty(), "Expected no history of an unknown account")
+        );
+    }
+
+    @Test
+    public void should_page_through_a_time_range_across_checkpoints_and_segments() {
+        var log = LedgerLog.offHeap();
+        int transfers = LedgerLog.SEGMENT_ENTRIES + 1_000;
+        for (int i = 0; i < transfers; i++) {
+            if (i % 3 == 0) {
+                log.append("A", "B", i, i);
+            } else {
+                log.append("C", "D", i, i);
+            }
+        }
+
+        long newest = LedgerLog.SEGMENT_ENTRIES + 500;
+
+        var pages = pages(log, "A", 1_000, newest + 1, 100);
+
+        Assertions.assertAll(
+                () -> assertEquals((newest - 1_002) / 3 + 1, pages.size(), "Expected every transfer of A in the range"),
+                () -> assertEquals(newest, pages.get(0).txId(), "Expected the newest transfer before the range end first"),
+                () -> assertEquals(1_002, pages.get(pages.size() - 1).txId(), "Expected the oldest transfer in the range last"),
+                () -> assertTrue(isDescending(pages), "Expected pages to continue where the previous one ended")
+        );
+    }
+
+    @Test
+    public void should_record_a_transfer_to_the_same_account_once() {
+        var log = LedgerLog.offHeap();
+        log.append("A", "A", 10, 1_000);
+        log.append("A", "B", 20, 2_000);
+
+        assertEquals(2, log.history("A", 0, Long.MAX_VALUE, Long.MAX_VALUE, 10).size());
+    }
+
+    @Test
+    public void should_list_a_leg_of_a_transfer_in_the_history_of_its_account_only() {
+        var log = LedgerLog.offHeap();
+        log.append("A", "B", 10, 1_000, LedgerEntryDto.Kind.DEBIT);
+        log.append("C", "A", 20, 2_000);
+        log.append("A", "B", 40, 3_000, LedgerEntryDto.Kind.CREDIT);
+        log.append(null, "A", 5, 4_000, LedgerEntryDto.Kind.CREDIT);
+
+        var historyA = log.history("A", 0, Long.MAX_VALUE, Long.MAX_VALUE, 10);
+        var historyB = log.history("B", 0, Long.MAX_VALUE, Long.MAX_VALUE, 10);
+
+        Assertions.assertAll(
+                () -> assertEquals(3, historyA.size(), "Expected the debit, the transfer and the credit of A"),
+                () -> assertEquals(LedgerEntryDto.Kind.CREDIT, historyA.get(0).kind()),
+                () -> assertNull(historyA.get(0).from(), "Expected an unknown source of the credit"),
+                () -> assertEquals(LedgerEntryDto.Kind.TRANSFER, historyA.get(1).kind()),
+                () -> assertEquals(LedgerEntryDto.Kind.DEBIT, historyA.get(2).kind()),
+                () -> assertEquals(1, historyB.size(), "Expected the credit of B only"),
+                () -> assertEquals(40, historyB.get(0).amount())
+        );
+    }
+
+    @Test
+    public void should_never_go_back_in_time() {
+        var log = LedgerLog.offHeap();
+        log.append("A", "B", 10, 2_000);
+        log.append("A", "B", 20, 1_000);
+
+        assertEquals(2_000, log.history("A", 0, Long.MAX_VALUE, Long.MAX_VALUE, 1).get(0).timestamp());
+    }
+
+    @Test
+    public void should_keep_the_log_in_mapped_files() throws IOException {
+        var directory = Files.createTempDirectory("ledger");
+        try {
+            var log = LedgerLog.mapped(directory);
+            log.append("A", "B", 10, 1_000);
+
+            Assertions.assertAll(
+                    () -> assertEquals(1, log.history("B", 0, Long.MAX_VALUE, Long.MAX_VALUE, 10).size()),
+                    () -> assertEquals(1, Files.list(directory).count(), "Expected a single segment file")
+            );
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void should_record_committed_transfers_of_accounts() throws InterruptedException {
+        var engine = new StripedLockBalanceEngine(64);
+        try (var ledger = Ledger.offHeap()) {
+            var accountA = new Account(100, "A", engine, ledger);
+            var accountB = new Account(100, "B", engine, ledger);
+            accountA.transferTo(accountB, 30, balance -> {
+            });
+            try {
+                accountA.transferTo(accountB, 300, balance -> {
+                    if (balance < 0) {
+                        throw new IllegalStateException("Not enough founds");
+                    }
+                });
+            } catch (IllegalStateException expected) {
+            }
+            while (ledger.size() < 1) {
+                Thread.sleep(1);
+            }
+
+            var history = ledger.history("B", 0, Long.MAX_VALUE, Long.MAX_VALUE, 10);
+
+            Assertions.assertAll(
+                    () -> assertEquals(1, history.size(), "Expected only the committed transfer"),
+                    () -> assertEquals(30, history.get(0).amount())
+            );
+        }
+    }
+
+    @Test
+    public void should_record_both_legs_of_a_transfer_applied_in_two_steps() throws InterruptedException {
+        var engine = new StripedLockBalanceEngine(64);
+        try (var ledger = Ledger.offHeap()) {
+            var accountA = new Account(100, "A", engine, ledger);
+            var accountB = new Account(100, "B", engine, ledger);
+            accountA.debitTransfer("B", 30, 30, true, balance -> {
+            });
+            accountB.creditTransfer("A", 30, 30, true);
+            while (ledger.size() < 2) {
+                Thread.sleep(1);
+            }
+
+            var historyA = ledger.history("A", 0, Long.MAX_VALUE, Long.MAX_VALUE, 10);
+            var historyB = ledger.history("B", 0, Long.MAX_VALUE, Long.MAX_VALUE, 10);
+
+            Assertions.assertAll(
+                    () -> assertEquals(1, historyA.size()),
+                    () -> assertEquals(LedgerEntryDto.Kind.DEBIT, historyA.get(0).kind()),
+                    () -> assertEquals(1, historyB.size()),
+                    () -> assertEquals(LedgerEntryDto.Kind.CREDIT, historyB.get(0).kind()),
+                    () -> assertEquals("A", historyB.get(0).from())
+            );
+        }
+    }
+
+    @Test
+    public void should_drop_transfers_rather_than_wait_for_a_stopped_writer() {
+        var engine = new StripedLockBalanceEngine(64);
+        var ledger = Ledger.offHeap();
+        var accountA = new Account(1_000_000, "A", engine, ledger);
+        var accountB = new Account(0, "B", engine, ledger);
+        ledger.close();
+
+        for (int i = 0; i < 100_000; i++) {
+            accountA.transferTo(accountB, 1, balance -> {
+            });
+        }
+
+        Assertions.assertAll(
+                () -> assertEquals(100_000, accountB.getBalance(), "Expected every transfer to commit"),
+                () -> assertTrue(ledger.dropped() > 0, "Expected the transfers beyond the ring buffer dropped")
+        );
+    }
+
+    private static List<LedgerEntryDto> pages(LedgerLog log, String iban, long fromTimestamp, long toTimestamp, int limit) {
+        var all = new ArrayList<LedgerEntryDto>();
+        long before = Long.MAX_VALUE;
+        while (true) {
+            var page = log.history(iban, fromTimestamp, toTimestamp, before, limit);
+            all.addAll(page);
+            if (page.size() < limit) {
+                return all;
+            }
+            before = page.get(page.size() - 1).txId();
+        }
+    }
+
+    private static boolean isDescending(List<LedgerEntryDto> entries) {
+        for (int i = 1; i < entries.size(); i++) {
+            if (entries.get(i).txId() >= entries.get(i - 1).txId()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
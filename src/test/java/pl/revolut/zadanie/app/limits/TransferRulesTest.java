@@ -0,0 +1,98 @@
+package pl.revolut.zadanie.app.limits;
+
+import io.javalin.BadRequestResponse;
+import org.junit.jupiter.api.Test;
+import pl.revolut.zadanie.app.model.Account;
+import pl.revolut.zadanie.app.model.AccountListener;
+import pl.revolut.zadanie.app.model.BalanceEngine;
+import pl.revolut.zadanie.app.model.StripedLockBalanceEngine;
+import pl.revolut.zadanie.app.model.Transfer;
+import pl.revolut.zadanie.app.model.TransferBatchException;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TransferRulesTest {
+    private final BalanceEngine engine = new StripedLockBalanceEngine(64);
+    private final AtomicLong clock = new AtomicLong(TimeUnit.DAYS.toNanos(1));
+    private final VelocityLimits limits = new VelocityLimits(List.of(
+            new VelocityLimits.Window("hourly", 100, 1, TimeUnit.HOURS, 6),
+            new VelocityLimits.Window("daily", 150, 1, TimeUnit.DAYS, 24)));
+    private final TransferRule sufficientFunds = (account, amount, newBalance, nowNanos) -> {
+        if (newBalance < 0) {
+            throw new BadRequestResponse("Not enough founds");
+        }
+    };
+    private final TransferRules rules = new TransferRules(List.of(new MaxTransferRule(80), sufficientFunds, limits), clock::get);
+
+    @Test
+    public void should_limit_the_money_debited_within_sliding_windows() {
+        var accountA = create("A", 1_000);
+        var accountB = create("B", 0);
+
+        accountA.transferTo(accountB, 60, rules);
+        assertThrows(BadRequestResponse.class, () -> accountA.transferTo(accountB, 50, rules), "Expected the hourly limit exceeded");
+        accountA.decrementBalance(40, rules);
+
+        clock.addAndGet(TimeUnit.MINUTES.toNanos(55));
+        assertThrows(BadRequestResponse.class, () -> accountA.transferTo(accountB, 1, rules), "Expected the debits still within the hour");
+
+        clock.addAndGet(TimeUnit.MINUTES.toNanos(10));
+        accountA.transferTo(accountB, 50, rules);
+        assertThrows(BadRequestResponse.class, () -> accountA.transferTo(accountB, 1, rules), "Expected the daily limit exceeded");
+
+        assertEquals(850, accountA.getBalance());
+        assertEquals(50, limits.debited(accountA, 0));
+        assertEquals(150, limits.debited(accountA, 1));
+    }
+
+    @Test
+    public void should_reject_transfers_over_the_cap_without_counting_them() {
+        var accountA = create("A", 1_000);
+        var accountB = create("B", 0);
+
+        assertThrows(BadRequestResponse.class, () -> accountA.transferTo(accountB, 81, rules));
+
+        assertEquals(1_000, accountA.getBalance());
+        assertEquals(0, limits.debited(accountA, 0));
+    }
+
+    @Test
+    public void should_revert_the_limits_of_a_debit_which_does_not_commit() {
+        var accountA = create("A", 10);
+        var accountB = create("B", 0);
+        var failingAfterLimits = new TransferRules(List.of(limits, sufficientFunds), clock::get);
+
+        assertThrows(BadRequestResponse.class, () -> accountA.transferTo(accountB, 20, failingAfterLimits));
+
+        assertEquals(0, limits.debited(accountA, 0));
+        accountA.transferTo(accountB, 10, failingAfterLimits);
+        assertEquals(10, limits.debited(accountA, 0));
+    }
+
+    @Test
+    public void should_revert_the_limits_of_every_transfer_of_a_failed_batch() {
+        var accountA = create("A", 100);
+        var accountB = create("B", 100);
+        var accountC = create("C", 5);
+
+        assertThrows(TransferBatchException.class, () -> engine.transferAll(List.of(
+                new Transfer(accountA, accountB, 30), new Transfer(accountB, accountC, 70), new Transfer(accountC, accountA, 80)), rules));
+
+        assertEquals(0, limits.debited(accountA, 0));
+        assertEquals(0, limits.debited(accountB, 0));
+        assertEquals(100, accountA.getBalance());
+
+        engine.transferAll(List.of(new Transfer(accountA, accountB, 30), new Transfer(accountB, accountC, 70)), rules);
+        assertEquals(30, limits.debited(accountA, 0));
+        assertEquals(70, limits.debited(accountB, 0));
+    }
+
+    private Account create(String iban, long balance) {
+        return new Account(balance, iban, engine, AccountListener.NONE);
+    }
+}
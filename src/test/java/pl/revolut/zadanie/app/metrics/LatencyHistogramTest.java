@@ -0,0 +1,41 @@
+package pl.revolut.zadanie.app.metrics;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void should_report_percentiles_within_the_bucket_precision() {
+        var histogram = new LatencyHistogram();
+        LongStream.rangeClosed(1, 100_000).forEach(value -> histogram.record(value * 1_000));
+
+        var snapshot = histogram.snapshot();
+
+        Assertions.assertAll(
+                () -> assertEquals(100_000, snapshot.count(), "Expected every value to be counted"),
+                () -> assertEquals(100_000_000, snapshot.maxNanos(), "Expected the exact maximum"),
+                () -> assertWithinPrecision(50_000_000, snapshot.percentileNanos(50)),
+                () -> assertWithinPrecision(99_000_000, snapshot.percentileNanos(99)),
+                () -> assertWithinPrecision(99_900_000, snapshot.percentileNanos(99.9))
+        );
+    }
+
+    @Test
+    public void should_map_every_value_into_the_bucket_holding_it() {
+        for (long value : new long[]{0, 1, 15, 16, 17, 31, 32, 33, 1_000, 123_456_789, Long.MAX_VALUE}) {
+            int index = LatencyHistogram.indexOf(value);
+            assertTrue(LatencyHistogram.highestValueAt(index) >= value, "Expected the bucket of " + value + " to hold it");
+            assertTrue(index == 0 || LatencyHistogram.highestValueAt(index - 1) < value, "Expected the previous bucket of " + value + " to be below it");
+        }
+    }
+
+    private static void assertWithinPrecision(long expected, long actual) {
+        assertTrue(actual >= expected && actual <= expected + expected / 16, "Expected " + actual + " to be within 1/16 above " + expected);
+    }
+}
@@ -5,17 +5,23 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.SplittableRandom;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.LongConsumer;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class AccountTest {
     private static ExecutorService fixedThreadPool ;
@@ -24,6 +30,7 @@ public class AccountTest {
             throw new IllegalArgumentException();
         }
     };
+    private final BalanceEngine engine = engine();
 
     @BeforeAll
     public static void beforeAll() {
@@ -35,9 +42,21 @@ public class AccountTest {
         fixedThreadPool.shutdownNow();
     }
 
+    private BalanceEngine engine() {
+        return engine(HotAccounts.DISABLED);
+    }
+
+    protected BalanceEngine engine(HotAccounts hotAccounts) {
+        return new StmBalanceEngine(hotAccounts);
+    }
+
+    private Account account(long balance, String iban) {
+        return new Account(balance, iban, engine);
+    }
+
     @Test
     public void should_correctly_decrement_balance() {
-        Account account = new Account(100, "A");
+        Account account = account(100, "A");
 
         account.decrementBalance(100);
 
@@ -46,7 +65,7 @@ public class AccountTest {
 
     @Test
     public void should_correctly_increment_balance() {
-        Account account = new Account(100, "A");
+        Account account = account(100, "A");
 
         account.incrementBalance(100);
 
@@ -55,8 +74,8 @@ public class AccountTest {
 
     @Test
     public void should_correctly_transfer_between_two_accounts() {
-        Account accountA = new Account(100, "A");
-        Account accountB = new Account(100, "B");
+        Account accountA = account(100, "A");
+        Account accountB = account(100, "B");
 
         accountA.transferTo(accountB, 100, positiveBalanceValidator);
 
@@ -68,7 +87,7 @@ public class AccountTest {
 
     @Test
     void should_atomically_decrement_balance() throws ExecutionException, InterruptedException {
-        Account account = new Account(200_000, "A");
+        Account account = account(200_000, "A");
 
         CompletableFuture.allOf(IntStream
                 .range(0, 200_000)
@@ -81,7 +100,7 @@ public class AccountTest {
 
     @Test
     public void should_atomically_increment_balance() throws ExecutionException, InterruptedException {
-        Account account = new Account(0, "A");
+        Account account = account(0, "A");
 
         CompletableFuture.allOf(IntStream
                 .range(0, 200_000)
@@ -94,8 +113,8 @@ public class AccountTest {
 
     @Test
     public void should_transfer_between_accounts_atomically_and_with_no_deadlocks() throws ExecutionException, InterruptedException {
-        Account accountA = new Account(1_000_000, "A");
-        Account accountB = new Account(1_000_000, "B");
+        Account accountA = account(1_000_000, "A");
+        Account accountB = account(1_000_000, "B");
 
         CompletableFuture.allOf(IntStream
                 .range(0, 200_000)
@@ -118,9 +137,26 @@ public class AccountTest {
         );
     }
 
+    @Test
+    public void should_report_a_transfer_rejected_by_the_new_balance_without_changing_any_balance() {
+        Account accountA = account(100, "A");
+        Account accountB = account(100, "B");
+
+        var committed = accountA.tryTransferTo(accountB, 100, newBalance -> newBalance >= 0);
+        var rejected = accountA.tryTransferTo(accountB, 1, newBalance -> newBalance >= 0);
+
+        Assertions.assertAll(
+                () -> assertTrue(committed, "Expected the first transfer to be committed"),
+                () -> assertFalse(rejected, "Expected the second transfer to be rejected"),
+                () -> assertEquals(0, accountA.getBalance(), "Expected account A to have 0"),
+                () -> assertEquals(200, accountB.getBalance(), "Expected account B to have 200"),
+                () -> assertEquals(1, engine.transferCounters().aborts(), "Expected the rejected transfer to be counted")
+        );
+    }
+
     @Test
     public void should_validate_new_balance_after_decrementing() {
-        Account account = new Account(100, "A");
+        Account account = account(100, "A");
 
         assertThrows(IllegalArgumentException.class, () -> account.decrementBalance(200, positiveBalanceValidator), "Expected to throw an exception if the new balance fails validation");
     }
@@ -132,8 +168,195 @@ public class AccountTest {
                 throw new IllegalArgumentException();
             }
         };
-        Account account = new Account(100, "A");
+        Account account = account(100, "A");
 
         assertThrows(IllegalArgumentException.class, () -> account.incrementBalance(200, cappedBalanceValidator), "Expected to throw an exception if the new balance fails validation");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void should_conserve_money_and_never_overdraw_when_transferring_between_many_accounts() throws ExecutionException, InterruptedException {
+        Account[] accounts = IntStream.range(0, 16)
+                .mapToObj(i -> account(1_000, "A" + i))
+                .toArray(Account[]::new);
+
+        CompletableFuture.allOf(IntStream
+                .range(0, 200_000)
+                .parallel()
+                .mapToObj(value -> CompletableFuture.runAsync(() -> {
+                    var random = new SplittableRandom(value);
+                    var from = accounts[random.nextInt(accounts.length)];
+                    var to = accounts[random.nextInt(accounts.length)];
+                    try {
+                        from.transferTo(to, random.nextInt(1, 300), positiveBalanceValidator);
+                    } catch (IllegalArgumentException e) {
+                        // not enough founds, rejected
+                    }
+                }, fixedThreadPool))
+                .toArray(CompletableFuture[]::new)).get();
+
+        Assertions.assertAll(
+                () -> assertEquals(16_000, Arrays.stream(accounts).mapToLong(Account::getBalance).sum(), "Expected the total balance to stay 16 000"),
+                () -> assertTrue(Arrays.stream(accounts).allMatch(account -> account.getBalance() >= 0), "Expected no account to be overdrawn")
+        );
+    }
+
+    @Test
+    public void should_read_balances_of_many_accounts_at_a_single_point_in_time() throws ExecutionException, InterruptedException {
+        List<Account> accounts = IntStream.range(0, 8)
+                .mapToObj(i -> account(1_000, "A" + i))
+                .collect(Collectors.toList());
+        var snapshotsTaken = new AtomicBoolean();
+        var transfers = CompletableFuture.allOf(IntStream
+                .range(0, 2)
+                .mapToObj(seed -> CompletableFuture.runAsync(() -> {
+                    var random = new SplittableRandom(seed);
+                    while (!snapshotsTaken.get()) {
+                        var from = accounts.get(random.nextInt(accounts.size()));
+                        var to = accounts.get(random.nextInt(accounts.size()));
+                        from.transferTo(to, random.nextInt(1, 300), balance -> {
+                        });
+                    }
+                }, fixedThreadPool))
+                .toArray(CompletableFuture[]::new));
+
+        try {
+            for (int i = 0; i < 200_000; i++) {
+                assertEquals(8_000, Arrays.stream(engine.balancesOf(accounts)).sum(), "Expected every snapshot to see the total balance of 8 000");
+            }
+        } finally {
+            snapshotsTaken.set(true);
+        }
+        transfers.get();
+    }
+
+    @Test
+    public void should_count_credits_kept_in_sub_balances_in_the_balance_of_a_split_account() {
+        var splitEngine = engine(new HotAccounts(4, List.of("M"), 0));
+        Account merchant = new Account(0, "M", splitEngine);
+        Account customer = new Account(1_000, "C", splitEngine);
+
+        for (int i = 0; i < 100; i++) {
+            customer.transferTo(merchant, 10, positiveBalanceValidator);
+        }
+        merchant.incrementBalance(5);
+
+        Assertions.assertAll(
+                () -> assertTrue(merchant.isSplit(), "Expected the designated account to be split"),
+                () -> assertFalse(customer.isSplit(), "Expected other accounts not to be split"),
+                () -> assertEquals(1_005, merchant.getBalance(), "Expected the merchant to have every credit"),
+                () -> assertEquals(1_005, splitEngine.balancesOf(List.of(customer, merchant))[1], "Expected a snapshot to see every credit"),
+                () -> assertEquals(1, splitEngine.transferCounters().splitAccounts())
+        );
+    }
+
+    @Test
+    public void should_validate_a_debit_of_a_split_account_against_its_whole_balance() {
+        var splitEngine = engine(new HotAccounts(4, List.of("M"), 0));
+        Account merchant = new Account(0, "M", splitEngine);
+        Account customer = new Account(100, "C", splitEngine);
+        customer.transferTo(merchant, 100, positiveBalanceValidator);
+
+        merchant.transferTo(customer, 60, positiveBalanceValidator);
+
+        Assertions.assertAll(
+                () -> assertThrows(IllegalArgumentException.class, () -> merchant.decrementBalance(41, positiveBalanceValidator), "Expected the overdraft to be rejected"),
+                () -> assertFalse(merchant.tryTransferTo(customer, 41, newBalance -> newBalance >= 0), "Expected the overdraft to be rejected"),
+                () -> assertEquals(40, merchant.getBalance(), "Expected the merchant to have 40"),
+                () -> assertEquals(60, customer.getBalance(), "Expected the customer to have 60")
+        );
+    }
+
+    @Test
+    public void should_conserve_money_and_never_overdraw_a_split_account_debited_while_credited() throws ExecutionException, InterruptedException {
+        var splitEngine = engine(new HotAccounts(4, List.of("M"), 0));
+        Account merchant = new Account(0, "M", splitEngine);
+        Account[] customers = IntStream.range(0, 8)
+                .mapToObj(i -> new Account(1_000, "C" + i, splitEngine))
+                .toArray(Account[]::new);
+
+        CompletableFuture.allOf(IntStream
+                .range(0, 100_000)
+                .mapToObj(value -> CompletableFuture.runAsync(() -> {
+                    var random = new SplittableRandom(value);
+                    var customer = customers[random.nextInt(customers.length)];
+                    var from = random.nextInt(4) == 0 ? merchant : customer;
+                    var to = from == merchant ? customer : merchant;
+                    try {
+                        from.transferTo(to, random.nextInt(1, 50), positiveBalanceValidator);
+                    } catch (IllegalArgumentException e) {
+                        // not enough founds, rejected
+                    }
+                }, fixedThreadPool))
+                .toArray(CompletableFuture[]::new)).get();
+
+        Assertions.assertAll(
+                () -> assertEquals(8_000, merchant.getBalance() + Arrays.stream(customers).mapToLong(Account::getBalance).sum(), "Expected the total balance to stay 8 000"),
+                () -> assertTrue(merchant.getBalance() >= 0, "Expected the merchant not to be overdrawn"),
+                () -> assertTrue(Arrays.stream(customers).allMatch(account -> account.getBalance() >= 0), "Expected no customer to be overdrawn")
+        );
+    }
+
+    @Test
+    public void should_split_an_account_once_credits_to_it_are_contended_often() {
+        var hotAccounts = new HotAccounts(4, List.of(), 3);
+        Account merchant = new Account(0, "M", engine(hotAccounts));
+
+        hotAccounts.onContendedCredit(merchant);
+        hotAccounts.onContendedCredit(merchant);
+        var splitBeforeThreshold = merchant.isSplit();
+        hotAccounts.onContendedCredit(merchant);
+
+        Assertions.assertAll(
+                () -> assertFalse(splitBeforeThreshold, "Expected the account not to be split below the threshold"),
+                () -> assertTrue(merchant.isSplit(), "Expected the account to be split at the threshold")
+        );
+    }
+
+    @Test
+    public void should_roll_back_every_transfer_of_a_batch_if_one_of_them_fails() {
+        Account accountA = account(100, "A");
+        Account accountB = account(100, "B");
+
+        var exception = assertThrows(TransferBatchException.class, () -> engine.transferAll(List.of(
+                new Transfer(accountA, accountB, 100),
+                new Transfer(accountB, accountA, 50),
+                new Transfer(accountA, accountB, 100)), positiveBalanceValidator), "Expected the batch to fail");
+
+        Assertions.assertAll(
+                () -> assertEquals(2, exception.index(), "Expected the third transfer to fail"),
+                () -> assertEquals(100, accountA.getBalance(), "Expected account A to have 100"),
+                () -> assertEquals(100, accountB.getBalance(), "Expected account B to have 100")
+        );
+    }
+
+    @Test
+    public void should_credit_the_converted_amount_of_a_transfer_between_currencies() {
+        Account euros = new Account(100, "A", "EUR", engine, AccountListener.NONE);
+        Account zlotys = new Account(0, "B", "PLN", engine, AccountListener.NONE);
+
+        euros.transferTo(zlotys, 10, 42, positiveBalanceValidator);
+        assertThrows(IllegalArgumentException.class, () -> euros.transferTo(zlotys, 10, positiveBalanceValidator),
+                "Expected an unconverted transfer between currencies rejected");
+        assertThrows(IllegalArgumentException.class, () -> euros.transferTo(zlotys, 100, 420, positiveBalanceValidator));
+
+        Assertions.assertAll(
+                () -> assertEquals(90, euros.getBalance(), "Expected account A to have 90"),
+                () -> assertEquals(42, zlotys.getBalance(), "Expected account B to have 42")
+        );
+    }
+
+    @Test
+    public void should_roll_back_converted_credits_of_a_batch_if_one_of_the_transfers_fails() {
+        Account euros = new Account(100, "A", "EUR", engine, AccountListener.NONE);
+        Account zlotys = new Account(0, "B", "PLN", engine, AccountListener.NONE);
+
+        assertThrows(TransferBatchException.class, () -> engine.transferAll(List.of(
+                new Transfer(euros, zlotys, 50, 214),
+                new Transfer(euros, zlotys, 60, 257)), positiveBalanceValidator), "Expected the batch to fail");
+
+        Assertions.assertAll(
+                () -> assertEquals(100, euros.getBalance(), "Expected account A to have 100"),
+                () -> assertEquals(0, zlotys.getBalance(), "Expected account B to have 0")
+        );
+    }
+}
@@ -0,0 +1,12 @@
+package pl.revolut.zadanie.app.model;
+
+/**
+ * Runs every {@link AccountTest} invariant against the {@link StripedLockBalanceEngine}.
+ */
+public class StripedLockAccountTest extends AccountTest {
+
+    @Override
+    protected BalanceEngine engine(HotAccounts hotAccounts) {
+        return new StripedLockBalanceEngine(64, hotAccounts);
+    }
+}
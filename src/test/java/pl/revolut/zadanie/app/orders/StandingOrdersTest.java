@@ -0,0 +1,130 @@
+package pl.revolut.zadanie.app.orders;
+
+import io.javalin.BadRequestResponse;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StandingOrdersTest {
+    private final AtomicLong clock = new AtomicLong(1_000_000);
+    private final List<String> transfers = new ArrayList<>();
+
+    @Test
+    public void should_expire_every_timer_in_the_tick_of_its_deadline_and_never_a_cancelled_one() {
+        var wheel = new TimerWheel<TestTimer>(1, 0);
+        var random = new SplittableRandom(42);
+        var timers = new ArrayList<TestTimer>();
+        for (int i = 0; i < 10_000; i++) {
+            var timer = new TestTimer(random.nextLong(300_000));
+            timers.add(timer);
+            wheel.schedule(timer, timer.deadline);
+        }
+        for (int i = 0; i < timers.size(); i += 10) {
+            assertTrue(wheel.cancel(timers.get(i)));
+        }
+        long[] now = {0};
+        while (now[0] < 300_000) {
+            long previous = now[0];
+            now[0] += 1 + random.nextInt(5_000);
+            wheel.advance(now[0], timer -> {
+                assertTrue(timer.deadline > previous && timer.deadline <= now[0] || timer.deadline == 0 && previous == 0,
+                        "Expected timer due at " + timer.deadline + " to expire between " + previous + " and " + now[0]);
+                timer.expirations++;
+            });
+        }
+        for (int i = 0; i < timers.size(); i++) {
+            assertEquals(i % 10 == 0 ? 0 : 1, timers.get(i).expirations);
+        }
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void should_execute_due_orders_at_most_at_the_given_rate() {
+        var orders = orders(100, 4);
+        for (int i = 0; i < 50; i++) {
+            orders.create("A" + i, "B", 10, clock.get(), 0);
+        }
+
+        clock.addAndGet(100);
+        orders.tick();
+        assertEquals(10, transfers.size());
+        for (int i = 0; i < 4; i++) {
+            clock.addAndGet(100);
+            orders.tick();
+        }
+
+        assertEquals(50, transfers.size());
+        assertEquals(50, orders.executed());
+        assertEquals(List.of(), orders.list(null, 0, 100), "Expected orders executed once forgotten");
+    }
+
+    @Test
+    public void should_execute_a_repeated_order_every_interval_until_cancelled() {
+        var orders = orders(1_000, 64);
+        var order = orders.create("A", "B", 10, clock.get() + 1_000, 60_000);
+
+        clock.addAndGet(1_000);
+        orders.tick();
+        clock.addAndGet(30_000);
+        orders.tick();
+        assertEquals(1, transfers.size());
+
+        clock.addAndGet(30_000);
+        orders.tick();
+        assertEquals(2, transfers.size());
+        assertEquals(2, orders.get(order.id()).executions());
+        assertEquals(1_000_000 + 1_000 + 2 * 60_000, orders.get(order.id()).executeAt());
+
+        assertTrue(orders.cancel(order.id()));
+        clock.addAndGet(60_000);
+        orders.tick();
+
+        assertEquals(2, transfers.size());
+        assertNull(orders.get(order.id()), "Expected the cancelled order forgotten");
+        assertFalse(orders.cancel(order.id()));
+        assertEquals(0, orders.pending());
+    }
+
+    @Test
+    public void should_record_failed_executions_and_keep_repeating_the_order() {
+        var orders = new StandingOrders((from, to, amount) -> {
+            throw new BadRequestResponse("Not enough founds to transfer from the source account");
+        }, 100, 1_000, 1, 64, Runnable::run, clock::get, false);
+        var order = orders.create("A", "B", 10, clock.get(), 1_000);
+
+        clock.addAndGet(100);
+        orders.tick();
+
+        var failed = orders.get(order.id());
+        assertEquals(1, failed.failures());
+        assertEquals("Not enough founds to transfer from the source account", failed.lastFailure());
+        assertEquals(1, orders.pending());
+        assertEquals(1, orders.list("A", 0, 10).size());
+        assertEquals(0, orders.list("B", 0, 10).size());
+    }
+
+    private StandingOrders orders(int perSecond, int batchSize) {
+        return new StandingOrders((from, to, amount) -> {
+            transfers.add(from + "->" + to + ":" + amount);
+            return CompletableFuture.completedFuture(null);
+        }, 100, perSecond, 2, batchSize, Runnable::run, clock::get, false);
+    }
+
+    private static final class TestTimer extends TimerWheel.Timer {
+        private final long deadline;
+        private int expirations;
+
+        private TestTimer(long deadline) {
+            this.deadline = deadline;
+        }
+    }
+}
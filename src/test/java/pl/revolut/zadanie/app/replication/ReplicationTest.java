@@ -0,0 +1,166 @@
+package pl.revolut.zadanie.app.replication;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pl.revolut.zadanie.app.events.ChangeLog;
+import pl.revolut.zadanie.app.model.Account;
+import pl.revolut.zadanie.app.model.AccountListener;
+import pl.revolut.zadanie.app.model.StripedLockBalanceEngine;
+import pl.revolut.zadanie.app.store.AccountInMemoryStore;
+import pl.revolut.zadanie.app.store.AccountStore;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ReplicationTest {
+    private final StripedLockBalanceEngine engine = new StripedLockBalanceEngine(64);
+    private final ChangeLog changeLog = new ChangeLog(16);
+    private final ReplicationServer server = new ReplicationServer(changeLog, 0);
+    private final AccountListener primaryListener = AccountListener.compose(changeLog, server);
+    private final AccountStore primaryStore = new AccountInMemoryStore(16);
+    private final AccountStore replicaStore = new AccountInMemoryStore(16);
+    private final CountDownLatch replicaResumed = new CountDownLatch(1);
+    private volatile boolean replicaPaused;
+    private final AccountListener replicaListener = new AccountListener() {
+        @Override
+        public void beforeChange() {
+            if (replicaPaused) {
+                try {
+                    replicaResumed.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    };
+    private ReplicaClient replica;
+
+    @BeforeEach
+    public void beforeEach() {
+        server.start(primaryStore::values);
+        replica = new ReplicaClient("localhost", server.port(), replicaStore, new StripedLockBalanceEngine(64), replicaListener);
+    }
+
+    @AfterEach
+    public void afterEach() {
+        replicaResumed.countDown();
+        replica.close();
+        server.close();
+        changeLog.close();
+    }
+
+    @Test
+    public void should_load_a_snapshot_then_follow_the_changes() throws InterruptedException {
+        var accountA = create("A", "PLN", 100);
+        var accountB = create("B", "PLN", 0);
+        replica.start();
+        awaitReplicated();
+        assertEquals(balances(primaryStore), balances(replicaStore));
+
+        accountA.transferTo(accountB, 30, newBalance -> {
+        });
+        create("C", "EUR", 5);
+        accountB.incrementBalance(12);
+        delete("A");
+        awaitReplicated();
+
+        assertEquals(Map.of("B", 42L, "C", 5L), balances(replicaStore));
+        assertEquals("EUR", replicaStore.find("C").getCurrency());
+        assertTrue(replica.isConnected());
+        assertTrue(replica.lagMillis() >= 0, "Expected the lag known once synced");
+        assertEquals(1, server.replicas());
+    }
+
+    @Test
+    public void should_send_another_snapshot_to_a_replica_falling_behind() throws InterruptedException {
+        var accountA = create("A", "PLN", 1_000_000);
+        var accountB = create("B", "PLN", 0);
+        replica.start();
+        awaitReplicated();
+
+        replicaPaused = true;
+        for (int i = 0; i < 200_000; i++) {
+            accountA.transferTo(accountB, 1, newBalance -> {
+            });
+        }
+        replicaPaused = false;
+        replicaResumed.countDown();
+        awaitReplicated();
+
+        assertEquals(Map.of("A", 800_000L, "B", 200_000L), balances(replicaStore));
+        assertTrue(replica.snapshots() > 1, "Expected the replica to have been sent another snapshot");
+    }
+
+    @Test
+    public void should_share_a_snapshot_between_replicas_needing_one_within_the_interval() throws InterruptedException {
+        var accountA = create("A", "PLN", 100);
+        replica.start();
+        awaitReplicated();
+        accountA.incrementBalance(5);
+        var secondStore = new AccountInMemoryStore(16);
+        try (var second = new ReplicaClient("localhost", server.port(), secondStore, new StripedLockBalanceEngine(64), AccountListener.NONE)) {
+            second.start();
+            long expected = changeLog.nextSequence() - 1;
+            for (int i = 0; i < 2_000 && second.appliedSequence() < expected; i++) {
+                Thread.sleep(5);
+            }
+
+            assertEquals(Map.of("A", 105L), balances(secondStore), "Expected the snapshot followed by the changes made since");
+            assertEquals(1, server.snapshots(), "Expected the snapshot of the first replica to be sent again");
+        }
+    }
+
+    @Test
+    public void should_stop_following_the_primary_once_promoted() throws InterruptedException {
+        var accountA = create("A", "PLN", 100);
+        replica.start();
+        awaitReplicated();
+
+        replica.promote();
+        accountA.incrementBalance(50);
+        Thread.sleep(200);
+
+        assertTrue(replica.isPromoted());
+        assertFalse(replica.isConnected());
+        assertEquals(100, replicaStore.find("A").getBalance());
+    }
+
+    private void awaitReplicated() throws InterruptedException {
+        long expected = changeLog.nextSequence() - 1;
+        for (int i = 0; i < 2_000 && (replica.snapshots() == 0 || replica.appliedSequence() < expected); i++) {
+            Thread.sleep(5);
+        }
+        assertEquals(expected, replica.appliedSequence(), "Expected the replica to catch up with the primary");
+    }
+
+    private Account create(String iban, String currency, long balance) {
+        primaryListener.beforeChange();
+        try {
+            var account = new Account(balance, iban, currency, engine, primaryListener);
+            primaryStore.put(iban, account);
+            primaryListener.onCreated(account, balance);
+            return account;
+        } finally {
+            primaryListener.afterChange();
+        }
+    }
+
+    private void delete(String iban) {
+        primaryListener.beforeChange();
+        try {
+            primaryListener.onDeleted(primaryStore.remove(iban));
+        } finally {
+            primaryListener.afterChange();
+        }
+    }
+
+    private static Map<String, Long> balances(AccountStore store) {
+        return store.values().stream().collect(Collectors.toMap(Account::getIban, Account::getBalance));
+    }
+}
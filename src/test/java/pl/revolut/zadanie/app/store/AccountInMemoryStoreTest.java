@@ -0,0 +1,104 @@
+package pl.revolut.zadanie.app.store;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import pl.revolut.zadanie.app.model.Account;
+import pl.revolut.zadanie.app.model.BalanceEngine;
+import pl.revolut.zadanie.app.model.StripedLockBalanceEngine;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AccountInMemoryStoreTest {
+    private final BalanceEngine engine = new StripedLockBalanceEngine(64);
+    private final AccountStore store = store(4);
+
+    protected AccountStore store(int initialCapacity) {
+        return new AccountInMemoryStore(initialCapacity);
+    }
+
+    @Test
+    public void should_find_put_and_remove_accounts() {
+        var first = account("PL61109010140000071219812874");
+        var second = account("PL61109010140000071219812874");
+
+        store.put(first.getIban(), first);
+        var replaced = store.put(second.getIban(), second);
+        var found = store.find(second.getIban());
+        var removed = store.remove(second.getIban());
+
+        Assertions.assertAll(
+                () -> assertSame(first, replaced, "Expected the first account to be replaced"),
+                () -> assertSame(second, found, "Expected the second account to be found"),
+                () -> assertSame(second, removed, "Expected the second account to be removed"),
+                () -> assertNull(store.find(second.getIban()), "Expected no account after removal"),
+                () -> assertNull(store.remove(second.getIban()), "Expected nothing to remove twice")
+        );
+    }
+
+    @Test
+    public void should_create_an_account_only_once() {
+        assertTrue(store.putIfAbsent("A", () -> account("A")), "Expected the account to be created");
+        assertFalse(store.putIfAbsent("A", () -> account("A")), "Expected the account not to be created twice");
+    }
+
+    @Test
+    public void should_keep_accounts_with_any_iban() {
+        for (String iban : List.of("a", "A", "AA", "0", "iban with spaces", "X".repeat(40), "\u017B\u00D3\u0141W")) {
+            store.put(iban, account(iban));
+        }
+
+        Assertions.assertAll(
+                () -> assertEquals("a", store.find("a").getIban(), "Expected a lower case iban to be found"),
+                () -> assertEquals("AA", store.find("AA").getIban(), "Expected AA to be found"),
+                () -> assertEquals("X".repeat(40), store.find("X".repeat(40)).getIban(), "Expected a long iban to be found"),
+                () -> assertEquals("\u017B\u00D3\u0141W", store.find("\u017B\u00D3\u0141W").getIban(), "Expected a non ascii iban to be found"),
+                () -> assertNull(store.find("AAA"), "Expected no account AAA"),
+                () -> assertEquals(7, store.values().size(), "Expected 7 accounts")
+        );
+    }
+
+    @Test
+    public void should_keep_every_account_while_growing_and_churning() {
+        IntStream.range(0, 20_000).forEach(i -> store.put("IBAN" + i, account("IBAN" + i)));
+        IntStream.range(0, 20_000).filter(i -> i % 2 == 0).forEach(i -> store.remove("IBAN" + i));
+        IntStream.range(20_000, 30_000).forEach(i -> store.put("IBAN" + i, account("IBAN" + i)));
+
+        Assertions.assertAll(
+                () -> assertEquals(20_000, store.values().size(), "Expected 20000 accounts"),
+                () -> assertEquals(20_000, store.getAll().size(), "Expected 20000 distinct accounts"),
+                () -> assertTrue(IntStream.range(0, 30_000).allMatch(i -> (store.find("IBAN" + i) != null) == (i % 2 == 1 || i >= 20_000)),
+                        "Expected exactly the accounts not removed to be found")
+        );
+    }
+
+    @Test
+    public void should_page_accounts_ordered_by_iban() {
+        IntStream.range(0, 10).forEach(i -> store.put("B" + i, account("B" + i)));
+
+        var firstPage = ibans(store.page(null, 4));
+        var secondPage = ibans(store.page("B3", 4));
+        var lastPage = ibans(store.page("B7", 4));
+
+        Assertions.assertAll(
+                () -> assertEquals(List.of("B0", "B1", "B2", "B3"), firstPage, "Expected the first page"),
+                () -> assertEquals(List.of("B4", "B5", "B6", "B7"), secondPage, "Expected the second page"),
+                () -> assertEquals(List.of("B8", "B9"), lastPage, "Expected the last page")
+        );
+    }
+
+    private Account account(String iban) {
+        return new Account(100, iban, engine);
+    }
+
+    private static List<String> ibans(List<Account> accounts) {
+        return accounts.stream().map(Account::getIban).collect(Collectors.toList());
+    }
+}
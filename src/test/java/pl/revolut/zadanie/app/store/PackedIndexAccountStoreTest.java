@@ -0,0 +1,9 @@
+package pl.revolut.zadanie.app.store;
+
+public class PackedIndexAccountStoreTest extends AccountInMemoryStoreTest {
+
+    @Override
+    protected AccountStore store(int initialCapacity) {
+        return new PackedIndexAccountStore(initialCapacity);
+    }
+}